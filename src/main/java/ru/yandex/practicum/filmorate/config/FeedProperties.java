@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "filmorate.feed")
+public class FeedProperties {
+    // Событий в кольце ленты одного пользователя, около 32 байт на событие; старые затираются
+    private int capacity = 32;
+    // У кого больше друзей (у фильма - лайков), тех события не раздаются по лентам, а читаются при запросе ленты
+    private int celebrityThreshold = 1000;
+    private int maxLimit = 100;
+}
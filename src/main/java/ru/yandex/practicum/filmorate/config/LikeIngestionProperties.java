@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "filmorate.likes.async")
+public class LikeIngestionProperties {
+    private boolean enabled = false;
+    private int shards = 4;
+    private int queueCapacity = 65_536;
+    // Сколько событий писатель забирает из очереди за раз
+    private int batchSize = 512;
+    private Backpressure backpressure = Backpressure.BLOCK;
+    private Duration offerTimeout = Duration.ofMillis(500);
+    // Сколько запрос лайка ждет, пока писатель применит его событие
+    private Duration readYourWritesTimeout = Duration.ofMillis(200);
+
+    public enum Backpressure {
+        BLOCK,
+        REJECT
+    }
+}
@@ -0,0 +1,11 @@
+package ru.yandex.practicum.filmorate.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "filmorate.pagination")
+public class PaginationProperties {
+    // Разрешает GET /films и GET /users без limit, отдающие весь каталог
+    private boolean unpagedEnabled = true;
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "filmorate.persistence")
+public class PersistenceProperties {
+    // Журнал и снимки хранилищ в памяти; в профиле db не используются
+    private boolean enabled = false;
+    private Path dir = Path.of("data");
+    private Duration snapshotInterval = Duration.ofMinutes(10);
+}
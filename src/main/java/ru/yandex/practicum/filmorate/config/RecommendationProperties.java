@@ -0,0 +1,31 @@
+package ru.yandex.practicum.filmorate.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "filmorate.recommendations")
+public class RecommendationProperties {
+    // Фоновый поток: досчет соседей по событиям лайков и периодический полный пересчет
+    private boolean autoRefresh = true;
+    // Бюджет памяти на фильм: столько ближайших соседей хранится, около 12 байт на соседа
+    private int neighboursPerFilm = 20;
+    // У популярных фильмов и активных пользователей при подсчете совместных лайков берется выборка
+    private int maxLikersPerFilm = 1000;
+    private int maxLikesPerUser = 500;
+    private Similarity similarity = Similarity.COSINE;
+    // Потоки полного пересчета; 0 - по числу процессоров
+    private int parallelism = 0;
+    private int maxLimit = 100;
+    // При переполнении очереди событий вместо досчета делается полный пересчет
+    private int eventQueueCapacity = 1_000_000;
+    private Duration refreshDelay = Duration.ofSeconds(1);
+    private Duration rebuildInterval = Duration.ofHours(1);
+
+    public enum Similarity {
+        COSINE,
+        JACCARD
+    }
+}
@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "filmorate.cache")
+public class StorageCacheProperties {
+    // Кэш перед хранилищами нужен профилю db: хранилища в памяти и так отдают объекты без запросов
+    private boolean enabled = false;
+    private Entity films = new Entity();
+    private Entity users = new Entity();
+
+    @Data
+    public static class Entity {
+        // Вес записи - единица плюс число id лайков или друзей внутри нее
+        private long maximumWeight = 1_000_000;
+        // Страховка от изменений в БД в обход приложения
+        private Duration expireAfterWrite = Duration.ofMinutes(10);
+        // Сколько помнить, что сущности с таким id нет
+        private Duration negativeTtl = Duration.ofSeconds(5);
+    }
+}
@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "filmorate.suggestions")
+public class SuggestionProperties {
+    // Сколько друзей пользователя обходится; у кого больше - берется выборка
+    private int maxFriends = 1000;
+    // Сколько друзей каждого друга учитывается; у хабов берется выборка такого размера
+    private int hubSampleSize = 200;
+    private int maxLimit = 100;
+    // Хранить готовые списки (по maxLimit кандидатов) и сбрасывать только затронутые изменением дружбы
+    private boolean precompute = false;
+    // Сколько id всего держат готовые списки; старые вытесняются
+    private long precomputedMaxIds = 10_000_000;
+}
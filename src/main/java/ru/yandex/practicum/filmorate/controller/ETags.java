@@ -0,0 +1,33 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import java.util.function.LongPredicate;
+
+/**
+ * Сильный ETag из версии хранилища: одинаковая версия означает побайтно одинаковый ответ.
+ */
+final class ETags {
+
+    private ETags() {
+    }
+
+    static String of(long version) {
+        return "\"" + Long.toHexString(version) + "\"";
+    }
+
+    // Условие If-Match на версию: null без заголовка и для "*", иначе сильное сравнение с каждым из ETag
+    static LongPredicate ifMatch(String header) {
+        if (header == null || header.isBlank() || header.trim().equals("*")) {
+            return null;
+        }
+        String[] tags = header.split(",");
+        return version -> {
+            String current = of(version);
+            for (String tag : tags) {
+                if (tag.trim().equals(current)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+}
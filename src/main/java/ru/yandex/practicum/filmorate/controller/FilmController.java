@@ -3,10 +3,27 @@ package ru.yandex.practicum.filmorate.controller;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.config.PaginationProperties;
+import ru.yandex.practicum.filmorate.controller.stream.NdjsonReader;
+import ru.yandex.practicum.filmorate.controller.stream.NdjsonWriter;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.DTO.BatchResult;
+import ru.yandex.practicum.filmorate.model.DTO.FilmSearch;
+import ru.yandex.practicum.filmorate.model.DTO.Page;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.enums.MpaRating;
 import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.recommendation.RecommendationService;
 
+import java.io.InputStream;
+import java.time.LocalDate;
 import java.util.*;
 
 @Slf4j
@@ -15,22 +32,95 @@ import java.util.*;
 @RequiredArgsConstructor
 public class FilmController {
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
     private final FilmService filmService;
+    private final RecommendationService recommendationService;
+    private final PaginationProperties paginationProperties;
+    private final NdjsonWriter ndjsonWriter;
+    private final NdjsonReader ndjsonReader;
 
 
     @GetMapping
     public Collection<Film> findAll() {
+        if (!paginationProperties.isUnpagedEnabled()) {
+            throw new ValidationException("Параметр limit обязателен");
+        }
         return filmService.findAll();
     }
 
+    @GetMapping(params = "limit")
+    public Page<Film> findPage(@RequestParam(required = false) Long after,
+                               @RequestParam Integer limit) {
+        return filmService.findPage(after, limit);
+    }
+
+    @GetMapping(params = {"after", "!limit"})
+    public Page<Film> findPage(@RequestParam Long after) {
+        return filmService.findPage(after, DEFAULT_PAGE_SIZE);
+    }
+
+    @GetMapping(value = {"", "/stream"}, produces = NdjsonWriter.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> stream() {
+        return ndjsonWriter.write(filmService::streamAll);
+    }
+
+    // При совпадении If-None-Match ответ 304 без обращения к фильму и без сериализации
     @GetMapping("/{id}")
-    public Film findFilm(@PathVariable Long id) {
+    public Film findFilm(@PathVariable Long id, WebRequest request) {
+        if (request.checkNotModified(ETags.of(filmService.findFilmVersion(id)))) {
+            return null;
+        }
         return filmService.findFilmById(id);
     }
 
+    // genreId можно повторить: ?genreId=1&genreId=2 - фильмы, у которых есть оба жанра
     @GetMapping("/popular")
-    public Collection<Film> findPopularFilms(@RequestParam(defaultValue = "10") Integer count) {
-        return filmService.findPopularFilms(count);
+    public Collection<Film> findPopularFilms(@RequestParam(defaultValue = "10") Integer count,
+                                             @RequestParam(required = false) Set<Long> genreId,
+                                             WebRequest request) {
+        Set<Long> genreIds = genreId == null ? Set.of() : genreId;
+        if (request.checkNotModified(ETags.of(filmService.findPopularVersion(count, genreIds)))) {
+            return null;
+        }
+        return filmService.findPopularFilms(count, genreIds);
+    }
+
+    // Все параметры необязательны; rating - G, PG, PG-13, R или NC-17, sort - popular, date или relevance
+    // (по умолчанию relevance, если задан q, иначе popular)
+    @GetMapping("/search")
+    public List<Film> search(@RequestParam(required = false) String q,
+                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                             LocalDate releasedFrom,
+                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                             LocalDate releasedTo,
+                             @RequestParam(required = false) Integer minDuration,
+                             @RequestParam(required = false) Integer maxDuration,
+                             @RequestParam(required = false) String rating,
+                             @RequestParam(required = false) String sort,
+                             @RequestParam(defaultValue = "10") Integer limit) {
+        FilmSearch search = new FilmSearch();
+        search.setQ(q);
+        search.setReleasedFrom(releasedFrom);
+        search.setReleasedTo(releasedTo);
+        search.setMinDuration(minDuration);
+        search.setMaxDuration(maxDuration);
+        if (rating != null) {
+            search.setRating(parseEnum(MpaRating.class, "rating", rating));
+        }
+        if (sort != null) {
+            search.setSort(parseEnum(FilmSearch.Sort.class, "sort", sort));
+        } else if (q != null) {
+            search.setSort(FilmSearch.Sort.RELEVANCE);
+        }
+        search.setLimit(limit);
+        return filmService.search(search);
+    }
+
+    @GetMapping("/{id}/similar")
+    public List<Film> findSimilarFilms(@PathVariable Long id,
+                                       @RequestParam(defaultValue = "10") Integer limit) {
+        return recommendationService.findSimilarFilms(id, limit);
     }
 
     @PostMapping
@@ -38,26 +128,51 @@ public class FilmController {
         return filmService.create(film);
     }
 
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public BatchResult createBatch(@RequestBody List<Film> films) {
+        return filmService.createBatch(films);
+    }
+
+    @PostMapping(value = "/batch", consumes = NdjsonWriter.APPLICATION_NDJSON_VALUE)
+    public BatchResult createBatch(InputStream body) {
+        return filmService.createBatch(ndjsonReader.readAll(body, Film.class));
+    }
+
     @PutMapping
-    public Film update(@Valid @RequestBody Film newFilm) {
-        return filmService.update(newFilm);
+    public Film update(@Valid @RequestBody Film newFilm,
+                       @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return filmService.update(newFilm, ETags.ifMatch(ifMatch));
     }
 
     @PatchMapping
-    public Film patchFilm(@Valid @RequestBody Film newFilm) {
-        return filmService.patch(newFilm);
+    public Film patchFilm(@Valid @RequestBody Film newFilm,
+                          @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return filmService.patch(newFilm, ETags.ifMatch(ifMatch));
     }
 
+    // 202 - лайк принят, но еще в очереди: следующее чтение может его не увидеть
     @PutMapping("/{id}/like/{userId}")
-    public void addLike(@PathVariable Long id,
-                        @PathVariable Long userId) {
-        filmService.addLike(id, userId);
+    public ResponseEntity<Void> addLike(@PathVariable Long id,
+                                        @PathVariable Long userId) {
+        return likeResponse(filmService.addLike(id, userId));
     }
 
     @DeleteMapping("/{id}/like/{userId}")
-    public void removeLike(@PathVariable Long id,
-                           @PathVariable Long userId) {
-        filmService.removeLike(id, userId);
+    public ResponseEntity<Void> removeLike(@PathVariable Long id,
+                                           @PathVariable Long userId) {
+        return likeResponse(filmService.removeLike(id, userId));
+    }
+
+    private static ResponseEntity<Void> likeResponse(boolean applied) {
+        return applied ? ResponseEntity.ok().build() : ResponseEntity.accepted().build();
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String name, String value) {
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Неизвестное значение параметра " + name + ": " + value);
+        }
     }
 
 
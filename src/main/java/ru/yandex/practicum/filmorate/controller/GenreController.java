@@ -0,0 +1,28 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.service.GenreService;
+
+import java.util.Collection;
+
+@RestController
+@RequestMapping("/genres")
+@RequiredArgsConstructor
+public class GenreController {
+    private final GenreService genreService;
+
+    @GetMapping
+    public Collection<Genre> findAll() {
+        return genreService.findAll();
+    }
+
+    @GetMapping("/{id}")
+    public Genre findGenre(@PathVariable Long id) {
+        return genreService.findGenreById(id);
+    }
+}
@@ -4,9 +4,30 @@ import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.config.PaginationProperties;
+import ru.yandex.practicum.filmorate.controller.stream.NdjsonReader;
+import ru.yandex.practicum.filmorate.controller.stream.NdjsonWriter;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.DTO.BatchResult;
+import ru.yandex.practicum.filmorate.model.DTO.CommonFriendsCount;
+import ru.yandex.practicum.filmorate.model.DTO.FeedEvent;
+import ru.yandex.practicum.filmorate.model.DTO.FriendSuggestion;
+import ru.yandex.practicum.filmorate.model.DTO.FriendsCount;
+import ru.yandex.practicum.filmorate.model.DTO.Page;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.service.feed.FeedService;
+import ru.yandex.practicum.filmorate.service.recommendation.RecommendationService;
+import ru.yandex.practicum.filmorate.service.suggestion.FriendSuggestionService;
 
+import java.io.InputStream;
 import java.util.*;
 
 @Slf4j
@@ -15,16 +36,46 @@ import java.util.*;
 @RequiredArgsConstructor
 public class UserController {
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
     private final UserService userService;
+    private final FriendSuggestionService friendSuggestionService;
+    private final RecommendationService recommendationService;
+    private final FeedService feedService;
+    private final PaginationProperties paginationProperties;
+    private final NdjsonWriter ndjsonWriter;
+    private final NdjsonReader ndjsonReader;
 
 
     @GetMapping
     public Collection<User> findAll() {
+        if (!paginationProperties.isUnpagedEnabled()) {
+            throw new ValidationException("Параметр limit обязателен");
+        }
         return userService.findAll();
     }
 
+    @GetMapping(params = "limit")
+    public Page<User> findPage(@RequestParam(required = false) Long after,
+                               @RequestParam Integer limit) {
+        return userService.findPage(after, limit);
+    }
+
+    @GetMapping(params = {"after", "!limit"})
+    public Page<User> findPage(@RequestParam Long after) {
+        return userService.findPage(after, DEFAULT_PAGE_SIZE);
+    }
+
+    @GetMapping(value = {"", "/stream"}, produces = NdjsonWriter.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> stream() {
+        return ndjsonWriter.write(userService::streamAll);
+    }
+
     @GetMapping("/{id}")
-    public User findUser(@PathVariable Long id) {
+    public User findUser(@PathVariable Long id, WebRequest request) {
+        if (request.checkNotModified(ETags.of(userService.findUserVersion(id)))) {
+            return null;
+        }
         return userService.findUserById(id);
     }
 
@@ -33,14 +84,26 @@ public class UserController {
         return userService.create(user);
     }
 
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public BatchResult createBatch(@RequestBody List<User> users) {
+        return userService.createBatch(users);
+    }
+
+    @PostMapping(value = "/batch", consumes = NdjsonWriter.APPLICATION_NDJSON_VALUE)
+    public BatchResult createBatch(InputStream body) {
+        return userService.createBatch(ndjsonReader.readAll(body, User.class));
+    }
+
     @PutMapping
-    public User update(@Valid @RequestBody User newUser) {
-        return userService.update(newUser);
+    public User update(@Valid @RequestBody User newUser,
+                       @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return userService.update(newUser, ETags.ifMatch(ifMatch));
     }
 
     @PatchMapping
-    public User patch(@Valid @RequestBody User newUser) {
-        return userService.patch(newUser);
+    public User patch(@Valid @RequestBody User newUser,
+                      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return userService.patch(newUser, ETags.ifMatch(ifMatch));
     }
 
     @PutMapping("/{id}/friends/{friendId}")
@@ -56,15 +119,72 @@ public class UserController {
     }
 
     @GetMapping("/{id}/friends")
-    public List<User> getFriends(@PathVariable Long id) {
+    public List<User> getFriends(@PathVariable Long id, WebRequest request) {
+        if (request.checkNotModified(ETags.of(userService.findFriendsVersion(id)))) {
+            return null;
+        }
         return userService.getFriends(id);
     }
 
+    @GetMapping(value = "/{id}/friends", params = "countOnly=true")
+    public FriendsCount countFriends(@PathVariable Long id) {
+        return new FriendsCount(userService.countFriends(id));
+    }
+
+    // Входящие заявки в друзья
+    @GetMapping("/{id}/friends/requests")
+    public List<Friendship> getFriendRequests(@PathVariable Long id) {
+        return userService.getFriendRequests(id);
+    }
+
+    @PutMapping("/{id}/friends/requests/{friendId}")
+    public Friendship requestFriend(@PathVariable Long id,
+                                    @PathVariable Long friendId) {
+        return userService.requestFriend(id, friendId);
+    }
+
+    @PutMapping("/{id}/friends/requests/{requesterId}/accept")
+    public Friendship acceptFriend(@PathVariable Long id,
+                                   @PathVariable Long requesterId) {
+        return userService.acceptFriend(id, requesterId);
+    }
+
+    // Отклонить входящую заявку или отозвать свою
+    @DeleteMapping("/{id}/friends/requests/{otherId}")
+    public void declineFriend(@PathVariable Long id,
+                              @PathVariable Long otherId) {
+        userService.declineFriend(id, otherId);
+    }
+
+    @GetMapping("/{id}/friends/suggestions")
+    public List<FriendSuggestion> getFriendSuggestions(@PathVariable Long id,
+                                                       @RequestParam(defaultValue = "10") Integer limit) {
+        return friendSuggestionService.findSuggestions(id, limit);
+    }
+
+    @GetMapping("/{id}/recommendations")
+    public List<Film> getRecommendations(@PathVariable Long id,
+                                         @RequestParam(defaultValue = "10") Integer limit) {
+        return recommendationService.findRecommendations(id, limit);
+    }
+
+    @GetMapping("/{id}/feed")
+    public List<FeedEvent> getFeed(@PathVariable Long id,
+                                   @RequestParam(defaultValue = "20") Integer limit) {
+        return feedService.getFeed(id, limit);
+    }
+
     @GetMapping("/{id}/friends/common/{otherId}")
     public List<User> getCommonFriends(@PathVariable Long id,
                                        @PathVariable Long otherId) {
         return userService.getCommonFriends(id, otherId);
     }
 
+    @GetMapping(value = "/{id}/friends/common/{otherId}", params = "countOnly=true")
+    public CommonFriendsCount countCommonFriends(@PathVariable Long id,
+                                                 @PathVariable Long otherId) {
+        return new CommonFriendsCount(userService.countCommonFriends(id, otherId));
+    }
+
 
 }
@@ -6,6 +6,8 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.OverloadedException;
+import ru.yandex.practicum.filmorate.exception.PreconditionFailedException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.DTO.ErrorResponse;
 
@@ -34,6 +36,28 @@ public class ErrorHandler {
         return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler
+    public ResponseEntity<ErrorResponse> handlePreconditionFailedException(final PreconditionFailedException e) {
+        log.warn("PreconditionFailedException: {}", e.getMessage());
+        ErrorResponse errorResponse = new ErrorResponse(
+                "Ресурс изменился.",
+                e.getMessage()
+        );
+
+        return new ResponseEntity<>(errorResponse, HttpStatus.PRECONDITION_FAILED);
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ErrorResponse> handleOverloadedException(final OverloadedException e) {
+        log.warn("OverloadedException: {}", e.getMessage());
+        ErrorResponse errorResponse = new ErrorResponse(
+                "Сервис перегружен.",
+                e.getMessage()
+        );
+
+        return new ResponseEntity<>(errorResponse, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
     @ExceptionHandler
     public ResponseEntity<ErrorResponse> handleUnexpectedException(final RuntimeException e) {
         log.error("Неожиданная ошибка", e);
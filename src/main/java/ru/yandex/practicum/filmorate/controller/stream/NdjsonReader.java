@@ -0,0 +1,39 @@
+package ru.yandex.practicum.filmorate.controller.stream;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Читает тело запроса в формате NDJSON: по одной JSON-записи на строку.
+ */
+@Component
+@RequiredArgsConstructor
+public class NdjsonReader {
+
+    private final ObjectMapper objectMapper;
+
+    public <T> List<T> readAll(InputStream input, Class<T> type) {
+        List<T> result = new ArrayList<>();
+        try (MappingIterator<T> iterator = objectMapper.readerFor(type).readValues(input)) {
+            while (iterator.hasNextValue()) {
+                result.add(iterator.nextValue());
+            }
+        } catch (JsonProcessingException e) {
+            throw new ValidationException("Некорректная запись NDJSON №" + (result.size() + 1) + ": "
+                    + e.getOriginalMessage());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return result;
+    }
+}
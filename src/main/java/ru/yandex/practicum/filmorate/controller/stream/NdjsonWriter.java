@@ -0,0 +1,54 @@
+package ru.yandex.practicum.filmorate.controller.stream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Пишет записи в ответ по одной строке JSON на запись, не собирая коллекцию целиком.
+ */
+@Component
+@RequiredArgsConstructor
+public class NdjsonWriter {
+
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private static final int FLUSH_EVERY = 1000;
+
+    private final ObjectMapper objectMapper;
+
+    public <T> ResponseEntity<StreamingResponseBody> write(Supplier<Stream<T>> source) {
+        StreamingResponseBody body = output -> {
+            int written = 0;
+            try (Stream<T> records = source.get();
+                 SequenceWriter writer = objectMapper.writer()
+                         .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                         .withRootValueSeparator("\n")
+                         .writeValues(output)) {
+                Iterator<T> iterator = records.iterator();
+                while (iterator.hasNext()) {
+                    writer.write(iterator.next());
+                    if (++written % FLUSH_EVERY == 0) {
+                        writer.flush();
+                    }
+                }
+            }
+            if (written > 0) {
+                output.write('\n');
+            }
+            output.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+                .body(body);
+    }
+}
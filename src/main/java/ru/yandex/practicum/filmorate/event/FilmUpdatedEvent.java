@@ -0,0 +1,5 @@
+package ru.yandex.practicum.filmorate.event;
+
+// Публикуется FilmService после того, как правка фильма записана в хранилище
+public record FilmUpdatedEvent(long filmId) {
+}
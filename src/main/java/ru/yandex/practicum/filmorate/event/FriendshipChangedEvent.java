@@ -0,0 +1,5 @@
+package ru.yandex.practicum.filmorate.event;
+
+// Публикуется UserService после того, как дружба записана в хранилище
+public record FriendshipChangedEvent(long userId, long friendId, boolean added) {
+}
@@ -0,0 +1,5 @@
+package ru.yandex.practicum.filmorate.event;
+
+// Публикуется LikeWriter после того, как хранилище применило лайк и он что-то изменил
+public record LikeChangedEvent(long filmId, long userId, boolean added) {
+}
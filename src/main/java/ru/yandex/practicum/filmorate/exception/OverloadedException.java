@@ -0,0 +1,8 @@
+package ru.yandex.practicum.filmorate.exception;
+
+
+public class OverloadedException extends RuntimeException {
+    public OverloadedException(String message) {
+        super(message);
+    }
+}
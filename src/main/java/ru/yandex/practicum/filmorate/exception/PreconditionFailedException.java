@@ -0,0 +1,8 @@
+package ru.yandex.practicum.filmorate.exception;
+
+// If-Match не совпал с текущей версией или версия сменилась до записи
+public class PreconditionFailedException extends RuntimeException {
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+}
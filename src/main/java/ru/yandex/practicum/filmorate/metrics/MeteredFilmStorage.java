@@ -0,0 +1,311 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import ru.yandex.practicum.filmorate.model.DTO.FilmSearch;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.persistence.Snapshottable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static ru.yandex.practicum.filmorate.metrics.StorageMetrics.elapsed;
+import static ru.yandex.practicum.filmorate.metrics.StorageMetrics.timer;
+
+/**
+ * Таймеры на каждый метод FilmStorage, счетчики лайков и размеры каталога.
+ * Метры создаются один раз, замер - два System.nanoTime без аллокаций.
+ */
+public class MeteredFilmStorage implements FilmStorage, Snapshottable {
+
+    private static final String STORAGE = "film";
+
+    private final FilmStorage delegate;
+    private final Timer findAllTimer;
+    private final Timer findFilmByIdTimer;
+    private final Timer findPageTimer;
+    private final Timer streamAllTimer;
+    private final Timer findLikedFilmTimer;
+    private final Timer findLikedFilmByGenresTimer;
+    private final Timer searchTimer;
+    private final Timer isLikedTimer;
+    private final Timer addLikeTimer;
+    private final Timer removeLikeTimer;
+    private final Timer applyLikesTimer;
+    private final Timer createTimer;
+    private final Timer createAllTimer;
+    private final Timer updateTimer;
+    private final Timer isExistingFilmTimer;
+    private final Timer findFilmVersionTimer;
+    private final Timer findPopularVersionTimer;
+    private final Timer findPopularVersionByGenresTimer;
+    private final Counter likesAdded;
+    private final Counter likesRemoved;
+
+    public MeteredFilmStorage(FilmStorage delegate, MeterRegistry registry) {
+        this.delegate = delegate;
+        findAllTimer = timer(registry, STORAGE, "findAll");
+        findFilmByIdTimer = timer(registry, STORAGE, "findFilmById");
+        findPageTimer = timer(registry, STORAGE, "findPage");
+        streamAllTimer = timer(registry, STORAGE, "streamAll");
+        findLikedFilmTimer = timer(registry, STORAGE, "findLikedFilm");
+        findLikedFilmByGenresTimer = timer(registry, STORAGE, "findLikedFilmByGenres");
+        searchTimer = timer(registry, STORAGE, "search");
+        isLikedTimer = timer(registry, STORAGE, "isLiked");
+        addLikeTimer = timer(registry, STORAGE, "addLike");
+        removeLikeTimer = timer(registry, STORAGE, "removeLike");
+        applyLikesTimer = timer(registry, STORAGE, "applyLikes");
+        createTimer = timer(registry, STORAGE, "create");
+        createAllTimer = timer(registry, STORAGE, "createAll");
+        updateTimer = timer(registry, STORAGE, "update");
+        isExistingFilmTimer = timer(registry, STORAGE, "isExistingFilm");
+        findFilmVersionTimer = timer(registry, STORAGE, "findFilmVersion");
+        findPopularVersionTimer = timer(registry, STORAGE, "findPopularVersion");
+        findPopularVersionByGenresTimer = timer(registry, STORAGE, "findPopularVersionByGenres");
+        likesAdded = Counter.builder("filmorate.likes").tag("action", "add").register(registry);
+        likesRemoved = Counter.builder("filmorate.likes").tag("action", "remove").register(registry);
+
+        Gauge.builder("filmorate.films.count", delegate, FilmStorage::count)
+                .strongReference(true)
+                .register(registry);
+        Gauge.builder("filmorate.likes.stored", delegate, FilmStorage::countLikes)
+                .strongReference(true)
+                .register(registry);
+        Gauge.builder("filmorate.likes.max", delegate, FilmStorage::maxLikes)
+                .description("Наибольшее число лайков у одного фильма")
+                .strongReference(true)
+                .register(registry);
+        Gauge.builder("filmorate.search.index.bytes", delegate, FilmStorage::searchIndexBytes)
+                .description("Оценка памяти индекса поиска по словам")
+                .baseUnit("bytes")
+                .strongReference(true)
+                .register(registry);
+    }
+
+    @Override
+    public Collection<Film> findAll() {
+        long start = System.nanoTime();
+        try {
+            return delegate.findAll();
+        } finally {
+            elapsed(findAllTimer, start);
+        }
+    }
+
+    @Override
+    public Film findFilmById(Long id) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findFilmById(id);
+        } finally {
+            elapsed(findFilmByIdTimer, start);
+        }
+    }
+
+    @Override
+    public List<Film> findPage(Long after, int limit) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findPage(after, limit);
+        } finally {
+            elapsed(findPageTimer, start);
+        }
+    }
+
+    // Замеряется только открытие потока, сам обход идет уже при записи ответа
+    @Override
+    public Stream<Film> streamAll() {
+        long start = System.nanoTime();
+        try {
+            return delegate.streamAll();
+        } finally {
+            elapsed(streamAllTimer, start);
+        }
+    }
+
+    @Override
+    public Collection<Film> findLikedFilm(int count) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findLikedFilm(count);
+        } finally {
+            elapsed(findLikedFilmTimer, start);
+        }
+    }
+
+    @Override
+    public Collection<Film> findLikedFilmByGenres(int count, Set<Long> genreIds) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findLikedFilmByGenres(count, genreIds);
+        } finally {
+            elapsed(findLikedFilmByGenresTimer, start);
+        }
+    }
+
+    @Override
+    public List<Film> search(FilmSearch search) {
+        long start = System.nanoTime();
+        try {
+            return delegate.search(search);
+        } finally {
+            elapsed(searchTimer, start);
+        }
+    }
+
+    @Override
+    public long searchIndexBytes() {
+        return delegate.searchIndexBytes();
+    }
+
+    @Override
+    public boolean isLiked(long filmId, long userId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.isLiked(filmId, userId);
+        } finally {
+            elapsed(isLikedTimer, start);
+        }
+    }
+
+    @Override
+    public boolean addLike(long filmId, long userId) {
+        long start = System.nanoTime();
+        try {
+            boolean changed = delegate.addLike(filmId, userId);
+            if (changed) {
+                likesAdded.increment();
+            }
+            return changed;
+        } finally {
+            elapsed(addLikeTimer, start);
+        }
+    }
+
+    @Override
+    public boolean removeLike(long filmId, long userId) {
+        long start = System.nanoTime();
+        try {
+            boolean changed = delegate.removeLike(filmId, userId);
+            if (changed) {
+                likesRemoved.increment();
+            }
+            return changed;
+        } finally {
+            elapsed(removeLikeTimer, start);
+        }
+    }
+
+    @Override
+    public boolean[] applyLikes(List<LikeChange> changes) {
+        long start = System.nanoTime();
+        try {
+            boolean[] changed = delegate.applyLikes(changes);
+            for (int i = 0; i < changed.length; i++) {
+                if (changed[i]) {
+                    (changes.get(i).add() ? likesAdded : likesRemoved).increment();
+                }
+            }
+            return changed;
+        } finally {
+            elapsed(applyLikesTimer, start);
+        }
+    }
+
+    @Override
+    public Film create(Film film) {
+        long start = System.nanoTime();
+        try {
+            return delegate.create(film);
+        } finally {
+            elapsed(createTimer, start);
+        }
+    }
+
+    @Override
+    public List<Film> createAll(List<Film> films) {
+        long start = System.nanoTime();
+        try {
+            return delegate.createAll(films);
+        } finally {
+            elapsed(createAllTimer, start);
+        }
+    }
+
+    @Override
+    public Film update(Film film, long expectedVersion) {
+        long start = System.nanoTime();
+        try {
+            return delegate.update(film, expectedVersion);
+        } finally {
+            elapsed(updateTimer, start);
+        }
+    }
+
+    @Override
+    public boolean isExistingFilm(String filmName) {
+        long start = System.nanoTime();
+        try {
+            return delegate.isExistingFilm(filmName);
+        } finally {
+            elapsed(isExistingFilmTimer, start);
+        }
+    }
+
+    @Override
+    public long count() {
+        return delegate.count();
+    }
+
+    @Override
+    public long countLikes() {
+        return delegate.countLikes();
+    }
+
+    @Override
+    public int maxLikes() {
+        return delegate.maxLikes();
+    }
+
+    @Override
+    public long findFilmVersion(Long id) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findFilmVersion(id);
+        } finally {
+            elapsed(findFilmVersionTimer, start);
+        }
+    }
+
+    @Override
+    public long findPopularVersion(int count) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findPopularVersion(count);
+        } finally {
+            elapsed(findPopularVersionTimer, start);
+        }
+    }
+
+    @Override
+    public long findPopularVersionByGenres(int count, Set<Long> genreIds) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findPopularVersionByGenres(count, genreIds);
+        } finally {
+            elapsed(findPopularVersionByGenresTimer, start);
+        }
+    }
+
+    @Override
+    public void snapshot() {
+        if (delegate instanceof Snapshottable snapshottable) {
+            snapshottable.snapshot();
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enums.FriendshipStatus;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.persistence.Snapshottable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static ru.yandex.practicum.filmorate.metrics.StorageMetrics.elapsed;
+import static ru.yandex.practicum.filmorate.metrics.StorageMetrics.timer;
+
+/**
+ * Таймеры на каждый метод UserStorage, счетчики изменений дружбы, число пользователей и память графа дружбы.
+ */
+public class MeteredUserStorage implements UserStorage, Snapshottable {
+
+    private static final String STORAGE = "user";
+
+    private final UserStorage delegate;
+    private final Timer findAllTimer;
+    private final Timer findUserByIdTimer;
+    private final Timer findUsersByIdsTimer;
+    private final Timer findPageTimer;
+    private final Timer streamAllTimer;
+    private final Timer createTimer;
+    private final Timer createAllTimer;
+    private final Timer updateTimer;
+    private final Timer isExistingEmailTimer;
+    private final Timer addFriendTimer;
+    private final Timer removeFriendTimer;
+    private final Timer findUserVersionTimer;
+    private final Timer findFriendsVersionTimer;
+    private final Timer requestFriendTimer;
+    private final Timer acceptFriendTimer;
+    private final Timer declineFriendTimer;
+    private final Timer findFriendRequestsTimer;
+    private final Timer findFriendIdsTimer;
+    private final Timer countFriendsTimer;
+    private final Counter friendsAdded;
+    private final Counter friendsRemoved;
+
+    public MeteredUserStorage(UserStorage delegate, MeterRegistry registry) {
+        this.delegate = delegate;
+        findAllTimer = timer(registry, STORAGE, "findAll");
+        findUserByIdTimer = timer(registry, STORAGE, "findUserById");
+        findUsersByIdsTimer = timer(registry, STORAGE, "findUsersByIds");
+        findPageTimer = timer(registry, STORAGE, "findPage");
+        streamAllTimer = timer(registry, STORAGE, "streamAll");
+        createTimer = timer(registry, STORAGE, "create");
+        createAllTimer = timer(registry, STORAGE, "createAll");
+        updateTimer = timer(registry, STORAGE, "update");
+        isExistingEmailTimer = timer(registry, STORAGE, "isExistingEmail");
+        addFriendTimer = timer(registry, STORAGE, "addFriend");
+        removeFriendTimer = timer(registry, STORAGE, "removeFriend");
+        findUserVersionTimer = timer(registry, STORAGE, "findUserVersion");
+        findFriendsVersionTimer = timer(registry, STORAGE, "findFriendsVersion");
+        requestFriendTimer = timer(registry, STORAGE, "requestFriend");
+        acceptFriendTimer = timer(registry, STORAGE, "acceptFriend");
+        declineFriendTimer = timer(registry, STORAGE, "declineFriend");
+        findFriendRequestsTimer = timer(registry, STORAGE, "findFriendRequests");
+        findFriendIdsTimer = timer(registry, STORAGE, "findFriendIds");
+        countFriendsTimer = timer(registry, STORAGE, "countFriends");
+        friendsAdded = Counter.builder("filmorate.friendships").tag("action", "add").register(registry);
+        friendsRemoved = Counter.builder("filmorate.friendships").tag("action", "remove").register(registry);
+
+        Gauge.builder("filmorate.users.count", delegate, UserStorage::count)
+                .strongReference(true)
+                .register(registry);
+        Gauge.builder("filmorate.friends.graph.bytes", delegate, UserStorage::friendGraphBytes)
+                .description("Оценка памяти графа дружбы")
+                .baseUnit("bytes")
+                .strongReference(true)
+                .register(registry);
+    }
+
+    @Override
+    public Collection<User> findAll() {
+        long start = System.nanoTime();
+        try {
+            return delegate.findAll();
+        } finally {
+            elapsed(findAllTimer, start);
+        }
+    }
+
+    @Override
+    public User findUserById(Long id) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findUserById(id);
+        } finally {
+            elapsed(findUserByIdTimer, start);
+        }
+    }
+
+    @Override
+    public List<User> findUsersByIds(long[] ids) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findUsersByIds(ids);
+        } finally {
+            elapsed(findUsersByIdsTimer, start);
+        }
+    }
+
+    @Override
+    public List<User> findPage(Long after, int limit) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findPage(after, limit);
+        } finally {
+            elapsed(findPageTimer, start);
+        }
+    }
+
+    @Override
+    public Stream<User> streamAll() {
+        long start = System.nanoTime();
+        try {
+            return delegate.streamAll();
+        } finally {
+            elapsed(streamAllTimer, start);
+        }
+    }
+
+    @Override
+    public User create(User user) {
+        long start = System.nanoTime();
+        try {
+            return delegate.create(user);
+        } finally {
+            elapsed(createTimer, start);
+        }
+    }
+
+    @Override
+    public List<User> createAll(List<User> users) {
+        long start = System.nanoTime();
+        try {
+            return delegate.createAll(users);
+        } finally {
+            elapsed(createAllTimer, start);
+        }
+    }
+
+    @Override
+    public User update(User newUser, long expectedVersion) {
+        long start = System.nanoTime();
+        try {
+            return delegate.update(newUser, expectedVersion);
+        } finally {
+            elapsed(updateTimer, start);
+        }
+    }
+
+    @Override
+    public boolean isExistingEmail(String email) {
+        long start = System.nanoTime();
+        try {
+            return delegate.isExistingEmail(email);
+        } finally {
+            elapsed(isExistingEmailTimer, start);
+        }
+    }
+
+    @Override
+    public boolean addFriend(Long userId, Long friendId) {
+        long start = System.nanoTime();
+        try {
+            boolean added = delegate.addFriend(userId, friendId);
+            if (added) {
+                friendsAdded.increment();
+            }
+            return added;
+        } finally {
+            elapsed(addFriendTimer, start);
+        }
+    }
+
+    @Override
+    public boolean removeFriend(Long userId, Long friendId) {
+        long start = System.nanoTime();
+        try {
+            boolean removed = delegate.removeFriend(userId, friendId);
+            if (removed) {
+                friendsRemoved.increment();
+            }
+            return removed;
+        } finally {
+            elapsed(removeFriendTimer, start);
+        }
+    }
+
+    @Override
+    public FriendshipStatus requestFriend(Long userId, Long friendId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.requestFriend(userId, friendId);
+        } finally {
+            elapsed(requestFriendTimer, start);
+        }
+    }
+
+    @Override
+    public boolean acceptFriend(Long userId, Long requesterId) {
+        long start = System.nanoTime();
+        try {
+            boolean accepted = delegate.acceptFriend(userId, requesterId);
+            if (accepted) {
+                friendsAdded.increment();
+            }
+            return accepted;
+        } finally {
+            elapsed(acceptFriendTimer, start);
+        }
+    }
+
+    @Override
+    public boolean declineFriend(Long userId, Long otherId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.declineFriend(userId, otherId);
+        } finally {
+            elapsed(declineFriendTimer, start);
+        }
+    }
+
+    @Override
+    public long[] findFriendRequests(Long userId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findFriendRequests(userId);
+        } finally {
+            elapsed(findFriendRequestsTimer, start);
+        }
+    }
+
+    @Override
+    public long[] findFriendIds(Long userId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findFriendIds(userId);
+        } finally {
+            elapsed(findFriendIdsTimer, start);
+        }
+    }
+
+    @Override
+    public int countFriends(Long userId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.countFriends(userId);
+        } finally {
+            elapsed(countFriendsTimer, start);
+        }
+    }
+
+    @Override
+    public long friendGraphBytes() {
+        return delegate.friendGraphBytes();
+    }
+
+    @Override
+    public long count() {
+        return delegate.count();
+    }
+
+    @Override
+    public long findUserVersion(Long id) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findUserVersion(id);
+        } finally {
+            elapsed(findUserVersionTimer, start);
+        }
+    }
+
+    @Override
+    public long findFriendsVersion(Long userId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findFriendsVersion(userId);
+        } finally {
+            elapsed(findFriendsVersionTimer, start);
+        }
+    }
+
+    @Override
+    public void snapshot() {
+        if (delegate instanceof Snapshottable snapshottable) {
+            snapshottable.snapshot();
+        }
+    }
+}
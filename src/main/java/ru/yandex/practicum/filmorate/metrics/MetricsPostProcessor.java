@@ -0,0 +1,55 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+/**
+ * Оборачивает хранилища в Metered*Storage, а сервисы - в прокси с таймерами методов; методы
+ * с @TimedDirectly замеряют себя сами и проходят мимо прокси.
+ * Реестр берется лениво, чтобы не создавать его раньше остальных бинов.
+ */
+@Component
+public class MetricsPostProcessor implements BeanPostProcessor, Ordered {
+
+    private final ObjectProvider<MeterRegistry> registry;
+
+    public MetricsPostProcessor(ObjectProvider<MeterRegistry> registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof FilmStorage storage) {
+            return new MeteredFilmStorage(storage, registry.getObject());
+        }
+        if (bean instanceof UserStorage storage) {
+            return new MeteredUserStorage(storage, registry.getObject());
+        }
+        if (AnnotationUtils.findAnnotation(bean.getClass(), Service.class) != null) {
+            ServiceTimingInterceptor interceptor = new ServiceTimingInterceptor(bean.getClass(), registry.getObject());
+            ProxyFactory proxyFactory = new ProxyFactory(bean);
+            proxyFactory.setProxyTargetClass(true);
+            proxyFactory.addAdvisor(new DefaultPointcutAdvisor(interceptor.pointcut(), interceptor));
+            // В замороженной конфигурации методы без таймера (@TimedDirectly) CGLIB отдает цели напрямую
+            proxyFactory.setFrozen(true);
+            return proxyFactory.getProxy(bean.getClass().getClassLoader());
+        }
+        return bean;
+    }
+
+    // Автопрокси транзакций (HIGHEST_PRECEDENCE) срабатывает раньше, поэтому @Transactional остается внутри
+    // метрик; кэш (LOWEST_PRECEDENCE) встает снаружи
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE - 1;
+    }
+}
@@ -0,0 +1,19 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+public final class ServiceMetrics {
+
+    private ServiceMetrics() {
+    }
+
+    // Тот же таймер, что ставит прокси метрик: повторная регистрация возвращает уже созданный
+    public static Timer timer(MeterRegistry registry, Class<?> service, String method) {
+        return Timer.builder("filmorate.service")
+                .tag("service", service.getSimpleName())
+                .tag("method", method)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
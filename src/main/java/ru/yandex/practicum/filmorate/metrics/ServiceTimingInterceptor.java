@@ -0,0 +1,56 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.Pointcut;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Таймер filmorate.service на каждый публичный метод сервиса, кроме помеченных @TimedDirectly.
+ * Таймеры создаются заранее, на вызове только поиск в неизменяемой карте и два System.nanoTime.
+ */
+class ServiceTimingInterceptor implements MethodInterceptor {
+
+    private final Map<Method, Timer> timers = new HashMap<>();
+
+    ServiceTimingInterceptor(Class<?> serviceClass, MeterRegistry registry) {
+        for (Method method : serviceClass.getDeclaredMethods()) {
+            if (Modifier.isPublic(method.getModifiers()) && !method.isSynthetic()
+                    && !method.isAnnotationPresent(TimedDirectly.class)) {
+                timers.put(method, ServiceMetrics.timer(registry, serviceClass, method.getName()));
+            }
+        }
+    }
+
+    // Методы с таймером; остальные прокси не перехватывает
+    Pointcut pointcut() {
+        return new StaticMethodMatcherPointcut() {
+            @Override
+            public boolean matches(Method method, Class<?> targetClass) {
+                return timers.containsKey(method);
+            }
+        };
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Timer timer = timers.get(invocation.getMethod());
+        if (timer == null) {
+            return invocation.proceed();
+        }
+        long start = System.nanoTime();
+        try {
+            return invocation.proceed();
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+final class StorageMetrics {
+
+    private StorageMetrics() {
+    }
+
+    // Гистограмма с фиксированными границами: перцентили считаются в Prometheus, запись без аллокаций
+    static Timer timer(MeterRegistry registry, String storage, String method) {
+        return Timer.builder("filmorate.storage")
+                .tag("storage", storage)
+                .tag("method", method)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    static void elapsed(Timer timer, long start) {
+        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Метод сервиса сам пишет свой таймер filmorate.service (см. ServiceMetrics). Прокси метрик такой метод
+ * не перехватывает и передает вызов сервису напрямую: на горячем пути нет ни цепочки советов, ни массива аргументов.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface TimedDirectly {
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model.DTO;
+
+import lombok.Data;
+
+@Data
+public class BatchItemError {
+    // Позиция записи во входном массиве
+    private final int index;
+    private final String error;
+
+    public BatchItemError(int index, String error) {
+        this.index = index;
+        this.error = error;
+    }
+
+}
@@ -0,0 +1,20 @@
+package ru.yandex.practicum.filmorate.model.DTO;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchResult {
+    private final int created;
+    // id созданных записей в порядке входного массива
+    private final List<Long> ids;
+    private final List<BatchItemError> errors;
+
+    public BatchResult(int created, List<Long> ids, List<BatchItemError> errors) {
+        this.created = created;
+        this.ids = ids;
+        this.errors = errors;
+    }
+
+}
@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.model.DTO;
+
+import lombok.Data;
+
+@Data
+public class CommonFriendsCount {
+    private final int count;
+
+    public CommonFriendsCount(int count) {
+        this.count = count;
+    }
+
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model.DTO;
+
+import lombok.Data;
+import ru.yandex.practicum.filmorate.model.enums.EventOperation;
+import ru.yandex.practicum.filmorate.model.enums.EventType;
+
+// Событие ленты: кто (userId, у обновления фильма его нет) что сделал с фильмом или пользователем entityId
+@Data
+public class FeedEvent {
+    private final long eventId;
+    private final long timestamp;
+    private final Long userId;
+    private final EventType eventType;
+    private final EventOperation operation;
+    private final long entityId;
+}
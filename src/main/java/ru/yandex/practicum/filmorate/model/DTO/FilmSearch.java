@@ -0,0 +1,29 @@
+package ru.yandex.practicum.filmorate.model.DTO;
+
+import lombok.Data;
+import ru.yandex.practicum.filmorate.model.enums.MpaRating;
+
+import java.time.LocalDate;
+
+// Условия GET /films/search; пустое поле - без ограничения, границы включаются
+@Data
+public class FilmSearch {
+    // Слова для поиска по названию и описанию; у последнего слова ищется и продолжение
+    private String q;
+    private LocalDate releasedFrom;
+    private LocalDate releasedTo;
+    private Integer minDuration;
+    private Integer maxDuration;
+    private MpaRating rating;
+    private Sort sort = Sort.POPULAR;
+    private int limit = 10;
+
+    public enum Sort {
+        // Больше лайков - выше, как в GET /films/popular
+        POPULAR,
+        // Сначала новые
+        DATE,
+        // Совпадение с q, поднятое лайками; без q - как POPULAR
+        RELEVANCE
+    }
+}
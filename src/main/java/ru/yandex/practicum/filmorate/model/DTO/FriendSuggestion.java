@@ -0,0 +1,10 @@
+package ru.yandex.practicum.filmorate.model.DTO;
+
+import lombok.Data;
+import ru.yandex.practicum.filmorate.model.User;
+
+@Data
+public class FriendSuggestion {
+    private final User user;
+    private final int mutualFriends;
+}
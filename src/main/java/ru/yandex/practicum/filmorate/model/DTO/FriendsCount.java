@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.model.DTO;
+
+import lombok.Data;
+
+@Data
+public class FriendsCount {
+    private final int count;
+
+    public FriendsCount(int count) {
+        this.count = count;
+    }
+
+}
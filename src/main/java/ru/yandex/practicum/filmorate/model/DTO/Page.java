@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.model.DTO;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class Page<T> {
+    private final List<T> items;
+    // id последнего элемента страницы, null если дальше ничего нет
+    private final Long nextCursor;
+
+    public Page(List<T> items, Long nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+}
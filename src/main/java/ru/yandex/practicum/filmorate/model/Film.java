@@ -5,9 +5,11 @@ import jakarta.validation.constraints.*;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import ru.yandex.practicum.filmorate.model.enums.MpaRating;
+import ru.yandex.practicum.filmorate.util.LongHashSet;
 
 import java.time.LocalDate;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 
@@ -29,10 +31,28 @@ public class Film {
     private int duration;
 
     //Изменится при появлении БД
-    private Set<Long> likedUsersIds = new HashSet<>();
+    private LongHashSet likedUsersIds = new LongHashSet();
 
     private Set<Genre> genres = new HashSet<>();
 
     //Изменится при появлении БД, здесь будет id
     private MpaRating rating;
+
+    // Номер правки: хранилище ставит 1 при создании и прибавляет 1 при каждом update
+    private long version;
+
+    // Копия для правки: хранимый фильм не меняется, вместо него ставится новый. Лайки общие с оригиналом
+    public Film copy() {
+        Film copy = new Film();
+        copy.setId(id);
+        copy.setName(name);
+        copy.setDescription(description);
+        copy.setReleaseDate(releaseDate);
+        copy.setDuration(duration);
+        copy.setLikedUsersIds(likedUsersIds);
+        copy.setGenres(genres == null ? null : new LinkedHashSet<>(genres));
+        copy.setRating(rating);
+        copy.setVersion(version);
+        return copy;
+    }
 }
@@ -1,11 +1,16 @@
 package ru.yandex.practicum.filmorate.model;
 
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
 import ru.yandex.practicum.filmorate.model.enums.FriendshipStatus;
 
+// Заявка в друзья или подтвержденная дружба; пара пользователей - ключ, отдельного id нет
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
 public class Friendship {
 
-    private Long id;
-
     private Long requesterId;
 
     private Long addresseeId;
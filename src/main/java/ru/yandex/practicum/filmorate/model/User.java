@@ -1,13 +1,17 @@
 package ru.yandex.practicum.filmorate.model;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.validation.constraints.*;
+import lombok.AccessLevel;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import ru.yandex.practicum.filmorate.util.LongHashSet;
 
 import java.time.LocalDate;
-import java.util.HashSet;
-import java.util.Set;
 
 @Data
 @EqualsAndHashCode(of = "id")
@@ -29,6 +33,50 @@ public class User {
     private LocalDate birthday;
 
     //От этого уходим с появлением БД
-    private Set<Long> friendIds = new HashSet<>();
+    private volatile LongHashSet friendIds = new LongHashSet();
 
+    // Друзья по возрастанию id, из которых friendIds собирается при первом обращении: в списках пользователей
+    // набор не строится для тех, о чьих друзьях не спросят
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private long[] sortedFriendIds;
+
+    // Номер правки: хранилище ставит 1 при создании и прибавляет 1 при каждом update
+    private long version;
+
+    // Копия для правки: хранимый пользователь не меняется, вместо него ставится новый. Друзья общие с оригиналом
+    public User copy() {
+        User copy = new User();
+        copy.setId(id);
+        copy.setEmail(email);
+        copy.setLogin(login);
+        copy.setName(name);
+        copy.setBirthday(birthday);
+        copy.friendIds = friendIds;
+        copy.sortedFriendIds = sortedFriendIds;
+        copy.setVersion(version);
+        return copy;
+    }
+
+    public LongHashSet getFriendIds() {
+        LongHashSet ids = friendIds;
+        if (ids == null && sortedFriendIds != null) {
+            ids = LongHashSet.ofDistinct(sortedFriendIds);
+            friendIds = ids;
+        }
+        return ids;
+    }
+
+    public void setFriendIds(LongHashSet friendIds) {
+        this.sortedFriendIds = null;
+        this.friendIds = friendIds;
+    }
+
+    // Друзья массивом по возрастанию id; набор соберется из него, только если его запросят
+    public void setSortedFriendIds(long[] sortedFriendIds) {
+        this.friendIds = null;
+        this.sortedFriendIds = sortedFriendIds;
+    }
 }
@@ -0,0 +1,7 @@
+package ru.yandex.practicum.filmorate.model.enums;
+
+public enum EventType {
+    LIKE,
+    FRIEND,
+    FILM
+}
@@ -1,47 +1,112 @@
 package ru.yandex.practicum.filmorate.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.event.FilmUpdatedEvent;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.PreconditionFailedException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.metrics.ServiceMetrics;
+import ru.yandex.practicum.filmorate.metrics.TimedDirectly;
+import ru.yandex.practicum.filmorate.model.DTO.BatchItemError;
+import ru.yandex.practicum.filmorate.model.DTO.BatchResult;
+import ru.yandex.practicum.filmorate.model.DTO.FilmSearch;
+import ru.yandex.practicum.filmorate.model.DTO.Page;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.like.LikeWriter;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
 import java.time.LocalDate;
-import java.util.Collection;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.LongPredicate;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
 public class FilmService {
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
+    private final GenreStorage genreStorage;
+    private final Validator validator;
+    private final LikeWriter likeWriter;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Timer addLikeTimer;
+    private final Timer removeLikeTimer;
 
     private static final LocalDate FIRST_FILM_DATE_RELEASE = LocalDate.of(1895, 12, 28);
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_BATCH_SIZE = 100_000;
 
-    public FilmService(FilmStorage filmStorage, UserStorage userStorage) {
+    public FilmService(FilmStorage filmStorage, UserStorage userStorage, GenreStorage genreStorage,
+                       Validator validator, LikeWriter likeWriter, ApplicationEventPublisher eventPublisher,
+                       MeterRegistry registry) {
         this.filmStorage = filmStorage;
         this.userStorage = userStorage;
+        this.genreStorage = genreStorage;
+        this.validator = validator;
+        this.likeWriter = likeWriter;
+        this.eventPublisher = eventPublisher;
+        this.addLikeTimer = ServiceMetrics.timer(registry, FilmService.class, "addLike");
+        this.removeLikeTimer = ServiceMetrics.timer(registry, FilmService.class, "removeLike");
     }
 
     public Collection<Film> findAll() {
         return filmStorage.findAll();
     }
 
-    public void addLike(Long filmId, Long userId) {
-        Film film = filmStorage.findFilmById(filmId);
-        if (film == null) {
-            throw new NotFoundException("Фильм не найден.");
+    public Stream<Film> streamAll() {
+        return filmStorage.streamAll();
+    }
+
+    public Page<Film> findPage(Long after, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException("Параметр limit должен быть от 1 до " + MAX_PAGE_SIZE);
         }
-        User user = userStorage.findUserById(userId);
-        if (user == null) {
-            throw new NotFoundException("Пользователь не найден.");
+        // Лишний элемент показывает, есть ли следующая страница
+        List<Film> films = filmStorage.findPage(after, limit + 1);
+        if (films.size() <= limit) {
+            return new Page<>(films, null);
+        }
+        List<Film> items = films.subList(0, limit);
+        return new Page<>(items, items.get(limit - 1).getId());
+    }
+
+    // false, если лайк принят в очередь, но к ответу еще не применен.
+    // Лайк - горячий путь: таймер пишется здесь, а не прокси метрик
+    @TimedDirectly
+    public boolean addLike(Long filmId, Long userId) {
+        long start = System.nanoTime();
+        try {
+            requireFilmAndUser(filmId, userId);
+            return likeWriter.addLike(filmId, userId);
+        } finally {
+            addLikeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @TimedDirectly
+    public boolean removeLike(Long filmId, Long userId) {
+        long start = System.nanoTime();
+        try {
+            requireFilmAndUser(filmId, userId);
+            return likeWriter.removeLike(filmId, userId);
+        } finally {
+            removeLikeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
-        filmStorage.addLike(filmId, userId);
     }
 
-    public void removeLike(Long filmId, Long userId) {
+    private void requireFilmAndUser(Long filmId, Long userId) {
         Film film = filmStorage.findFilmById(filmId);
         if (film == null) {
             throw new NotFoundException("Фильм не найден.");
@@ -50,14 +115,63 @@ public class FilmService {
         if (user == null) {
             throw new NotFoundException("Пользователь не найден.");
         }
-        filmStorage.removeLike(filmId, userId);
     }
 
     public Collection<Film> findPopularFilms(int count) {
+        return findPopularFilms(count, Set.of());
+    }
+
+    // С жанрами - только фильмы, у которых есть все перечисленные жанры
+    public Collection<Film> findPopularFilms(int count, Set<Long> genreIds) {
+        if (count <= 0) {
+            throw new ValidationException("Параметр count должен быть положительным числом");
+        }
+        return genreIds.isEmpty()
+                ? filmStorage.findLikedFilm(count)
+                : filmStorage.findLikedFilmByGenres(count, genreIds);
+    }
+
+    public long findPopularVersion(int count) {
+        return findPopularVersion(count, Set.of());
+    }
+
+    // Версии читаются до самих данных: ответ может оказаться новее своей версии, но не старее
+    public long findPopularVersion(int count, Set<Long> genreIds) {
         if (count <= 0) {
             throw new ValidationException("Параметр count должен быть положительным числом");
         }
-        return filmStorage.findLikedFilm(count);
+        return genreIds.isEmpty()
+                ? filmStorage.findPopularVersion(count)
+                : filmStorage.findPopularVersionByGenres(count, genreIds);
+    }
+
+    public List<Film> search(FilmSearch search) {
+        if (search.getLimit() <= 0 || search.getLimit() > MAX_PAGE_SIZE) {
+            throw new ValidationException("Параметр limit должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        if (search.getReleasedFrom() != null && search.getReleasedTo() != null
+                && search.getReleasedFrom().isAfter(search.getReleasedTo())) {
+            throw new ValidationException("Параметр releasedFrom не может быть позже releasedTo");
+        }
+        if (search.getMinDuration() != null && search.getMaxDuration() != null
+                && search.getMinDuration() > search.getMaxDuration()) {
+            throw new ValidationException("Параметр minDuration не может быть больше maxDuration");
+        }
+        if (search.getQ() != null && search.getQ().isBlank()) {
+            throw new ValidationException("Параметр q не может быть пустым");
+        }
+        if (search.getQ() == null && search.getSort() == FilmSearch.Sort.RELEVANCE) {
+            search.setSort(FilmSearch.Sort.POPULAR);
+        }
+        return filmStorage.search(search);
+    }
+
+    public long findFilmVersion(Long id) {
+        long version = filmStorage.findFilmVersion(id);
+        if (version < 0) {
+            throw new NotFoundException("Фильм не найден.");
+        }
+        return version;
     }
 
     public Film findFilmById(Long id) {
@@ -80,62 +194,141 @@ public class FilmService {
         return film;
     }
 
+    public BatchResult createBatch(List<Film> films) {
+        if (films.size() > MAX_BATCH_SIZE) {
+            throw new ValidationException("В пакете не может быть больше " + MAX_BATCH_SIZE + " фильмов");
+        }
+
+        List<BatchItemError> errors = new ArrayList<>();
+        List<Film> accepted = new ArrayList<>(films.size());
+        List<Integer> acceptedIndexes = new ArrayList<>(films.size());
+        Set<String> batchNames = new HashSet<>(films.size() * 2);
+        for (int i = 0; i < films.size(); i++) {
+            String error = validateFilmForBatch(films.get(i), batchNames);
+            if (error != null) {
+                errors.add(new BatchItemError(i, error));
+            } else {
+                accepted.add(films.get(i));
+                acceptedIndexes.add(i);
+            }
+        }
+
+        List<Film> created = filmStorage.createAll(accepted);
+
+        // Созданные идут в порядке пакета, поэтому пропущенные находятся одним проходом
+        List<Long> ids = new ArrayList<>(created.size());
+        int next = 0;
+        for (int i = 0; i < accepted.size(); i++) {
+            if (next < created.size() && created.get(next) == accepted.get(i)) {
+                ids.add(created.get(next++).getId());
+            } else {
+                errors.add(new BatchItemError(acceptedIndexes.get(i), "Фильм уже есть на сайте"));
+            }
+        }
+        errors.sort(Comparator.comparingInt(BatchItemError::getIndex));
+
+        log.info("POST /films/batch - Создано фильмов: {}, отклонено: {}", ids.size(), errors.size());
+        return new BatchResult(ids.size(), ids, errors);
+    }
+
     public Film patch(Film newFilm) {
+        return patch(newFilm, null);
+    }
+
+    // ifMatch проверяет версию фильма, из которой строится его ETag; null - без проверки
+    public Film patch(Film newFilm, LongPredicate ifMatch) {
         log.info("PATCH /films - Обновление фильма: ID={}", newFilm.getId());
 
         if (newFilm.getId() == null) {
             log.warn("Ошибка валидации: ID не указан");
             throw new ValidationException("Id должен быть указан.");
         }
-        Film oldFilm = filmStorage.findFilmById(newFilm.getId());
-        if (oldFilm == null) {
-            log.warn("Ошибка: Фильм с ID={} не найден", newFilm.getId());
-            throw new NotFoundException("Фильм с id = " + newFilm.getId() + " не найден.");
-        }
 
-        validateFilmForUpdate(newFilm, oldFilm);
+        Set<Genre> genres = newFilm.getGenres() == null ? null : resolveGenres(newFilm.getGenres());
+        Film updated = edit(newFilm.getId(), ifMatch, (oldFilm, film) -> {
+            validateFilmForUpdate(newFilm, oldFilm);
 
-        if (newFilm.getName() != null && !newFilm.getName().isBlank()
-                && !newFilm.getName().equals(oldFilm.getName())) {
-            oldFilm.setName(newFilm.getName());
-        }
+            if (newFilm.getName() != null && !newFilm.getName().isBlank()
+                    && !newFilm.getName().equals(oldFilm.getName())) {
+                film.setName(newFilm.getName());
+            }
 
-        if (newFilm.getReleaseDate() != null) {
-            oldFilm.setReleaseDate(newFilm.getReleaseDate());
-        }
+            if (newFilm.getReleaseDate() != null) {
+                film.setReleaseDate(newFilm.getReleaseDate());
+            }
 
-        if (newFilm.getDescription() != null && !newFilm.getDescription().isBlank()) {
-            oldFilm.setDescription(newFilm.getDescription());
-        }
+            if (newFilm.getDescription() != null && !newFilm.getDescription().isBlank()) {
+                film.setDescription(newFilm.getDescription());
+            }
 
-        if (newFilm.getDuration() > 0) {
-            oldFilm.setDuration(newFilm.getDuration());
-        }
+            if (newFilm.getDuration() > 0) {
+                film.setDuration(newFilm.getDuration());
+            }
+
+            if (genres != null) {
+                film.setGenres(new LinkedHashSet<>(genres));
+            }
 
-        log.info("Фильм обновлен успешно: ID={}", oldFilm.getId());
-        return filmStorage.update(oldFilm);
+            if (newFilm.getRating() != null) {
+                film.setRating(newFilm.getRating());
+            }
+        });
+
+        log.info("Фильм обновлен успешно: ID={}", updated.getId());
+        return updated;
     }
 
 
     public Film update(Film newFilm) {
+        return update(newFilm, null);
+    }
+
+    public Film update(Film newFilm, LongPredicate ifMatch) {
         log.info("PUT /films - Полное обновление фильма: ID={}", newFilm.getId());
 
         if (newFilm.getId() == null) {
             throw new ValidationException("Id должен быть указан.");
         }
 
-        Film oldFilm = filmStorage.findFilmById(newFilm.getId());
-        if (oldFilm == null) {
-            throw new NotFoundException("Фильм с id = " + newFilm.getId() + " не найден.");
-        }
-
-        oldFilm.setName(newFilm.getName());
-        oldFilm.setDescription(newFilm.getDescription());
-        oldFilm.setReleaseDate(newFilm.getReleaseDate());
-        oldFilm.setDuration(newFilm.getDuration());
+        Set<Genre> genres = resolveGenres(newFilm.getGenres());
+        Film updated = edit(newFilm.getId(), ifMatch, (oldFilm, film) -> {
+            film.setName(newFilm.getName());
+            film.setDescription(newFilm.getDescription());
+            film.setReleaseDate(newFilm.getReleaseDate());
+            film.setDuration(newFilm.getDuration());
+            film.setGenres(new LinkedHashSet<>(genres));
+            film.setRating(newFilm.getRating());
+        });
+
+        log.info("Фильм обновлен успешно: ID={}", updated.getId());
+        return updated;
+    }
 
-        log.info("Фильм обновлен успешно: ID={}", oldFilm.getId());
-        return filmStorage.update(oldFilm);
+    // Правится копия, хранилище ставит ее, только если фильм не успели изменить. С If-Match чужая правка - 412,
+    // без него правка повторяется поверх чужой, и ни одна не теряется
+    private Film edit(Long id, LongPredicate ifMatch, BiConsumer<Film, Film> change) {
+        while (true) {
+            Film oldFilm = filmStorage.findFilmById(id);
+            if (oldFilm == null) {
+                log.warn("Ошибка: Фильм с ID={} не найден", id);
+                throw new NotFoundException("Фильм с id = " + id + " не найден.");
+            }
+            if (ifMatch != null && !ifMatch.test(findFilmVersion(id))) {
+                throw new PreconditionFailedException("Фильм изменился, If-Match не совпадает с ETag");
+            }
+
+            Film film = oldFilm.copy();
+            change.accept(oldFilm, film);
+            Film updated = filmStorage.update(film, oldFilm.getVersion());
+            if (updated != null) {
+                eventPublisher.publishEvent(new FilmUpdatedEvent(id));
+                return updated;
+            }
+            if (ifMatch != null) {
+                throw new PreconditionFailedException("Фильм изменился, If-Match не совпадает с ETag");
+            }
+            log.debug("Фильм {} изменили во время правки, правка повторяется", id);
+        }
     }
 
 
@@ -149,6 +342,52 @@ public class FilmService {
             log.warn("Ошибка валидации: Фильм '{}' уже существует", film.getName());
             throw new ValidationException("Фильм уже есть на сайте");
         }
+        film.setGenres(resolveGenres(film.getGenres()));
+    }
+
+    private String validateFilmForBatch(Film film, Set<String> batchNames) {
+        if (film == null) {
+            return "Пустая запись";
+        }
+        Set<ConstraintViolation<Film>> violations = validator.validate(film);
+        if (!violations.isEmpty()) {
+            return violations.iterator().next().getMessage();
+        }
+        if (film.getReleaseDate() != null && film.getReleaseDate().isBefore(FIRST_FILM_DATE_RELEASE)) {
+            return "Дата релиза не может быть раньше 28 декабря 1895 года";
+        }
+        try {
+            film.setGenres(resolveGenres(film.getGenres()));
+        } catch (ValidationException | NotFoundException e) {
+            return e.getMessage();
+        }
+        if (!batchNames.add(film.getName())) {
+            return "Фильм с таким названием уже есть в пакете";
+        }
+        if (filmStorage.isExistingFilm(film.getName())) {
+            return "Фильм уже есть на сайте";
+        }
+        return null;
+    }
+
+    // Жанры из справочника по возрастанию id: у хранилищ не остается жанров без названия или с неизвестным id
+    private Set<Genre> resolveGenres(Set<Genre> genres) {
+        if (genres == null) {
+            return new LinkedHashSet<>();
+        }
+        Map<Long, Genre> resolved = new TreeMap<>();
+        for (Genre genre : genres) {
+            if (genre == null || genre.getId() == null) {
+                throw new ValidationException("У жанра должен быть указан id");
+            }
+            Genre known = genreStorage.findGenreById(genre.getId());
+            if (known == null) {
+                log.warn("Ошибка валидации: жанр с ID={} не найден", genre.getId());
+                throw new NotFoundException("Жанр с id = " + genre.getId() + " не найден.");
+            }
+            resolved.put(known.getId(), known);
+        }
+        return new LinkedHashSet<>(resolved.values());
     }
 
     private void validateFilmForUpdate(Film newFilm, Film oldFilm) {
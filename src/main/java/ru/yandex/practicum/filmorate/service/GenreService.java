@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+
+import java.util.Collection;
+
+@Service
+@RequiredArgsConstructor
+public class GenreService {
+    private final GenreStorage genreStorage;
+
+    public Collection<Genre> findAll() {
+        return genreStorage.findAll();
+    }
+
+    public Genre findGenreById(Long id) {
+        Genre genre = genreStorage.findGenreById(id);
+        if (genre == null) {
+            throw new NotFoundException("Жанр не найден.");
+        }
+        return genre;
+    }
+}
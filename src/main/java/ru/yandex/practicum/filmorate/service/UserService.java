@@ -1,29 +1,66 @@
 package ru.yandex.practicum.filmorate.service;
 
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.event.FriendshipChangedEvent;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.PreconditionFailedException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.DTO.BatchItemError;
+import ru.yandex.practicum.filmorate.model.DTO.BatchResult;
+import ru.yandex.practicum.filmorate.model.DTO.Page;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enums.FriendshipStatus;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.util.SortedLongs;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.BiConsumer;
+import java.util.function.LongPredicate;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
 public class UserService {
 
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_BATCH_SIZE = 100_000;
+
     private final UserStorage userStorage;
+    private final Validator validator;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public UserService(UserStorage userStorage) {
+    public UserService(UserStorage userStorage, Validator validator, ApplicationEventPublisher eventPublisher) {
         this.userStorage = userStorage;
+        this.validator = validator;
+        this.eventPublisher = eventPublisher;
     }
 
     public Collection<User> findAll() {
         return userStorage.findAll();
     }
 
+    public Stream<User> streamAll() {
+        return userStorage.streamAll();
+    }
+
+    public Page<User> findPage(Long after, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException("Параметр limit должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        // Лишний элемент показывает, есть ли следующая страница
+        List<User> users = userStorage.findPage(after, limit + 1);
+        if (users.size() <= limit) {
+            return new Page<>(users, null);
+        }
+        List<User> items = users.subList(0, limit);
+        return new Page<>(items, items.get(limit - 1).getId());
+    }
+
     public User findUserById(Long id) {
         User user = userStorage.findUserById(id);
         if (user == null) {
@@ -46,7 +83,53 @@ public class UserService {
         return user;
     }
 
+    public BatchResult createBatch(List<User> users) {
+        if (users.size() > MAX_BATCH_SIZE) {
+            throw new ValidationException("В пакете не может быть больше " + MAX_BATCH_SIZE + " пользователей");
+        }
+
+        List<BatchItemError> errors = new ArrayList<>();
+        List<User> accepted = new ArrayList<>(users.size());
+        List<Integer> acceptedIndexes = new ArrayList<>(users.size());
+        Set<String> batchEmails = new HashSet<>(users.size() * 2);
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            String error = validateUserForBatch(user, batchEmails);
+            if (error != null) {
+                errors.add(new BatchItemError(i, error));
+                continue;
+            }
+            if (user.getName() == null || user.getName().isBlank()) {
+                user.setName(user.getLogin());
+            }
+            accepted.add(user);
+            acceptedIndexes.add(i);
+        }
+
+        List<User> created = userStorage.createAll(accepted);
+
+        // Созданные идут в порядке пакета, как в FilmService.createBatch
+        List<Long> ids = new ArrayList<>(created.size());
+        int next = 0;
+        for (int i = 0; i < accepted.size(); i++) {
+            if (next < created.size() && created.get(next) == accepted.get(i)) {
+                ids.add(created.get(next++).getId());
+            } else {
+                errors.add(new BatchItemError(acceptedIndexes.get(i), "Этот email уже используется"));
+            }
+        }
+        errors.sort(Comparator.comparingInt(BatchItemError::getIndex));
+
+        log.info("POST /users/batch - Создано пользователей: {}, отклонено: {}", ids.size(), errors.size());
+        return new BatchResult(ids.size(), ids, errors);
+    }
+
     public User update(User newUser) {
+        return update(newUser, null);
+    }
+
+    // ifMatch проверяет версию пользователя, из которой строится его ETag; null - без проверки
+    public User update(User newUser, LongPredicate ifMatch) {
         log.info("PUT /users - Обновление пользователя: ID={}", newUser.getId());
 
         if (newUser.getId() == null) {
@@ -54,30 +137,30 @@ public class UserService {
             throw new ValidationException("Id должен быть указан.");
         }
 
-        User oldUser = userStorage.findUserById(newUser.getId());
-        if (oldUser == null) {
-            log.warn("Ошибка: Пользователь с ID={} не найден", newUser.getId());
-            throw new NotFoundException("Пользователь с id = " + newUser.getId() + " не найден.");
-        }
-
-        validateUserForCreate(newUser);
+        User updated = edit(newUser.getId(), ifMatch, (oldUser, user) -> {
+            validateUserForUpdate(newUser, oldUser);
 
-        oldUser.setEmail(newUser.getEmail());
-        oldUser.setLogin(newUser.getLogin());
+            user.setEmail(newUser.getEmail());
+            user.setLogin(newUser.getLogin());
 
-        if (newUser.getName() == null || newUser.getName().isBlank()) {
-            oldUser.setName(newUser.getLogin());
-        } else {
-            oldUser.setName(newUser.getName());
-        }
+            if (newUser.getName() == null || newUser.getName().isBlank()) {
+                user.setName(newUser.getLogin());
+            } else {
+                user.setName(newUser.getName());
+            }
 
-        oldUser.setBirthday(newUser.getBirthday());
+            user.setBirthday(newUser.getBirthday());
+        });
 
-        log.info("Пользователь обновлен успешно (PUT): ID={}", oldUser.getId());
-        return userStorage.update(oldUser);
+        log.info("Пользователь обновлен успешно (PUT): ID={}", updated.getId());
+        return updated;
     }
 
     public User patch(User newUser) {
+        return patch(newUser, null);
+    }
+
+    public User patch(User newUser, LongPredicate ifMatch) {
         log.info("PATCH /users - Обновление пользователя: ID={}", newUser.getId());
 
         if (newUser.getId() == null) {
@@ -85,36 +168,66 @@ public class UserService {
             throw new ValidationException("Id должен быть указан.");
         }
 
-        User oldUser = userStorage.findUserById(newUser.getId());
-        if (oldUser == null) {
-            log.warn("Ошибка: Пользователь с ID={} не найден", newUser.getId());
-            throw new NotFoundException("Пользователь с id = " + newUser.getId() + " не найден.");
-        }
+        User updated = edit(newUser.getId(), ifMatch, (oldUser, user) -> {
+            validateUserForUpdate(newUser, oldUser);
 
-        validateUserForUpdate(newUser, oldUser);
+            if (newUser.getEmail() != null && !newUser.getEmail().isBlank()) {
+                user.setEmail(newUser.getEmail());
+            }
 
-        if (newUser.getEmail() != null && !newUser.getEmail().isBlank()) {
-            oldUser.setEmail(newUser.getEmail());
-        }
+            if (newUser.getLogin() != null && !newUser.getLogin().isBlank()) {
+                user.setLogin(newUser.getLogin());
+            }
 
-        if (newUser.getLogin() != null && !newUser.getLogin().isBlank()) {
-            oldUser.setLogin(newUser.getLogin());
-        }
+            if (newUser.getName() != null) {
+                if (newUser.getName().isBlank()) {
+                    user.setName(user.getLogin());
+                } else {
+                    user.setName(newUser.getName());
+                }
+            }
 
-        if (newUser.getName() != null) {
-            if (newUser.getName().isBlank()) {
-                oldUser.setName(oldUser.getLogin());
-            } else {
-                oldUser.setName(newUser.getName());
+            if (newUser.getBirthday() != null) {
+                user.setBirthday(newUser.getBirthday());
             }
-        }
+        });
 
-        if (newUser.getBirthday() != null) {
-            oldUser.setBirthday(newUser.getBirthday());
+        log.info("Пользователь обновлен успешно: ID={}", updated.getId());
+        return updated;
+    }
+
+    public long findUserVersion(Long id) {
+        long version = userStorage.findUserVersion(id);
+        if (version < 0) {
+            throw new NotFoundException("Пользователь не найден");
         }
+        return version;
+    }
+
+    // Правится копия, хранилище ставит ее, только если пользователя не успели изменить. С If-Match чужая
+    // правка - 412, без него правка повторяется поверх чужой
+    private User edit(Long id, LongPredicate ifMatch, BiConsumer<User, User> change) {
+        while (true) {
+            User oldUser = userStorage.findUserById(id);
+            if (oldUser == null) {
+                log.warn("Ошибка: Пользователь с ID={} не найден", id);
+                throw new NotFoundException("Пользователь с id = " + id + " не найден.");
+            }
+            if (ifMatch != null && !ifMatch.test(findUserVersion(id))) {
+                throw new PreconditionFailedException("Пользователь изменился, If-Match не совпадает с ETag");
+            }
 
-        log.info("Пользователь обновлен успешно: ID={}", oldUser.getId());
-        return userStorage.update(oldUser);
+            User user = oldUser.copy();
+            change.accept(oldUser, user);
+            User updated = userStorage.update(user, oldUser.getVersion());
+            if (updated != null) {
+                return updated;
+            }
+            if (ifMatch != null) {
+                throw new PreconditionFailedException("Пользователь изменился, If-Match не совпадает с ETag");
+            }
+            log.debug("Пользователя {} изменили во время правки, правка повторяется", id);
+        }
     }
 
     public void addFriends(Long userId, Long friendId) {
@@ -129,11 +242,8 @@ public class UserService {
             throw new ValidationException("Пользователи уже являются друзьями");
         }
 
-        user.getFriendIds().add(friendId);
-        friend.getFriendIds().add(userId);
-
-        userStorage.update(user);
-        userStorage.update(friend);
+        userStorage.addFriend(user.getId(), friend.getId());
+        eventPublisher.publishEvent(new FriendshipChangedEvent(userId, friendId, true));
 
         log.info("Пользователи {} и {} теперь друзья", userId, friendId);
     }
@@ -146,34 +256,107 @@ public class UserService {
         User user = findUserById(userId);
         User friend = findUserById(friendId);
 
-        user.getFriendIds().remove(friendId);
-        friend.getFriendIds().remove(userId); // взаимное удаление
-
-        userStorage.update(user);
-        userStorage.update(friend);
+        userStorage.removeFriend(user.getId(), friend.getId()); // взаимное удаление
+        eventPublisher.publishEvent(new FriendshipChangedEvent(userId, friendId, false));
 
         log.info("Пользователи {} и {} больше не друзья", userId, friendId);
     }
 
-    public List<User> getFriends(Long id) {
-        User user = findUserById(id);
+    public Friendship requestFriend(Long userId, Long friendId) {
+        if (userId.equals(friendId)) {
+            throw new ValidationException("Нельзя добавить себя в друзья");
+        }
+
+        User user = findUserById(userId);
+        findUserById(friendId);
+
+        if (user.getFriendIds().contains(friendId)) {
+            throw new ValidationException("Пользователи уже являются друзьями");
+        }
+
+        FriendshipStatus status = userStorage.requestFriend(userId, friendId);
+        if (status == FriendshipStatus.CONFIRMED) {
+            eventPublisher.publishEvent(new FriendshipChangedEvent(userId, friendId, true));
+            log.info("Встречная заявка: пользователи {} и {} теперь друзья", userId, friendId);
+        } else {
+            log.info("Пользователь {} отправил заявку в друзья пользователю {}", userId, friendId);
+        }
+        return new Friendship(userId, friendId, status);
+    }
+
+    public Friendship acceptFriend(Long userId, Long requesterId) {
+        findUserById(userId);
+        findUserById(requesterId);
+
+        if (!userStorage.acceptFriend(userId, requesterId)) {
+            throw new NotFoundException("Заявка в друзья не найдена");
+        }
+        eventPublisher.publishEvent(new FriendshipChangedEvent(requesterId, userId, true));
+
+        log.info("Пользователь {} принял заявку пользователя {}", userId, requesterId);
+        return new Friendship(requesterId, userId, FriendshipStatus.CONFIRMED);
+    }
+
+    public void declineFriend(Long userId, Long otherId) {
+        findUserById(userId);
+        findUserById(otherId);
+
+        if (!userStorage.declineFriend(userId, otherId)) {
+            throw new NotFoundException("Заявка в друзья не найдена");
+        }
+
+        log.info("Заявка между пользователями {} и {} отклонена", userId, otherId);
+    }
+
+    public List<Friendship> getFriendRequests(Long userId) {
+        findUserById(userId);
+
+        long[] requesterIds = userStorage.findFriendRequests(userId);
+        List<Friendship> requests = new ArrayList<>(requesterIds.length);
+        for (long requesterId : requesterIds) {
+            requests.add(new Friendship(requesterId, userId, FriendshipStatus.UNCONFIRMED));
+        }
+        return requests;
+    }
 
-        return user.getFriendIds().stream()
-                .map(this::findUserById)
-                .collect(Collectors.toList());
+    public int countFriends(Long userId) {
+        int count = userStorage.countFriends(userId);
+        if (count < 0) {
+            throw new NotFoundException("Пользователь не найден");
+        }
+        return count;
+    }
+
+    public long findFriendsVersion(Long id) {
+        long version = userStorage.findFriendsVersion(id);
+        if (version < 0) {
+            throw new NotFoundException("Пользователь не найден");
+        }
+        return version;
+    }
+
+    public List<User> getFriends(Long id) {
+        return userStorage.findUsersByIds(findFriendIds(id));
     }
 
 
     public List<User> getCommonFriends(Long userId, Long otherId) {
-        User user = findUserById(userId);
-        User otherUser = findUserById(otherId);
+        long[] commonFriendIds = SortedLongs.intersection(findFriendIds(userId), findFriendIds(otherId));
 
-        Set<Long> commonFriendIds = new HashSet<>(user.getFriendIds());
-        commonFriendIds.retainAll(otherUser.getFriendIds()); // находим пересечение
+        return userStorage.findUsersByIds(commonFriendIds);
+    }
 
-        return commonFriendIds.stream()
-                .map(this::findUserById)
-                .collect(Collectors.toList());
+    public int countCommonFriends(Long userId, Long otherId) {
+        return SortedLongs.intersectionSize(findFriendIds(userId), findFriendIds(otherId));
+    }
+
+    // Друзья массивом из хранилища: набор друзей пользователя ради обхода или пересечения не собирается
+    private long[] findFriendIds(Long userId) {
+        long[] friendIds = userStorage.findFriendIds(userId);
+        if (friendIds == null) {
+            throw new NotFoundException("Пользователь не найден");
+        }
+        return friendIds;
     }
 
 
@@ -184,12 +367,29 @@ public class UserService {
         }
     }
 
+    private String validateUserForBatch(User user, Set<String> batchEmails) {
+        if (user == null) {
+            return "Пустая запись";
+        }
+        Set<ConstraintViolation<User>> violations = validator.validate(user);
+        if (!violations.isEmpty()) {
+            return violations.iterator().next().getMessage();
+        }
+        if (!batchEmails.add(user.getEmail())) {
+            return "Пользователь с таким email уже есть в пакете";
+        }
+        if (userStorage.isExistingEmail(user.getEmail())) {
+            return "Этот email уже используется";
+        }
+        return null;
+    }
+
     private void validateUserForUpdate(User newUser, User oldUser) {
         if (newUser.getEmail() != null && !newUser.getEmail().isBlank()
                 && !newUser.getEmail().equals(oldUser.getEmail())) {
             if (userStorage.isExistingEmail(newUser.getEmail())) {
                 log.warn("Ошибка валидации: Email '{}' уже используется", newUser.getEmail());
-                throw new ValidationException("Этот email уже используется.");
+                throw new ValidationException("Этот email уже используется");
             }
         }
     }
@@ -0,0 +1,67 @@
+package ru.yandex.practicum.filmorate.service.feed;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Кольцо последних событий из четырех long: id события, время с типом и операцией, автор, объект.
+ * Id события служит меткой слота: писатель занимает слот, записывая в метку WRITING, и публикует событие,
+ * записывая id последним. Читатель без блокировок берет слот, только если метка до и после чтения полей
+ * одна и та же; id событий не повторяются, поэтому совпавшая метка значит, что поля не перезаписывались.
+ */
+final class FeedRing {
+
+    static final int FIELDS = 4;
+
+    private static final long EMPTY = 0;
+    private static final long WRITING = -1;
+
+    private final AtomicLongArray slots;
+    private final AtomicLong next = new AtomicLong();
+    private final int capacity;
+
+    FeedRing(int capacity) {
+        this.capacity = capacity;
+        this.slots = new AtomicLongArray(capacity * FIELDS);
+    }
+
+    void append(long eventId, long meta, long actorId, long entityId) {
+        int base = (int) (next.getAndIncrement() % capacity) * FIELDS;
+        // Слот может быть занят писателем, который отстал на целый круг; ждать его - несколько записей
+        long stamp = slots.get(base);
+        while (stamp == WRITING || !slots.compareAndSet(base, stamp, WRITING)) {
+            Thread.onSpinWait();
+            stamp = slots.get(base);
+        }
+        slots.set(base + 1, meta);
+        slots.set(base + 2, actorId);
+        slots.set(base + 3, entityId);
+        slots.set(base, eventId);
+    }
+
+    // Дописывает опубликованные события в out начиная с size событий, возвращает новое число событий
+    int readInto(long[] out, int size) {
+        for (int base = 0; base < slots.length(); base += FIELDS) {
+            long stamp = slots.get(base);
+            if (stamp == EMPTY || stamp == WRITING) {
+                continue;
+            }
+            long meta = slots.get(base + 1);
+            long actorId = slots.get(base + 2);
+            long entityId = slots.get(base + 3);
+            if (slots.get(base) != stamp) {
+                continue;
+            }
+            int offset = size++ * FIELDS;
+            out[offset] = stamp;
+            out[offset + 1] = meta;
+            out[offset + 2] = actorId;
+            out[offset + 3] = entityId;
+        }
+        return size;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,203 @@
+package ru.yandex.practicum.filmorate.service.feed;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.config.FeedProperties;
+import ru.yandex.practicum.filmorate.event.FilmUpdatedEvent;
+import ru.yandex.practicum.filmorate.event.FriendshipChangedEvent;
+import ru.yandex.practicum.filmorate.event.LikeChangedEvent;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.DTO.FeedEvent;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enums.EventOperation;
+import ru.yandex.practicum.filmorate.model.enums.EventType;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.util.LongHashSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
+
+/**
+ * Лента пользователя: лайки и дружба его друзей, правки фильмов, которые он лайкнул. События раздаются при записи
+ * в кольца лент получателей (FeedRing). Пользователь, у которого друзей больше celebrityThreshold, пишет события
+ * только в свое кольцо, и ленты его друзей дочитывают их при запросе; так же правки фильмов с большим числом
+ * лайков попадают в общее кольцо и при чтении отбираются по лайкам читателя. Ленты живут только в памяти.
+ */
+@Service
+@Slf4j
+public class FeedService {
+
+    private final UserStorage userStorage;
+    private final FilmStorage filmStorage;
+    private final FeedProperties properties;
+
+    private final AtomicLong eventIds = new AtomicLong();
+    // Получатель -> события, розданные ему при записи
+    private final Map<Long, FeedRing> feeds = new ConcurrentHashMap<>();
+    // Знаменитость -> ее собственные события; знаменитостью пользователь остается до перезапуска
+    private final Map<Long, FeedRing> outboxes = new ConcurrentHashMap<>();
+    private final LongHashSet celebrities = new LongHashSet();
+    private final FeedRing popularFilmUpdates;
+
+    public FeedService(UserStorage userStorage, FilmStorage filmStorage, FeedProperties properties) {
+        this.userStorage = userStorage;
+        this.filmStorage = filmStorage;
+        this.properties = properties;
+        this.popularFilmUpdates = new FeedRing(properties.getCapacity());
+    }
+
+    public List<FeedEvent> getFeed(Long userId, int limit) {
+        if (limit <= 0 || limit > properties.getMaxLimit()) {
+            throw new ValidationException("Параметр limit должен быть от 1 до " + properties.getMaxLimit());
+        }
+        User user = userStorage.findUserById(userId);
+        if (user == null) {
+            throw new NotFoundException("Пользователь не найден");
+        }
+        LongHashSet friends = user.getFriendIds();
+
+        Buffer buffer = new Buffer();
+        FeedRing own = feeds.get(userId);
+        if (own != null) {
+            buffer.read(own);
+        }
+        celebrities.forEachLong(celebrityId -> {
+            if (celebrityId != userId && friends.contains(celebrityId)) {
+                buffer.read(outboxes.get(celebrityId));
+            }
+        });
+        int fannedOut = buffer.size;
+        buffer.read(popularFilmUpdates);
+        buffer.keep(fannedOut, filmId -> filmStorage.isLiked(filmId, userId));
+
+        return buffer.newest(limit);
+    }
+
+    @EventListener
+    public void onLikeChanged(LikeChangedEvent event) {
+        publish(event.userId(), EventType.LIKE, event.added() ? EventOperation.ADD : EventOperation.REMOVE,
+                event.filmId());
+    }
+
+    // Каждый из двоих пишет событие своим друзьям; второй участник о себе не узнает
+    @EventListener
+    public void onFriendshipChanged(FriendshipChangedEvent event) {
+        EventOperation operation = event.added() ? EventOperation.ADD : EventOperation.REMOVE;
+        publish(event.userId(), EventType.FRIEND, operation, event.friendId());
+        publish(event.friendId(), EventType.FRIEND, operation, event.userId());
+    }
+
+    @EventListener
+    public void onFilmUpdated(FilmUpdatedEvent event) {
+        Film film = filmStorage.findFilmById(event.filmId());
+        if (film == null) {
+            return;
+        }
+        long eventId = eventIds.incrementAndGet();
+        long meta = meta(EventType.FILM, EventOperation.UPDATE);
+        LongHashSet likers = film.getLikedUsersIds();
+        if (likers.size() > properties.getCelebrityThreshold()) {
+            popularFilmUpdates.append(eventId, meta, 0, event.filmId());
+            return;
+        }
+        likers.forEachLong(userId -> feed(userId).append(eventId, meta, 0, event.filmId()));
+    }
+
+    private void publish(long actorId, EventType type, EventOperation operation, long entityId) {
+        User actor = userStorage.findUserById(actorId);
+        if (actor == null) {
+            return;
+        }
+        long eventId = eventIds.incrementAndGet();
+        long meta = meta(type, operation);
+        LongHashSet friends = actor.getFriendIds();
+        if (celebrities.contains(actorId) || friends.size() > properties.getCelebrityThreshold()) {
+            outboxes.computeIfAbsent(actorId, id -> new FeedRing(properties.getCapacity()))
+                    .append(eventId, meta, actorId, entityId);
+            if (celebrities.add(actorId)) {
+                log.info("Пользователь {} с {} друзьями: его события читаются при запросе ленты", actorId,
+                        friends.size());
+            }
+            return;
+        }
+        friends.forEachLong(friendId -> {
+            if (type != EventType.FRIEND || friendId != entityId) {
+                feed(friendId).append(eventId, meta, actorId, entityId);
+            }
+        });
+    }
+
+    private FeedRing feed(long userId) {
+        return feeds.computeIfAbsent(userId, id -> new FeedRing(properties.getCapacity()));
+    }
+
+    // Время в миллисекундах, тип и операция в младших битах
+    private static long meta(EventType type, EventOperation operation) {
+        return System.currentTimeMillis() << 4 | (long) type.ordinal() << 2 | operation.ordinal();
+    }
+
+    // События из нескольких колец подряд, по FeedRing.FIELDS long на событие
+    private static final class Buffer {
+
+        private static final int INDEX_BITS = 24;
+        private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+        private long[] events = new long[64 * FeedRing.FIELDS];
+        private int size;
+
+        void read(FeedRing ring) {
+            int needed = (size + ring.capacity()) * FeedRing.FIELDS;
+            if (needed > events.length) {
+                events = Arrays.copyOf(events, Math.max(needed, events.length * 2));
+            }
+            size = ring.readInto(events, size);
+        }
+
+        // Оставляет события с номера from, у которых объект проходит фильтр
+        void keep(int from, LongPredicate filter) {
+            int kept = from;
+            for (int i = from; i < size; i++) {
+                if (filter.test(events[i * FeedRing.FIELDS + 3])) {
+                    System.arraycopy(events, i * FeedRing.FIELDS, events, kept++ * FeedRing.FIELDS,
+                            FeedRing.FIELDS);
+                }
+            }
+            size = kept;
+        }
+
+        // Не больше limit самых новых событий по убыванию id; событие из нескольких колец берется один раз
+        List<FeedEvent> newest(int limit) {
+            long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                // Id события в старших битах, номер в буфере в младших: сортировка по id без объектов
+                order[i] = events[i * FeedRing.FIELDS] << INDEX_BITS | i;
+            }
+            Arrays.sort(order);
+            List<FeedEvent> result = new ArrayList<>(Math.min(limit, size));
+            long previousId = -1;
+            for (int i = size - 1; i >= 0 && result.size() < limit; i--) {
+                int offset = (int) (order[i] & INDEX_MASK) * FeedRing.FIELDS;
+                long eventId = events[offset];
+                if (eventId == previousId) {
+                    continue;
+                }
+                previousId = eventId;
+                long meta = events[offset + 1];
+                long actorId = events[offset + 2];
+                result.add(new FeedEvent(eventId, meta >>> 4, actorId == 0 ? null : actorId,
+                        EventType.values()[(int) (meta >>> 2 & 3)], EventOperation.values()[(int) (meta & 3)],
+                        events[offset + 3]));
+            }
+            return result;
+        }
+    }
+}
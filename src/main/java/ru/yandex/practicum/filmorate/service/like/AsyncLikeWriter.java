@@ -0,0 +1,244 @@
+package ru.yandex.practicum.filmorate.service.like;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.config.LikeIngestionProperties;
+import ru.yandex.practicum.filmorate.config.LikeIngestionProperties.Backpressure;
+import ru.yandex.practicum.filmorate.event.LikeChangedEvent;
+import ru.yandex.practicum.filmorate.exception.OverloadedException;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Лайки уходят в ограниченную очередь шарда, шард выбирается по id фильма.
+ * У каждого шарда один поток-писатель, он забирает события пачками и применяет их к хранилищу,
+ * поэтому запросы к одному популярному фильму не конкурируют за его блокировку.
+ * Запрос лайка ждет, пока писатель применит именно его событие, так что автор видит свой лайк
+ * в следующем запросе; не дождавшись за read-your-writes-timeout, запрос отвечает 202 и считается
+ * в filmorate.likes.unconfirmed. Чтения никого не ждут: чужие лайки в них появляются с задержкой очереди.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.likes.async.enabled", havingValue = "true")
+public class AsyncLikeWriter implements LikeWriter, DisposableBean {
+
+    private static final long POLL_MILLIS = 100;
+    private static final long SHUTDOWN_PARK_NANOS = 100_000;
+
+    private final FilmStorage filmStorage;
+    private final LikeIngestionProperties properties;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Shard[] shards;
+    private final Timer applyTimer;
+    private final Counter rejectedCounter;
+    private final Counter unconfirmedCounter;
+    private final LongAdder submitting = new LongAdder();
+    // Остановка в два шага: сначала перестаем принимать лайки, потом писатели дочищают очереди
+    private volatile boolean accepting = true;
+    private volatile boolean running = true;
+
+    // С spring.threads.virtual.enabled писатели тоже виртуальные: при включенном журнале они ждут fsync
+    @Autowired
+    public AsyncLikeWriter(FilmStorage filmStorage, LikeIngestionProperties properties,
+                           ApplicationEventPublisher eventPublisher, MeterRegistry registry, Environment environment) {
+        this(filmStorage, properties, eventPublisher, registry,
+                Threading.VIRTUAL.isActive(environment) ? Thread.ofVirtual() : Thread.ofPlatform().daemon(true));
+    }
+
+    private AsyncLikeWriter(FilmStorage filmStorage, LikeIngestionProperties properties,
+                            ApplicationEventPublisher eventPublisher, MeterRegistry registry, Thread.Builder threads) {
+        this.filmStorage = filmStorage;
+        this.properties = properties;
+        this.eventPublisher = eventPublisher;
+        this.applyTimer = Timer.builder("filmorate.likes.apply")
+                .description("Время применения пачки лайков писателем")
+                .register(registry);
+        this.rejectedCounter = Counter.builder("filmorate.likes.rejected")
+                .description("Лайки, отклоненные из-за переполнения очереди")
+                .register(registry);
+        this.unconfirmedCounter = Counter.builder("filmorate.likes.unconfirmed")
+                .description("Лайки, не примененные до ответа за read-your-writes-timeout")
+                .register(registry);
+
+        shards = new Shard[properties.getShards()];
+        for (int i = 0; i < shards.length; i++) {
+            Shard shard = new Shard(properties.getQueueCapacity());
+            Gauge.builder("filmorate.likes.queue.depth", shard.queue, BlockingQueue::size)
+                    .tag("shard", String.valueOf(i))
+                    .register(registry);
+            shard.writer = threads.name("like-writer-" + i).start(() -> drain(shard));
+            shards[i] = shard;
+        }
+        log.info("Асинхронная запись лайков включена: шардов {}, емкость очереди {}, режим {}",
+                shards.length, properties.getQueueCapacity(), properties.getBackpressure());
+    }
+
+    @Override
+    public boolean addLike(Long filmId, Long userId) {
+        return awaitApplied(submit(new LikeEvent(new FilmStorage.LikeChange(filmId, userId, true))));
+    }
+
+    @Override
+    public boolean removeLike(Long filmId, Long userId) {
+        return awaitApplied(submit(new LikeEvent(new FilmStorage.LikeChange(filmId, userId, false))));
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        accepting = false;
+        // Лайк, успевший пройти проверку accepting, еще может встать в очередь: ждем такие вызовы
+        while (submitting.sum() > 0) {
+            LockSupport.parkNanos(SHUTDOWN_PARK_NANOS);
+        }
+        running = false;
+        for (Shard shard : shards) {
+            shard.writer.join();
+        }
+    }
+
+    private LikeEvent submit(LikeEvent event) {
+        boolean accepted;
+        submitting.increment();
+        try {
+            if (!accepting) {
+                throw new OverloadedException("Сервис останавливается, повторите запрос позже");
+            }
+            Shard shard = shardFor(event.change.filmId());
+            accepted = properties.getBackpressure() == Backpressure.BLOCK
+                    ? shard.queue.offer(event, properties.getOfferTimeout().toNanos(), TimeUnit.NANOSECONDS)
+                    : shard.queue.offer(event);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            accepted = false;
+        } finally {
+            submitting.decrement();
+        }
+        if (!accepted) {
+            rejectedCounter.increment();
+            throw new OverloadedException("Слишком много лайков, повторите запрос позже");
+        }
+        return event;
+    }
+
+    private void drain(Shard shard) {
+        List<LikeEvent> batch = new ArrayList<>(properties.getBatchSize());
+        while (running || !shard.queue.isEmpty()) {
+            LikeEvent first;
+            try {
+                first = shard.queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (first == null) {
+                continue;
+            }
+            batch.add(first);
+            shard.queue.drainTo(batch, properties.getBatchSize() - 1);
+
+            long start = System.nanoTime();
+            apply(batch);
+            applyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            for (LikeEvent event : batch) {
+                event.applied = true;
+                LockSupport.unpark(event.submitter);
+            }
+            batch.clear();
+        }
+    }
+
+    // Вся пачка уходит в хранилище одним вызовом: с журналом писатель ждет один fsync, в БД - один коммит
+    private void apply(List<LikeEvent> batch) {
+        List<FilmStorage.LikeChange> changes = new ArrayList<>(batch.size());
+        for (LikeEvent event : batch) {
+            changes.add(event.change);
+        }
+        boolean[] changed;
+        try {
+            changed = filmStorage.applyLikes(changes);
+        } catch (RuntimeException e) {
+            // Применилась ли часть пачки, неизвестно (в БД она откатилась целиком), поэтому ошибку получает каждый
+            log.error("Не удалось применить пачку из {} лайков", batch.size(), e);
+            for (LikeEvent event : batch) {
+                event.failure = e;
+            }
+            return;
+        }
+        for (int i = 0; i < changed.length; i++) {
+            if (changed[i]) {
+                publish(changes.get(i));
+            }
+        }
+    }
+
+    // Лайк уже сохранен: ошибка подписчика не должна ни остановить писателя, ни провалить запрос
+    private void publish(FilmStorage.LikeChange change) {
+        try {
+            eventPublisher.publishEvent(new LikeChangedEvent(change.filmId(), change.userId(), change.add()));
+        } catch (RuntimeException e) {
+            log.error("Не удалось опубликовать изменение лайка {}", change, e);
+        }
+    }
+
+    // По таймауту запрос отвечает, не дождавшись: лайк уже принят и применится позже
+    private boolean awaitApplied(LikeEvent event) {
+        long deadline = System.nanoTime() + properties.getReadYourWritesTimeout().toNanos();
+        while (!event.applied && !Thread.currentThread().isInterrupted()) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                break;
+            }
+            LockSupport.parkNanos(this, left);
+        }
+        if (!event.applied) {
+            unconfirmedCounter.increment();
+            return false;
+        }
+        if (event.failure != null) {
+            throw event.failure;
+        }
+        return true;
+    }
+
+    private Shard shardFor(long filmId) {
+        return shards[(int) Math.floorMod(filmId, (long) shards.length)];
+    }
+
+    private static final class LikeEvent {
+        private final FilmStorage.LikeChange change;
+        private final Thread submitter = Thread.currentThread();
+        // Пишется до applied, поэтому видна тому, кто дождался applied
+        private RuntimeException failure;
+        private volatile boolean applied;
+
+        private LikeEvent(FilmStorage.LikeChange change) {
+            this.change = change;
+        }
+    }
+
+    private static final class Shard {
+        private final BlockingQueue<LikeEvent> queue;
+        private Thread writer;
+
+        private Shard(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+    }
+}
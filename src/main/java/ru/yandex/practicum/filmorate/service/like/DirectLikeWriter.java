@@ -0,0 +1,33 @@
+package ru.yandex.practicum.filmorate.service.like;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.event.LikeChangedEvent;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+@Component
+@ConditionalOnProperty(name = "filmorate.likes.async.enabled", havingValue = "false", matchIfMissing = true)
+@RequiredArgsConstructor
+public class DirectLikeWriter implements LikeWriter {
+
+    private final FilmStorage filmStorage;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Override
+    public boolean addLike(Long filmId, Long userId) {
+        if (filmStorage.addLike(filmId, userId)) {
+            eventPublisher.publishEvent(new LikeChangedEvent(filmId, userId, true));
+        }
+        return true;
+    }
+
+    @Override
+    public boolean removeLike(Long filmId, Long userId) {
+        if (filmStorage.removeLike(filmId, userId)) {
+            eventPublisher.publishEvent(new LikeChangedEvent(filmId, userId, false));
+        }
+        return true;
+    }
+}
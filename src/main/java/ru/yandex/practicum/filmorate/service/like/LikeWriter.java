@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.service.like;
+
+/**
+ * Применяет лайки к хранилищу фильмов: сразу или через очередь.
+ * LikeChangedEvent публикуется после применения и только если лайк что-то изменил.
+ * Методы возвращают false, если лайк принят, но к ответу еще не применен и следующее чтение может его не увидеть.
+ */
+public interface LikeWriter {
+
+    boolean addLike(Long filmId, Long userId);
+
+    boolean removeLike(Long filmId, Long userId);
+}
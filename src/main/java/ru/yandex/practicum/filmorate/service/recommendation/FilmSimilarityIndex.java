@@ -0,0 +1,423 @@
+package ru.yandex.practicum.filmorate.service.recommendation;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.config.RecommendationProperties;
+import ru.yandex.practicum.filmorate.event.LikeChangedEvent;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.util.LongHashSet;
+import ru.yandex.practicum.filmorate.util.LongIntHashMap;
+import ru.yandex.practicum.filmorate.util.TopKLongs;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Ближайшие по совместным лайкам фильмы для каждого фильма. Полный пересчет идет параллельно в ForkJoinPool,
+ * между пересчетами события лайков копятся в очереди и раз в refreshDelay досчитываются только
+ * затронутые фильмы. Пишет в индекс один поток, запрос только читает готовую строку.
+ */
+@Component
+@Slf4j
+public class FilmSimilarityIndex implements DisposableBean {
+
+    static final int SCORE_SCALE = 1_000_000;
+
+    private final FilmStorage filmStorage;
+    private final RecommendationProperties properties;
+    private final BlockingQueue<LikeChangedEvent> events;
+    private final ForkJoinPool pool;
+    private final ScheduledExecutorService refresher;
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    // Соседи фильма по убыванию сходства; строки неизменяемые и заменяются целиком
+    private final Map<Long, Neighbours> neighbours = new ConcurrentHashMap<>();
+    // Фильмы, которые лайкнул пользователь; читается запросами, меняется только под refreshLock
+    private volatile Map<Long, LongHashSet> likedFilmsByUser = new ConcurrentHashMap<>();
+    // Дальше - состояние, доступное только под refreshLock
+    private LongIntHashMap likeCounts = new LongIntHashMap();
+    private final LongHashSet dirtyFilms = new LongHashSet();
+    private volatile boolean rebuildRequested = true;
+    private long lastRebuildNanos;
+
+    public FilmSimilarityIndex(FilmStorage filmStorage, RecommendationProperties properties) {
+        this.filmStorage = filmStorage;
+        this.properties = properties;
+        this.events = new ArrayBlockingQueue<>(properties.getEventQueueCapacity());
+        this.pool = new ForkJoinPool(properties.getParallelism() > 0
+                ? properties.getParallelism() : Runtime.getRuntime().availableProcessors());
+        if (properties.isAutoRefresh()) {
+            refresher = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("film-similarity").daemon().factory());
+            refresher.scheduleWithFixedDelay(this::refreshQuietly, 0,
+                    properties.getRefreshDelay().toMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            refresher = null;
+        }
+    }
+
+    public record Neighbours(long[] filmIds, float[] scores) {
+    }
+
+    @EventListener
+    public void onLikeChanged(LikeChangedEvent event) {
+        if (!events.offer(event)) {
+            rebuildRequested = true;
+        }
+    }
+
+    public Neighbours findNeighbours(long filmId) {
+        return neighbours.get(filmId);
+    }
+
+    public LongHashSet findLikedFilms(long userId) {
+        return likedFilmsByUser.get(userId);
+    }
+
+    // Полный пересчет по расписанию или по запросу, затем события из очереди и досчет затронутых фильмов
+    public void refresh() {
+        refreshLock.lock();
+        try {
+            if (rebuildRequested
+                    || System.nanoTime() - lastRebuildNanos > properties.getRebuildInterval().toNanos()) {
+                rebuild();
+            }
+            List<LikeChangedEvent> batch = new ArrayList<>();
+            events.drainTo(batch);
+            for (LikeChangedEvent event : batch) {
+                apply(event);
+            }
+            long[] dirty = dirtyFilms.toLongArray();
+            dirtyFilms.clear();
+            for (long filmId : dirty) {
+                recompute(filmId);
+            }
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    // События, пришедшие во время пересчета, остаются в очереди и применяются после него: применение идемпотентно
+    public void rebuild() {
+        refreshLock.lock();
+        try {
+            long start = System.nanoTime();
+            rebuildRequested = false;
+            try {
+                rebuildRows(start);
+            } catch (RuntimeException e) {
+                rebuildRequested = true;
+                throw e;
+            }
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+        pool.shutdownNow();
+    }
+
+    private void rebuildRows(long start) {
+        List<Long> ids = new ArrayList<>();
+        List<LongHashSet> likers = new ArrayList<>();
+        LongIntHashMap counts = new LongIntHashMap();
+        LongIntHashMap userDegrees = new LongIntHashMap();
+        try (Stream<Film> films = filmStorage.streamAll()) {
+            films.forEach(film -> {
+                LongHashSet filmLikers = film.getLikedUsersIds();
+                ids.add(film.getId());
+                likers.add(filmLikers);
+                counts.addTo(film.getId(), filmLikers.size());
+                filmLikers.forEachLong(userId -> userDegrees.addTo(userId, 1));
+            });
+        }
+
+        LikeGraph graph = new LikeGraph(ids, likers, userDegrees);
+        Map<Long, LongHashSet> byUser = graph.likedFilmsByUser();
+        Neighbours[] rows = new Neighbours[graph.filmIds.length];
+        // Массивы счетчиков переиспользуются листовыми задачами и уходят в мусор вместе с пересчетом
+        Queue<CoLikeCounters> counters = new ConcurrentLinkedQueue<>();
+        pool.invoke(new RowsTask(graph, rows, counters, 0, rows.length));
+
+        Set<Long> stale = new HashSet<>(neighbours.keySet());
+        for (int i = 0; i < rows.length; i++) {
+            neighbours.put(graph.filmIds[i], rows[i]);
+            stale.remove(graph.filmIds[i]);
+        }
+        neighbours.keySet().removeAll(stale);
+        likedFilmsByUser = byUser;
+        likeCounts = counts;
+        lastRebuildNanos = System.nanoTime();
+        log.info("Соседи фильмов пересчитаны: фильмов={}, пользователей={}, за {} мс",
+                rows.length, byUser.size(), TimeUnit.NANOSECONDS.toMillis(lastRebuildNanos - start));
+    }
+
+    // Счетчики совместных лайков в плотном массиве по номеру фильма; сбрасываются только тронутые ячейки
+    private Neighbours row(int index, LikeGraph graph, CoLikeCounters counters) {
+        long filmId = graph.filmIds[index];
+        LongHashSet filmLikers = graph.likers[index];
+        int[] coLikes = counters.coLikes;
+        int[] touched = counters.touched;
+        counters.touchedCount = 0;
+        int maxLikesPerUser = properties.getMaxLikesPerUser();
+        filmLikers.forEachSample(properties.getMaxLikersPerFilm(), filmId, userId -> {
+            int user = graph.userSlots.get(userId) - 1;
+            if (user < 0) {
+                return;
+            }
+            // У активного пользователя берется непрерывный по кругу кусок его фильмов со смещением от id
+            int from = graph.offsets[user];
+            int length = graph.ends[user] - from;
+            int taken = Math.min(length, maxLikesPerUser);
+            int shift = length > taken ? (int) Long.remainderUnsigned(userId * 0x9E3779B97F4A7C15L, length) : 0;
+            for (int i = 0; i < taken; i++) {
+                int position = shift + i < length ? shift + i : shift + i - length;
+                int other = graph.films[from + position];
+                if (other != index && coLikes[other]++ == 0) {
+                    touched[counters.touchedCount++] = other;
+                }
+            }
+        });
+
+        int likes = filmLikers.size();
+        TopKLongs top = new TopKLongs(properties.getNeighboursPerFilm());
+        for (int i = 0; i < counters.touchedCount; i++) {
+            int other = touched[i];
+            top.offer(other, (int) (similarity(coLikes[other], likes, graph.likes[other]) * SCORE_SCALE));
+        }
+        long[] selected = top.drainSorted();
+        long[] neighbourIds = new long[selected.length];
+        float[] scores = new float[selected.length];
+        for (int i = 0; i < selected.length; i++) {
+            int other = (int) selected[i];
+            neighbourIds[i] = graph.filmIds[other];
+            scores[i] = (float) similarity(coLikes[other], likes, graph.likes[other]);
+        }
+        for (int i = 0; i < counters.touchedCount; i++) {
+            coLikes[touched[i]] = 0;
+        }
+        return new Neighbours(neighbourIds, scores);
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            log.error("Не удалось обновить соседей фильмов", e);
+        }
+    }
+
+    private void apply(LikeChangedEvent event) {
+        LongHashSet films = likedFilmsByUser.computeIfAbsent(event.userId(), id -> new LongHashSet());
+        boolean changed = event.added() ? films.add(event.filmId()) : films.remove(event.filmId());
+        if (changed) {
+            likeCounts.addTo(event.filmId(), event.added() ? 1 : -1);
+            dirtyFilms.add(event.filmId());
+        }
+    }
+
+    // Строка фильма считается заново, а его новое сходство с каждым кандидатом переносится в строку кандидата
+    private void recompute(long filmId) {
+        Film film = filmStorage.findFilmById(filmId);
+        if (film == null) {
+            neighbours.remove(filmId);
+            return;
+        }
+        LongHashSet filmLikers = film.getLikedUsersIds();
+        int likes = filmLikers.size();
+        LongIntHashMap coLikes = new LongIntHashMap();
+        filmLikers.forEachSample(properties.getMaxLikersPerFilm(), filmId, userId -> {
+            LongHashSet films = likedFilmsByUser.get(userId);
+            if (films != null) {
+                films.forEachSample(properties.getMaxLikesPerUser(), userId, other -> {
+                    if (other != filmId) {
+                        coLikes.addTo(other, 1);
+                    }
+                });
+            }
+        });
+
+        TopKLongs top = new TopKLongs(properties.getNeighboursPerFilm());
+        coLikes.forEach((other, common) ->
+                top.offer(other, (int) (similarity(common, likes, likeCounts.get(other)) * SCORE_SCALE)));
+        long[] neighbourIds = top.drainSorted();
+        float[] scores = new float[neighbourIds.length];
+        for (int i = 0; i < neighbourIds.length; i++) {
+            scores[i] = (float) similarity(coLikes.get(neighbourIds[i]), likes, likeCounts.get(neighbourIds[i]));
+        }
+        Neighbours old = neighbours.put(filmId, new Neighbours(neighbourIds, scores));
+
+        coLikes.forEach((other, common) ->
+                putNeighbour(other, filmId, (float) similarity(common, likes, likeCounts.get(other))));
+        if (old != null) {
+            for (long other : old.filmIds()) {
+                if (coLikes.get(other) == 0) {
+                    putNeighbour(other, filmId, 0);
+                }
+            }
+        }
+    }
+
+    // Обновляет, добавляет или (при нулевом сходстве) убирает соседа в строке фильма
+    private void putNeighbour(long filmId, long neighbourId, float score) {
+        Neighbours row = neighbours.get(filmId);
+        int capacity = properties.getNeighboursPerFilm();
+        List<long[]> entries = new ArrayList<>(capacity + 1);
+        boolean present = false;
+        if (row != null) {
+            for (int i = 0; i < row.filmIds().length; i++) {
+                if (row.filmIds()[i] == neighbourId) {
+                    present = true;
+                } else {
+                    entries.add(new long[]{row.filmIds()[i], Float.floatToIntBits(row.scores()[i])});
+                }
+            }
+        }
+        boolean full = row != null && row.filmIds().length >= capacity && !present;
+        if (score <= 0 && !present
+                || full && score <= row.scores()[row.scores().length - 1]) {
+            return;
+        }
+        if (score > 0) {
+            entries.add(new long[]{neighbourId, Float.floatToIntBits(score)});
+        }
+        entries.sort(Comparator.<long[]>comparingDouble(entry -> -Float.intBitsToFloat((int) entry[1]))
+                .thenComparingLong(entry -> entry[0]));
+        int size = Math.min(entries.size(), capacity);
+        long[] ids = new long[size];
+        float[] scores = new float[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = entries.get(i)[0];
+            scores[i] = Float.intBitsToFloat((int) entries.get(i)[1]);
+        }
+        neighbours.put(filmId, new Neighbours(ids, scores));
+    }
+
+    // Число лайков кандидата могло еще не дойти до индекса, поэтому оно не меньше числа общих
+    private double similarity(int common, int likes, int otherLikes) {
+        if (common == 0) {
+            return 0;
+        }
+        int a = Math.max(likes, common);
+        int b = Math.max(otherLikes, common);
+        return switch (properties.getSimilarity()) {
+            case COSINE -> common / Math.sqrt((double) a * b);
+            case JACCARD -> (double) common / (a + b - common);
+        };
+    }
+
+    /**
+     * Снимок графа лайков на время полного пересчета: фильмы пронумерованы подряд, фильмы пользователя -
+     * отрезок общего массива номеров. Лайки в памяти могут меняться между проходами, поэтому конец отрезка
+     * хранится отдельно и переполнение отбрасывается: такие лайки придут событиями.
+     */
+    private static final class LikeGraph {
+        private final long[] filmIds;
+        private final LongHashSet[] likers;
+        private final int[] likes;
+        // id пользователя -> его номер + 1, ноль означает отсутствие
+        private final LongIntHashMap userSlots;
+        private final long[] userIds;
+        private final int[] offsets;
+        private final int[] ends;
+        private final int[] films;
+
+        private LikeGraph(List<Long> ids, List<LongHashSet> filmLikers, LongIntHashMap userDegrees) {
+            filmIds = ids.stream().mapToLong(Long::longValue).toArray();
+            likers = filmLikers.toArray(new LongHashSet[0]);
+            likes = new int[filmIds.length];
+
+            userSlots = new LongIntHashMap(userDegrees.size());
+            userIds = new long[userDegrees.size()];
+            offsets = new int[userIds.length + 1];
+            int[] slot = {0};
+            userDegrees.forEach((userId, degree) -> {
+                userIds[slot[0]] = userId;
+                userSlots.addTo(userId, slot[0] + 1);
+                offsets[slot[0] + 1] = offsets[slot[0]] + degree;
+                slot[0]++;
+            });
+            ends = Arrays.copyOf(offsets, userIds.length);
+            films = new int[offsets[userIds.length]];
+            for (int i = 0; i < filmIds.length; i++) {
+                int index = i;
+                likes[i] = likers[i].size();
+                likers[i].forEachLong(userId -> {
+                    int user = userSlots.get(userId) - 1;
+                    if (user >= 0 && ends[user] < offsets[user + 1]) {
+                        films[ends[user]++] = index;
+                    }
+                });
+            }
+        }
+
+        private Map<Long, LongHashSet> likedFilmsByUser() {
+            Map<Long, LongHashSet> byUser = new ConcurrentHashMap<>(userIds.length * 4 / 3 + 1);
+            for (int user = 0; user < userIds.length; user++) {
+                LongHashSet userFilms = new LongHashSet(ends[user] - offsets[user]);
+                for (int i = offsets[user]; i < ends[user]; i++) {
+                    userFilms.add(filmIds[films[i]]);
+                }
+                byUser.put(userIds[user], userFilms);
+            }
+            return byUser;
+        }
+    }
+
+    private static final class CoLikeCounters {
+        private final int[] coLikes;
+        private final int[] touched;
+        private int touchedCount;
+
+        private CoLikeCounters(int films) {
+            coLikes = new int[films];
+            touched = new int[films];
+        }
+    }
+
+    private final class RowsTask extends RecursiveAction {
+        private static final int LEAF_SIZE = 256;
+
+        private final LikeGraph graph;
+        private final Neighbours[] rows;
+        private final Queue<CoLikeCounters> counters;
+        private final int from;
+        private final int to;
+
+        private RowsTask(LikeGraph graph, Neighbours[] rows, Queue<CoLikeCounters> counters, int from, int to) {
+            this.graph = graph;
+            this.rows = rows;
+            this.counters = counters;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_SIZE) {
+                CoLikeCounters local = counters.poll();
+                if (local == null) {
+                    local = new CoLikeCounters(rows.length);
+                }
+                for (int i = from; i < to; i++) {
+                    rows[i] = row(i, graph, local);
+                }
+                counters.offer(local);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RowsTask(graph, rows, counters, from, middle),
+                    new RowsTask(graph, rows, counters, middle, to));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package ru.yandex.practicum.filmorate.service.recommendation;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.config.RecommendationProperties;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.util.LongHashSet;
+import ru.yandex.practicum.filmorate.util.LongIntHashMap;
+import ru.yandex.practicum.filmorate.util.TopKLongs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Рекомендации по готовым строкам FilmSimilarityIndex: похожие фильмы - строка фильма,
+ * рекомендации пользователю - сумма сходств по строкам лайкнутых им фильмов без уже лайкнутых.
+ */
+@Service
+@RequiredArgsConstructor
+public class RecommendationService {
+
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final FilmSimilarityIndex index;
+    private final RecommendationProperties properties;
+
+    public List<Film> findSimilarFilms(Long filmId, int limit) {
+        validateLimit(limit);
+        if (filmStorage.findFilmById(filmId) == null) {
+            throw new NotFoundException("Фильм не найден.");
+        }
+        FilmSimilarityIndex.Neighbours neighbours = index.findNeighbours(filmId);
+        return neighbours == null ? List.of() : loadFilms(neighbours.filmIds(), limit);
+    }
+
+    // Пока у пользователя нет лайков, рекомендуются популярные фильмы
+    public List<Film> findRecommendations(Long userId, int limit) {
+        validateLimit(limit);
+        if (userStorage.findUserById(userId) == null) {
+            throw new NotFoundException("Пользователь не найден.");
+        }
+        LongHashSet liked = index.findLikedFilms(userId);
+        if (liked == null || liked.isEmpty()) {
+            return new ArrayList<>(filmStorage.findLikedFilm(limit));
+        }
+
+        LongIntHashMap scores = new LongIntHashMap();
+        liked.forEachSample(properties.getMaxLikesPerUser(), userId, filmId -> {
+            FilmSimilarityIndex.Neighbours neighbours = index.findNeighbours(filmId);
+            if (neighbours == null) {
+                return;
+            }
+            for (int i = 0; i < neighbours.filmIds().length; i++) {
+                long candidate = neighbours.filmIds()[i];
+                if (!liked.contains(candidate)) {
+                    scores.addTo(candidate, Math.round(neighbours.scores()[i] * FilmSimilarityIndex.SCORE_SCALE));
+                }
+            }
+        });
+        TopKLongs top = new TopKLongs(limit);
+        scores.forEach(top::offer);
+        return loadFilms(top.drainSorted(), limit);
+    }
+
+    private void validateLimit(int limit) {
+        if (limit <= 0 || limit > properties.getMaxLimit()) {
+            throw new ValidationException("Параметр limit должен быть от 1 до " + properties.getMaxLimit());
+        }
+    }
+
+    // Строки пересчитываются не мгновенно, поэтому удаленные с тех пор фильмы пропускаются
+    private List<Film> loadFilms(long[] filmIds, int limit) {
+        List<Film> films = new ArrayList<>(Math.min(filmIds.length, limit));
+        for (int i = 0; i < filmIds.length && films.size() < limit; i++) {
+            Film film = filmStorage.findFilmById(filmIds[i]);
+            if (film != null) {
+                films.add(film);
+            }
+        }
+        return films;
+    }
+}
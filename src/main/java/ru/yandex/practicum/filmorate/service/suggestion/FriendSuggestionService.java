@@ -0,0 +1,128 @@
+package ru.yandex.practicum.filmorate.service.suggestion;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.config.SuggestionProperties;
+import ru.yandex.practicum.filmorate.event.FriendshipChangedEvent;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.DTO.FriendSuggestion;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.util.LongIntHashMap;
+import ru.yandex.practicum.filmorate.util.SortedLongs;
+import ru.yandex.practicum.filmorate.util.TopKLongs;
+
+import java.util.*;
+
+/**
+ * "Возможно, вы знакомы": не-друзья по числу общих друзей. Обход друзей друзей ограничен: у пользователя
+ * берется не больше maxFriends друзей, у каждого друга - не больше hubSampleSize его друзей, поэтому
+ * для хабов счет общих друзей приблизительный. Итоговое число общих друзей в ответе точное.
+ */
+@Service
+@Slf4j
+public class FriendSuggestionService {
+
+    private final UserStorage userStorage;
+    private final SuggestionProperties properties;
+    // id пользователя -> кандидаты от лучшего к худшему
+    private final Cache<Long, long[]> precomputed;
+
+    public FriendSuggestionService(UserStorage userStorage, SuggestionProperties properties) {
+        this.userStorage = userStorage;
+        this.properties = properties;
+        this.precomputed = Caffeine.newBuilder()
+                .maximumWeight(properties.getPrecomputedMaxIds())
+                .<Long, long[]>weigher((userId, candidates) -> Math.max(1, candidates.length))
+                .build();
+    }
+
+    public List<FriendSuggestion> findSuggestions(Long userId, int limit) {
+        if (limit <= 0 || limit > properties.getMaxLimit()) {
+            throw new ValidationException("Параметр limit должен быть от 1 до " + properties.getMaxLimit());
+        }
+        long[] friends = userStorage.findFriendIds(userId);
+        if (friends == null) {
+            throw new NotFoundException("Пользователь не найден");
+        }
+
+        long[] ranked = properties.isPrecompute()
+                ? precomputed.get(userId, id -> rank(userId, friends, properties.getMaxLimit()))
+                : rank(userId, friends, limit);
+
+        // Готовый список мог пересчитаться до последнего изменения дружбы: друзья и сам пользователь отсеиваются
+        long[] selected = Arrays.stream(ranked)
+                .filter(id -> id != userId && !SortedLongs.contains(friends, id))
+                .limit(limit)
+                .toArray();
+
+        List<FriendSuggestion> suggestions = new ArrayList<>(selected.length);
+        for (User candidate : userStorage.findUsersByIds(selected)) {
+            long[] candidateFriends = userStorage.findFriendIds(candidate.getId());
+            int mutualFriends = candidateFriends == null ? 0 : SortedLongs.intersectionSize(friends, candidateFriends);
+            suggestions.add(new FriendSuggestion(candidate, mutualFriends));
+        }
+        suggestions.sort(Comparator.comparingInt(FriendSuggestion::getMutualFriends).reversed()
+                .thenComparing(suggestion -> suggestion.getUser().getId()));
+        return suggestions;
+    }
+
+    // Меняются списки обоих пользователей и всех их друзей: у них появился или пропал кандидат через двоих
+    @EventListener
+    public void onFriendshipChanged(FriendshipChangedEvent event) {
+        if (!properties.isPrecompute()) {
+            return;
+        }
+        invalidateAround(event.userId());
+        invalidateAround(event.friendId());
+    }
+
+    // Друзья друзей берутся массивами из хранилища, без сборки наборов для каждого друга
+    private long[] rank(long userId, long[] friends, int k) {
+        long[] firstHop = sample(friends, properties.getMaxFriends(), userId);
+
+        LongIntHashMap mutualCounts = new LongIntHashMap(
+                (int) Math.min((long) firstHop.length * properties.getHubSampleSize(), 1 << 20));
+        for (long friendId : firstHop) {
+            long[] friendsOfFriend = userStorage.findFriendIds(friendId);
+            if (friendsOfFriend == null) {
+                continue;
+            }
+            // Свое зерно у каждой пары: хаб не отдает всем пользователям одну и ту же выборку
+            SortedLongs.forEachSample(friendsOfFriend, properties.getHubSampleSize(), friendId * 31 + userId,
+                    candidate -> {
+                        if (candidate != userId && !SortedLongs.contains(friends, candidate)) {
+                            mutualCounts.addTo(candidate, 1);
+                        }
+                    });
+        }
+
+        TopKLongs top = new TopKLongs(k);
+        mutualCounts.forEach(top::offer);
+        return top.drainSorted();
+    }
+
+    private static long[] sample(long[] ids, int limit, long seed) {
+        if (ids.length <= limit) {
+            return ids;
+        }
+        long[] result = new long[limit];
+        int[] count = {0};
+        SortedLongs.forEachSample(ids, limit, seed, id -> result[count[0]++] = id);
+        return result;
+    }
+
+    private void invalidateAround(long userId) {
+        precomputed.invalidate(userId);
+        long[] friendIds = userStorage.findFriendIds(userId);
+        if (friendIds != null) {
+            for (long friendId : friendIds) {
+                precomputed.invalidate(friendId);
+            }
+        }
+    }
+}
@@ -0,0 +1,512 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.DTO.FilmSearch;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.enums.MpaRating;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище фильмов в БД. Лайки и жанры догружаются одним запросом на всю выборку фильмов.
+ */
+@Component
+@Profile("db")
+@RequiredArgsConstructor
+public class FilmDbStorage implements FilmStorage {
+
+    private static final int STREAM_PAGE_SIZE = 1000;
+
+    private static final String INSERT_FILM = "INSERT INTO films (name, description, release_date, duration, rating_id) "
+            + "VALUES (?, ?, ?, ?, ?)";
+
+    private static final String SELECT_FILMS = "SELECT id, name, description, release_date, duration, rating_id, "
+            + "edit_version FROM films ";
+
+    // Версии в БД переживают перезапуск, а пересоздание базы - нет, поэтому эпоха своя у каждого процесса
+    private final long epoch = ThreadLocalRandom.current().nextLong();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @Override
+    public Collection<Film> findAll() {
+        List<Film> films = jdbcTemplate.query(SELECT_FILMS + "ORDER BY id", this::mapFilm);
+        Map<Long, Film> filmsById = byId(films);
+
+        jdbcTemplate.query("SELECT film_id, user_id FROM film_likes",
+                (RowCallbackHandler) rs -> attachLike(filmsById, rs));
+        jdbcTemplate.query("SELECT fg.film_id, g.id, g.name FROM film_genres fg "
+                        + "JOIN genres g ON g.id = fg.genre_id ORDER BY fg.film_id, g.id",
+                (RowCallbackHandler) rs -> attachGenre(filmsById, rs));
+        return films;
+    }
+
+    @Override
+    public Film findFilmById(Long id) {
+        List<Film> films = jdbcTemplate.query(SELECT_FILMS + "WHERE id = ?", this::mapFilm, id);
+        if (films.isEmpty()) {
+            return null;
+        }
+        loadRelations(films);
+        return films.get(0);
+    }
+
+    @Override
+    public List<Film> findPage(Long after, int limit) {
+        List<Film> films = jdbcTemplate.query(SELECT_FILMS + "WHERE id > ? ORDER BY id LIMIT ?",
+                this::mapFilm, after == null ? 0 : after, limit);
+        loadRelations(films);
+        return films;
+    }
+
+    @Override
+    public Stream<Film> streamAll() {
+        Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM films", Long.class);
+        if (maxId == null) {
+            return Stream.empty();
+        }
+        return Stream.iterate(findPage(null, STREAM_PAGE_SIZE),
+                        page -> !page.isEmpty(),
+                        page -> findPage(page.get(page.size() - 1).getId(), STREAM_PAGE_SIZE))
+                .flatMap(List::stream)
+                .takeWhile(film -> film.getId() <= maxId);
+    }
+
+    @Override
+    public Collection<Film> findLikedFilm(int count) {
+        List<Film> films = jdbcTemplate.query(SELECT_FILMS + "ORDER BY likes_count DESC, id LIMIT ?",
+                this::mapFilm, count);
+        loadRelations(films);
+        return films;
+    }
+
+    @Override
+    public Collection<Film> findLikedFilmByGenres(int count, Set<Long> genreIds) {
+        List<Object> args = new ArrayList<>(genreIds);
+        args.add(count);
+        List<Film> films = jdbcTemplate.query(SELECT_FILMS + genreFilter(genreIds.size())
+                + "ORDER BY likes_count DESC, id LIMIT ?", this::mapFilm, args.toArray());
+        loadRelations(films);
+        return films;
+    }
+
+    // Индекс для условий выбирает H2: по дате, продолжительности, рейтингу или по популярности.
+    // Слова q ищутся подстрокой в названии или описании, без опечаток; RELEVANCE здесь - по лайкам
+    @Override
+    public List<Film> search(FilmSearch search) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        for (String token : FilmTextIndex.queryTokens(search.getQ())) {
+            // В словах только буквы и цифры, экранировать для LIKE нечего
+            conditions.add("(REPLACE(LOWER(name), 'ё', 'е') LIKE ? "
+                    + "OR REPLACE(LOWER(description), 'ё', 'е') LIKE ?)");
+            String pattern = "%" + token + "%";
+            args.add(pattern);
+            args.add(pattern);
+        }
+        if (search.getReleasedFrom() != null) {
+            conditions.add("release_date >= ?");
+            args.add(Date.valueOf(search.getReleasedFrom()));
+        }
+        if (search.getReleasedTo() != null) {
+            conditions.add("release_date <= ?");
+            args.add(Date.valueOf(search.getReleasedTo()));
+        }
+        if (search.getMinDuration() != null) {
+            conditions.add("duration >= ?");
+            args.add(search.getMinDuration());
+        }
+        if (search.getMaxDuration() != null) {
+            conditions.add("duration <= ?");
+            args.add(search.getMaxDuration());
+        }
+        if (search.getRating() != null) {
+            conditions.add("rating_id = ?");
+            args.add(search.getRating().ordinal() + 1);
+        }
+        String where = conditions.isEmpty() ? "" : "WHERE " + String.join(" AND ", conditions) + " ";
+        String order = switch (search.getSort()) {
+            case POPULAR, RELEVANCE -> "ORDER BY likes_count DESC, id ";
+            case DATE -> "ORDER BY release_date DESC, id ";
+        };
+        args.add(search.getLimit());
+        List<Film> films = jdbcTemplate.query(SELECT_FILMS + where + order + "LIMIT ?", this::mapFilm, args.toArray());
+        loadRelations(films);
+        return films;
+    }
+
+    @Override
+    public long searchIndexBytes() {
+        return 0;
+    }
+
+    @Override
+    public boolean isLiked(long filmId, long userId) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM film_likes WHERE film_id = ? AND user_id = ?)",
+                Boolean.class, filmId, userId));
+    }
+
+    // Счетчик меняется в той же транзакции и только если строка лайка действительно добавилась или удалилась
+    @Override
+    @Transactional
+    public boolean addLike(long filmId, long userId) {
+        int inserted;
+        try {
+            inserted = jdbcTemplate.update("INSERT INTO film_likes (film_id, user_id) SELECT ?, ? "
+                    + "WHERE NOT EXISTS (SELECT 1 FROM film_likes WHERE film_id = ? AND user_id = ?)",
+                    filmId, userId, filmId, userId);
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+        if (inserted > 0) {
+            jdbcTemplate.update("UPDATE films SET likes_count = likes_count + 1, version = version + 1 WHERE id = ?", filmId);
+        }
+        return inserted > 0;
+    }
+
+    @Override
+    @Transactional
+    public boolean removeLike(long filmId, long userId) {
+        int deleted = jdbcTemplate.update("DELETE FROM film_likes WHERE film_id = ? AND user_id = ?", filmId, userId);
+        if (deleted > 0) {
+            jdbcTemplate.update("UPDATE films SET likes_count = likes_count - 1, version = version + 1 WHERE id = ?", filmId);
+        }
+        return deleted > 0;
+    }
+
+    // Вызовы addLike/removeLike изнутри идут мимо прокси и выполняются в общей транзакции пачки
+    @Override
+    @Transactional
+    public boolean[] applyLikes(List<LikeChange> changes) {
+        boolean[] changed = new boolean[changes.size()];
+        for (int i = 0; i < changed.length; i++) {
+            LikeChange change = changes.get(i);
+            changed[i] = change.add()
+                    ? addLike(change.filmId(), change.userId())
+                    : removeLike(change.filmId(), change.userId());
+        }
+        return changed;
+    }
+
+    @Override
+    @Transactional
+    public Film create(Film film) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        try {
+            jdbcTemplate.update(connection -> {
+                PreparedStatement ps = connection.prepareStatement(INSERT_FILM, Statement.RETURN_GENERATED_KEYS);
+                setFilmColumns(ps, film);
+                return ps;
+            }, keyHolder);
+        } catch (DuplicateKeyException e) {
+            throw new ValidationException("Фильм уже есть на сайте");
+        }
+        film.setId(Objects.requireNonNull(keyHolder.getKey()).longValue());
+        film.setVersion(1);
+
+        insertGenres(List.of(film));
+        insertLikes(List.of(film));
+        return film;
+    }
+
+    // Все фильмы, жанры и лайки пакета - тремя пакетными вставками в одной транзакции. Названия, уже занятые
+    // в БД, отсеиваются заранее; если название заняли между проверкой и вставкой, пакет фильмов откатывается
+    // до точки сохранения и вставляется по одному, занятые пропускаются
+    @Override
+    @Transactional
+    public List<Film> createAll(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
+        }
+        Set<String> taken = new HashSet<>(namedJdbcTemplate.queryForList(
+                "SELECT name FROM films WHERE name IN (:names)",
+                new MapSqlParameterSource("names", films.stream().map(Film::getName).toList()), String.class));
+        List<Film> fresh = films.stream().filter(film -> !taken.contains(film.getName())).toList();
+
+        TransactionStatus transaction = TransactionAspectSupport.currentTransactionStatus();
+        Object savepoint = transaction.createSavepoint();
+        List<Film> created;
+        try {
+            insertFilms(fresh);
+            created = fresh;
+        } catch (DuplicateKeyException e) {
+            transaction.rollbackToSavepoint(savepoint);
+            created = new ArrayList<>(fresh.size());
+            for (Film film : fresh) {
+                if (insertFilmIfAbsent(film, transaction)) {
+                    created.add(film);
+                }
+            }
+        }
+        transaction.releaseSavepoint(savepoint);
+
+        insertGenres(created);
+        insertLikes(created);
+        return created;
+    }
+
+    private void insertFilms(List<Film> films) {
+        if (films.isEmpty()) {
+            return;
+        }
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(INSERT_FILM, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        setFilmColumns(ps, films.get(i));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return films.size();
+                    }
+                }, keyHolder);
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        for (int i = 0; i < films.size(); i++) {
+            films.get(i).setId(((Number) keys.get(i).values().iterator().next()).longValue());
+            films.get(i).setVersion(1);
+        }
+    }
+
+    private boolean insertFilmIfAbsent(Film film, TransactionStatus transaction) {
+        Object savepoint = transaction.createSavepoint();
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        try {
+            jdbcTemplate.update(connection -> {
+                PreparedStatement ps = connection.prepareStatement(INSERT_FILM, Statement.RETURN_GENERATED_KEYS);
+                setFilmColumns(ps, film);
+                return ps;
+            }, keyHolder);
+        } catch (DuplicateKeyException e) {
+            transaction.rollbackToSavepoint(savepoint);
+            return false;
+        } finally {
+            transaction.releaseSavepoint(savepoint);
+        }
+        film.setId(Objects.requireNonNull(keyHolder.getKey()).longValue());
+        film.setVersion(1);
+        return true;
+    }
+
+    // Проверка версии - условие в UPDATE: приложение ничего не блокирует, строку на время запроса держит БД
+    @Override
+    @Transactional
+    public Film update(Film film, long expectedVersion) {
+        boolean anyVersion = expectedVersion == ANY_VERSION;
+        int updated;
+        try {
+            updated = jdbcTemplate.update(connection -> {
+                PreparedStatement ps = connection.prepareStatement(
+                        "UPDATE films SET name = ?, description = ?, release_date = ?, duration = ?, rating_id = ?, "
+                                + "version = version + 1, edit_version = edit_version + 1 WHERE id = ?"
+                                + (anyVersion ? "" : " AND edit_version = ?"));
+                setFilmColumns(ps, film);
+                ps.setLong(6, film.getId());
+                if (!anyVersion) {
+                    ps.setLong(7, expectedVersion);
+                }
+                return ps;
+            });
+        } catch (DuplicateKeyException e) {
+            throw new ValidationException("Фильм с таким названием уже существует");
+        }
+        if (updated == 0) {
+            if (anyVersion || findFilmById(film.getId()) == null) {
+                throw new NotFoundException("Фильм не найден");
+            }
+            return null;
+        }
+
+        jdbcTemplate.update("DELETE FROM film_genres WHERE film_id = ?", film.getId());
+        insertGenres(List.of(film));
+        Film newFilm = film.copy();
+        newFilm.setVersion(jdbcTemplate.queryForObject("SELECT edit_version FROM films WHERE id = ?", Long.class,
+                film.getId()));
+        return newFilm;
+    }
+
+    @Override
+    public boolean isExistingFilm(String filmName) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM films WHERE name = ?)", Boolean.class, filmName));
+    }
+
+    @Override
+    public long count() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM films", Long.class);
+    }
+
+    @Override
+    public long countLikes() {
+        return jdbcTemplate.queryForObject("SELECT COALESCE(SUM(likes_count), 0) FROM films", Long.class);
+    }
+
+    @Override
+    public int maxLikes() {
+        return jdbcTemplate.queryForObject("SELECT COALESCE(MAX(likes_count), 0) FROM films", Integer.class);
+    }
+
+    @Override
+    public long findFilmVersion(Long id) {
+        List<Long> versions = jdbcTemplate.queryForList("SELECT version FROM films WHERE id = ?", Long.class, id);
+        return versions.isEmpty() ? -1 : VersionTable.mix(VersionTable.mix(epoch, id), versions.get(0));
+    }
+
+    @Override
+    public long findPopularVersion(int count) {
+        long[] version = {epoch};
+        jdbcTemplate.query("SELECT id, version FROM films ORDER BY likes_count DESC, id LIMIT ?",
+                (RowCallbackHandler) rs -> version[0] = VersionTable.mix(
+                        VersionTable.mix(version[0], rs.getLong("id")), rs.getLong("version")), count);
+        return version[0];
+    }
+
+    @Override
+    public long findPopularVersionByGenres(int count, Set<Long> genreIds) {
+        List<Object> args = new ArrayList<>(genreIds);
+        args.add(count);
+        long[] version = {epoch};
+        jdbcTemplate.query("SELECT id, version FROM films " + genreFilter(genreIds.size())
+                        + "ORDER BY likes_count DESC, id LIMIT ?",
+                (RowCallbackHandler) rs -> version[0] = VersionTable.mix(
+                        VersionTable.mix(version[0], rs.getLong("id")), rs.getLong("version")), args.toArray());
+        return version[0];
+    }
+
+
+    // Фильмы идут по индексу популярности, жанр проверяется по первичному ключу film_genres
+    private static String genreFilter(int genres) {
+        if (genres == 0) {
+            return "";
+        }
+        return "WHERE " + String.join(" AND ", Collections.nCopies(genres,
+                "EXISTS (SELECT 1 FROM film_genres fg WHERE fg.film_id = films.id AND fg.genre_id = ?)")) + " ";
+    }
+
+    private void insertGenres(List<Film> films) {
+        List<long[]> rows = new ArrayList<>();
+        for (Film film : films) {
+            for (Genre genre : film.getGenres()) {
+                rows.add(new long[]{film.getId(), genre.getId()});
+            }
+        }
+        batchUpdatePairs("INSERT INTO film_genres (film_id, genre_id) VALUES (?, ?)", rows);
+    }
+
+    private void insertLikes(List<Film> films) {
+        List<long[]> rows = new ArrayList<>();
+        List<long[]> counters = new ArrayList<>();
+        for (Film film : films) {
+            long[] likes = film.getLikedUsersIds().toLongArray();
+            for (long userId : likes) {
+                rows.add(new long[]{film.getId(), userId});
+            }
+            if (likes.length > 0) {
+                counters.add(new long[]{likes.length, film.getId()});
+            }
+        }
+        batchUpdatePairs("INSERT INTO film_likes (film_id, user_id) VALUES (?, ?)", rows);
+        batchUpdatePairs("UPDATE films SET likes_count = ? WHERE id = ?", counters);
+    }
+
+    private void batchUpdatePairs(String sql, List<long[]> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(sql, rows, rows.size(), (ps, row) -> {
+            ps.setLong(1, row[0]);
+            ps.setLong(2, row[1]);
+        });
+    }
+
+    // Лайки и жанры для всей выборки - по одному запросу с IN вместо запроса на каждый фильм
+    private void loadRelations(List<Film> films) {
+        if (films.isEmpty()) {
+            return;
+        }
+        Map<Long, Film> filmsById = byId(films);
+        MapSqlParameterSource params = new MapSqlParameterSource("ids", filmsById.keySet());
+
+        namedJdbcTemplate.query("SELECT film_id, user_id FROM film_likes WHERE film_id IN (:ids)",
+                params, (RowCallbackHandler) rs -> attachLike(filmsById, rs));
+        namedJdbcTemplate.query("SELECT fg.film_id, g.id, g.name FROM film_genres fg "
+                        + "JOIN genres g ON g.id = fg.genre_id WHERE fg.film_id IN (:ids) ORDER BY fg.film_id, g.id",
+                params, (RowCallbackHandler) rs -> attachGenre(filmsById, rs));
+    }
+
+    private static Map<Long, Film> byId(List<Film> films) {
+        Map<Long, Film> filmsById = new HashMap<>(films.size() * 2);
+        for (Film film : films) {
+            filmsById.put(film.getId(), film);
+        }
+        return filmsById;
+    }
+
+    private static void attachLike(Map<Long, Film> filmsById, ResultSet rs) throws SQLException {
+        Film film = filmsById.get(rs.getLong("film_id"));
+        if (film != null) {
+            film.getLikedUsersIds().add(rs.getLong("user_id"));
+        }
+    }
+
+    private static void attachGenre(Map<Long, Film> filmsById, ResultSet rs) throws SQLException {
+        Film film = filmsById.get(rs.getLong("film_id"));
+        if (film != null) {
+            film.getGenres().add(new Genre(rs.getLong("id"), rs.getString("name")));
+        }
+    }
+
+    private static void setFilmColumns(PreparedStatement ps, Film film) throws SQLException {
+        ps.setString(1, film.getName());
+        ps.setString(2, film.getDescription());
+        ps.setDate(3, film.getReleaseDate() == null ? null : Date.valueOf(film.getReleaseDate()));
+        ps.setInt(4, film.getDuration());
+        if (film.getRating() == null) {
+            ps.setNull(5, Types.INTEGER);
+        } else {
+            ps.setInt(5, film.getRating().ordinal() + 1);
+        }
+    }
+
+    private Film mapFilm(ResultSet rs, int rowNum) throws SQLException {
+        Film film = new Film();
+        film.setId(rs.getLong("id"));
+        film.setName(rs.getString("name"));
+        film.setDescription(rs.getString("description"));
+        Date releaseDate = rs.getDate("release_date");
+        film.setReleaseDate(releaseDate == null ? null : releaseDate.toLocalDate());
+        film.setDuration(rs.getInt("duration"));
+        int ratingId = rs.getInt("rating_id");
+        film.setRating(rs.wasNull() ? null : MpaRating.values()[ratingId - 1]);
+        film.setGenres(new LinkedHashSet<>());
+        film.setVersion(rs.getLong("edit_version"));
+        return film;
+    }
+}
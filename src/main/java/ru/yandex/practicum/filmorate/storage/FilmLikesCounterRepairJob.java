@@ -0,0 +1,54 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Пересчитывает films.likes_count по film_likes диапазонами id, каждый диапазон - отдельная транзакция.
+ */
+@Component
+@Profile("db")
+@Slf4j
+public class FilmLikesCounterRepairJob {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    public FilmLikesCounterRepairJob(JdbcTemplate jdbcTemplate,
+                                     TransactionTemplate transactionTemplate,
+                                     @Value("${filmorate.likes-counter.repair-batch-size:10000}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(cron = "${filmorate.likes-counter.repair-cron:-}")
+    public int repair() {
+        Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM films", Long.class);
+        if (maxId == null) {
+            return 0;
+        }
+
+        int repaired = 0;
+        for (long start = 1; start <= maxId; start += batchSize) {
+            long from = start;
+            long to = start + batchSize - 1;
+            Integer updated = transactionTemplate.execute(status -> jdbcTemplate.update(
+                    "UPDATE films f SET likes_count = (SELECT COUNT(*) FROM film_likes fl WHERE fl.film_id = f.id), "
+                            + "version = version + 1 "
+                            + "WHERE f.id BETWEEN ? AND ? "
+                            + "AND f.likes_count <> (SELECT COUNT(*) FROM film_likes fl WHERE fl.film_id = f.id)",
+                    from, to));
+            repaired += updated == null ? 0 : updated;
+        }
+
+        log.info("Пересчет счетчиков лайков завершен: исправлено фильмов={}", repaired);
+        return repaired;
+    }
+}
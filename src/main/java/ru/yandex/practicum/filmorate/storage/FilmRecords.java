@@ -0,0 +1,109 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.enums.MpaRating;
+import ru.yandex.practicum.filmorate.storage.persistence.BufferInput;
+import ru.yandex.practicum.filmorate.util.LongHashSet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import static ru.yandex.practicum.filmorate.storage.persistence.BinaryCodec.*;
+
+// Двоичный формат фильмов в журнале и снимке InMemoryFilmStorage
+final class FilmRecords {
+
+    static final byte CREATE = 1;
+    static final byte UPDATE = 2;
+    static final byte ADD_LIKE = 3;
+    static final byte REMOVE_LIKE = 4;
+
+    private static final MpaRating[] RATINGS = MpaRating.values();
+
+    private FilmRecords() {
+    }
+
+    static byte[] create(Film film) {
+        return encode(CREATE, film, true);
+    }
+
+    static byte[] update(Film film) {
+        return encode(UPDATE, film, false);
+    }
+
+    static byte[] like(byte type, long filmId, long userId) {
+        return ByteBuffer.allocate(17).put(type).putLong(filmId).putLong(userId).array();
+    }
+
+    static void writeFilm(DataOutput out, Film film, boolean withLikes) throws IOException {
+        out.writeLong(film.getId());
+        writeString(out, film.getName());
+        writeString(out, film.getDescription());
+        writeDate(out, film.getReleaseDate());
+        out.writeInt(film.getDuration());
+        out.writeByte(film.getRating() == null ? -1 : film.getRating().ordinal());
+
+        Set<Genre> genres = film.getGenres() == null ? Set.of() : film.getGenres();
+        out.writeInt(genres.size());
+        for (Genre genre : genres) {
+            out.writeLong(genre.getId() == null ? 0 : genre.getId());
+            writeString(out, genre.getName());
+        }
+
+        if (withLikes) {
+            long[] likes = film.getLikedUsersIds().toLongArray();
+            out.writeInt(likes.length);
+            for (long userId : likes) {
+                out.writeLong(userId);
+            }
+        }
+    }
+
+    static Film readFilm(BufferInput in, boolean withLikes) {
+        Film film = new Film();
+        film.setId(in.getLong());
+        film.setName(readString(in));
+        film.setDescription(readString(in));
+        film.setReleaseDate(readDate(in));
+        film.setDuration(in.getInt());
+        byte rating = in.get();
+        film.setRating(rating < 0 ? null : RATINGS[rating]);
+
+        int genreCount = in.getInt();
+        Set<Genre> genres = new HashSet<>(genreCount * 2);
+        for (int i = 0; i < genreCount; i++) {
+            long genreId = in.getLong();
+            genres.add(new Genre(genreId == 0 ? null : genreId, readString(in)));
+        }
+        film.setGenres(genres);
+
+        if (withLikes) {
+            int likeCount = in.getInt();
+            LongHashSet likes = new LongHashSet(likeCount);
+            for (int i = 0; i < likeCount; i++) {
+                likes.add(in.getLong());
+            }
+            film.setLikedUsersIds(likes);
+        }
+        return film;
+    }
+
+    private static byte[] encode(byte type, Film film, boolean withLikes) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(type);
+            writeFilm(out, film, withLikes);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.model.DTO.FilmSearch;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.util.LongHashSet;
+import ru.yandex.practicum.filmorate.util.TopKLongs;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+/**
+ * Вторичные индексы фильмов для поиска: дата выхода (день от эпохи), продолжительность и рейтинг MPA.
+ * Ключ индекса ссылается прямо на фильм, чтобы кандидата не приходилось искать в каталоге.
+ * Фильм без даты или рейтинга в соответствующий индекс не попадает.
+ * <p>
+ * Планировщик выбирает самый узкий из диапазонов условий и проверяет остальные условия на самих фильмах,
+ * так что работа пропорциональна числу кандидатов, а не размеру каталога. Если все диапазоны широкие,
+ * дешевле идти в порядке сортировки и остановиться на limit подходящих фильмах.
+ */
+class FilmSearchIndex {
+
+    // Во сколько раз шаг обхода по популярности дороже шага по индексу: там фильм еще ищется в каталоге по id
+    private static final int POPULARITY_STEP_COST = 8;
+
+    // Дата хранится с минусом: обход по возрастанию сразу идет от новых фильмов
+    private final NavigableMap<Entry, Film> releaseDates = new ConcurrentSkipListMap<>();
+    private final NavigableMap<Entry, Film> durations = new ConcurrentSkipListMap<>();
+    private final NavigableMap<Entry, Film> ratings = new ConcurrentSkipListMap<>();
+
+    void add(Film film) {
+        Long releaseKey = releaseKey(film);
+        if (releaseKey != null) {
+            releaseDates.put(new Entry(releaseKey, film.getId()), film);
+        }
+        durations.put(new Entry(film.getDuration(), film.getId()), film);
+        if (film.getRating() != null) {
+            ratings.put(new Entry(film.getRating().ordinal(), film.getId()), film);
+        }
+    }
+
+    void remove(Film film) {
+        Long releaseKey = releaseKey(film);
+        if (releaseKey != null) {
+            releaseDates.remove(new Entry(releaseKey, film.getId()));
+        }
+        durations.remove(new Entry(film.getDuration(), film.getId()));
+        if (film.getRating() != null) {
+            ratings.remove(new Entry(film.getRating().ordinal(), film.getId()));
+        }
+    }
+
+    // Новые ключи добавляются (или получают новую версию фильма) раньше удаления старых,
+    // чтобы читатель не потерял фильм
+    void move(Film oldFilm, Film newFilm) {
+        add(newFilm);
+        Long oldKey = releaseKey(oldFilm);
+        if (oldKey != null && !oldKey.equals(releaseKey(newFilm))) {
+            releaseDates.remove(new Entry(oldKey, oldFilm.getId()));
+        }
+        if (oldFilm.getDuration() != newFilm.getDuration()) {
+            durations.remove(new Entry(oldFilm.getDuration(), oldFilm.getId()));
+        }
+        if (oldFilm.getRating() != null && oldFilm.getRating() != newFilm.getRating()) {
+            ratings.remove(new Entry(oldFilm.getRating().ordinal(), oldFilm.getId()));
+        }
+    }
+
+    /**
+     * @param catalogSize  число фильмов в каталоге, для оценки стоимости
+     * @param byPopularity id фильмов в порядке популярности, берется только при обходе по популярности
+     */
+    List<Film> search(FilmSearch search, long catalogSize, Supplier<Iterator<Long>> byPopularity,
+                      LongFunction<Film> films) {
+        List<NavigableMap<Entry, Film>> ranges = ranges(search);
+        int stepCost = search.getSort() == FilmSearch.Sort.DATE ? 1 : POPULARITY_STEP_COST;
+        NavigableMap<Entry, Film> driving = ranges.isEmpty()
+                ? null
+                : smallest(ranges, cap(search.getLimit(), catalogSize, stepCost));
+        if (driving != null) {
+            return collectTop(driving, search, films);
+        }
+        if (search.getSort() == FilmSearch.Sort.DATE) {
+            return collectOrdered(dateRange(search).values().iterator(), search);
+        }
+        Iterator<Long> ids = byPopularity.get();
+        return collectOrdered(new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return ids.hasNext();
+            }
+
+            @Override
+            public Film next() {
+                return films.apply(ids.next());
+            }
+        }, search);
+    }
+
+    private List<NavigableMap<Entry, Film>> ranges(FilmSearch search) {
+        List<NavigableMap<Entry, Film>> ranges = new ArrayList<>(3);
+        if (search.getReleasedFrom() != null || search.getReleasedTo() != null) {
+            ranges.add(dateRange(search));
+        }
+        if (search.getMinDuration() != null || search.getMaxDuration() != null) {
+            ranges.add(range(durations,
+                    search.getMinDuration() == null ? Long.MIN_VALUE : search.getMinDuration(),
+                    search.getMaxDuration() == null ? Long.MAX_VALUE : search.getMaxDuration()));
+        }
+        if (search.getRating() != null) {
+            int rating = search.getRating().ordinal();
+            ranges.add(range(ratings, rating, rating));
+        }
+        return ranges;
+    }
+
+    private NavigableMap<Entry, Film> dateRange(FilmSearch search) {
+        return range(releaseDates,
+                search.getReleasedTo() == null ? Long.MIN_VALUE : -search.getReleasedTo().toEpochDay(),
+                search.getReleasedFrom() == null ? Long.MAX_VALUE : -search.getReleasedFrom().toEpochDay());
+    }
+
+    // Обход в порядке сортировки с фильтром стоит около limit * каталог / кандидаты шагов, обход кандидатов -
+    // их число; с учетом цены шага они равны при кандидатах = sqrt(цена * limit * каталог),
+    // дальше узкий диапазон уже не выгоден
+    private static int cap(int limit, long catalogSize, int stepCost) {
+        return (int) Math.max(limit, Math.sqrt((double) stepCost * limit * catalogSize));
+    }
+
+    // Размеры диапазонов не хранятся: итераторы идут по шагу вперемешку, и первым кончается самый короткий.
+    // Это стоит не больше числа условий на длину самого короткого, а шагов не больше cap
+    private static NavigableMap<Entry, Film> smallest(List<NavigableMap<Entry, Film>> ranges, int cap) {
+        List<Iterator<Entry>> iterators = new ArrayList<>(ranges.size());
+        for (NavigableMap<Entry, Film> range : ranges) {
+            iterators.add(range.keySet().iterator());
+        }
+        for (int step = 0; step <= cap; step++) {
+            for (int i = 0; i < iterators.size(); i++) {
+                Iterator<Entry> iterator = iterators.get(i);
+                if (!iterator.hasNext()) {
+                    return ranges.get(i);
+                }
+                iterator.next();
+            }
+        }
+        return null;
+    }
+
+    // Во время переиндексации фильм может на мгновение встретиться дважды, а его ключ - устареть,
+    // поэтому все условия проверяются на самом фильме
+    private static List<Film> collectTop(NavigableMap<Entry, Film> driving, FilmSearch search,
+                                         LongFunction<Film> films) {
+        TopKLongs top = new TopKLongs(search.getLimit());
+        LongHashSet seen = new LongHashSet();
+        for (Film film : driving.values()) {
+            if (matches(film, search) && seen.add(film.getId())) {
+                top.offer(film.getId(), score(film, search.getSort()));
+            }
+        }
+        long[] ids = top.drainSorted();
+        List<Film> result = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            Film film = films.apply(id);
+            if (film != null) {
+                result.add(film);
+            }
+        }
+        return result;
+    }
+
+    private static List<Film> collectOrdered(Iterator<Film> ordered, FilmSearch search) {
+        List<Film> result = new ArrayList<>(search.getLimit());
+        LongHashSet seen = new LongHashSet();
+        while (result.size() < search.getLimit() && ordered.hasNext()) {
+            Film film = ordered.next();
+            if (film != null && matches(film, search) && seen.add(film.getId())) {
+                result.add(film);
+            }
+        }
+        return result;
+    }
+
+    static boolean matches(Film film, FilmSearch search) {
+        LocalDate releaseDate = film.getReleaseDate();
+        if (releaseDate == null && search.getSort() == FilmSearch.Sort.DATE) {
+            return false;
+        }
+        if (search.getReleasedFrom() != null
+                && (releaseDate == null || releaseDate.isBefore(search.getReleasedFrom()))) {
+            return false;
+        }
+        if (search.getReleasedTo() != null
+                && (releaseDate == null || releaseDate.isAfter(search.getReleasedTo()))) {
+            return false;
+        }
+        if (search.getMinDuration() != null && film.getDuration() < search.getMinDuration()) {
+            return false;
+        }
+        if (search.getMaxDuration() != null && film.getDuration() > search.getMaxDuration()) {
+            return false;
+        }
+        return search.getRating() == null || search.getRating() == film.getRating();
+    }
+
+    private static int score(Film film, FilmSearch.Sort sort) {
+        return switch (sort) {
+            case POPULAR, RELEVANCE -> film.getLikedUsersIds().size();
+            case DATE -> (int) film.getReleaseDate().toEpochDay();
+        };
+    }
+
+    private static NavigableMap<Entry, Film> range(NavigableMap<Entry, Film> index, long from, long to) {
+        if (from > to) {
+            return new ConcurrentSkipListMap<>();
+        }
+        return index.subMap(new Entry(from, Long.MIN_VALUE), true, new Entry(to, Long.MAX_VALUE), true);
+    }
+
+    private static Long releaseKey(Film film) {
+        return film.getReleaseDate() == null ? null : -film.getReleaseDate().toEpochDay();
+    }
+
+    // При равной дате меньший id раньше, как в TopKLongs
+    private record Entry(long value, long filmId) implements Comparable<Entry> {
+        @Override
+        public int compareTo(Entry other) {
+            int byValue = Long.compare(value, other.value);
+            return byValue != 0 ? byValue : Long.compare(filmId, other.filmId);
+        }
+    }
+}
@@ -1,26 +1,84 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import ru.yandex.practicum.filmorate.model.DTO.FilmSearch;
 import ru.yandex.practicum.filmorate.model.Film;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
 
 public interface FilmStorage {
 
+    // expectedVersion для update без проверки версии
+    long ANY_VERSION = -1;
+
+    // Лайк (add) или его снятие для applyLikes
+    record LikeChange(long filmId, long userId, boolean add) {
+    }
+
     public Collection<Film> findAll();
 
     public Film findFilmById(Long id);
 
+    // Фильмы с id больше after в порядке возрастания id
+    public List<Film> findPage(Long after, int limit);
+
+    // Обход каталога по возрастанию id; фильмы, созданные после начала обхода, не попадают.
+    // Это не снимок на момент начала: правки и лайки фильмов, до которых обход не дошел, в него попадают
+    public Stream<Film> streamAll();
+
     public Collection<Film> findLikedFilm(int count);
 
-    public boolean isLiked(Long filmId, Long userId);
+    // Популярные фильмы, у которых есть все жанры из genreIds, в том же порядке, что findLikedFilm
+    public Collection<Film> findLikedFilmByGenres(int count, Set<Long> genreIds);
 
-    public void addLike(Long filmId, Long userId);
+    // Фильмы, подходящие под все условия, в порядке search.sort, не больше search.limit
+    public List<Film> search(FilmSearch search);
+
+    // Оценка памяти индекса поиска по словам, байт; 0, если поиском занимается БД
+    public long searchIndexBytes();
+
+    public boolean isLiked(long filmId, long userId);
+
+    // true, если лайк добавился; повторный лайк ничего не меняет. id примитивные, чтобы декораторы
+    // на горячем пути лайка передавали их дальше без упаковки
+    public boolean addLike(long filmId, long userId);
 
     public Film create(Film film);
 
-    public Film update(Film film);
+    // Создает все фильмы за одну операцию и возвращает созданные в порядке пакета;
+    // фильм, чье название успели занять, пропускается и в ответ не попадает
+    public List<Film> createAll(List<Film> films);
+
+    // Ставит копию film с версией на 1 больше, если версия хранимого фильма равна expectedVersion; иначе null.
+    // Хранимый фильм не меняется, его читатели правку видят только целиком
+    public Film update(Film film, long expectedVersion);
+
+    public default Film update(Film film) {
+        return update(film, ANY_VERSION);
+    }
 
     public boolean isExistingFilm(String filmName);
 
-    void removeLike(Long filmId, Long userId);
+    boolean removeLike(long filmId, long userId);
+
+    // Применяет лайки и их снятия по порядку, как addLike/removeLike, и для каждого возвращает, изменил ли он
+    // что-то. Запись на диск или коммит - один на всю пачку
+    public boolean[] applyLikes(List<LikeChange> changes);
+
+    public long count();
+
+    public long countLikes();
+
+    // Наибольшее число лайков у одного фильма
+    public int maxLikes();
+
+    // Версия фильма для ETag: меняется при каждом изменении фильма или его лайков; -1, если фильма нет
+    public long findFilmVersion(Long id);
+
+    // Версия ответа findLikedFilm(count): меняется, когда меняется состав, порядок или любой фильм из списка
+    public long findPopularVersion(int count);
+
+    public long findPopularVersionByGenres(int count, Set<Long> genreIds);
 }
@@ -0,0 +1,729 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.model.DTO.FilmSearch;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.util.LongIntHashMap;
+import ru.yandex.practicum.filmorate.util.TopKLongs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Полнотекстовый индекс по названию и описанию фильмов.
+ * <p>
+ * Словарь слов отсортирован для поиска по началу слова. У каждого слова есть список документов в виде
+ * разностей соседних номеров в varint. Номера документов только растут: измененный фильм получает новый
+ * документ, поэтому запись в список всегда идет в конец. Когда замененных документов набирается много,
+ * живые документы перенумеровываются подряд и списки пересобираются без замененных. Опечатки ищутся по триграммам словаря (не документов) с проверкой расстоянием
+ * Дамерау-Левенштейна. У документа есть и прямой список его слов, по нему считается совпадение.
+ * <p>
+ * Запрос читает под read-блокировкой, изменения идут под write-блокировкой. Пересборка идет под read-блокировкой
+ * вне блокировок вызывающего, под write-блокировкой только подменяются готовые списки.
+ */
+class FilmTextIndex {
+
+    static final int MAX_QUERY_TOKENS = 8;
+
+    // Вес совпадения слова запроса со словом фильма, в названии вдвое больше
+    private static final int EXACT = 100;
+    private static final int PREFIX = 70;
+    private static final int ONE_TYPO = 50;
+    private static final int TWO_TYPOS = 35;
+    private static final int NAME_FACTOR = 2;
+
+    private static final int MIN_PREFIX_LENGTH = 2;
+    // Для короткого начала слов может быть много: берутся самые частые из первых MAX_PREFIX_SCAN
+    private static final int MAX_PREFIX_TERMS = 50;
+    private static final int MAX_PREFIX_SCAN = 5000;
+    private static final int MIN_TYPO_LENGTH = 4;
+    private static final int TWO_TYPOS_LENGTH = 8;
+    private static final int MAX_TOKEN_LENGTH = 64;
+    private static final int MIN_COMPACTION = 10_000;
+    private static final int MIN_DOCS = 1024;
+    // Запись docByFilm: ключ и значение при заполнении открытой адресации не больше 3/4
+    private static final long FILM_ENTRY_BYTES = 12 * 4 / 3;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<String, Integer> termIds = new TreeMap<>();
+    private final List<Term> terms = new ArrayList<>();
+    // Триграмма (три символа в long) -> слова словаря с ней
+    private final Map<Long, IntList> trigrams = new HashMap<>();
+    // id фильма -> номер документа + 1
+    private LongIntHashMap docByFilm = new LongIntHashMap();
+    private Film[] docs = new Film[MIN_DOCS];
+    // Слова документа по возрастанию: termId << 1, младший бит - слово есть в названии
+    private int[][] forward = new int[MIN_DOCS][];
+    private int docCount;
+    // Документы, которые еще числятся в списках слов, но уже заменены новыми
+    private int staleDocs;
+    // Растет с каждой пересборкой: пересборка, собранная по устаревшим номерам, не ставится
+    private int generation;
+    private final AtomicBoolean compactionDue = new AtomicBoolean();
+    // Оценка занятой памяти меняется вместе со структурами под write-блокировкой, метрика читает ее без блокировки
+    private volatile long bytes = 2 * arrayBytes(MIN_DOCS, 4);
+
+    void add(Film film) {
+        lock.writeLock().lock();
+        try {
+            docByFilm.addTo(film.getId(), newDoc(film) + 1);
+            bytes += FILM_ENTRY_BYTES;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Без изменения текста документ остается прежним, в нем только заменяется фильм.
+    // Пересборку, если она нужна, выполняет compactIfDue после снятия блокировок вызывающего
+    void update(Film oldFilm, Film newFilm) {
+        lock.writeLock().lock();
+        try {
+            int oldDoc = docByFilm.get(newFilm.getId()) - 1;
+            if (oldDoc < 0) {
+                docByFilm.addTo(newFilm.getId(), newDoc(newFilm) + 1);
+                bytes += FILM_ENTRY_BYTES;
+                return;
+            }
+            if (Objects.equals(oldFilm.getName(), newFilm.getName())
+                    && Objects.equals(oldFilm.getDescription(), newFilm.getDescription())) {
+                docs[oldDoc] = newFilm;
+                return;
+            }
+            docs[oldDoc] = null;
+            bytes -= arrayBytes(forward[oldDoc].length, 4);
+            forward[oldDoc] = null;
+            staleDocs++;
+            docByFilm.addTo(newFilm.getId(), newDoc(newFilm) - oldDoc);
+            if (staleDocs >= MIN_COMPACTION && staleDocs * 4L > docCount) {
+                compactionDue.set(true);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Перенумеровывает живые документы и пересобирает списки слов без замененных, если правка это заказала.
+     * Сборка идет под read-блокировкой: поиск продолжается, правки ждут. Правки, успевшие пройти между сборкой
+     * и подменой, дописываются при подмене.
+     */
+    void compactIfDue() {
+        if (!compactionDue.getAndSet(false)) {
+            return;
+        }
+        Compaction compaction;
+        lock.readLock().lock();
+        try {
+            compaction = prepareCompaction();
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            install(compaction);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Фильмы, где нашлись все слова q и выполнено filter, в порядке search.sort.
+     * Если слова редкие, оцениваются все их документы. Если частые - фильмы перебираются по популярности,
+     * и для RELEVANCE перебор останавливается, когда даже лучшее совпадение у следующего фильма
+     * не обгонит последний из отобранных. Перебор не длиннее списка документов самого редкого слова:
+     * не успел остановиться - оцениваются документы, и план стоит не больше двух лучших.
+     *
+     * @param byPopularity id фильмов в порядке популярности, берется только при обходе по популярности
+     */
+    List<Film> search(FilmSearch search, long catalogSize, Supplier<Iterator<Long>> byPopularity,
+                      Predicate<Film> filter) {
+        String[] tokens = queryTokens(search.getQ());
+        if (tokens.length == 0) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            Query query = resolve(tokens);
+            if (query == null) {
+                return List.of();
+            }
+            int limit = search.getLimit();
+            int cap = (int) Math.max(limit, Math.sqrt((double) limit * catalogSize));
+            TopKLongs top = null;
+            if (search.getSort() != FilmSearch.Sort.DATE && query.drivingSize() > cap) {
+                top = walkPopular(query, search.getSort(), limit, byPopularity.get(), filter);
+            }
+            if (top == null) {
+                top = scoreCandidates(query, search.getSort(), limit, filter);
+            }
+            long[] filmIds = top.drainSorted();
+            List<Film> result = new ArrayList<>(filmIds.length);
+            for (long filmId : filmIds) {
+                result.add(docs[docByFilm.get(filmId) - 1]);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Оценка занятой памяти: массивы, объекты и заголовки при сжатых ссылках
+    long estimatedBytes() {
+        return bytes;
+    }
+
+    static String[] queryTokens(String q) {
+        if (q == null) {
+            return new String[0];
+        }
+        Set<String> tokens = new LinkedHashSet<>(tokenize(q));
+        return tokens.stream().limit(MAX_QUERY_TOKENS).toArray(String[]::new);
+    }
+
+    // Строчные буквы, ё как е; разделитель - все, кроме букв и цифр
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean letter = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                tokens.add(normalized.substring(start, Math.min(i, start + MAX_TOKEN_LENGTH)));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private int newDoc(Film film) {
+        if (docCount == docs.length) {
+            docs = Arrays.copyOf(docs, docCount * 2);
+            forward = Arrays.copyOf(forward, docCount * 2);
+            bytes += 2 * (arrayBytes(docs.length, 4) - arrayBytes(docCount, 4));
+        }
+        int doc = docCount++;
+        IntList entries = new IntList(16);
+        for (String token : tokenize(film.getName())) {
+            entries.add(termId(token) << 1 | 1);
+        }
+        for (String token : tokenize(film.getDescription())) {
+            entries.add(termId(token) << 1);
+        }
+        int[] sorted = Arrays.copyOf(entries.items, entries.size);
+        Arrays.sort(sorted);
+        // Из двух записей одного слова остается та, что с названием: она идет второй
+        int unique = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i + 1 < sorted.length && sorted[i + 1] >>> 1 == sorted[i] >>> 1) {
+                continue;
+            }
+            sorted[unique++] = sorted[i];
+        }
+        int[] docTerms = Arrays.copyOf(sorted, unique);
+        long grown = arrayBytes(unique, 4);
+        for (int entry : docTerms) {
+            grown += terms.get(entry >>> 1).append(doc);
+        }
+        bytes += grown;
+        forward[doc] = docTerms;
+        docs[doc] = film;
+        return doc;
+    }
+
+    private int termId(String token) {
+        Integer id = termIds.get(token);
+        if (id != null) {
+            return id;
+        }
+        int newId = terms.size();
+        Term term = new Term(token);
+        terms.add(term);
+        termIds.put(token, newId);
+        // Term, его массив, строка с массивом и узел TreeMap
+        long grown = 32 + arrayBytes(term.postings.length, 1) + 24
+                + arrayBytes(token.length(), isLatin1(token) ? 1 : 2) + 40;
+        for (long trigram : trigrams(token)) {
+            IntList list = trigrams.get(trigram);
+            if (list == null) {
+                list = new IntList(4);
+                trigrams.put(trigram, list);
+                // Узел HashMap, ключ Long и IntList
+                grown += 32 + 16 + 24 + arrayBytes(list.items.length, 4);
+            }
+            int capacity = list.items.length;
+            list.addDistinct(newId);
+            grown += arrayBytes(list.items.length, 4) - arrayBytes(capacity, 4);
+        }
+        bytes += grown;
+        return newId;
+    }
+
+    // Под read-блокировкой: живые документы получают номера подряд в прежнем порядке, поэтому списки
+    // остаются отсортированными. Собранное не видно запросам до install
+    private Compaction prepareCompaction() {
+        int builtDocs = docCount;
+        int[] remap = new int[builtDocs];
+        int live = 0;
+        for (int doc = 0; doc < builtDocs; doc++) {
+            remap[doc] = docs[doc] == null ? -1 : live++;
+        }
+        LongIntHashMap newDocByFilm = new LongIntHashMap(live);
+        for (int doc = 0; doc < builtDocs; doc++) {
+            if (remap[doc] >= 0) {
+                newDocByFilm.addTo(docs[doc].getId(), remap[doc] + 1);
+            }
+        }
+        Term[] compacted = new Term[terms.size()];
+        int[] builtLengths = new int[compacted.length];
+        int[] builtLastDocs = new int[compacted.length];
+        for (int i = 0; i < compacted.length; i++) {
+            Term term = terms.get(i);
+            compacted[i] = new Term(term.text);
+            compacted[i].appendRemapped(term, 0, 0, remap);
+            builtLengths[i] = term.length;
+            builtLastDocs[i] = term.lastDoc;
+        }
+        return new Compaction(generation, builtDocs, remap, live, newDocByFilm, compacted, builtLengths,
+                builtLastDocs);
+    }
+
+    // Под write-блокировкой: документы, слова и замены после сборки дописываются к собранному, фильмы
+    // и прямые списки переносятся по новым номерам. Собранное по устаревшим номерам отбрасывается
+    private void install(Compaction compaction) {
+        if (compaction.generation() != generation) {
+            return;
+        }
+        int[] remap = Arrays.copyOf(compaction.remap(), docCount);
+        int next = compaction.live();
+        for (int doc = compaction.builtDocs(); doc < docCount; doc++) {
+            remap[doc] = docs[doc] == null ? -1 : next++;
+        }
+        int capacity = MIN_DOCS;
+        while (capacity < next) {
+            capacity <<= 1;
+        }
+        Film[] newDocs = new Film[capacity];
+        int[][] newForward = new int[capacity][];
+        int stale = 0;
+        for (int doc = 0; doc < docCount; doc++) {
+            int target = remap[doc];
+            if (target >= 0) {
+                newDocs[target] = docs[doc];
+                newForward[target] = forward[doc];
+                if (docs[doc] == null) {
+                    stale++;
+                }
+            }
+        }
+        LongIntHashMap newDocByFilm = compaction.docByFilm();
+        for (int doc = compaction.builtDocs(); doc < docCount; doc++) {
+            if (remap[doc] >= 0) {
+                long filmId = docs[doc].getId();
+                newDocByFilm.addTo(filmId, remap[doc] + 1 - newDocByFilm.get(filmId));
+            }
+        }
+        long grown = 2 * (arrayBytes(capacity, 4) - arrayBytes(docs.length, 4));
+        Term[] compacted = compaction.terms();
+        for (int i = 0; i < terms.size(); i++) {
+            Term term = terms.get(i);
+            Term fresh;
+            if (i < compacted.length) {
+                fresh = compacted[i];
+                fresh.appendRemapped(term, compaction.builtLengths()[i], compaction.builtLastDocs()[i], remap);
+            } else {
+                fresh = new Term(term.text);
+                fresh.appendRemapped(term, 0, 0, remap);
+            }
+            fresh.trim();
+            grown += arrayBytes(fresh.postings.length, 1) - arrayBytes(term.postings.length, 1);
+            terms.set(i, fresh);
+        }
+        docs = newDocs;
+        forward = newForward;
+        docCount = next;
+        staleDocs = stale;
+        docByFilm = newDocByFilm;
+        generation++;
+        bytes += grown;
+    }
+
+    private Query resolve(String[] tokens) {
+        int tokenCount = tokens.length;
+        LongIntHashMap slots = new LongIntHashMap();
+        IntList weights = new IntList(tokenCount * 4);
+        long[] sizes = new long[tokenCount];
+        int[] maxWeights = new int[tokenCount];
+        IntList[] tokenTerms = new IntList[tokenCount];
+        for (int i = 0; i < tokenCount; i++) {
+            IntList matched = new IntList(4);
+            IntList matchedWeights = new IntList(4);
+            matchToken(tokens[i], i == tokenCount - 1, matched, matchedWeights);
+            if (matched.size == 0) {
+                return null;
+            }
+            tokenTerms[i] = matched;
+            for (int j = 0; j < matched.size; j++) {
+                int termId = matched.items[j];
+                int slot = slots.get(termId) - 1;
+                if (slot < 0) {
+                    slot = weights.size / tokenCount;
+                    slots.addTo(termId, slot + 1);
+                    for (int k = 0; k < tokenCount; k++) {
+                        weights.add(0);
+                    }
+                }
+                int weight = matchedWeights.items[j];
+                int index = slot * tokenCount + i;
+                weights.items[index] = Math.max(weights.items[index], weight);
+                maxWeights[i] = Math.max(maxWeights[i], weight);
+                sizes[i] += terms.get(termId).count;
+            }
+        }
+        int driving = 0;
+        for (int i = 1; i < tokenCount; i++) {
+            if (sizes[i] < sizes[driving]) {
+                driving = i;
+            }
+        }
+        int maxText = 0;
+        for (int weight : maxWeights) {
+            maxText += weight * NAME_FACTOR;
+        }
+        return new Query(tokenCount, slots, weights.items, tokenTerms[driving], sizes[driving], maxText,
+                new int[tokenCount]);
+    }
+
+    // Точное слово, начало слова (только у последнего, которое еще допечатывают) и опечатки,
+    // если точного слова в словаре нет
+    private void matchToken(String token, boolean last, IntList matched, IntList weights) {
+        Integer exact = termIds.get(token);
+        boolean hasExact = exact != null && terms.get(exact).count > 0;
+        if (hasExact) {
+            matched.add(exact);
+            weights.add(EXACT);
+        }
+        if (last && token.length() >= MIN_PREFIX_LENGTH) {
+            TopKLongs frequent = new TopKLongs(MAX_PREFIX_TERMS);
+            int scanned = 0;
+            for (Integer termId : termIds.subMap(token, false, token + Character.MAX_VALUE, false).values()) {
+                if (++scanned > MAX_PREFIX_SCAN) {
+                    break;
+                }
+                if (terms.get(termId).count > 0) {
+                    frequent.offer(termId, terms.get(termId).count);
+                }
+            }
+            for (long termId : frequent.drainSorted()) {
+                matched.add((int) termId);
+                weights.add(PREFIX);
+            }
+        }
+        if (!hasExact && token.length() >= MIN_TYPO_LENGTH) {
+            int maxEdits = token.length() >= TWO_TYPOS_LENGTH ? 2 : 1;
+            LongIntHashMap shared = new LongIntHashMap();
+            long[] tokenTrigrams = trigrams(token);
+            for (long trigram : tokenTrigrams) {
+                IntList list = trigrams.get(trigram);
+                if (list != null) {
+                    for (int j = 0; j < list.size; j++) {
+                        shared.addTo(list.items[j], 1);
+                    }
+                }
+            }
+            // Вставка, удаление или замена портят не больше трех триграмм, перестановка соседних букв - четыре
+            int needed = Math.max(1, tokenTrigrams.length - 4 * maxEdits);
+            shared.forEach((termId, count) -> {
+                Term term = terms.get((int) termId);
+                if (count >= needed && term.count > 0 && !(last && term.text.startsWith(token))
+                        && Math.abs(term.text.length() - token.length()) <= maxEdits) {
+                    int distance = distance(token, term.text, maxEdits);
+                    if (distance <= maxEdits) {
+                        matched.add((int) termId);
+                        weights.add(distance == 1 ? ONE_TYPO : TWO_TYPOS);
+                    }
+                }
+            });
+        }
+    }
+
+    private TopKLongs scoreCandidates(Query query, FilmSearch.Sort sort, int limit, Predicate<Film> filter) {
+        TopKLongs top = new TopKLongs(limit);
+        // Документ может попасть в несколько списков слова (точное и продолжение)
+        LongIntHashMap seen = query.drivingTerms.size > 1 ? new LongIntHashMap() : null;
+        for (int j = 0; j < query.drivingTerms.size; j++) {
+            Term term = terms.get(query.drivingTerms.items[j]);
+            byte[] postings = term.postings;
+            int doc = 0;
+            int position = 0;
+            while (position < term.length) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = postings[position++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                doc += delta;
+                Film film = docs[doc];
+                if (film == null || seen != null && seen.addTo(doc, 1) > 1) {
+                    continue;
+                }
+                int text = textScore(doc, query);
+                if (text > 0 && filter.test(film)) {
+                    top.offer(film.getId(), score(sort, text, film));
+                }
+            }
+        }
+        return top;
+    }
+
+    // null, если за drivingSize фильмов перебор не остановился
+    private TopKLongs walkPopular(Query query, FilmSearch.Sort sort, int limit, Iterator<Long> filmIds,
+                                 Predicate<Film> filter) {
+        TopKLongs top = new TopKLongs(limit);
+        LongIntHashMap seen = new LongIntHashMap();
+        long budget = query.drivingSize();
+        while (filmIds.hasNext()) {
+            if (budget-- == 0) {
+                return null;
+            }
+            long filmId = filmIds.next();
+            int doc = docByFilm.get(filmId) - 1;
+            Film film = doc < 0 ? null : docs[doc];
+            if (film == null) {
+                continue;
+            }
+            if (top.size() == limit) {
+                // Дальше лайков не больше, а совпадение не лучше maxText
+                if (sort == FilmSearch.Sort.POPULAR
+                        || top.worstScore() > relevance(query.maxText, film.getLikedUsersIds().size())) {
+                    break;
+                }
+            }
+            if (seen.addTo(filmId, 1) > 1) {
+                continue;
+            }
+            int text = textScore(doc, query);
+            if (text > 0 && filter.test(film)) {
+                top.offer(filmId, score(sort, text, film));
+            }
+        }
+        return top;
+    }
+
+    // Сумма по словам запроса лучшего совпадения в документе; 0, если какое-то слово не нашлось
+    private int textScore(int doc, Query query) {
+        int tokenCount = query.tokenCount;
+        int[] best = query.best;
+        Arrays.fill(best, 0);
+        for (int entry : forward[doc]) {
+            int slot = query.slots.get(entry >>> 1) - 1;
+            if (slot < 0) {
+                continue;
+            }
+            int factor = (entry & 1) != 0 ? NAME_FACTOR : 1;
+            for (int i = 0; i < tokenCount; i++) {
+                best[i] = Math.max(best[i], query.weights[slot * tokenCount + i] * factor);
+            }
+        }
+        int sum = 0;
+        for (int weight : best) {
+            if (weight == 0) {
+                return 0;
+            }
+            sum += weight;
+        }
+        return sum;
+    }
+
+    private static int score(FilmSearch.Sort sort, int text, Film film) {
+        return switch (sort) {
+            case POPULAR -> film.getLikedUsersIds().size();
+            case DATE -> (int) film.getReleaseDate().toEpochDay();
+            case RELEVANCE -> relevance(text, film.getLikedUsersIds().size());
+        };
+    }
+
+    // Лайки поднимают совпадение логарифмически: 0 лайков - x1, около 50 - x2, около 3000 - x3
+    private static int relevance(int text, int likes) {
+        return (int) (text * (4 + Math.log1p(likes)) * 25);
+    }
+
+    // Оптимальное выравнивание строк (Дамерау-Левенштейн без повторных правок); больше max - max + 1
+    private static int distance(String a, String b, int max) {
+        int[] previous2 = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    value = Math.min(value, previous2[j - 2] + 1);
+                }
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] recycled = previous2;
+            previous2 = previous;
+            previous = current;
+            current = recycled;
+        }
+        return Math.min(previous[b.length()], max + 1);
+    }
+
+    // Триграммы слова с границами: "кот" -> " ко", "кот", "от "
+    private static long[] trigrams(String token) {
+        String padded = " " + token + " ";
+        long[] result = new long[padded.length() - 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (long) padded.charAt(i) << 32 | (long) padded.charAt(i + 1) << 16 | padded.charAt(i + 2);
+        }
+        return result;
+    }
+
+    private static long arrayBytes(long length, int elementBytes) {
+        return align(16 + length * elementBytes);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    private static boolean isLatin1(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param slots      termId -> номер строки в weights + 1
+     * @param weights    вес совпадения слова словаря с i-м словом запроса: weights[slot * tokenCount + i]
+     * @param maxText    наибольший возможный textScore
+     * @param best       рабочий массив textScore; запрос выполняется в одном потоке
+     */
+    private record Query(int tokenCount, LongIntHashMap slots, int[] weights, IntList drivingTerms,
+                         long drivingSize, int maxText, int[] best) {
+    }
+
+    /**
+     * @param remap         старый номер документа -> новый, -1 у замененных
+     * @param live          число живых документов на момент сборки
+     * @param builtLengths  длина списка слова на момент сборки: дальше идут документы, добавленные после нее
+     * @param builtLastDocs последний документ в списке слова на момент сборки, от него считается разность
+     */
+    private record Compaction(int generation, int builtDocs, int[] remap, int live, LongIntHashMap docByFilm,
+                              Term[] terms, int[] builtLengths, int[] builtLastDocs) {
+    }
+
+    private static final class Term {
+        private final String text;
+        private byte[] postings = new byte[4];
+        private int length;
+        private int count;
+        private int lastDoc;
+
+        private Term(String text) {
+            this.text = text;
+        }
+
+        // Возвращает, на сколько байт вырос массив списка
+        private long append(int doc) {
+            long grown = 0;
+            if (length + 5 > postings.length) {
+                grown -= arrayBytes(postings.length, 1);
+                postings = Arrays.copyOf(postings, Math.max(length + 5, postings.length * 2));
+                grown += arrayBytes(postings.length, 1);
+            }
+            int delta = doc - lastDoc;
+            while ((delta & ~0x7F) != 0) {
+                postings[length++] = (byte) (delta & 0x7F | 0x80);
+                delta >>>= 7;
+            }
+            postings[length++] = (byte) delta;
+            lastDoc = doc;
+            count++;
+            return grown;
+        }
+
+        // Документы source с позиции from, где предыдущий документ - startDoc, под новыми номерами
+        private void appendRemapped(Term source, int from, int startDoc, int[] remap) {
+            byte[] old = source.postings;
+            int doc = startDoc;
+            int position = from;
+            while (position < source.length) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = old[position++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                doc += delta;
+                if (remap[doc] >= 0) {
+                    append(remap[doc]);
+                }
+            }
+        }
+
+        private void trim() {
+            if (length < postings.length / 2) {
+                postings = Arrays.copyOf(postings, Math.max(4, length));
+            }
+        }
+    }
+
+    private static final class IntList {
+        private int[] items;
+        private int size;
+
+        private IntList(int capacity) {
+            items = new int[capacity];
+        }
+
+        private void add(int value) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = value;
+        }
+
+        // Слово с повтором триграммы ("ааа") не записывается в ее список дважды
+        private void addDistinct(int value) {
+            if (size == 0 || items[size - 1] != value) {
+                add(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,473 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.util.LongHashSet;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Граф подтвержденной дружбы в сжатом виде (CSR): друзья пользователя id - отсортированные id, записанные
+ * разностями в varint подряд в одном массиве, строка id занимает байты [offsets[id], offsets[id + 1]).
+ * Изменения после последней сборки копятся в буфере по пользователям и сливаются в массив, когда буфер
+ * дорастает до шестнадцатой части ребер. Сборка идет без блокировки: буфер замораживается, новые изменения
+ * пишутся в свежий, а готовые строки подменяются под коротким захватом. Запускает ее mergePending уже после
+ * того, как вызывающий снял свои блокировки, поэтому O(E) сборки не держит ничьих записей. Число друзей
+ * хранится отдельно и читается за O(1).
+ * Заявки в друзья - свой индекс входящих и исходящих. Дружба симметрична: add и remove меняют обе строки.
+ */
+final class FriendGraph {
+
+    private static final int MIN_MERGE_DELTA = 4096;
+    private static final long[] NO_IDS = new long[0];
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Rows rows = new Rows();
+    private int[] degrees = new int[0];
+    private long halfEdges;
+
+    // Изменения после сборки: id -> друзья, которых нет в сжатой строке, и друзья, удаленные из нее
+    private Map<Long, LongHashSet> added = new HashMap<>();
+    private Map<Long, LongHashSet> removed = new HashMap<>();
+    private int deltaSize;
+
+    // Буфер, который сейчас сливается в rows; не меняется, пока его не заменит собранный массив.
+    // Свежий буфер задан относительно rows вместе с замороженным
+    private Map<Long, LongHashSet> frozenAdded;
+    private Map<Long, LongHashSet> frozenRemoved;
+    private int frozenSize;
+    // Замороженный буфер, сборку которого еще никто не взял
+    private final AtomicReference<PendingMerge> pendingMerge = new AtomicReference<>();
+
+    // Заявки: адресат -> отправители и отправитель -> адресаты
+    private final Map<Long, LongHashSet> incoming = new HashMap<>();
+    private final Map<Long, LongHashSet> outgoing = new HashMap<>();
+    private long requestCount;
+
+    boolean contains(long userId, long friendId) {
+        lock.readLock().lock();
+        try {
+            return containsHalf(userId, friendId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Друзья по возрастанию id
+    long[] friends(long userId) {
+        lock.readLock().lock();
+        try {
+            if (degree(userId, degrees) == 0) {
+                return NO_IDS;
+            }
+            return mergedRow((int) userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int degree(long userId) {
+        lock.readLock().lock();
+        try {
+            return degree(userId, degrees);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    boolean add(long userId, long friendId) {
+        lock.writeLock().lock();
+        try {
+            if (containsHalf(userId, friendId)) {
+                return false;
+            }
+            addHalf(userId, friendId);
+            addHalf(friendId, userId);
+            freezeIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return true;
+    }
+
+    boolean remove(long userId, long friendId) {
+        lock.writeLock().lock();
+        try {
+            if (!containsHalf(userId, friendId)) {
+                return false;
+            }
+            removeHalf(userId, friendId);
+            removeHalf(friendId, userId);
+            freezeIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return true;
+    }
+
+    // Сливает замороженный буфер, если сборка ждет; сборку выполняет ровно один из вызвавших
+    void mergePending() {
+        merge(pendingMerge.getAndSet(null));
+    }
+
+    // Строка из снимка: id идут по возрастанию, граф до этого не менялся, каждое ребро приходит с обеих сторон
+    void loadRow(long userId, long[] friendIds) {
+        lock.writeLock().lock();
+        try {
+            int row = row(userId);
+            if (row < rows.count || !added.isEmpty() || !removed.isEmpty() || frozenAdded != null) {
+                throw new IllegalStateException("Строки графа дружбы загружаются по возрастанию id в пустой граф");
+            }
+            long[] sorted = friendIds.clone();
+            Arrays.sort(sorted);
+            rows.skipTo(row);
+            rows.append(sorted);
+            ensureDegrees(row);
+            degrees[row] = sorted.length;
+            halfEdges += sorted.length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    boolean hasRequest(long fromId, long toId) {
+        lock.readLock().lock();
+        try {
+            LongHashSet targets = outgoing.get(fromId);
+            return targets != null && targets.contains(toId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    boolean addRequest(long fromId, long toId) {
+        lock.writeLock().lock();
+        try {
+            if (!outgoing.computeIfAbsent(fromId, id -> new LongHashSet()).add(toId)) {
+                return false;
+            }
+            incoming.computeIfAbsent(toId, id -> new LongHashSet()).add(fromId);
+            requestCount++;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    boolean removeRequest(long fromId, long toId) {
+        lock.writeLock().lock();
+        try {
+            if (!removeFrom(outgoing, fromId, toId)) {
+                return false;
+            }
+            removeFrom(incoming, toId, fromId);
+            requestCount--;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Отправители заявок пользователю по возрастанию id
+    long[] incomingRequests(long userId) {
+        lock.readLock().lock();
+        try {
+            LongHashSet senders = incoming.get(userId);
+            if (senders == null) {
+                return NO_IDS;
+            }
+            long[] result = senders.toLongArray();
+            Arrays.sort(result);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Все заявки парами: отправитель, адресат
+    long[] requests() {
+        lock.readLock().lock();
+        try {
+            long[] result = new long[(int) requestCount * 2];
+            int[] size = {0};
+            outgoing.forEach((fromId, targets) -> targets.forEachLong(toId -> {
+                result[size[0]++] = fromId;
+                result[size[0]++] = toId;
+            }));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Сжатые строки, степени и буферы; LongHashSet считается по 16 байт на элемент и 64 на сам объект
+    long estimatedBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 4L * rows.offsets.length + rows.data.length + 4L * degrees.length;
+            bytes += 16L * (deltaSize + frozenSize) + 64L * (added.size() + removed.size());
+            if (frozenAdded != null) {
+                bytes += 64L * (frozenAdded.size() + frozenRemoved.size());
+            }
+            bytes += 32L * requestCount + 64L * (incoming.size() + outgoing.size());
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean containsHalf(long userId, long friendId) {
+        LongHashSet plus = added.get(userId);
+        if (plus != null && plus.contains(friendId)) {
+            return true;
+        }
+        LongHashSet minus = removed.get(userId);
+        if (minus != null && minus.contains(friendId)) {
+            return false;
+        }
+        if (frozenAdded != null) {
+            plus = frozenAdded.get(userId);
+            if (plus != null && plus.contains(friendId)) {
+                return true;
+            }
+            minus = frozenRemoved.get(userId);
+            if (minus != null && minus.contains(friendId)) {
+                return false;
+            }
+        }
+        return rows.contains(userId, friendId);
+    }
+
+    private void addHalf(long userId, long friendId) {
+        if (!removeFrom(removed, userId, friendId)) {
+            added.computeIfAbsent(userId, id -> new LongHashSet()).add(friendId);
+        }
+        deltaSize++;
+        int row = row(userId);
+        ensureDegrees(row);
+        degrees[row]++;
+        halfEdges++;
+    }
+
+    private void removeHalf(long userId, long friendId) {
+        if (!removeFrom(added, userId, friendId)) {
+            removed.computeIfAbsent(userId, id -> new LongHashSet()).add(friendId);
+        }
+        deltaSize++;
+        degrees[(int) userId]--;
+        halfEdges--;
+    }
+
+    // Под блокировкой записи: замораживает буфер, если его пора слить и другая сборка не идет
+    private void freezeIfNeeded() {
+        if (frozenAdded != null || deltaSize < Math.max(MIN_MERGE_DELTA, halfEdges / 16)) {
+            return;
+        }
+        frozenAdded = added;
+        frozenRemoved = removed;
+        frozenSize = deltaSize;
+        added = new HashMap<>();
+        removed = new HashMap<>();
+        deltaSize = 0;
+        pendingMerge.set(new PendingMerge(rows, frozenAdded, frozenRemoved, frozenSize));
+    }
+
+    // Без блокировки: сжатые строки и замороженный буфер никто не меняет. Новые строки пишутся рядом
+    // со старыми, поэтому на время сборки память под сжатую часть удваивается
+    private void merge(PendingMerge merge) {
+        if (merge == null) {
+            return;
+        }
+        int count = Math.max(merge.base().count, maxRow(merge.added()) + 1);
+        Rows merged = new Rows(count, merge.base().length + merge.size() * 3);
+        for (int row = 0; row < count; row++) {
+            merged.append(applyDelta(merge.base().get(row),
+                    merge.added().get((long) row), merge.removed().get((long) row)));
+        }
+        lock.writeLock().lock();
+        try {
+            rows = merged;
+            frozenAdded = null;
+            frozenRemoved = null;
+            frozenSize = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Сжатая строка с учетом обоих буферов, по возрастанию id
+    private long[] mergedRow(int row) {
+        long[] result = rows.get(row);
+        if (frozenAdded != null) {
+            result = applyDelta(result, frozenAdded.get((long) row), frozenRemoved.get((long) row));
+        }
+        return applyDelta(result, added.get((long) row), removed.get((long) row));
+    }
+
+    // Сортируются только добавленные, строка уже по возрастанию: слияние вместо сортировки всей строки
+    private static long[] applyDelta(long[] base, LongHashSet plus, LongHashSet minus) {
+        if (plus == null && minus == null) {
+            return base;
+        }
+        long[] extra = plus == null ? NO_IDS : plus.toLongArray();
+        Arrays.sort(extra);
+        long[] result = new long[base.length + extra.length];
+        int size = 0;
+        int next = 0;
+        for (long friendId : base) {
+            if (minus != null && minus.contains(friendId)) {
+                continue;
+            }
+            while (next < extra.length && extra[next] < friendId) {
+                result[size++] = extra[next++];
+            }
+            result[size++] = friendId;
+        }
+        while (next < extra.length) {
+            result[size++] = extra[next++];
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    private static int maxRow(Map<Long, LongHashSet> index) {
+        long max = -1;
+        for (long id : index.keySet()) {
+            max = Math.max(max, id);
+        }
+        return (int) max;
+    }
+
+    private void ensureDegrees(int row) {
+        if (row >= degrees.length) {
+            degrees = Arrays.copyOf(degrees, Math.max(row + 1, degrees.length + (degrees.length >> 1)));
+        }
+    }
+
+    private static int degree(long userId, int[] degrees) {
+        return userId >= 0 && userId < degrees.length ? degrees[(int) userId] : 0;
+    }
+
+    private static int row(long userId) {
+        if (userId < 0 || userId >= Integer.MAX_VALUE - 1) {
+            throw new IllegalArgumentException("Id пользователя вне графа дружбы: " + userId);
+        }
+        return (int) userId;
+    }
+
+    private static boolean removeFrom(Map<Long, LongHashSet> index, long key, long value) {
+        LongHashSet values = index.get(key);
+        if (values == null || !values.remove(value)) {
+            return false;
+        }
+        if (values.isEmpty()) {
+            index.remove(key);
+        }
+        return true;
+    }
+
+    private record PendingMerge(Rows base, Map<Long, LongHashSet> added, Map<Long, LongHashSet> removed,
+                                int size) {
+    }
+
+    // Сжатые строки подряд: строка i - байты data[offsets[i], offsets[i + 1]), разности id в varint
+    private static final class Rows {
+
+        private int[] offsets;
+        private byte[] data;
+        private int length;
+        private int count;
+
+        Rows() {
+            this(0, 16);
+        }
+
+        Rows(int expectedRows, int expectedBytes) {
+            offsets = new int[expectedRows + 1];
+            data = new byte[Math.max(16, expectedBytes)];
+        }
+
+        long[] get(long row) {
+            if (row < 0 || row >= count) {
+                return NO_IDS;
+            }
+            int position = offsets[(int) row];
+            int to = offsets[(int) row + 1];
+            // Каждый id кончается байтом без старшего бита: массив выделяется сразу нужной длины
+            int size = 0;
+            for (int i = position; i < to; i++) {
+                if (data[i] >= 0) {
+                    size++;
+                }
+            }
+            long[] result = new long[size];
+            long current = 0;
+            for (int i = 0; i < size; i++) {
+                long delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    delta |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                current += delta;
+                result[i] = current;
+            }
+            return result;
+        }
+
+        // Строка отсортирована, поэтому раскодирование прекращается на первом id не меньше искомого
+        boolean contains(long row, long id) {
+            if (row < 0 || row >= count) {
+                return false;
+            }
+            int position = offsets[(int) row];
+            int to = offsets[(int) row + 1];
+            long current = 0;
+            while (position < to) {
+                long delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    delta |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                current += delta;
+                if (current >= id) {
+                    return current == id;
+                }
+            }
+            return false;
+        }
+
+        void skipTo(int row) {
+            while (count < row) {
+                append(NO_IDS);
+            }
+        }
+
+        void append(long[] sortedIds) {
+            if (count + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, Math.max(count + 2, offsets.length + (offsets.length >> 1)));
+            }
+            long previous = 0;
+            for (long id : sortedIds) {
+                if (length + 10 > data.length) {
+                    data = Arrays.copyOf(data, data.length + (data.length >> 1) + 10);
+                }
+                long delta = id - previous;
+                previous = id;
+                while ((delta & ~0x7FL) != 0) {
+                    data[length++] = (byte) ((delta & 0x7F) | 0x80);
+                    delta >>>= 7;
+                }
+                data[length++] = (byte) delta;
+            }
+            offsets[++count] = length;
+        }
+    }
+}
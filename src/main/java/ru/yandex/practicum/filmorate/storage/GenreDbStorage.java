@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Genre;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+
+@Component
+@Profile("db")
+@RequiredArgsConstructor
+public class GenreDbStorage implements GenreStorage {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public Collection<Genre> findAll() {
+        return jdbcTemplate.query("SELECT id, name FROM genres ORDER BY id", this::mapGenre);
+    }
+
+    @Override
+    public Genre findGenreById(Long id) {
+        List<Genre> genres = jdbcTemplate.query("SELECT id, name FROM genres WHERE id = ?", this::mapGenre, id);
+        return genres.isEmpty() ? null : genres.get(0);
+    }
+
+    private Genre mapGenre(ResultSet rs, int rowNum) throws SQLException {
+        return new Genre(rs.getLong("id"), rs.getString("name"));
+    }
+}
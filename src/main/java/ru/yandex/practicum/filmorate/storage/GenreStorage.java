@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.model.Genre;
+
+import java.util.Collection;
+
+public interface GenreStorage {
+
+    // Жанры по возрастанию id
+    public Collection<Genre> findAll();
+
+    public Genre findGenreById(Long id);
+}
@@ -1,17 +1,81 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.config.PersistenceProperties;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.DTO.FilmSearch;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.persistence.BufferInput;
+import ru.yandex.practicum.filmorate.storage.persistence.Snapshottable;
+import ru.yandex.practicum.filmorate.storage.persistence.StorageJournal;
+import ru.yandex.practicum.filmorate.util.LongHashSet;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+@Slf4j
 @Component
-public class InMemoryFilmStorage implements FilmStorage {
+@Profile("!db")
+public class InMemoryFilmStorage implements FilmStorage, Snapshottable, DisposableBean {
 
-    private final Map<Long, Film> films = new HashMap<>();
-    private final Set<String> existingFilms = new HashSet<>();
+    private static final int LOCK_STRIPES = 64;
+    // Владелец названия, пока createAll не выдал фильму id; id начинаются с 1
+    private static final Long NAME_RESERVED = 0L;
+
+    private final NavigableMap<Long, Film> films = new ConcurrentSkipListMap<>();
+    // Уникальность названий: название -> id фильма, который его занял
+    private final Map<String, Long> filmIdsByName = new ConcurrentHashMap<>();
+    private final Map<Long, String> namesByFilmId = new ConcurrentHashMap<>();
+    // Индекс популярности: больше лайков - выше, при равенстве меньший id раньше
+    private final NavigableSet<PopularityKey> popularity = new ConcurrentSkipListSet<>();
+    // Обратный индекс жанров: жанр -> его фильмы в том же порядке популярности
+    private final Map<Long, GenreIndex> genreIndexes = new ConcurrentHashMap<>();
+    // Дата выхода, продолжительность и рейтинг для GET /films/search
+    private final FilmSearchIndex searchIndex = new FilmSearchIndex();
+    // Слова названий и описаний для поиска по q
+    private final FilmTextIndex textIndex = new FilmTextIndex();
+    private final AtomicLong lastId = new AtomicLong();
+    private final LongAdder filmCount = new LongAdder();
+    private final LongAdder likeCount = new LongAdder();
+    private final VersionTable versions = new VersionTable();
+    // Запись в один фильм (лайки, обновление) идет под его страйпом, чтение без блокировок
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    // Записи журнала добавляются под тем же страйпом, что и изменение, поэтому их порядок совпадает
+    private StorageJournal journal;
+
+    public InMemoryFilmStorage() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    @Autowired
+    public InMemoryFilmStorage(PersistenceProperties properties) {
+        this();
+        if (properties.isEnabled()) {
+            try {
+                journal = StorageJournal.open(properties.getDir().resolve("films"), this::loadSnapshot, this::replay);
+                rebuildIndexes();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось восстановить фильмы", e);
+            }
+        }
+    }
 
     @Override
     public Collection<Film> findAll() {
@@ -20,10 +84,28 @@ public class InMemoryFilmStorage implements FilmStorage {
 
     @Override
     public Collection<Film> findLikedFilm(int count) {
-        return films.values().stream()
-                .sorted(Comparator.comparingInt((Film f) -> f.getLikedUsersIds().size()).reversed())
-                .limit(count)
-                .collect(Collectors.toList());
+        return findLikedFilmByGenres(count, Set.of());
+    }
+
+    @Override
+    public Collection<Film> findLikedFilmByGenres(int count, Set<Long> genreIds) {
+        List<Film> result = new ArrayList<>(Math.min(count, films.size()));
+        forEachPopular(count, genreIds, result::add);
+        return result;
+    }
+
+    @Override
+    public List<Film> search(FilmSearch search) {
+        if (search.getQ() != null) {
+            return textIndex.search(search, filmCount.sum(), this::popularFilmIds,
+                    film -> FilmSearchIndex.matches(film, search));
+        }
+        return searchIndex.search(search, filmCount.sum(), this::popularFilmIds, films::get);
+    }
+
+    @Override
+    public long searchIndexBytes() {
+        return textIndex.estimatedBytes();
     }
 
     @Override
@@ -31,65 +113,487 @@ public class InMemoryFilmStorage implements FilmStorage {
         return films.get(id);
     }
 
+    @Override
+    public List<Film> findPage(Long after, int limit) {
+        Map<Long, Film> tail = after == null ? films : films.tailMap(after, false);
+        List<Film> result = new ArrayList<>(limit);
+        Iterator<Film> iterator = tail.values().iterator();
+        while (result.size() < limit && iterator.hasNext()) {
+            result.add(iterator.next());
+        }
+        return result;
+    }
+
+    // Лайки хранимого фильма меняются на месте, поэтому фильм отдается копией с лайками, снятыми под страйпом
+    @Override
+    public Stream<Film> streamAll() {
+        return films.headMap(lastId.get(), true).values().stream().map(this::copyWithLikes);
+    }
+
     @Override
     public Film create(Film film) {
-        Long newId = getNextId();
+        Long newId = lastId.incrementAndGet();
+        if (filmIdsByName.putIfAbsent(film.getName(), newId) != null) {
+            throw new ValidationException("Фильм уже есть на сайте");
+        }
+        namesByFilmId.put(newId, film.getName());
+
         film.setId(newId);
-        films.put(newId, film);
-        existingFilms.add(film.getName());
+
+        awaitDurable(insert(film));
         return film;
     }
 
     @Override
-    public Film update(Film film) {
-        Film oldFilm = films.get(film.getId());
-        if (oldFilm == null) {
-            throw new NotFoundException("Фильм не найден");
+    public List<Film> createAll(List<Film> newFilms) {
+        List<Film> created = new ArrayList<>(newFilms.size());
+        long seq = 0;
+        for (Film film : newFilms) {
+            // Название занимается до выдачи id, поэтому пропущенный фильм id не расходует
+            if (filmIdsByName.putIfAbsent(film.getName(), NAME_RESERVED) != null) {
+                continue;
+            }
+            long id = lastId.incrementAndGet();
+            filmIdsByName.put(film.getName(), id);
+            namesByFilmId.put(id, film.getName());
+            film.setId(id);
+            seq = insert(film);
+            created.add(film);
         }
+        awaitDurable(seq);
+        return created;
+    }
 
-        existingFilms.remove(oldFilm.getName());
-        films.put(film.getId(), film);
-        existingFilms.add(film.getName());
+    // Страйп держится только на время установки копии: индексы и журнал должны видеть правки и лайки фильма
+    // в одном порядке. Чтение и правка фильма в сервисе идут без блокировок, чужую правку выдает версия
+    @Override
+    public Film update(Film film, long expectedVersion) {
+        ReentrantLock lock = lockFor(film.getId());
+        long seq;
+        Film newFilm;
+        lock.lock();
+        try {
+            Film oldFilm = films.get(film.getId());
+            if (oldFilm == null) {
+                throw new NotFoundException("Фильм не найден");
+            }
+            if (expectedVersion != ANY_VERSION && oldFilm.getVersion() != expectedVersion) {
+                return null;
+            }
 
-        return film;
+            moveName(film.getId(), film.getName());
+            newFilm = film.copy();
+            // Лайки меняются только через addLike/removeLike
+            newFilm.setLikedUsersIds(oldFilm.getLikedUsersIds());
+            newFilm.setVersion(oldFilm.getVersion() + 1);
+            seq = log(FilmRecords.update(newFilm));
+            films.put(newFilm.getId(), newFilm);
+            moveGenres(oldFilm, newFilm);
+            searchIndex.move(oldFilm, newFilm);
+            textIndex.update(oldFilm, newFilm);
+            versions.increment(newFilm.getId());
+        } finally {
+            lock.unlock();
+        }
+        textIndex.compactIfDue();
+        awaitDurable(seq);
+        return newFilm;
     }
 
     @Override
     public boolean isExistingFilm(String filmName) {
-        return existingFilms.contains(filmName);
+        return filmIdsByName.containsKey(filmName);
     }
 
     @Override
-    public boolean isLiked(Long filmId, Long userId) {
+    public boolean isLiked(long filmId, long userId) {
         Film film = films.get(filmId);
-        return film.getLikedUsersIds().contains(userId);
+        return film != null && film.getLikedUsersIds().contains(userId);
     }
 
     @Override
-    public void addLike(Long filmId, Long userId) {
-        Film film = films.get(filmId);
-        if (film != null) {
-            film.getLikedUsersIds().add(userId);
+    public boolean addLike(long filmId, long userId) {
+        long seq = like(filmId, userId, true);
+        awaitDurable(seq);
+        return seq >= 0;
+    }
+
+    @Override
+    public boolean removeLike(long filmId, long userId) {
+        long seq = like(filmId, userId, false);
+        awaitDurable(seq);
+        return seq >= 0;
+    }
+
+    // Каждый лайк журналируется под своим страйпом, а сброс журнала ждется один раз за последнюю запись пачки
+    @Override
+    public boolean[] applyLikes(List<LikeChange> changes) {
+        boolean[] changed = new boolean[changes.size()];
+        long lastSeq = 0;
+        for (int i = 0; i < changed.length; i++) {
+            LikeChange change = changes.get(i);
+            long seq = like(change.filmId(), change.userId(), change.add());
+            changed[i] = seq >= 0;
+            lastSeq = Math.max(lastSeq, seq);
         }
+        awaitDurable(lastSeq);
+        return changed;
     }
 
     @Override
-    public void removeLike(Long filmId, Long userId) {
-        Film film = films.get(filmId);
-        if (film != null) {
-            film.getLikedUsersIds().remove(userId);
+    public long count() {
+        return filmCount.sum();
+    }
+
+    @Override
+    public long countLikes() {
+        return likeCount.sum();
+    }
+
+    @Override
+    public int maxLikes() {
+        Iterator<PopularityKey> top = popularity.iterator();
+        return top.hasNext() ? top.next().likes() : 0;
+    }
+
+    @Override
+    public long findFilmVersion(Long id) {
+        long version = versions.get(id);
+        return films.containsKey(id) ? VersionTable.mix(VersionTable.mix(versions.epoch(), id), version) : -1;
+    }
+
+    @Override
+    public long findPopularVersion(int count) {
+        return findPopularVersionByGenres(count, Set.of());
+    }
+
+    // Тот же обход, что в findLikedFilmByGenres, но без сборки фильмов
+    @Override
+    public long findPopularVersionByGenres(int count, Set<Long> genreIds) {
+        long[] version = {versions.epoch()};
+        forEachPopular(count, genreIds, film -> version[0] = VersionTable.mix(
+                VersionTable.mix(version[0], film.getId()), versions.get(film.getId())));
+        return version[0];
+    }
+
+    @Override
+    public void snapshot() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.snapshot(this::awaitWriters, out -> {
+                for (Film film : films.values()) {
+                    out.writeBoolean(true);
+                    FilmRecords.writeFilm(out, film, true);
+                }
+                out.writeBoolean(false);
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось сохранить снимок фильмов", e);
         }
     }
 
+    @Override
+    public void destroy() throws IOException {
+        if (journal != null) {
+            snapshot();
+            journal.close();
+        }
+    }
 
-    private long getNextId() {
-        long currentMaxId = films.keySet()
-                .stream()
-                .mapToLong(id -> id)
-                .max()
-                .orElse(0);
-        return ++currentMaxId;
+    private long insert(Film film) {
+        ReentrantLock lock = lockFor(film.getId());
+        lock.lock();
+        try {
+            film.setVersion(1);
+            long seq = log(FilmRecords.create(film));
+            films.put(film.getId(), film);
+            PopularityKey key = new PopularityKey(film.getLikedUsersIds().size(), film.getId());
+            popularity.add(key);
+            indexGenres(genreIds(film), key);
+            searchIndex.add(film);
+            textIndex.add(film);
+            filmCount.increment();
+            likeCount.add(film.getLikedUsersIds().size());
+            versions.increment(film.getId());
+            return seq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Film copyWithLikes(Film film) {
+        ReentrantLock lock = lockFor(film.getId());
+        lock.lock();
+        try {
+            Film copy = film.copy();
+            copy.setLikedUsersIds(LongHashSet.ofDistinct(film.getLikedUsersIds().toLongArray()));
+            return copy;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Номер записи журнала (0 без журнала) или -1, если лайк ничего не изменил
+    private long like(long filmId, long userId, boolean add) {
+        ReentrantLock lock = lockFor(filmId);
+        lock.lock();
+        try {
+            Film film = films.get(filmId);
+            if (film == null || !(add ? film.getLikedUsersIds().add(userId) : film.getLikedUsersIds().remove(userId))) {
+                return -1;
+            }
+            long seq = log(FilmRecords.like(add ? FilmRecords.ADD_LIKE : FilmRecords.REMOVE_LIKE, filmId, userId));
+            int likes = film.getLikedUsersIds().size();
+            if (add) {
+                likeCount.increment();
+                reindex(film, likes - 1, likes);
+            } else {
+                likeCount.decrement();
+                reindex(film, likes + 1, likes);
+            }
+            versions.increment(filmId);
+            return seq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long log(byte[] record) {
+        return journal == null ? 0 : journal.append(record);
+    }
+
+    private void awaitDurable(long seq) {
+        if (seq > 0) {
+            journal.awaitDurable(seq);
+        }
     }
 
+    // Каждое изменение, начатое до переключения сегмента журнала, к выходу из метода уже в памяти
+    private void awaitWriters() {
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+            lock.unlock();
+        }
+    }
+
+    private void loadSnapshot(BufferInput in) {
+        while (in.get() != 0) {
+            install(FilmRecords.readFilm(in, true));
+        }
+    }
+
+    // Журнал проигрывается до открытия на запись, поэтому изменения здесь повторно не журналируются.
+    // Снимок нечеткий, а правки разных фильмов могут лечь в журнал не в том порядке, в каком заняли названия,
+    // поэтому записи ставятся как есть, без проверок уникальности и версий, а индексы строит rebuildIndexes
+    private void replay(BufferInput record) {
+        byte type = record.get();
+        switch (type) {
+            case FilmRecords.CREATE -> install(FilmRecords.readFilm(record, true));
+            case FilmRecords.UPDATE -> {
+                Film film = FilmRecords.readFilm(record, false);
+                Film oldFilm = films.get(film.getId());
+                if (oldFilm != null) {
+                    film.setLikedUsersIds(oldFilm.getLikedUsersIds());
+                }
+                install(film);
+            }
+            case FilmRecords.ADD_LIKE -> {
+                Film film = films.get(record.getLong());
+                long userId = record.getLong();
+                if (film != null) {
+                    film.getLikedUsersIds().add(userId);
+                }
+            }
+            case FilmRecords.REMOVE_LIKE -> {
+                Film film = films.get(record.getLong());
+                long userId = record.getLong();
+                if (film != null) {
+                    film.getLikedUsersIds().remove(userId);
+                }
+            }
+            default -> throw new IllegalStateException("Неизвестная запись журнала фильмов: " + type);
+        }
+    }
+
+    // Версии правок не сохраняются: после перезапуска отсчет идет заново, ETag меняется вместе с эпохой
+    private void install(Film film) {
+        film.setVersion(1);
+        films.put(film.getId(), film);
+    }
+
+    // Один проход по итоговому состоянию после снимка и журнала, до первого запроса
+    private void rebuildIndexes() {
+        for (Film film : films.values()) {
+            Long owner = filmIdsByName.put(film.getName(), film.getId());
+            if (owner != null) {
+                log.warn("После восстановления название {} у фильмов {} и {}", film.getName(), owner, film.getId());
+            }
+            namesByFilmId.put(film.getId(), film.getName());
+            PopularityKey key = new PopularityKey(film.getLikedUsersIds().size(), film.getId());
+            popularity.add(key);
+            indexGenres(genreIds(film), key);
+            searchIndex.add(film);
+            textIndex.add(film);
+            filmCount.increment();
+            likeCount.add(film.getLikedUsersIds().size());
+            versions.increment(film.getId());
+            lastId.accumulateAndGet(film.getId(), Math::max);
+        }
+    }
+
+    private void moveName(Long filmId, String newName) {
+        String oldName = namesByFilmId.get(filmId);
+        if (newName.equals(oldName)) {
+            return;
+        }
+        Long owner = filmIdsByName.putIfAbsent(newName, filmId);
+        if (owner != null && !owner.equals(filmId)) {
+            throw new ValidationException("Фильм с таким названием уже существует");
+        }
+        namesByFilmId.put(filmId, newName);
+        if (oldName != null) {
+            filmIdsByName.remove(oldName, filmId);
+        }
+    }
 
+    // Новый ключ добавляется раньше удаления старого, чтобы читатель не потерял фильм
+    private void reindex(Film film, int oldLikes, int newLikes) {
+        PopularityKey oldKey = new PopularityKey(oldLikes, film.getId());
+        PopularityKey newKey = new PopularityKey(newLikes, film.getId());
+        popularity.add(newKey);
+        popularity.remove(oldKey);
+        for (Long genreId : genreIds(film)) {
+            GenreIndex index = genreIndexes.get(genreId);
+            if (index != null) {
+                index.popularity().add(newKey);
+                index.popularity().remove(oldKey);
+            }
+        }
+    }
+
+    private void moveGenres(Film oldFilm, Film newFilm) {
+        Set<Long> oldGenres = genreIds(oldFilm);
+        Set<Long> newGenres = genreIds(newFilm);
+        PopularityKey key = new PopularityKey(newFilm.getLikedUsersIds().size(), newFilm.getId());
+        Set<Long> added = new HashSet<>(newGenres);
+        added.removeAll(oldGenres);
+        Set<Long> removed = new HashSet<>(oldGenres);
+        removed.removeAll(newGenres);
+        indexGenres(added, key);
+        unindexGenres(removed, key);
+    }
+
+    private void indexGenres(Set<Long> genreIds, PopularityKey key) {
+        for (Long genreId : genreIds) {
+            GenreIndex index = genreIndexes.computeIfAbsent(genreId,
+                    id -> new GenreIndex(new ConcurrentSkipListSet<>(), new LongAdder()));
+            if (index.popularity().add(key)) {
+                index.size().increment();
+            }
+        }
+    }
+
+    private void unindexGenres(Set<Long> genreIds, PopularityKey key) {
+        for (Long genreId : genreIds) {
+            GenreIndex index = genreIndexes.get(genreId);
+            if (index != null && index.popularity().remove(key)) {
+                index.size().decrement();
+            }
+        }
+    }
+
+    // Фильмы в порядке популярности, не больше count. С жанрами это пересечение их списков: порядок у всех
+    // один, поэтому обход идет по самому короткому и через ceiling перепрыгивает к ключу, который есть везде.
+    // Во время переиндексации фильм может на мгновение встретиться дважды
+    private void forEachPopular(int count, Set<Long> genreIds, Consumer<Film> action) {
+        Set<Long> seen = new HashSet<>();
+        int found = 0;
+        if (genreIds.isEmpty()) {
+            Iterator<PopularityKey> iterator = popularity.iterator();
+            while (found < count && iterator.hasNext()) {
+                Long filmId = iterator.next().filmId();
+                Film film = films.get(filmId);
+                if (film != null && seen.add(filmId)) {
+                    action.accept(film);
+                    found++;
+                }
+            }
+            return;
+        }
+
+        List<NavigableSet<PopularityKey>> lists = new ArrayList<>(genreIds.size());
+        List<Long> sizes = new ArrayList<>(genreIds.size());
+        for (Long genreId : genreIds) {
+            GenreIndex index = genreIndexes.get(genreId);
+            if (index == null) {
+                return;
+            }
+            // Списки по возрастанию размера, размеры берутся один раз
+            int position = 0;
+            long size = index.size().sum();
+            while (position < sizes.size() && sizes.get(position) <= size) {
+                position++;
+            }
+            lists.add(position, index.popularity());
+            sizes.add(position, size);
+        }
+        NavigableSet<PopularityKey> shortest = lists.get(0);
+        PopularityKey key = shortest.ceiling(PopularityKey.FIRST);
+        candidates:
+        while (key != null && found < count) {
+            for (int i = 1; i < lists.size(); i++) {
+                PopularityKey next = lists.get(i).ceiling(key);
+                if (next == null) {
+                    return;
+                }
+                if (!next.equals(key)) {
+                    key = shortest.ceiling(next);
+                    continue candidates;
+                }
+            }
+            Film film = films.get(key.filmId());
+            if (film != null && seen.add(key.filmId())) {
+                action.accept(film);
+                found++;
+            }
+            key = shortest.higher(key);
+        }
+    }
+
+    private Iterator<Long> popularFilmIds() {
+        return popularity.stream().map(PopularityKey::filmId).iterator();
+    }
+
+    private static Set<Long> genreIds(Film film) {
+        if (film.getGenres() == null || film.getGenres().isEmpty()) {
+            return Set.of();
+        }
+        Set<Long> ids = new HashSet<>(film.getGenres().size() * 2);
+        for (Genre genre : film.getGenres()) {
+            if (genre != null && genre.getId() != null) {
+                ids.add(genre.getId());
+            }
+        }
+        return ids;
+    }
+
+    private ReentrantLock lockFor(long filmId) {
+        return locks[(int) (filmId & (LOCK_STRIPES - 1))];
+    }
+
+    private record PopularityKey(int likes, long filmId) implements Comparable<PopularityKey> {
+        // Раньше любого настоящего ключа
+        static final PopularityKey FIRST = new PopularityKey(Integer.MAX_VALUE, Long.MIN_VALUE);
+
+        @Override
+        public int compareTo(PopularityKey other) {
+            int byLikes = Integer.compare(other.likes, likes);
+            return byLikes != 0 ? byLikes : Long.compare(filmId, other.filmId);
+        }
+    }
+
+    private record GenreIndex(NavigableSet<PopularityKey> popularity, LongAdder size) {
+    }
 }
@@ -0,0 +1,39 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Genre;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Справочник жанров без БД: тот же набор, что data.sql загружает в таблицу genres.
+ */
+@Component
+@Profile("!db")
+public class InMemoryGenreStorage implements GenreStorage {
+
+    private static final List<Genre> GENRES = List.of(
+            new Genre(1L, "Комедия"),
+            new Genre(2L, "Драма"),
+            new Genre(3L, "Мультфильм"),
+            new Genre(4L, "Триллер"),
+            new Genre(5L, "Документальный"),
+            new Genre(6L, "Боевик"));
+
+    @Override
+    public Collection<Genre> findAll() {
+        return GENRES;
+    }
+
+    @Override
+    public Genre findGenreById(Long id) {
+        for (Genre genre : GENRES) {
+            if (genre.getId().equals(id)) {
+                return genre;
+            }
+        }
+        return null;
+    }
+}
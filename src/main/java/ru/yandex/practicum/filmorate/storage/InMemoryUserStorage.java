@@ -1,63 +1,535 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.config.PersistenceProperties;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enums.FriendshipStatus;
+import ru.yandex.practicum.filmorate.storage.persistence.BufferInput;
+import ru.yandex.practicum.filmorate.storage.persistence.Snapshottable;
+import ru.yandex.practicum.filmorate.storage.persistence.StorageJournal;
+import ru.yandex.practicum.filmorate.util.LongHashSet;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
 
+/**
+ * Пользователи в памяти. Друзья хранятся не в User, а в сжатом графе FriendGraph; наружу отдаются копии
+ * пользователей со списком друзей из графа.
+ */
+@Slf4j
 @Component
-public class InMemoryUserStorage implements UserStorage {
+@Profile("!db")
+public class InMemoryUserStorage implements UserStorage, Snapshottable, DisposableBean {
 
-    private final Map<Long, User> users = new HashMap<>();
-    private final Set<String> existingEmails = new HashSet<>();
+    private static final int LOCK_STRIPES = 64;
+    private static final int FRIEND_SET_CACHE_IDS = 1 << 22;
+    // Владелец email, пока createAll не выдал пользователю id; id начинаются с 1
+    private static final Long EMAIL_RESERVED = 0L;
 
+    // Пользователи без друзей: friendIds у хранимых объектов null
+    private final NavigableMap<Long, User> users = new ConcurrentSkipListMap<>();
+    private final FriendGraph friends = new FriendGraph();
+    // Раскодированные списки друзей, вес - число id. Список хаба читается через каждого его друга, поэтому
+    // раскодировать его на каждое чтение дорого. Наборы общие для всех читателей и только для чтения
+    private final Cache<Long, LongHashSet> friendSets = Caffeine.newBuilder()
+            .maximumWeight(FRIEND_SET_CACHE_IDS)
+            .<Long, LongHashSet>weigher((userId, ids) -> 1 + ids.size())
+            // Вытеснение в вызывающем потоке: иначе каждое чтение будит пул ради обслуживания кэша
+            .executor(Runnable::run)
+            .build();
+    // Уникальность email: email -> id пользователя, который его занял
+    private final Map<String, Long> userIdsByEmail = new ConcurrentHashMap<>();
+    private final Map<Long, String> emailsByUserId = new ConcurrentHashMap<>();
+    private final AtomicLong lastId = new AtomicLong();
+    private final LongAdder userCount = new LongAdder();
+    private final VersionTable versions = new VersionTable();
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    private StorageJournal journal;
+
+    public InMemoryUserStorage() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    @Autowired
+    public InMemoryUserStorage(PersistenceProperties properties) {
+        this();
+        if (properties.isEnabled()) {
+            try {
+                journal = StorageJournal.open(properties.getDir().resolve("users"), this::loadSnapshot, this::replay);
+                rebuildIndexes();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось восстановить пользователей", e);
+            }
+        }
+    }
 
     @Override
     public Collection<User> findAll() {
-        return new ArrayList<>(users.values());
+        List<User> result = new ArrayList<>(users.size());
+        for (User user : users.values()) {
+            result.add(withFriends(user));
+        }
+        return result;
     }
 
     @Override
     public User findUserById(Long id) {
-        return users.get(id);
+        return withFriends(users.get(id));
+    }
+
+    // Списки друзей отдаются массивами из графа: набор каждого пользователя списка собирается, только если его запросят
+    @Override
+    public List<User> findUsersByIds(long[] ids) {
+        List<User> result = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            User stored = users.get(id);
+            if (stored != null) {
+                User user = stored.copy();
+                user.setSortedFriendIds(friends.friends(id));
+                result.add(user);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<User> findPage(Long after, int limit) {
+        Map<Long, User> tail = after == null ? users : users.tailMap(after, false);
+        List<User> result = new ArrayList<>(limit);
+        Iterator<User> iterator = tail.values().iterator();
+        while (result.size() < limit && iterator.hasNext()) {
+            result.add(withFriends(iterator.next()));
+        }
+        return result;
+    }
+
+    // Друзья берутся одним срезом графа, и этот набор дальше не меняется
+    @Override
+    public Stream<User> streamAll() {
+        return users.headMap(lastId.get(), true).values().stream().map(this::withFriends);
     }
 
     @Override
     public User create(User user) {
-        Long id = getNextId();
-        user.setId(id);
+        Long id = lastId.incrementAndGet();
+        if (userIdsByEmail.putIfAbsent(user.getEmail(), id) != null) {
+            throw new ValidationException("Этот email уже используется");
+        }
+        emailsByUserId.put(id, user.getEmail());
 
-        users.put(user.getId(), user);
-        existingEmails.add(user.getEmail());
+        user.setId(id);
 
+        awaitDurable(insert(user));
         return user;
     }
 
     @Override
-    public User update(User user) {
-        User oldUser = users.get(user.getId());
-        if (oldUser != null) {
-            existingEmails.remove(oldUser.getEmail());
+    public List<User> createAll(List<User> newUsers) {
+        List<User> created = new ArrayList<>(newUsers.size());
+        long seq = 0;
+        for (User user : newUsers) {
+            // Email занимается до выдачи id, поэтому пропущенный пользователь id не расходует
+            if (userIdsByEmail.putIfAbsent(user.getEmail(), EMAIL_RESERVED) != null) {
+                continue;
+            }
+            long id = lastId.incrementAndGet();
+            userIdsByEmail.put(user.getEmail(), id);
+            emailsByUserId.put(id, user.getEmail());
+            user.setId(id);
+            seq = insert(user);
+            created.add(user);
         }
+        awaitDurable(seq);
+        return created;
+    }
 
-        users.put(user.getId(), user);
-        existingEmails.add(user.getEmail());
+    // Страйп держится только на время установки копии, как в InMemoryFilmStorage
+    @Override
+    public User update(User user, long expectedVersion) {
+        ReentrantLock lock = lockFor(user.getId());
+        long seq;
+        User stored;
+        lock.lock();
+        try {
+            User oldUser = users.get(user.getId());
+            if (oldUser == null) {
+                throw new NotFoundException("Пользователь с id = " + user.getId() + " не найден.");
+            }
+            if (expectedVersion != ANY_VERSION && oldUser.getVersion() != expectedVersion) {
+                return null;
+            }
 
-        return user;
+            moveEmail(user.getId(), user.getEmail());
+            stored = withoutFriends(user);
+            stored.setVersion(oldUser.getVersion() + 1);
+            seq = log(UserRecords.update(stored));
+            users.put(stored.getId(), stored);
+            versions.increment(stored.getId());
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(seq);
+        // Друзья меняются только через addFriend/removeFriend
+        return withFriends(stored);
     }
 
     @Override
     public boolean isExistingEmail(String email) {
-        return existingEmails.contains(email);
+        return userIdsByEmail.containsKey(email);
+    }
+
+    @Override
+    public boolean addFriend(Long userId, Long friendId) {
+        boolean[] added = {false};
+        changePair(userId, friendId, () -> {
+            if (friends.contains(userId, friendId)) {
+                return 0;
+            }
+            added[0] = true;
+            return confirm(userId, friendId);
+        });
+        return added[0];
+    }
+
+    @Override
+    public boolean removeFriend(Long userId, Long friendId) {
+        boolean[] removed = {false};
+        changePair(userId, friendId, () -> {
+            if (!friends.remove(userId, friendId)) {
+                return 0;
+            }
+            removed[0] = true;
+            // Сброс после изменения графа: Caffeine дожидается идущего вычисления и удаляет его результат
+            friendSets.invalidate(userId);
+            friendSets.invalidate(friendId);
+            versions.increment(userId);
+            versions.increment(friendId);
+            return log(UserRecords.friendship(UserRecords.REMOVE_FRIEND, userId, friendId));
+        });
+        return removed[0];
+    }
+
+    @Override
+    public FriendshipStatus requestFriend(Long userId, Long friendId) {
+        FriendshipStatus[] status = {FriendshipStatus.UNCONFIRMED};
+        changePair(userId, friendId, () -> {
+            if (friends.contains(userId, friendId)) {
+                status[0] = FriendshipStatus.CONFIRMED;
+                return 0;
+            }
+            if (friends.hasRequest(friendId, userId)) {
+                status[0] = FriendshipStatus.CONFIRMED;
+                return confirm(userId, friendId);
+            }
+            return friends.addRequest(userId, friendId)
+                    ? log(UserRecords.friendship(UserRecords.FRIEND_REQUEST, userId, friendId))
+                    : 0;
+        });
+        return status[0];
+    }
+
+    @Override
+    public boolean acceptFriend(Long userId, Long requesterId) {
+        boolean[] accepted = {false};
+        changePair(userId, requesterId, () -> {
+            if (!friends.hasRequest(requesterId, userId)) {
+                return 0;
+            }
+            accepted[0] = true;
+            return confirm(requesterId, userId);
+        });
+        return accepted[0];
+    }
+
+    @Override
+    public boolean declineFriend(Long userId, Long otherId) {
+        boolean[] declined = {false};
+        changePair(userId, otherId, () -> {
+            long seq = 0;
+            if (friends.removeRequest(otherId, userId)) {
+                seq = log(UserRecords.friendship(UserRecords.REMOVE_FRIEND_REQUEST, otherId, userId));
+                declined[0] = true;
+            }
+            if (friends.removeRequest(userId, otherId)) {
+                seq = log(UserRecords.friendship(UserRecords.REMOVE_FRIEND_REQUEST, userId, otherId));
+                declined[0] = true;
+            }
+            return seq;
+        });
+        return declined[0];
+    }
+
+    @Override
+    public long[] findFriendRequests(Long userId) {
+        return friends.incomingRequests(userId);
+    }
+
+    // Дружба бывает только между существующими пользователями, поэтому наличие проверяется лишь у тех, у кого друзей нет
+    @Override
+    public long[] findFriendIds(Long userId) {
+        long[] friendIds = friends.friends(userId);
+        return friendIds.length > 0 || users.containsKey(userId) ? friendIds : null;
+    }
+
+    @Override
+    public int countFriends(Long userId) {
+        return users.containsKey(userId) ? friends.degree(userId) : -1;
+    }
+
+    @Override
+    public long friendGraphBytes() {
+        return friends.estimatedBytes();
+    }
+
+    @Override
+    public long count() {
+        return userCount.sum();
+    }
+
+    @Override
+    public long findUserVersion(Long id) {
+        long version = versions.get(id);
+        return users.containsKey(id) ? VersionTable.mix(VersionTable.mix(versions.epoch(), id), version) : -1;
+    }
+
+    @Override
+    public long findFriendsVersion(Long userId) {
+        long userVersion = versions.get(userId);
+        User user = users.get(userId);
+        if (user == null) {
+            return -1;
+        }
+        long version = VersionTable.mix(VersionTable.mix(versions.epoch(), userId), userVersion);
+        for (long friendId : friends.friends(userId)) {
+            version = VersionTable.mix(VersionTable.mix(version, friendId), versions.get(friendId));
+        }
+        return version;
+    }
+
+    @Override
+    public void snapshot() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.snapshot(this::awaitWriters, out -> {
+                for (User user : users.values()) {
+                    out.writeBoolean(true);
+                    UserRecords.writeUser(out, user, friends.friends(user.getId()));
+                }
+                out.writeBoolean(false);
+                long[] requests = friends.requests();
+                for (int i = 0; i < requests.length; i += 2) {
+                    out.writeBoolean(true);
+                    out.writeLong(requests[i]);
+                    out.writeLong(requests[i + 1]);
+                }
+                out.writeBoolean(false);
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось сохранить снимок пользователей", e);
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        if (journal != null) {
+            snapshot();
+            journal.close();
+        }
+    }
+
+
+    // Пара меняется под страйпами обоих пользователей, захват по возрастанию номера страйпа, а не id:
+    // id разных пар ложатся на страйпы в разном порядке. change возвращает номер записи журнала.
+    // Сборка графа, если изменение ее заморозило, идет уже без страйпов
+    private void changePair(Long userId, Long friendId, LongSupplier change) {
+        int userStripe = stripe(userId);
+        int friendStripe = stripe(friendId);
+        ReentrantLock first = locks[Math.min(userStripe, friendStripe)];
+        ReentrantLock second = locks[Math.max(userStripe, friendStripe)];
+        long seq = 0;
+        first.lock();
+        second.lock();
+        try {
+            if (users.containsKey(userId) && users.containsKey(friendId)) {
+                seq = change.getAsLong();
+            }
+        } finally {
+            second.unlock();
+            first.unlock();
+        }
+        friends.mergePending();
+        awaitDurable(seq);
+    }
+
+    // Дружба снимает заявки между пользователями в обе стороны
+    private long confirm(long userId, long friendId) {
+        friends.removeRequest(userId, friendId);
+        friends.removeRequest(friendId, userId);
+        if (!friends.add(userId, friendId)) {
+            return 0;
+        }
+        friendSets.invalidate(userId);
+        friendSets.invalidate(friendId);
+        versions.increment(userId);
+        versions.increment(friendId);
+        return log(UserRecords.friendship(UserRecords.ADD_FRIEND, userId, friendId));
     }
 
+    private User withFriends(User stored) {
+        if (stored == null) {
+            return null;
+        }
+        User user = stored.copy();
+        user.setFriendIds(friendSet(stored.getId()));
+        return user;
+    }
+
+    private LongHashSet friendSet(long userId) {
+        return friendSets.get(userId, id -> LongHashSet.ofDistinct(friends.friends(id)));
+    }
+
+    private static User withoutFriends(User user) {
+        User stored = user.copy();
+        stored.setFriendIds(null);
+        return stored;
+    }
+
+    private long insert(User user) {
+        ReentrantLock lock = lockFor(user.getId());
+        lock.lock();
+        try {
+            user.setFriendIds(new LongHashSet());
+            user.setVersion(1);
+            long seq = log(UserRecords.create(user));
+            users.put(user.getId(), withoutFriends(user));
+            userCount.increment();
+            versions.increment(user.getId());
+            return seq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long log(byte[] record) {
+        return journal == null ? 0 : journal.append(record);
+    }
+
+    private void awaitDurable(long seq) {
+        if (seq > 0) {
+            journal.awaitDurable(seq);
+        }
+    }
+
+    // Каждое изменение, начатое до переключения сегмента журнала, к выходу из метода уже в памяти
+    private void awaitWriters() {
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+            lock.unlock();
+        }
+    }
+
+    private void loadSnapshot(BufferInput in) {
+        while (in.get() != 0) {
+            User user = UserRecords.readUser(in, true);
+            friends.loadRow(user.getId(), user.getFriendIds().toLongArray());
+            install(user);
+        }
+        // В снимках до появления заявок этого раздела нет
+        if (in.hasRemaining()) {
+            while (in.get() != 0) {
+                friends.addRequest(in.getLong(), in.getLong());
+            }
+        }
+    }
+
+    // Журнал проигрывается до открытия на запись, поэтому изменения здесь повторно не журналируются.
+    // Пользователи ставятся как есть, без проверок уникальности email и версий: снимок нечеткий, и старая правка
+    // может столкнуться с email, который в снимке уже у другого. Индекс email строит rebuildIndexes
+    private void replay(BufferInput record) {
+        byte type = record.get();
+        switch (type) {
+            case UserRecords.CREATE -> install(UserRecords.readUser(record, true));
+            case UserRecords.UPDATE -> install(UserRecords.readUser(record, false));
+            case UserRecords.ADD_FRIEND -> replayFriendship(record.getLong(), record.getLong());
+            case UserRecords.REMOVE_FRIEND -> friends.remove(record.getLong(), record.getLong());
+            case UserRecords.FRIEND_REQUEST -> friends.addRequest(record.getLong(), record.getLong());
+            case UserRecords.REMOVE_FRIEND_REQUEST -> friends.removeRequest(record.getLong(), record.getLong());
+            default -> throw new IllegalStateException("Неизвестная запись журнала пользователей: " + type);
+        }
+        friends.mergePending();
+    }
+
+    // Записи о дружбе и заявках применяются к графу как есть, без логики requestFriend/confirm: в нечетком снимке
+    // уже может лежать заявка, записанная позже проигрываемой, и встречная проверка приняла бы ее за подтверждение
+    private void replayFriendship(long userId, long friendId) {
+        friends.removeRequest(userId, friendId);
+        friends.removeRequest(friendId, userId);
+        friends.add(userId, friendId);
+    }
+
+    // Друзья из записи не переносятся: в снимке их загружает loadSnapshot, в записи CREATE их нет.
+    // Версии правок не сохраняются: после перезапуска отсчет идет заново, ETag меняется вместе с эпохой
+    private void install(User user) {
+        user.setVersion(1);
+        users.put(user.getId(), withoutFriends(user));
+    }
+
+    // Один проход по итоговому состоянию после снимка и журнала, до первого запроса
+    private void rebuildIndexes() {
+        for (User user : users.values()) {
+            Long owner = userIdsByEmail.put(user.getEmail(), user.getId());
+            if (owner != null) {
+                log.warn("После восстановления email {} у пользователей {} и {}", user.getEmail(), owner,
+                        user.getId());
+            }
+            emailsByUserId.put(user.getId(), user.getEmail());
+            userCount.increment();
+            versions.increment(user.getId());
+            lastId.accumulateAndGet(user.getId(), Math::max);
+        }
+    }
+
+    // Новый email занимается раньше, чем освобождается старый: между шагами оба принадлежат пользователю
+    private void moveEmail(Long userId, String newEmail) {
+        String oldEmail = emailsByUserId.get(userId);
+        if (newEmail.equals(oldEmail)) {
+            return;
+        }
+        Long owner = userIdsByEmail.putIfAbsent(newEmail, userId);
+        if (owner != null && !owner.equals(userId)) {
+            throw new ValidationException("Этот email уже используется");
+        }
+        emailsByUserId.put(userId, newEmail);
+        if (oldEmail != null) {
+            userIdsByEmail.remove(oldEmail, userId);
+        }
+    }
+
+    private ReentrantLock lockFor(Long userId) {
+        return locks[stripe(userId)];
+    }
 
-    private long getNextId() {
-        long currentMaxId = users.keySet()
-                .stream()
-                .mapToLong(id -> id)
-                .max()
-                .orElse(0);
-        return ++currentMaxId;
+    private static int stripe(long userId) {
+        return (int) (userId & (LOCK_STRIPES - 1));
     }
 }
@@ -0,0 +1,417 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enums.FriendshipStatus;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище пользователей в БД. Дружба взаимная и хранится двумя строками friendships со статусом CONFIRMED,
+ * заявка в друзья - одной строкой от отправителя со статусом UNCONFIRMED.
+ */
+@Component
+@Profile("db")
+@RequiredArgsConstructor
+public class UserDbStorage implements UserStorage {
+
+    private static final int STREAM_PAGE_SIZE = 1000;
+
+    private static final String INSERT_USER = "INSERT INTO users (email, login, name, birthday) VALUES (?, ?, ?, ?)";
+
+    private static final String SELECT_USERS = "SELECT id, email, login, name, birthday, edit_version FROM users ";
+
+    // Версии в БД переживают перезапуск, а пересоздание базы - нет, поэтому эпоха своя у каждого процесса
+    private final long epoch = ThreadLocalRandom.current().nextLong();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @Override
+    public Collection<User> findAll() {
+        List<User> users = jdbcTemplate.query(SELECT_USERS + "ORDER BY id", this::mapUser);
+        Map<Long, User> usersById = byId(users);
+
+        jdbcTemplate.query("SELECT requester_id, addressee_id FROM friendships WHERE status = 'CONFIRMED'",
+                (RowCallbackHandler) rs -> attachFriend(usersById, rs));
+        return users;
+    }
+
+    @Override
+    public User findUserById(Long id) {
+        List<User> users = jdbcTemplate.query(SELECT_USERS + "WHERE id = ?", this::mapUser, id);
+        if (users.isEmpty()) {
+            return null;
+        }
+        loadFriends(users);
+        return users.get(0);
+    }
+
+    @Override
+    public List<User> findUsersByIds(long[] ids) {
+        if (ids.length == 0) {
+            return new ArrayList<>();
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource("ids", Arrays.stream(ids).boxed().toList());
+        List<User> users = namedJdbcTemplate.query(SELECT_USERS + "WHERE id IN (:ids) ORDER BY id",
+                params, this::mapUser);
+        loadFriends(users);
+        return users;
+    }
+
+    @Override
+    public List<User> findPage(Long after, int limit) {
+        List<User> users = jdbcTemplate.query(SELECT_USERS + "WHERE id > ? ORDER BY id LIMIT ?",
+                this::mapUser, after == null ? 0 : after, limit);
+        loadFriends(users);
+        return users;
+    }
+
+    @Override
+    public Stream<User> streamAll() {
+        Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM users", Long.class);
+        if (maxId == null) {
+            return Stream.empty();
+        }
+        return Stream.iterate(findPage(null, STREAM_PAGE_SIZE),
+                        page -> !page.isEmpty(),
+                        page -> findPage(page.get(page.size() - 1).getId(), STREAM_PAGE_SIZE))
+                .flatMap(List::stream)
+                .takeWhile(user -> user.getId() <= maxId);
+    }
+
+    @Override
+    public User create(User user) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        try {
+            jdbcTemplate.update(connection -> {
+                PreparedStatement ps = connection.prepareStatement(INSERT_USER, Statement.RETURN_GENERATED_KEYS);
+                setUserColumns(ps, user);
+                return ps;
+            }, keyHolder);
+        } catch (DuplicateKeyException e) {
+            throw new ValidationException("Этот email уже используется");
+        }
+        user.setId(Objects.requireNonNull(keyHolder.getKey()).longValue());
+        user.setVersion(1);
+        return user;
+    }
+
+    // Занятые email отсеиваются заранее, гонка со вставкой другого запроса - как в FilmDbStorage.createAll
+    @Override
+    @Transactional
+    public List<User> createAll(List<User> users) {
+        if (users.isEmpty()) {
+            return users;
+        }
+        Set<String> taken = new HashSet<>(namedJdbcTemplate.queryForList(
+                "SELECT email FROM users WHERE email IN (:emails)",
+                new MapSqlParameterSource("emails", users.stream().map(User::getEmail).toList()), String.class));
+        List<User> fresh = users.stream().filter(user -> !taken.contains(user.getEmail())).toList();
+
+        TransactionStatus transaction = TransactionAspectSupport.currentTransactionStatus();
+        Object savepoint = transaction.createSavepoint();
+        List<User> created;
+        try {
+            insertUsers(fresh);
+            created = fresh;
+        } catch (DuplicateKeyException e) {
+            transaction.rollbackToSavepoint(savepoint);
+            created = new ArrayList<>(fresh.size());
+            for (User user : fresh) {
+                if (insertUserIfAbsent(user, transaction)) {
+                    created.add(user);
+                }
+            }
+        }
+        transaction.releaseSavepoint(savepoint);
+        return created;
+    }
+
+    private void insertUsers(List<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(INSERT_USER, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        setUserColumns(ps, users.get(i));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return users.size();
+                    }
+                }, keyHolder);
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        for (int i = 0; i < users.size(); i++) {
+            users.get(i).setId(((Number) keys.get(i).values().iterator().next()).longValue());
+            users.get(i).setVersion(1);
+        }
+    }
+
+    private boolean insertUserIfAbsent(User user, TransactionStatus transaction) {
+        Object savepoint = transaction.createSavepoint();
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        try {
+            jdbcTemplate.update(connection -> {
+                PreparedStatement ps = connection.prepareStatement(INSERT_USER, Statement.RETURN_GENERATED_KEYS);
+                setUserColumns(ps, user);
+                return ps;
+            }, keyHolder);
+        } catch (DuplicateKeyException e) {
+            transaction.rollbackToSavepoint(savepoint);
+            return false;
+        } finally {
+            transaction.releaseSavepoint(savepoint);
+        }
+        user.setId(Objects.requireNonNull(keyHolder.getKey()).longValue());
+        user.setVersion(1);
+        return true;
+    }
+
+    // Проверка версии - условие в UPDATE, как в FilmDbStorage
+    @Override
+    @Transactional
+    public User update(User user, long expectedVersion) {
+        boolean anyVersion = expectedVersion == ANY_VERSION;
+        int updated;
+        try {
+            updated = jdbcTemplate.update(connection -> {
+                PreparedStatement ps = connection.prepareStatement(
+                        "UPDATE users SET email = ?, login = ?, name = ?, birthday = ?, version = version + 1, "
+                                + "edit_version = edit_version + 1 WHERE id = ?"
+                                + (anyVersion ? "" : " AND edit_version = ?"));
+                setUserColumns(ps, user);
+                ps.setLong(5, user.getId());
+                if (!anyVersion) {
+                    ps.setLong(6, expectedVersion);
+                }
+                return ps;
+            });
+        } catch (DuplicateKeyException e) {
+            throw new ValidationException("Этот email уже используется");
+        }
+        if (updated == 0) {
+            if (anyVersion || findUserById(user.getId()) == null) {
+                throw new NotFoundException("Пользователь с id = " + user.getId() + " не найден.");
+            }
+            return null;
+        }
+        User newUser = user.copy();
+        newUser.setVersion(jdbcTemplate.queryForObject("SELECT edit_version FROM users WHERE id = ?", Long.class,
+                user.getId()));
+        return newUser;
+    }
+
+    @Override
+    public boolean isExistingEmail(String email) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM users WHERE email = ?)", Boolean.class, email));
+    }
+
+    @Override
+    public long count() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Long.class);
+    }
+
+    @Override
+    @Transactional
+    public boolean addFriend(Long userId, Long friendId) {
+        if (Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM friendships "
+                        + "WHERE requester_id = ? AND addressee_id = ? AND status = 'CONFIRMED')",
+                Boolean.class, userId, friendId))) {
+            return false;
+        }
+        confirm(userId, friendId);
+        return true;
+    }
+
+    @Override
+    @Transactional
+    public boolean removeFriend(Long userId, Long friendId) {
+        int deleted = jdbcTemplate.update("DELETE FROM friendships WHERE status = 'CONFIRMED' "
+                + "AND ((requester_id = ? AND addressee_id = ?) OR (requester_id = ? AND addressee_id = ?))",
+                userId, friendId, friendId, userId);
+        if (deleted > 0) {
+            bumpVersions(userId, friendId);
+        }
+        return deleted > 0;
+    }
+
+    @Override
+    @Transactional
+    public FriendshipStatus requestFriend(Long userId, Long friendId) {
+        Map<Long, String> statuses = new HashMap<>();
+        jdbcTemplate.query("SELECT requester_id, status FROM friendships "
+                        + "WHERE (requester_id = ? AND addressee_id = ?) OR (requester_id = ? AND addressee_id = ?)",
+                (RowCallbackHandler) rs -> statuses.put(rs.getLong("requester_id"), rs.getString("status")),
+                userId, friendId, friendId, userId);
+        if (statuses.containsValue(FriendshipStatus.CONFIRMED.name())) {
+            return FriendshipStatus.CONFIRMED;
+        }
+        // Встречная заявка
+        if (statuses.containsKey(friendId)) {
+            confirm(userId, friendId);
+            return FriendshipStatus.CONFIRMED;
+        }
+        if (!statuses.containsKey(userId)) {
+            jdbcTemplate.update("INSERT INTO friendships (requester_id, addressee_id, status) VALUES (?, ?, ?)",
+                    userId, friendId, FriendshipStatus.UNCONFIRMED.name());
+        }
+        return FriendshipStatus.UNCONFIRMED;
+    }
+
+    @Override
+    @Transactional
+    public boolean acceptFriend(Long userId, Long requesterId) {
+        int updated = jdbcTemplate.update("UPDATE friendships SET status = 'CONFIRMED' "
+                + "WHERE requester_id = ? AND addressee_id = ? AND status = 'UNCONFIRMED'", requesterId, userId);
+        if (updated == 0) {
+            return false;
+        }
+        confirm(requesterId, userId);
+        return true;
+    }
+
+    @Override
+    public boolean declineFriend(Long userId, Long otherId) {
+        return jdbcTemplate.update("DELETE FROM friendships WHERE status = 'UNCONFIRMED' "
+                + "AND ((requester_id = ? AND addressee_id = ?) OR (requester_id = ? AND addressee_id = ?))",
+                otherId, userId, userId, otherId) > 0;
+    }
+
+    @Override
+    public long[] findFriendRequests(Long userId) {
+        return jdbcTemplate.queryForList("SELECT requester_id FROM friendships "
+                        + "WHERE addressee_id = ? AND status = 'UNCONFIRMED' ORDER BY requester_id", Long.class, userId)
+                .stream().mapToLong(Long::longValue).toArray();
+    }
+
+    @Override
+    public long[] findFriendIds(Long userId) {
+        if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM users WHERE id = ?)",
+                Boolean.class, userId))) {
+            return null;
+        }
+        return jdbcTemplate.queryForList("SELECT addressee_id FROM friendships "
+                        + "WHERE requester_id = ? AND status = 'CONFIRMED' ORDER BY addressee_id", Long.class, userId)
+                .stream().mapToLong(Long::longValue).toArray();
+    }
+
+    @Override
+    public int countFriends(Long userId) {
+        List<Integer> counts = jdbcTemplate.queryForList("SELECT (SELECT COUNT(*) FROM friendships f "
+                + "WHERE f.requester_id = u.id AND f.status = 'CONFIRMED') FROM users u WHERE u.id = ?",
+                Integer.class, userId);
+        return counts.isEmpty() ? -1 : counts.get(0);
+    }
+
+    @Override
+    public long friendGraphBytes() {
+        return 0;
+    }
+
+    @Override
+    public long findUserVersion(Long id) {
+        List<Long> versions = jdbcTemplate.queryForList("SELECT version FROM users WHERE id = ?", Long.class, id);
+        return versions.isEmpty() ? -1 : VersionTable.mix(VersionTable.mix(epoch, id), versions.get(0));
+    }
+
+    @Override
+    public long findFriendsVersion(Long userId) {
+        List<Long> versions = jdbcTemplate.queryForList("SELECT version FROM users WHERE id = ?", Long.class, userId);
+        if (versions.isEmpty()) {
+            return -1;
+        }
+        long[] version = {VersionTable.mix(VersionTable.mix(epoch, userId), versions.get(0))};
+        jdbcTemplate.query("SELECT u.id, u.version FROM friendships f JOIN users u ON u.id = f.addressee_id "
+                        + "WHERE f.requester_id = ? AND f.status = 'CONFIRMED' ORDER BY u.id",
+                (RowCallbackHandler) rs -> version[0] = VersionTable.mix(
+                        VersionTable.mix(version[0], rs.getLong("id")), rs.getLong("version")), userId);
+        return version[0];
+    }
+
+
+    // Обе строки пары подтверждаются, встречная заявка перезаписывается
+    private void confirm(Long userId, Long friendId) {
+        jdbcTemplate.batchUpdate("MERGE INTO friendships (requester_id, addressee_id, status) "
+                        + "KEY (requester_id, addressee_id) VALUES (?, ?, ?)",
+                List.of(new Object[]{userId, friendId, FriendshipStatus.CONFIRMED.name()},
+                        new Object[]{friendId, userId, FriendshipStatus.CONFIRMED.name()}));
+        bumpVersions(userId, friendId);
+    }
+
+    private void bumpVersions(Long userId, Long friendId) {
+        jdbcTemplate.update("UPDATE users SET version = version + 1 WHERE id IN (?, ?)", userId, friendId);
+    }
+
+    // Друзья для всей выборки - одним запросом с IN вместо запроса на каждого пользователя
+    private void loadFriends(List<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        Map<Long, User> usersById = byId(users);
+        namedJdbcTemplate.query("SELECT requester_id, addressee_id FROM friendships "
+                        + "WHERE requester_id IN (:ids) AND status = 'CONFIRMED'",
+                new MapSqlParameterSource("ids", usersById.keySet()), (RowCallbackHandler) rs -> attachFriend(usersById, rs));
+    }
+
+    private static Map<Long, User> byId(List<User> users) {
+        Map<Long, User> usersById = new HashMap<>(users.size() * 2);
+        for (User user : users) {
+            usersById.put(user.getId(), user);
+        }
+        return usersById;
+    }
+
+    private static void attachFriend(Map<Long, User> usersById, ResultSet rs) throws SQLException {
+        User user = usersById.get(rs.getLong("requester_id"));
+        if (user != null) {
+            user.getFriendIds().add(rs.getLong("addressee_id"));
+        }
+    }
+
+    private static void setUserColumns(PreparedStatement ps, User user) throws SQLException {
+        ps.setString(1, user.getEmail());
+        ps.setString(2, user.getLogin());
+        ps.setString(3, user.getName());
+        ps.setDate(4, user.getBirthday() == null ? null : Date.valueOf(user.getBirthday()));
+    }
+
+    private User mapUser(ResultSet rs, int rowNum) throws SQLException {
+        User user = new User();
+        user.setId(rs.getLong("id"));
+        user.setEmail(rs.getString("email"));
+        user.setLogin(rs.getString("login"));
+        user.setName(rs.getString("name"));
+        Date birthday = rs.getDate("birthday");
+        user.setBirthday(birthday == null ? null : birthday.toLocalDate());
+        user.setVersion(rs.getLong("edit_version"));
+        return user;
+    }
+}
@@ -0,0 +1,90 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.persistence.BufferInput;
+import ru.yandex.practicum.filmorate.util.LongHashSet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+import static ru.yandex.practicum.filmorate.storage.persistence.BinaryCodec.*;
+
+// Двоичный формат пользователей в журнале и снимке InMemoryUserStorage
+final class UserRecords {
+
+    static final byte CREATE = 1;
+    static final byte UPDATE = 2;
+    static final byte ADD_FRIEND = 3;
+    static final byte REMOVE_FRIEND = 4;
+    static final byte FRIEND_REQUEST = 5;
+    static final byte REMOVE_FRIEND_REQUEST = 6;
+
+    private static final long[] NO_FRIENDS = new long[0];
+
+    private UserRecords() {
+    }
+
+    // У нового пользователя друзей нет; поле оставлено ради совместимости со старыми журналами
+    static byte[] create(User user) {
+        return encode(CREATE, user, NO_FRIENDS);
+    }
+
+    static byte[] update(User user) {
+        return encode(UPDATE, user, null);
+    }
+
+    static byte[] friendship(byte type, long userId, long friendId) {
+        return ByteBuffer.allocate(17).put(type).putLong(userId).putLong(friendId).array();
+    }
+
+    // friends == null - запись без списка друзей
+    static void writeUser(DataOutput out, User user, long[] friends) throws IOException {
+        out.writeLong(user.getId());
+        writeString(out, user.getEmail());
+        writeString(out, user.getLogin());
+        writeString(out, user.getName());
+        writeDate(out, user.getBirthday());
+
+        if (friends != null) {
+            out.writeInt(friends.length);
+            for (long friendId : friends) {
+                out.writeLong(friendId);
+            }
+        }
+    }
+
+    static User readUser(BufferInput in, boolean withFriends) {
+        User user = new User();
+        user.setId(in.getLong());
+        user.setEmail(readString(in));
+        user.setLogin(readString(in));
+        user.setName(readString(in));
+        user.setBirthday(readDate(in));
+
+        if (withFriends) {
+            int friendCount = in.getInt();
+            LongHashSet friends = new LongHashSet(friendCount);
+            for (int i = 0; i < friendCount; i++) {
+                friends.add(in.getLong());
+            }
+            user.setFriendIds(friends);
+        }
+        return user;
+    }
+
+    private static byte[] encode(byte type, User user, long[] friends) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(type);
+            writeUser(out, user, friends);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,19 +1,79 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enums.FriendshipStatus;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
 
 public interface UserStorage {
 
+    // expectedVersion для update без проверки версии
+    long ANY_VERSION = -1;
+
     public Collection<User> findAll();
 
     public User findUserById(Long id);
 
+    public List<User> findUsersByIds(long[] ids);
+
+    // Пользователи с id больше after в порядке возрастания id
+    public List<User> findPage(Long after, int limit);
+
+    // Обход пользователей по возрастанию id; созданные после начала обхода не попадают.
+    // Это не снимок на момент начала: правки и друзья тех, до кого обход не дошел, в него попадают
+    public Stream<User> streamAll();
+
     public User create(User user);
 
-    public User update(User newUser);
+    // Создает всех пользователей за одну операцию и возвращает созданных в порядке пакета;
+    // пользователь, чей email успели занять, пропускается и в ответ не попадает
+    public List<User> createAll(List<User> users);
+
+    // Ставит копию newUser с версией на 1 больше, если версия хранимого пользователя равна expectedVersion;
+    // иначе null. Хранимый пользователь не меняется, его читатели правку видят только целиком
+    public User update(User newUser, long expectedVersion);
+
+    public default User update(User newUser) {
+        return update(newUser, ANY_VERSION);
+    }
 
     public boolean isExistingEmail(String email);
 
+    // true, если дружба добавилась; с уже подтвержденной ничего не меняется
+    public boolean addFriend(Long userId, Long friendId);
+
+    // true, если дружба была и удалилась
+    public boolean removeFriend(Long userId, Long friendId);
+
+    // Заявка от userId к friendId; встречная заявка сразу подтверждает дружбу. Возвращает итоговый статус пары
+    public FriendshipStatus requestFriend(Long userId, Long friendId);
+
+    // Подтверждает заявку requesterId к userId; false, если такой заявки нет
+    public boolean acceptFriend(Long userId, Long requesterId);
+
+    // Снимает заявку между пользователями в любую сторону; false, если заявки не было
+    public boolean declineFriend(Long userId, Long otherId);
+
+    // Отправители входящих заявок по возрастанию id
+    public long[] findFriendRequests(Long userId);
+
+    // Подтвержденные друзья по возрастанию id; null, если пользователя нет
+    public long[] findFriendIds(Long userId);
+
+    // Число подтвержденных друзей; -1, если пользователя нет
+    public int countFriends(Long userId);
+
+    // Оценка памяти графа дружбы, байт; 0, если дружба хранится в БД
+    public long friendGraphBytes();
+
+    public long count();
+
+    // Версия пользователя для ETag: меняется при каждом изменении пользователя или его друзей; -1, если его нет
+    public long findUserVersion(Long id);
+
+    // Версия списка друзей для ETag: меняется при изменении состава или любого из друзей; -1, если пользователя нет
+    public long findFriendsVersion(Long userId);
+
 }
@@ -0,0 +1,67 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Счетчики изменений по id для ETag: страницы AtomicLongArray, 8 байт на сущность без упаковки в Long.
+ * Счетчики живут только в памяти процесса, поэтому в версию подмешивается случайная эпоха:
+ * после перезапуска ни один старый ETag не совпадет.
+ */
+final class VersionTable {
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    private final long epoch = ThreadLocalRandom.current().nextLong();
+    private final ReentrantLock growLock = new ReentrantLock();
+    // Новая страница публикуется копией массива, читатели ходят без блокировок
+    private volatile AtomicLongArray[] pages = new AtomicLongArray[16];
+
+    long epoch() {
+        return epoch;
+    }
+
+    long get(long id) {
+        AtomicLongArray[] current = pages;
+        int pageIndex = (int) (id >>> PAGE_BITS);
+        if (pageIndex >= current.length || current[pageIndex] == null) {
+            return 0;
+        }
+        return current[pageIndex].get((int) (id & (PAGE_SIZE - 1)));
+    }
+
+    // Вызывается после изменения сущности: читатель, увидевший новую версию, увидит и изменение
+    void increment(long id) {
+        page((int) (id >>> PAGE_BITS)).incrementAndGet((int) (id & (PAGE_SIZE - 1)));
+    }
+
+    // Версия сущности или набора сущностей; результат неотрицательный, -1 остается для "не найдено"
+    static long mix(long hash, long value) {
+        long h = (hash ^ value) * 0x9E3779B97F4A7C15L;
+        return (h ^ (h >>> 31)) & Long.MAX_VALUE;
+    }
+
+    private AtomicLongArray page(int pageIndex) {
+        AtomicLongArray[] current = pages;
+        if (pageIndex < current.length && current[pageIndex] != null) {
+            return current[pageIndex];
+        }
+        growLock.lock();
+        try {
+            current = pages;
+            if (pageIndex >= current.length || current[pageIndex] == null) {
+                AtomicLongArray[] grown = Arrays.copyOf(current,
+                        Math.max(current.length, Integer.highestOneBit(pageIndex) << 1));
+                grown[pageIndex] = new AtomicLongArray(PAGE_SIZE);
+                pages = grown;
+                current = grown;
+            }
+            return current[pageIndex];
+        } finally {
+            growLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import ru.yandex.practicum.filmorate.config.StorageCacheProperties;
+import ru.yandex.practicum.filmorate.model.DTO.FilmSearch;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.persistence.Snapshottable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Кэширует фильмы по id. Любая запись в фильм, в том числе лайк, удаляет его из кэша после записи в хранилище,
+ * при ошибке тоже: по исключению не видно, успело ли изменение дойти до базы.
+ */
+public class CachingFilmStorage implements FilmStorage, Snapshottable {
+
+    private final FilmStorage delegate;
+    private final EntityCache<Film> cache;
+
+    public CachingFilmStorage(FilmStorage delegate, StorageCacheProperties.Entity settings, MeterRegistry registry) {
+        this.delegate = delegate;
+        this.cache = new EntityCache<>("films", settings, film -> 1 + film.getLikedUsersIds().size(), registry);
+    }
+
+    @Override
+    public Film findFilmById(Long id) {
+        return cache.get(id, delegate::findFilmById);
+    }
+
+    @Override
+    public boolean isLiked(long filmId, long userId) {
+        Film film = cache.getIfPresent(filmId);
+        return film != null ? film.getLikedUsersIds().contains(userId) : delegate.isLiked(filmId, userId);
+    }
+
+    @Override
+    public boolean addLike(long filmId, long userId) {
+        try {
+            return delegate.addLike(filmId, userId);
+        } finally {
+            cache.invalidate(filmId);
+        }
+    }
+
+    @Override
+    public boolean removeLike(long filmId, long userId) {
+        try {
+            return delegate.removeLike(filmId, userId);
+        } finally {
+            cache.invalidate(filmId);
+        }
+    }
+
+    @Override
+    public boolean[] applyLikes(List<LikeChange> changes) {
+        try {
+            return delegate.applyLikes(changes);
+        } finally {
+            for (LikeChange change : changes) {
+                cache.invalidate(change.filmId());
+            }
+        }
+    }
+
+    // Новый id мог быть закэширован как несуществующий
+    @Override
+    public Film create(Film film) {
+        Film created = delegate.create(film);
+        cache.invalidate(created.getId());
+        return created;
+    }
+
+    @Override
+    public List<Film> createAll(List<Film> films) {
+        List<Film> created = delegate.createAll(films);
+        for (Film film : created) {
+            cache.invalidate(film.getId());
+        }
+        return created;
+    }
+
+    @Override
+    public Film update(Film film, long expectedVersion) {
+        try {
+            return delegate.update(film, expectedVersion);
+        } finally {
+            cache.invalidate(film.getId());
+        }
+    }
+
+    @Override
+    public Collection<Film> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public List<Film> findPage(Long after, int limit) {
+        return delegate.findPage(after, limit);
+    }
+
+    @Override
+    public Stream<Film> streamAll() {
+        return delegate.streamAll();
+    }
+
+    @Override
+    public Collection<Film> findLikedFilm(int count) {
+        return delegate.findLikedFilm(count);
+    }
+
+    @Override
+    public Collection<Film> findLikedFilmByGenres(int count, Set<Long> genreIds) {
+        return delegate.findLikedFilmByGenres(count, genreIds);
+    }
+
+    @Override
+    public List<Film> search(FilmSearch search) {
+        return delegate.search(search);
+    }
+
+    @Override
+    public long searchIndexBytes() {
+        return delegate.searchIndexBytes();
+    }
+
+    @Override
+    public boolean isExistingFilm(String filmName) {
+        return delegate.isExistingFilm(filmName);
+    }
+
+    @Override
+    public long count() {
+        return delegate.count();
+    }
+
+    @Override
+    public long countLikes() {
+        return delegate.countLikes();
+    }
+
+    @Override
+    public int maxLikes() {
+        return delegate.maxLikes();
+    }
+
+    @Override
+    public long findFilmVersion(Long id) {
+        return delegate.findFilmVersion(id);
+    }
+
+    @Override
+    public long findPopularVersion(int count) {
+        return delegate.findPopularVersion(count);
+    }
+
+    @Override
+    public long findPopularVersionByGenres(int count, Set<Long> genreIds) {
+        return delegate.findPopularVersionByGenres(count, genreIds);
+    }
+
+    @Override
+    public void snapshot() {
+        if (delegate instanceof Snapshottable snapshottable) {
+            snapshottable.snapshot();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import ru.yandex.practicum.filmorate.config.StorageCacheProperties;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enums.FriendshipStatus;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.persistence.Snapshottable;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Кэширует пользователей по id; список друзей собирается из кэша, промахи догружаются по одному.
+ * Изменение дружбы удаляет из кэша обоих пользователей.
+ */
+public class CachingUserStorage implements UserStorage, Snapshottable {
+
+    private final UserStorage delegate;
+    private final EntityCache<User> cache;
+
+    public CachingUserStorage(UserStorage delegate, StorageCacheProperties.Entity settings, MeterRegistry registry) {
+        this.delegate = delegate;
+        this.cache = new EntityCache<>("users", settings, user -> 1 + user.getFriendIds().size(), registry);
+    }
+
+    @Override
+    public User findUserById(Long id) {
+        return cache.get(id, delegate::findUserById);
+    }
+
+    @Override
+    public List<User> findUsersByIds(long[] ids) {
+        return cache.getAll(ids, delegate::findUserById);
+    }
+
+    @Override
+    public User create(User user) {
+        User created = delegate.create(user);
+        cache.invalidate(created.getId());
+        return created;
+    }
+
+    @Override
+    public List<User> createAll(List<User> users) {
+        List<User> created = delegate.createAll(users);
+        for (User user : created) {
+            cache.invalidate(user.getId());
+        }
+        return created;
+    }
+
+    @Override
+    public User update(User newUser, long expectedVersion) {
+        try {
+            return delegate.update(newUser, expectedVersion);
+        } finally {
+            cache.invalidate(newUser.getId());
+        }
+    }
+
+    @Override
+    public boolean addFriend(Long userId, Long friendId) {
+        try {
+            return delegate.addFriend(userId, friendId);
+        } finally {
+            cache.invalidate(userId);
+            cache.invalidate(friendId);
+        }
+    }
+
+    @Override
+    public boolean removeFriend(Long userId, Long friendId) {
+        try {
+            return delegate.removeFriend(userId, friendId);
+        } finally {
+            cache.invalidate(userId);
+            cache.invalidate(friendId);
+        }
+    }
+
+    // Встречная заявка подтверждает дружбу, поэтому сбрасываются оба пользователя
+    @Override
+    public FriendshipStatus requestFriend(Long userId, Long friendId) {
+        try {
+            return delegate.requestFriend(userId, friendId);
+        } finally {
+            cache.invalidate(userId);
+            cache.invalidate(friendId);
+        }
+    }
+
+    @Override
+    public boolean acceptFriend(Long userId, Long requesterId) {
+        try {
+            return delegate.acceptFriend(userId, requesterId);
+        } finally {
+            cache.invalidate(userId);
+            cache.invalidate(requesterId);
+        }
+    }
+
+    @Override
+    public boolean declineFriend(Long userId, Long otherId) {
+        return delegate.declineFriend(userId, otherId);
+    }
+
+    @Override
+    public long[] findFriendRequests(Long userId) {
+        return delegate.findFriendRequests(userId);
+    }
+
+    // Из закэшированного пользователя, без запроса к хранилищу
+    @Override
+    public long[] findFriendIds(Long userId) {
+        User user = findUserById(userId);
+        if (user == null) {
+            return null;
+        }
+        long[] friendIds = user.getFriendIds().toLongArray();
+        Arrays.sort(friendIds);
+        return friendIds;
+    }
+
+    @Override
+    public int countFriends(Long userId) {
+        return delegate.countFriends(userId);
+    }
+
+    @Override
+    public long friendGraphBytes() {
+        return delegate.friendGraphBytes();
+    }
+
+    @Override
+    public Collection<User> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public List<User> findPage(Long after, int limit) {
+        return delegate.findPage(after, limit);
+    }
+
+    @Override
+    public Stream<User> streamAll() {
+        return delegate.streamAll();
+    }
+
+    @Override
+    public boolean isExistingEmail(String email) {
+        return delegate.isExistingEmail(email);
+    }
+
+    @Override
+    public long count() {
+        return delegate.count();
+    }
+
+    @Override
+    public long findUserVersion(Long id) {
+        return delegate.findUserVersion(id);
+    }
+
+    @Override
+    public long findFriendsVersion(Long userId) {
+        return delegate.findFriendsVersion(userId);
+    }
+
+    @Override
+    public void snapshot() {
+        if (delegate instanceof Snapshottable snapshottable) {
+            snapshottable.snapshot();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import ru.yandex.practicum.filmorate.config.StorageCacheProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Кэш сущностей по id поверх Caffeine (вытеснение W-TinyLFU по весу). Отсутствие сущности тоже
+ * кэшируется, но на negativeTtl. Метрики - cache.gets{cache, result} и остальные метры CaffeineCacheMetrics.
+ */
+final class EntityCache<T> {
+
+    private final Cache<Long, Optional<T>> cache;
+
+    EntityCache(String name, StorageCacheProperties.Entity settings, ToIntFunction<T> weigher,
+                MeterRegistry registry) {
+        long ttl = settings.getExpireAfterWrite().toNanos();
+        long negativeTtl = settings.getNegativeTtl().toNanos();
+        cache = Caffeine.newBuilder()
+                .maximumWeight(settings.getMaximumWeight())
+                .<Long, Optional<T>>weigher((id, value) -> value.map(weigher::applyAsInt).orElse(1))
+                .expireAfter(new Expiry<Long, Optional<T>>() {
+                    @Override
+                    public long expireAfterCreate(Long id, Optional<T> value, long currentTime) {
+                        return value.isPresent() ? ttl : negativeTtl;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Long id, Optional<T> value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(id, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Long id, Optional<T> value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        if (registry != null) {
+            CaffeineCacheMetrics.monitor(registry, cache, name);
+        }
+    }
+
+    // Загрузка одного id атомарна: инвалидация во время загрузки дождется ее и удалит результат
+    T get(Long id, Function<Long, T> loader) {
+        return cache.get(id, key -> Optional.ofNullable(loader.apply(key))).orElse(null);
+    }
+
+    T getIfPresent(Long id) {
+        Optional<T> value = cache.getIfPresent(id);
+        return value == null ? null : value.orElse(null);
+    }
+
+    // Найденные сущности в порядке ids. Промахи грузятся по одному через get: пакетная загрузка с последующим
+    // putAll не атомарна с инвалидацией и могла оставить в кэше устаревшую сущность
+    List<T> getAll(long[] ids, Function<Long, T> loader) {
+        List<T> result = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            T entity = get(id, loader);
+            if (entity != null) {
+                result.add(entity);
+            }
+        }
+        return result;
+    }
+
+    void invalidate(Long id) {
+        cache.invalidate(id);
+    }
+}
@@ -0,0 +1,45 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.config.StorageCacheProperties;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+/**
+ * Ставит кэш перед любыми бинами FilmStorage и UserStorage. Срабатывает после метрик, поэтому
+ * таймеры filmorate.storage меряют только промахи, а попадания видны в cache.gets.
+ */
+@Component
+@ConditionalOnProperty(prefix = "filmorate.cache", name = "enabled", havingValue = "true")
+public class StorageCachePostProcessor implements BeanPostProcessor, Ordered {
+
+    private final ObjectProvider<StorageCacheProperties> properties;
+    private final ObjectProvider<MeterRegistry> registry;
+
+    public StorageCachePostProcessor(ObjectProvider<StorageCacheProperties> properties,
+                                     ObjectProvider<MeterRegistry> registry) {
+        this.properties = properties;
+        this.registry = registry;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof FilmStorage storage) {
+            return new CachingFilmStorage(storage, properties.getObject().getFilms(), registry.getIfAvailable());
+        }
+        if (bean instanceof UserStorage storage) {
+            return new CachingUserStorage(storage, properties.getObject().getUsers(), registry.getIfAvailable());
+        }
+        return bean;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+}
@@ -0,0 +1,64 @@
+package ru.yandex.practicum.filmorate.storage.persistence;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Чтение записей журнала и снимков из нескольких буферов подряд, как из одного ByteBuffer.
+ * Снимок больше 2 ГБ не помещается в один MappedByteBuffer и отображается кусками,
+ * поэтому число или строка могут лежать на стыке двух буферов.
+ */
+public final class BufferInput {
+
+    private final ByteBuffer[] chunks;
+    private int index;
+    private ByteBuffer current;
+
+    public BufferInput(ByteBuffer... chunks) {
+        this.chunks = chunks;
+        this.current = chunks.length == 0 ? ByteBuffer.allocate(0) : chunks[0];
+    }
+
+    public boolean hasRemaining() {
+        while (!current.hasRemaining() && index + 1 < chunks.length) {
+            current = chunks[++index];
+        }
+        return current.hasRemaining();
+    }
+
+    public byte get() {
+        if (!hasRemaining()) {
+            throw new BufferUnderflowException();
+        }
+        return current.get();
+    }
+
+    public int getInt() {
+        return current.remaining() >= Integer.BYTES ? current.getInt() : (int) getAcross(Integer.BYTES);
+    }
+
+    public long getLong() {
+        return current.remaining() >= Long.BYTES ? current.getLong() : getAcross(Long.BYTES);
+    }
+
+    public void get(byte[] dst) {
+        int offset = 0;
+        while (offset < dst.length) {
+            if (!hasRemaining()) {
+                throw new BufferUnderflowException();
+            }
+            int length = Math.min(dst.length - offset, current.remaining());
+            current.get(dst, offset, length);
+            offset += length;
+        }
+    }
+
+    // Побайтно на стыке буферов, старший байт первым, как у ByteBuffer по умолчанию
+    private long getAcross(int bytes) {
+        long value = 0;
+        for (int i = 0; i < bytes; i++) {
+            value = value << 8 | get() & 0xFF;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.storage.persistence;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+@Profile("!db")
+@ConditionalOnProperty(name = "filmorate.persistence.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class SnapshotJob {
+
+    private final List<Snapshottable> storages;
+
+    // Снимок обрезает журнал, чтобы перезапуск не проигрывал его целиком
+    @Scheduled(fixedDelayString = "${filmorate.persistence.snapshot-interval}",
+            initialDelayString = "${filmorate.persistence.snapshot-interval}")
+    public void snapshot() {
+        storages.forEach(Snapshottable::snapshot);
+    }
+}
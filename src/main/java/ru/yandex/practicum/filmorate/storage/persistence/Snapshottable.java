@@ -0,0 +1,9 @@
+package ru.yandex.practicum.filmorate.storage.persistence;
+
+/**
+ * Хранилище, которое умеет сохранять снимок своего состояния.
+ */
+public interface Snapshottable {
+
+    void snapshot();
+}
@@ -0,0 +1,163 @@
+package ru.yandex.practicum.filmorate.storage.persistence;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Снимок и журнал одного хранилища в своем каталоге.
+ * <p>
+ * Снимок нечеткий: он пишется без остановки записи. Перед ним журнал переключается на новый сегмент,
+ * и снимок помнит его номер. При восстановлении снимок дополняется записями начиная с этого сегмента,
+ * поэтому записи журнала должны быть идемпотентными.
+ */
+@Slf4j
+public final class StorageJournal implements Closeable {
+
+    private static final int SNAPSHOT_MAGIC = 0x464C4D53;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int SNAPSHOT_HEADER_BYTES = 16;
+    // Один MappedByteBuffer не больше Integer.MAX_VALUE байт, поэтому тело снимка отображается кусками
+    private static final long SNAPSHOT_CHUNK_BYTES = 1L << 30;
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String SNAPSHOT_TMP_FILE = "snapshot.tmp";
+
+    private final Path dir;
+    // Не synchronized: снимок ждет блокировки хранилища и пишет файл, виртуальный поток не должен закрепляться
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private WriteAheadLog wal;
+
+    private StorageJournal(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Восстанавливает состояние из снимка и хвоста журнала и открывает журнал для записи.
+     */
+    public static StorageJournal open(Path dir, Consumer<BufferInput> snapshotReader,
+                                      Consumer<BufferInput> recordReader) throws IOException {
+        Files.createDirectories(dir);
+        StorageJournal journal = new StorageJournal(dir);
+        long started = System.nanoTime();
+        long from = journal.readSnapshot(snapshotReader);
+        long last = WriteAheadLog.replay(dir, from, record -> recordReader.accept(new BufferInput(record)));
+        journal.wal = new WriteAheadLog(dir, Math.max(from, last + 1));
+        log.info("Хранилище {} восстановлено за {} мс", dir, (System.nanoTime() - started) / 1_000_000);
+        return journal;
+    }
+
+    public long append(byte[] record) {
+        return wal.append(record);
+    }
+
+    public void awaitDurable(long seq) {
+        wal.awaitDurable(seq);
+    }
+
+    /**
+     * Пишет снимок и удаляет покрытые им сегменты журнала.
+     *
+     * @param barrier дожидается изменений, начатых до переключения сегмента
+     * @param writer  пишет тело снимка
+     */
+    public void snapshot(Runnable barrier, SnapshotWriter writer) throws IOException {
+        snapshotLock.lock();
+        try {
+            writeSnapshot(barrier, writer);
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        wal.close();
+    }
+
+    private void writeSnapshot(Runnable barrier, SnapshotWriter writer) throws IOException {
+        long started = System.nanoTime();
+        long segment = wal.rotate();
+        barrier.run();
+
+        Path tmp = dir.resolve(SNAPSHOT_TMP_FILE);
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream file = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+            DataOutputStream header = new DataOutputStream(file);
+            header.writeInt(SNAPSHOT_MAGIC);
+            header.writeInt(SNAPSHOT_VERSION);
+            header.writeLong(segment);
+
+            CRC32C crc = new CRC32C();
+            DataOutputStream body = new DataOutputStream(new CheckedOutputStream(file, crc));
+            writer.write(body);
+            body.flush();
+            header.writeInt((int) crc.getValue());
+            header.flush();
+            channel.force(true);
+        }
+        Files.move(tmp, dir.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        // Пока переименование не на диске, после падения останется старый снимок, и ему нужны старые сегменты
+        WriteAheadLog.syncDirectory(dir);
+        wal.deleteSegmentsBefore(segment);
+        log.info("Снимок {} записан за {} мс", dir, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // Возвращает номер сегмента, с которого продолжается журнал после снимка
+    private long readSnapshot(Consumer<BufferInput> reader) throws IOException {
+        Path path = dir.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = size < SNAPSHOT_HEADER_BYTES + 4 ? null : readAt(channel, 0, SNAPSHOT_HEADER_BYTES);
+            if (header == null || header.getInt() != SNAPSHOT_MAGIC || header.getInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Неизвестный формат снимка " + path);
+            }
+            long segment = header.getLong();
+            long bodyEnd = size - 4;
+            ByteBuffer[] chunks = new ByteBuffer[(int) ((bodyEnd - SNAPSHOT_HEADER_BYTES + SNAPSHOT_CHUNK_BYTES - 1)
+                    / SNAPSHOT_CHUNK_BYTES)];
+            CRC32C crc = new CRC32C();
+            for (int i = 0; i < chunks.length; i++) {
+                long position = SNAPSHOT_HEADER_BYTES + i * SNAPSHOT_CHUNK_BYTES;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(SNAPSHOT_CHUNK_BYTES, bodyEnd - position));
+                crc.update(chunks[i].duplicate());
+            }
+            if ((int) crc.getValue() != readAt(channel, bodyEnd, 4).getInt()) {
+                throw new IOException("Не совпадает контрольная сумма снимка " + path);
+            }
+            reader.accept(new BufferInput(chunks));
+            return segment;
+        }
+    }
+
+    private static ByteBuffer readAt(FileChannel channel, long position, int bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return buffer.flip();
+    }
+
+    @FunctionalInterface
+    public interface SnapshotWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
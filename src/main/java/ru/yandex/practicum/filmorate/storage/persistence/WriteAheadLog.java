@@ -0,0 +1,294 @@
+package ru.yandex.practicum.filmorate.storage.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Журнал изменений из сегментов wal-N.log. Запись: длина, CRC32C и тело.
+ * <p>
+ * append только кладет запись в буфер и возвращает ее номер. awaitDurable сбрасывает буфер на диск
+ * с FileChannel.force: пока один поток пишет, остальные копят записи и ждут, а следующий сброс
+ * уносит их все сразу (групповой коммит).
+ * <p>
+ * Хранилища меняют состояние в памяти до сброса записи: изменение видно читателям раньше, чем оно на диске.
+ * Тот, кто его сделал, получает ответ только после awaitDurable, но при падении в этом окне другие клиенты
+ * могли успеть увидеть изменение, которого после перезапуска не будет.
+ */
+public final class WriteAheadLog implements Closeable {
+
+    private static final int HEADER_BYTES = 8;
+    private static final int INITIAL_BUFFER = 1 << 16;
+    // Сегмент читается одним отображением в память, поэтому он меньше 2 ГБ
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    private final Path dir;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushed = lock.newCondition();
+
+    private FileChannel channel;
+    private long segment;
+    private long segmentBytes;
+    private byte[] pending = new byte[INITIAL_BUFFER];
+    private byte[] spare = new byte[INITIAL_BUFFER];
+    private int pendingSize;
+    private long appendedSeq;
+    private long durableSeq;
+    private boolean flushing;
+    private IOException failure;
+
+    /**
+     * Открывает для записи новый сегмент с номером segment.
+     */
+    public WriteAheadLog(Path dir, long segment) throws IOException {
+        this.dir = dir;
+        this.segment = segment;
+        this.channel = openSegment(segment);
+    }
+
+    public long append(byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        int crcValue = (int) crc.getValue();
+        lock.lock();
+        try {
+            ensureCapacity(pendingSize + HEADER_BYTES + payload.length);
+            putInt(pending, pendingSize, payload.length);
+            putInt(pending, pendingSize + 4, crcValue);
+            System.arraycopy(payload, 0, pending, pendingSize + HEADER_BYTES, payload.length);
+            pendingSize += HEADER_BYTES + payload.length;
+            return ++appendedSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void awaitDurable(long seq) {
+        lock.lock();
+        try {
+            while (durableSeq < seq) {
+                checkFailure();
+                if (flushing) {
+                    flushed.awaitUninterruptibly();
+                } else {
+                    flushPending();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Сбрасывает буфер в текущий сегмент и переключает запись на следующий.
+     * Возвращает номер нового сегмента: все записи до вызова лежат в сегментах с меньшими номерами.
+     */
+    public long rotate() throws IOException {
+        lock.lock();
+        try {
+            while (flushing) {
+                flushed.awaitUninterruptibly();
+            }
+            checkFailure();
+            if (pendingSize > 0) {
+                flushPending();
+                checkFailure();
+            }
+            nextSegment();
+            return segment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void deleteSegmentsBefore(long segment) throws IOException {
+        for (long old : listSegments(dir)) {
+            if (old < segment) {
+                Files.deleteIfExists(segmentPath(dir, old));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        awaitDurable(appendedSeqSnapshot());
+        lock.lock();
+        try {
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Проигрывает записи сегментов начиная с from. Недописанный хвост последнего сегмента
+     * (падение посреди записи) отрезается, повреждение в середине журнала - ошибка.
+     * Возвращает номер последнего найденного сегмента или from - 1, если сегментов нет.
+     */
+    public static long replay(Path dir, long from, Consumer<ByteBuffer> handler) throws IOException {
+        List<Long> segments = listSegments(dir).stream().filter(s -> s >= from).sorted().toList();
+        for (int i = 0; i < segments.size(); i++) {
+            boolean last = i == segments.size() - 1;
+            Path path = segmentPath(dir, segments.get(i));
+            long valid = replaySegment(path, handler);
+            if (valid < Files.size(path)) {
+                if (!last) {
+                    throw new IOException("Поврежден сегмент журнала " + path);
+                }
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(valid);
+                    channel.force(true);
+                }
+            }
+        }
+        return segments.isEmpty() ? from - 1 : segments.get(segments.size() - 1);
+    }
+
+    private static long replaySegment(Path path, Consumer<ByteBuffer> handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CRC32C crc = new CRC32C();
+            while (buffer.remaining() >= HEADER_BYTES) {
+                int start = buffer.position();
+                int length = buffer.getInt();
+                int expectedCrc = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    return start;
+                }
+                ByteBuffer payload = buffer.slice(buffer.position(), length);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != expectedCrc) {
+                    return start;
+                }
+                handler.accept(payload);
+                buffer.position(buffer.position() + length);
+            }
+            return buffer.position();
+        }
+    }
+
+    // Вызывается под lock, на время записи на диск lock отпускается
+    private void flushPending() {
+        flushing = true;
+        byte[] buffer = pending;
+        int size = pendingSize;
+        long upTo = appendedSeq;
+        FileChannel target = channel;
+        pending = spare;
+        pendingSize = 0;
+        lock.unlock();
+        IOException error = null;
+        try {
+            ByteBuffer data = ByteBuffer.wrap(buffer, 0, size);
+            while (data.hasRemaining()) {
+                target.write(data);
+            }
+            target.force(false);
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            lock.lock();
+        }
+        spare = buffer;
+        flushing = false;
+        if (error != null) {
+            failure = error;
+        } else {
+            durableSeq = upTo;
+            segmentBytes += size;
+            if (segmentBytes > MAX_SEGMENT_BYTES) {
+                try {
+                    nextSegment();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }
+        flushed.signalAll();
+    }
+
+    private void nextSegment() throws IOException {
+        channel.close();
+        segment++;
+        segmentBytes = 0;
+        channel = openSegment(segment);
+    }
+
+    private long appendedSeqSnapshot() {
+        lock.lock();
+        try {
+            return appendedSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new UncheckedIOException("Журнал недоступен для записи", failure);
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > pending.length) {
+            byte[] grown = new byte[Math.max(required, pending.length * 2)];
+            System.arraycopy(pending, 0, grown, 0, pendingSize);
+            pending = grown;
+        }
+    }
+
+    // Новый файл переживет падение, только когда на диске запись о нем в каталоге
+    private FileChannel openSegment(long number) throws IOException {
+        Files.createDirectories(dir);
+        FileChannel opened = FileChannel.open(segmentPath(dir, number),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        syncDirectory(dir);
+        return opened;
+    }
+
+    /**
+     * Сбрасывает на диск каталог: созданные, переименованные и удаленные в нем файлы.
+     */
+    static void syncDirectory(Path dir) throws IOException {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private static List<Long> listSegments(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        List<Long> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith("wal-") && name.endsWith(".log"))
+                    .forEach(name -> segments.add(Long.parseLong(name.substring(4, name.length() - 4))));
+        }
+        return segments;
+    }
+
+    private static Path segmentPath(Path dir, long number) {
+        return dir.resolve(String.format("wal-%016d.log", number));
+    }
+
+    private static void putInt(byte[] target, int offset, int value) {
+        target[offset] = (byte) (value >>> 24);
+        target[offset + 1] = (byte) (value >>> 16);
+        target[offset + 2] = (byte) (value >>> 8);
+        target[offset + 3] = (byte) value;
+    }
+}
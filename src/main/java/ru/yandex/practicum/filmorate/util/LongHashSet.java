@@ -0,0 +1,390 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.*;
+import java.util.function.LongConsumer;
+
+/**
+ * Множество long-значений с открытой адресацией: 8 байт на элемент вместо упакованного Long и узла HashSet.
+ * Изменения синхронизированы, чтение идет без блокировок: удаленные ячейки помечаются надгробием,
+ * а элементы никогда не сдвигаются, поэтому читатель не теряет существующий элемент и не получает
+ * ConcurrentModificationException. Итерация слабо согласованная.
+ */
+public class LongHashSet extends AbstractSet<Long> {
+
+    private static final long EMPTY = 0L;
+    private static final long REMOVED = Long.MIN_VALUE;
+    private static final long[] EMPTY_TABLE = new long[0];
+    private static final int MIN_CAPACITY = 4;
+
+    private volatile long[] table = EMPTY_TABLE;
+    private volatile int size;
+    // Занятые ячейки вместе с надгробиями
+    private int used;
+    // Значения EMPTY и REMOVED хранятся флагами, так как в таблице они служебные
+    private volatile boolean containsEmpty;
+    private volatile boolean containsRemoved;
+
+    public LongHashSet() {
+    }
+
+    public LongHashSet(int expectedSize) {
+        if (expectedSize > 0) {
+            table = new long[capacityFor(expectedSize)];
+        }
+    }
+
+    public LongHashSet(Collection<Long> values) {
+        this(values.size());
+        for (Long value : values) {
+            add(value.longValue());
+        }
+    }
+
+    // Множество из различных значений: таблица заполняется до публикации, без блокировки на каждый элемент
+    public static LongHashSet ofDistinct(long[] values) {
+        LongHashSet set = new LongHashSet();
+        if (values.length == 0) {
+            return set;
+        }
+        long[] tab = new long[capacityFor(values.length)];
+        int mask = tab.length - 1;
+        int count = 0;
+        for (long value : values) {
+            if (value == EMPTY || value == REMOVED) {
+                set.addSpecial(value);
+                continue;
+            }
+            int i = mix(value) & mask;
+            while (tab[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            tab[i] = value;
+            count++;
+        }
+        set.used = count;
+        set.size += count;
+        set.table = tab;
+        return set;
+    }
+
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return containsEmpty;
+        }
+        if (value == REMOVED) {
+            return containsRemoved;
+        }
+        long[] tab = table;
+        if (tab.length == 0) {
+            return false;
+        }
+        int mask = tab.length - 1;
+        for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+            long current = tab[i];
+            if (current == value) {
+                return true;
+            }
+            if (current == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    public synchronized boolean add(long value) {
+        if (value == EMPTY || value == REMOVED) {
+            return addSpecial(value);
+        }
+        if ((used + 1) * 4L > table.length * 3L) {
+            rehash(size + 1);
+        }
+        long[] tab = table;
+        int mask = tab.length - 1;
+        int freeSlot = -1;
+        for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+            long current = tab[i];
+            if (current == value) {
+                return false;
+            }
+            if (current == REMOVED && freeSlot < 0) {
+                freeSlot = i;
+            } else if (current == EMPTY) {
+                if (freeSlot < 0) {
+                    freeSlot = i;
+                    used++;
+                }
+                tab[freeSlot] = value;
+                size++;
+                return true;
+            }
+        }
+    }
+
+    public synchronized boolean remove(long value) {
+        if (value == EMPTY || value == REMOVED) {
+            return removeSpecial(value);
+        }
+        long[] tab = table;
+        if (tab.length == 0) {
+            return false;
+        }
+        int mask = tab.length - 1;
+        for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+            long current = tab[i];
+            if (current == value) {
+                tab[i] = REMOVED;
+                size--;
+                return true;
+            }
+            if (current == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    public void forEachLong(LongConsumer action) {
+        if (containsEmpty) {
+            action.accept(EMPTY);
+        }
+        if (containsRemoved) {
+            action.accept(REMOVED);
+        }
+        for (long value : table) {
+            if (value != EMPTY && value != REMOVED) {
+                action.accept(value);
+            }
+        }
+    }
+
+    // Не больше limit элементов подряд по таблице с позиции, заданной seed. Порядок в таблице не связан
+    // со значениями, поэтому это дешевая выборка из большого множества без копирования
+    public void forEachSample(int limit, long seed, LongConsumer action) {
+        long[] tab = table;
+        if (limit <= 0 || tab.length == 0) {
+            return;
+        }
+        int mask = tab.length - 1;
+        int start = mix(seed) & mask;
+        int taken = 0;
+        for (int step = 0; step < tab.length && taken < limit; step++) {
+            long value = tab[(start + step) & mask];
+            if (value != EMPTY && value != REMOVED) {
+                action.accept(value);
+                taken++;
+            }
+        }
+    }
+
+    // Пересечение обходит меньшее множество и ищет его элементы в большем
+    public int intersectionSize(LongHashSet other) {
+        LongHashSet smaller = size <= other.size ? this : other;
+        LongHashSet larger = smaller == this ? other : this;
+        int count = 0;
+        if (smaller.containsEmpty && larger.containsEmpty) {
+            count++;
+        }
+        if (smaller.containsRemoved && larger.containsRemoved) {
+            count++;
+        }
+        for (long value : smaller.table) {
+            if (value != EMPTY && value != REMOVED && larger.contains(value)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public long[] intersection(LongHashSet other) {
+        LongHashSet smaller = size <= other.size ? this : other;
+        LongHashSet larger = smaller == this ? other : this;
+        long[] result = new long[Math.min(smaller.size, larger.size)];
+        int count = 0;
+        if (smaller.containsEmpty && larger.containsEmpty) {
+            result[count++] = EMPTY;
+        }
+        if (smaller.containsRemoved && larger.containsRemoved) {
+            result[count++] = REMOVED;
+        }
+        for (long value : smaller.table) {
+            if (value != EMPTY && value != REMOVED && larger.contains(value)) {
+                // Множества могли измениться после чтения size
+                if (count == result.length) {
+                    result = Arrays.copyOf(result, count * 2 + 1);
+                }
+                result[count++] = value;
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    public long[] toLongArray() {
+        long[] result = new long[size];
+        int[] index = {0};
+        forEachLong(value -> {
+            // Набор мог вырасти после чтения size
+            if (index[0] < result.length) {
+                result[index[0]++] = value;
+            }
+        });
+        return index[0] == result.length ? result : Arrays.copyOf(result, index[0]);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long value && contains(value.longValue());
+    }
+
+    @Override
+    public boolean add(Long value) {
+        return add(value.longValue());
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof Long value && remove(value.longValue());
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void clear() {
+        table = EMPTY_TABLE;
+        size = 0;
+        used = 0;
+        containsEmpty = false;
+        containsRemoved = false;
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        return new LongIterator(table, containsEmpty, containsRemoved);
+    }
+
+
+    private boolean addSpecial(long value) {
+        boolean present = value == EMPTY ? containsEmpty : containsRemoved;
+        if (present) {
+            return false;
+        }
+        if (value == EMPTY) {
+            containsEmpty = true;
+        } else {
+            containsRemoved = true;
+        }
+        size++;
+        return true;
+    }
+
+    private boolean removeSpecial(long value) {
+        boolean present = value == EMPTY ? containsEmpty : containsRemoved;
+        if (!present) {
+            return false;
+        }
+        if (value == EMPTY) {
+            containsEmpty = false;
+        } else {
+            containsRemoved = false;
+        }
+        size--;
+        return true;
+    }
+
+    // Новая таблица заполняется целиком и только потом публикуется читателям
+    private void rehash(int expectedSize) {
+        long[] newTable = new long[capacityFor(expectedSize)];
+        int mask = newTable.length - 1;
+        int count = 0;
+        for (long value : table) {
+            if (value != EMPTY && value != REMOVED) {
+                int i = mix(value) & mask;
+                while (newTable[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                newTable[i] = value;
+                count++;
+            }
+        }
+        used = count;
+        table = newTable;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3L < expectedSize * 4L + 4) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int mix(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private final class LongIterator implements Iterator<Long> {
+        private final long[] snapshot;
+        private int index;
+        private int special;
+        private boolean hasCurrent;
+        private long current;
+        private long next;
+        private boolean hasNext;
+
+        private LongIterator(long[] snapshot, boolean withEmpty, boolean withRemoved) {
+            this.snapshot = snapshot;
+            this.special = (withEmpty ? 1 : 0) | (withRemoved ? 2 : 0);
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return hasNext;
+        }
+
+        @Override
+        public Long next() {
+            if (!hasNext) {
+                throw new NoSuchElementException();
+            }
+            current = next;
+            hasCurrent = true;
+            advance();
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            if (!hasCurrent) {
+                throw new IllegalStateException();
+            }
+            LongHashSet.this.remove(current);
+            hasCurrent = false;
+        }
+
+        private void advance() {
+            if ((special & 1) != 0) {
+                special &= ~1;
+                next = EMPTY;
+                hasNext = true;
+                return;
+            }
+            if ((special & 2) != 0) {
+                special &= ~2;
+                next = REMOVED;
+                hasNext = true;
+                return;
+            }
+            while (index < snapshot.length) {
+                long value = snapshot[index++];
+                if (value != EMPTY && value != REMOVED) {
+                    next = value;
+                    hasNext = true;
+                    return;
+                }
+            }
+            hasNext = false;
+        }
+    }
+}
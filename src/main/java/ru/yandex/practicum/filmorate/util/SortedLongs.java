@@ -0,0 +1,87 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Операции над массивами различных long по возрастанию - в таком виде граф дружбы отдает списки друзей.
+ */
+public final class SortedLongs {
+
+    // Во сколько раз больший массив длиннее меньшего, чтобы искать в нем двоичным поиском, а не сливать
+    private static final int SEARCH_SKEW = 16;
+
+    private SortedLongs() {
+    }
+
+    public static boolean contains(long[] ids, long id) {
+        return Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    // Общие элементы по возрастанию
+    public static long[] intersection(long[] first, long[] second) {
+        long[] smaller = first.length <= second.length ? first : second;
+        long[] larger = smaller == first ? second : first;
+        long[] result = new long[smaller.length];
+        int[] count = {0};
+        forEachCommon(smaller, larger, id -> result[count[0]++] = id);
+        return count[0] == result.length ? result : Arrays.copyOf(result, count[0]);
+    }
+
+    public static int intersectionSize(long[] first, long[] second) {
+        long[] smaller = first.length <= second.length ? first : second;
+        long[] larger = smaller == first ? second : first;
+        return forEachCommon(smaller, larger, id -> { });
+    }
+
+    // Не больше limit элементов через равный шаг от смещения, которое задает seed: выборка покрывает весь
+    // диапазон id, а не идущих подряд
+    public static void forEachSample(long[] ids, int limit, long seed, LongConsumer action) {
+        if (limit <= 0 || ids.length == 0) {
+            return;
+        }
+        int step = Math.max(1, ids.length / limit);
+        int start = (int) ((seed * 0x9E3779B97F4A7C15L >>> 1) % ids.length);
+        int taken = Math.min(limit, ids.length);
+        for (int i = 0; i < taken; i++) {
+            action.accept(ids[(int) ((start + (long) i * step) % ids.length)]);
+        }
+    }
+
+    // Слияние при близких длинах, иначе двоичный поиск элементов меньшего в сужающемся хвосте большего
+    private static int forEachCommon(long[] smaller, long[] larger, LongConsumer action) {
+        int count = 0;
+        if (larger.length / SEARCH_SKEW > smaller.length) {
+            int from = 0;
+            for (long id : smaller) {
+                int found = Arrays.binarySearch(larger, from, larger.length, id);
+                if (found >= 0) {
+                    action.accept(id);
+                    count++;
+                    from = found + 1;
+                } else {
+                    from = -found - 1;
+                }
+                if (from == larger.length) {
+                    break;
+                }
+            }
+            return count;
+        }
+        int i = 0;
+        int j = 0;
+        while (i < smaller.length && j < larger.length) {
+            if (smaller[i] < larger[j]) {
+                i++;
+            } else if (smaller[i] > larger[j]) {
+                j++;
+            } else {
+                action.accept(smaller[i]);
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+}
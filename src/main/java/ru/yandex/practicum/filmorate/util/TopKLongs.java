@@ -0,0 +1,97 @@
+package ru.yandex.practicum.filmorate.util;
+
+/**
+ * k id с наибольшим счетом: двоичная куча на примитивных массивах, на вершине - худший из лучших.
+ * При равном счете выше меньший id.
+ */
+public class TopKLongs {
+
+    private final long[] ids;
+    private final int[] scores;
+    private int size;
+
+    public TopKLongs(int k) {
+        ids = new long[k];
+        scores = new int[k];
+    }
+
+    public void offer(long id, int score) {
+        if (ids.length == 0) {
+            return;
+        }
+        if (size < ids.length) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (better(id, score, ids[0], scores[0])) {
+            ids[0] = id;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Счет худшего из отобранных; осмыслен, только когда куча непуста
+    public int worstScore() {
+        return scores[0];
+    }
+
+    // Забирает id от лучшего к худшему; куча после вызова пуста
+    public long[] drainSorted() {
+        long[] result = new long[size];
+        for (int i = size - 1; i >= 0; i--) {
+            result[i] = ids[0];
+            size--;
+            ids[0] = ids[size];
+            scores[0] = scores[size];
+            siftDown(0);
+        }
+        return result;
+    }
+
+    private static boolean better(long id, int score, long otherId, int otherScore) {
+        return score != otherScore ? score > otherScore : id < otherId;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(ids[parent], scores[parent], ids[i], scores[i])) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int worst = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && better(ids[worst], scores[worst], ids[left], scores[left])) {
+                worst = left;
+            }
+            if (right < size && better(ids[worst], scores[worst], ids[right], scores[right])) {
+                worst = right;
+            }
+            if (worst == i) {
+                return;
+            }
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        int score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
@@ -0,0 +1,69 @@
+CREATE TABLE IF NOT EXISTS mpa_ratings (
+    id          INT PRIMARY KEY,
+    code        VARCHAR(10) NOT NULL,
+    description VARCHAR(255)
+);
+
+CREATE TABLE IF NOT EXISTS genres (
+    id   INT PRIMARY KEY,
+    name VARCHAR(100) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS films (
+    id           BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name         VARCHAR(255) NOT NULL,
+    description  VARCHAR(200),
+    release_date DATE NOT NULL,
+    duration     INT NOT NULL,
+    rating_id    INT REFERENCES mpa_ratings (id),
+    likes_count  INT NOT NULL DEFAULT 0,
+    CONSTRAINT films_name_uq UNIQUE (name)
+);
+
+-- Счетчик лайков денормализован: популярные фильмы читаются по индексу без GROUP BY по film_likes
+ALTER TABLE films ADD COLUMN IF NOT EXISTS likes_count INT NOT NULL DEFAULT 0;
+CREATE INDEX IF NOT EXISTS films_likes_count_idx ON films (likes_count DESC, id);
+
+-- Условия GET /films/search
+CREATE INDEX IF NOT EXISTS films_release_date_idx ON films (release_date DESC, id);
+CREATE INDEX IF NOT EXISTS films_duration_idx ON films (duration);
+CREATE INDEX IF NOT EXISTS films_rating_idx ON films (rating_id);
+
+CREATE TABLE IF NOT EXISTS users (
+    id       BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    email    VARCHAR(255) NOT NULL,
+    login    VARCHAR(100) NOT NULL,
+    name     VARCHAR(255),
+    birthday DATE NOT NULL,
+    CONSTRAINT users_email_uq UNIQUE (email)
+);
+
+-- Счетчики изменений для ETag: растут при каждом изменении строки, ее лайков или друзей
+ALTER TABLE films ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE users ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+
+-- Номер правки для update с проверкой версии: растет только при изменении самой строки
+ALTER TABLE films ADD COLUMN IF NOT EXISTS edit_version BIGINT NOT NULL DEFAULT 1;
+ALTER TABLE users ADD COLUMN IF NOT EXISTS edit_version BIGINT NOT NULL DEFAULT 1;
+
+CREATE TABLE IF NOT EXISTS film_genres (
+    film_id  BIGINT NOT NULL REFERENCES films (id) ON DELETE CASCADE,
+    genre_id INT NOT NULL REFERENCES genres (id),
+    PRIMARY KEY (film_id, genre_id)
+);
+
+CREATE TABLE IF NOT EXISTS film_likes (
+    film_id BIGINT NOT NULL REFERENCES films (id) ON DELETE CASCADE,
+    user_id BIGINT NOT NULL REFERENCES users (id) ON DELETE CASCADE,
+    PRIMARY KEY (film_id, user_id)
+);
+
+CREATE TABLE IF NOT EXISTS friendships (
+    requester_id BIGINT NOT NULL REFERENCES users (id) ON DELETE CASCADE,
+    addressee_id BIGINT NOT NULL REFERENCES users (id) ON DELETE CASCADE,
+    status       VARCHAR(20) NOT NULL,
+    PRIMARY KEY (requester_id, addressee_id)
+);
+
+-- Входящие заявки в друзья
+CREATE INDEX IF NOT EXISTS friendships_addressee_idx ON friendships (addressee_id, status);
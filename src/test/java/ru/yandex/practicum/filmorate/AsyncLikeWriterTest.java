@@ -0,0 +1,271 @@
+package ru.yandex.practicum.filmorate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.StandardEnvironment;
+import ru.yandex.practicum.filmorate.config.LikeIngestionProperties;
+import ru.yandex.practicum.filmorate.event.LikeChangedEvent;
+import ru.yandex.practicum.filmorate.exception.OverloadedException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.like.AsyncLikeWriter;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryGenreStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncLikeWriterTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private AsyncLikeWriter likeWriter;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (likeWriter != null) {
+            likeWriter.destroy();
+        }
+    }
+
+    @Test
+    void addLike_ShouldBeVisibleToNextRead() throws InterruptedException {
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+        InMemoryUserStorage userStorage = new InMemoryUserStorage();
+        likeWriter = new AsyncLikeWriter(filmStorage, properties(LikeIngestionProperties.Backpressure.BLOCK, 1024),
+                event -> { }, registry, new StandardEnvironment());
+        FilmService filmService = new FilmService(filmStorage, userStorage, new InMemoryGenreStorage(),
+                Validation.buildDefaultValidatorFactory().getValidator(), likeWriter, event -> { }, registry);
+
+        Film film = filmService.create(film("Premiere"));
+        int threads = 8;
+        int likesPerThread = 200;
+        long[] userIds = new long[threads * likesPerThread];
+        for (int i = 0; i < userIds.length; i++) {
+            userIds[i] = userStorage.create(user(i)).getId();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            int from = t * likesPerThread;
+            executor.submit(() -> {
+                for (int i = from; i < from + likesPerThread; i++) {
+                    filmService.addLike(film.getId(), userIds[i]);
+                    // Свой лайк пользователь видит сразу после ответа
+                    assertTrue(filmService.findFilmById(film.getId()).getLikedUsersIds().contains(userIds[i]));
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(userIds.length, filmService.findFilmById(film.getId()).getLikedUsersIds().size());
+        assertEquals(film.getId(), filmService.findPopularFilms(1).iterator().next().getId());
+    }
+
+    @Test
+    void likeChangedEvent_ShouldBePublishedOnlyForAppliedChanges() {
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+        List<LikeChangedEvent> events = new CopyOnWriteArrayList<>();
+        likeWriter = new AsyncLikeWriter(filmStorage, properties(LikeIngestionProperties.Backpressure.BLOCK, 1024),
+                event -> events.add((LikeChangedEvent) event), registry, new StandardEnvironment());
+        long filmId = filmStorage.create(film("Premiere")).getId();
+
+        likeWriter.addLike(filmId, 1L);
+        likeWriter.addLike(filmId, 1L);
+        likeWriter.removeLike(filmId, 2L);
+        likeWriter.removeLike(filmId, 1L);
+
+        assertEquals(List.of(new LikeChangedEvent(filmId, 1L, true), new LikeChangedEvent(filmId, 1L, false)),
+                events);
+    }
+
+    @Test
+    void queuedLikes_ShouldBeAppliedInOneBatch() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage() {
+            @Override
+            public boolean[] applyLikes(List<LikeChange> changes) {
+                batchSizes.add(changes.size());
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.applyLikes(changes);
+            }
+        };
+        likeWriter = new AsyncLikeWriter(filmStorage, properties(LikeIngestionProperties.Backpressure.BLOCK, 1024),
+                event -> { }, registry, new StandardEnvironment());
+        long filmId = filmStorage.create(film("Premiere")).getId();
+
+        int likes = 51;
+        ExecutorService executor = Executors.newFixedThreadPool(likes);
+        for (long userId = 1; userId <= likes; userId++) {
+            long id = userId;
+            executor.submit(() -> likeWriter.addLike(filmId, id));
+        }
+        // Писатель держит первую пачку, остальные лайки копятся в очереди шарда
+        while (batchSizes.isEmpty() || queueDepth() + batchSizes.get(0) < likes) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(likes, filmStorage.findFilmById(filmId).getLikedUsersIds().size());
+        assertEquals(2, batchSizes.size());
+    }
+
+    @Test
+    void addLike_StorageFailure_ShouldBeThrownToSubmitter() {
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage() {
+            @Override
+            public boolean[] applyLikes(List<LikeChange> changes) {
+                throw new IllegalStateException("Журнал недоступен");
+            }
+        };
+        likeWriter = new AsyncLikeWriter(filmStorage, properties(LikeIngestionProperties.Backpressure.BLOCK, 1024),
+                event -> { }, registry, new StandardEnvironment());
+        long filmId = filmStorage.create(film("Premiere")).getId();
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> likeWriter.addLike(filmId, 1L));
+        assertEquals("Журнал недоступен", e.getMessage());
+    }
+
+    @Test
+    void destroy_ShouldApplyEveryAcceptedLike() throws Exception {
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+        LikeIngestionProperties properties = properties(LikeIngestionProperties.Backpressure.BLOCK, 1024);
+        properties.setReadYourWritesTimeout(Duration.ZERO);
+        AsyncLikeWriter writer = new AsyncLikeWriter(filmStorage, properties, event -> { }, registry,
+                new StandardEnvironment());
+        long filmId = filmStorage.create(film("Premiere")).getId();
+
+        int threads = 8;
+        AtomicLong accepted = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            long from = t * 1_000_000L;
+            executor.submit(() -> {
+                for (long userId = from; ; userId++) {
+                    try {
+                        writer.addLike(filmId, userId);
+                    } catch (OverloadedException e) {
+                        return;
+                    }
+                    accepted.incrementAndGet();
+                }
+            });
+        }
+        Thread.sleep(50);
+        writer.destroy();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(accepted.get(), filmStorage.findFilmById(filmId).getLikedUsersIds().size());
+    }
+
+    @Test
+    void findPopularFilms_StalledWriter_ShouldNotWaitForQueue() {
+        CountDownLatch release = new CountDownLatch(1);
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage() {
+            @Override
+            public boolean[] applyLikes(List<LikeChange> changes) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.applyLikes(changes);
+            }
+        };
+        InMemoryUserStorage userStorage = new InMemoryUserStorage();
+        LikeIngestionProperties properties = properties(LikeIngestionProperties.Backpressure.BLOCK, 1024);
+        properties.setReadYourWritesTimeout(Duration.ofSeconds(1));
+        likeWriter = new AsyncLikeWriter(filmStorage, properties, event -> { }, registry, new StandardEnvironment());
+        FilmService filmService = new FilmService(filmStorage, userStorage, new InMemoryGenreStorage(),
+                Validation.buildDefaultValidatorFactory().getValidator(), likeWriter, event -> { }, registry);
+        Film film = filmService.create(film("Premiere"));
+        long userId = userStorage.create(user(1)).getId();
+
+        // Автор ждет свой лайк не дольше таймаута, остальные чтения не ждут очередь вовсе
+        assertFalse(assertTimeoutPreemptively(Duration.ofSeconds(5), () -> filmService.addLike(film.getId(), userId)));
+        assertEquals(1.0, registry.get("filmorate.likes.unconfirmed").counter().count());
+        assertTimeoutPreemptively(Duration.ofMillis(500), () -> {
+            assertTrue(filmService.findFilmById(film.getId()).getLikedUsersIds().isEmpty());
+            filmService.findPopularFilms(10);
+        });
+        release.countDown();
+    }
+
+    @Test
+    void addLike_FullQueueInRejectMode_ShouldThrowOverloadedException() {
+        CountDownLatch release = new CountDownLatch(1);
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage() {
+            @Override
+            public boolean[] applyLikes(List<LikeChange> changes) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.applyLikes(changes);
+            }
+        };
+        likeWriter = new AsyncLikeWriter(filmStorage, properties(LikeIngestionProperties.Backpressure.REJECT, 1),
+                event -> { }, registry, new StandardEnvironment());
+        Film film = filmStorage.create(film("Premiere"));
+
+        assertThrows(OverloadedException.class, () -> {
+            for (long userId = 1; userId <= 3; userId++) {
+                likeWriter.addLike(film.getId(), userId);
+            }
+        });
+        assertEquals(1.0, registry.get("filmorate.likes.rejected").counter().count());
+        release.countDown();
+    }
+
+    private double queueDepth() {
+        return registry.get("filmorate.likes.queue.depth").gauges().stream().mapToDouble(gauge -> gauge.value()).sum();
+    }
+
+    private LikeIngestionProperties properties(LikeIngestionProperties.Backpressure backpressure, int capacity) {
+        LikeIngestionProperties properties = new LikeIngestionProperties();
+        properties.setEnabled(true);
+        properties.setShards(2);
+        properties.setQueueCapacity(capacity);
+        properties.setBackpressure(backpressure);
+        properties.setReadYourWritesTimeout(Duration.ofSeconds(5));
+        return properties;
+    }
+
+    private Film film(String name) {
+        Film film = new Film();
+        film.setName(name);
+        film.setReleaseDate(LocalDate.of(2000, 1, 1));
+        film.setDuration(120);
+        return film;
+    }
+
+    private User user(int n) {
+        User user = new User();
+        user.setEmail("user" + n + "@mail.ru");
+        user.setLogin("user" + n);
+        user.setBirthday(LocalDate.of(1990, 1, 1));
+        return user;
+    }
+}
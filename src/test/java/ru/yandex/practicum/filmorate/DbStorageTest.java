@@ -0,0 +1,282 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestConstructor;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.DTO.FilmSearch;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enums.MpaRating;
+import ru.yandex.practicum.filmorate.storage.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.FilmLikesCounterRepairJob;
+import ru.yandex.practicum.filmorate.storage.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@JdbcTest
+@ActiveProfiles("db")
+@Import({FilmDbStorage.class, UserDbStorage.class, GenreDbStorage.class, FilmLikesCounterRepairJob.class})
+@TestConstructor(autowireMode = TestConstructor.AutowireMode.ALL)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class DbStorageTest {
+
+    private final FilmDbStorage filmStorage;
+    private final UserDbStorage userStorage;
+    private final GenreDbStorage genreStorage;
+    private final FilmLikesCounterRepairJob repairJob;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Test
+    void createFilm_ShouldLoadGenresAndRating() {
+        Film film = film("Film");
+        film.setRating(MpaRating.PG_13);
+        film.setGenres(Set.of(new Genre(2L, null), new Genre(1L, null)));
+
+        Film created = filmStorage.create(film);
+        Film found = filmStorage.findFilmById(created.getId());
+
+        assertEquals("Film", found.getName());
+        assertEquals(MpaRating.PG_13, found.getRating());
+        assertEquals(List.of("Комедия", "Драма"), found.getGenres().stream().map(Genre::getName).toList());
+    }
+
+    @Test
+    void findLikedFilmByGenres_ShouldKeepOnlyFilmsWithAllGenres() {
+        User user = userStorage.create(user("user@mail.ru"));
+        Film comedy = film("Comedy");
+        comedy.setGenres(Set.of(new Genre(1L, null)));
+        Film comedyDrama = film("Comedy drama");
+        comedyDrama.setGenres(Set.of(new Genre(1L, null), new Genre(2L, null)));
+        filmStorage.createAll(List.of(comedy, comedyDrama, film("Untagged")));
+        filmStorage.addLike(comedyDrama.getId(), user.getId());
+
+        assertEquals(List.of(comedyDrama.getId(), comedy.getId()),
+                filmStorage.findLikedFilmByGenres(10, Set.of(1L)).stream().map(Film::getId).toList());
+        assertEquals(List.of(comedyDrama.getId()),
+                filmStorage.findLikedFilmByGenres(10, Set.of(1L, 2L)).stream().map(Film::getId).toList());
+        assertEquals("Драма", genreStorage.findGenreById(2L).getName());
+        assertEquals(6, genreStorage.findAll().size());
+    }
+
+    @Test
+    void search_ShouldFilterByRangesAndSort() {
+        User user = userStorage.create(user("user@mail.ru"));
+        Film old = film("Old");
+        old.setReleaseDate(LocalDate.of(1980, 1, 1));
+        old.setRating(MpaRating.R);
+        Film recent = film("Recent");
+        recent.setReleaseDate(LocalDate.of(2015, 1, 1));
+        recent.setRating(MpaRating.R);
+        Film longFilm = film("Long");
+        longFilm.setReleaseDate(LocalDate.of(2010, 1, 1));
+        longFilm.setDuration(200);
+        filmStorage.createAll(List.of(old, recent, longFilm));
+        filmStorage.addLike(old.getId(), user.getId());
+
+        FilmSearch search = new FilmSearch();
+        search.setRating(MpaRating.R);
+        assertEquals(List.of(old.getId(), recent.getId()), ids(filmStorage.search(search)));
+        search.setSort(FilmSearch.Sort.DATE);
+        assertEquals(List.of(recent.getId(), old.getId()), ids(filmStorage.search(search)));
+
+        search = new FilmSearch();
+        search.setReleasedFrom(LocalDate.of(2000, 1, 1));
+        search.setMaxDuration(150);
+        assertEquals(List.of(recent.getId()), ids(filmStorage.search(search)));
+
+        search = new FilmSearch();
+        search.setQ("REC");
+        assertEquals(List.of(recent.getId()), ids(filmStorage.search(search)));
+    }
+
+    @Test
+    void createFilm_DuplicateName_ShouldThrowValidationException() {
+        filmStorage.create(film("Film"));
+
+        assertThrows(ValidationException.class, () -> filmStorage.create(film("Film")));
+    }
+
+    @Test
+    void createAll_ShouldAssignIdsAndStoreRelations() {
+        User user = userStorage.create(user("user@mail.ru"));
+        Film first = film("First");
+        first.setGenres(Set.of(new Genre(3L, null)));
+        Film second = film("Second");
+        second.getLikedUsersIds().add(user.getId());
+
+        filmStorage.createAll(List.of(first, second));
+
+        assertNotNull(first.getId());
+        assertEquals(first.getId() + 1, second.getId());
+        assertEquals(List.of("Мультфильм"),
+                filmStorage.findFilmById(first.getId()).getGenres().stream().map(Genre::getName).toList());
+        assertEquals(second.getId(), List.copyOf(filmStorage.findLikedFilm(1)).get(0).getId());
+    }
+
+    @Test
+    void createAll_TakenNameOrEmail_ShouldSkipOnlyThatItem() {
+        filmStorage.create(film("Taken"));
+        userStorage.create(user("taken@mail.ru"));
+        Film fresh = film("Fresh");
+
+        List<Film> films = filmStorage.createAll(List.of(film("Taken"), fresh));
+        List<User> users = userStorage.createAll(List.of(user("taken@mail.ru"), user("fresh@mail.ru")));
+
+        assertEquals(List.of(fresh), films);
+        assertEquals("Fresh", filmStorage.findFilmById(fresh.getId()).getName());
+        assertEquals(List.of("fresh@mail.ru"), users.stream().map(User::getEmail).toList());
+        assertEquals("fresh@mail.ru", userStorage.findUserById(users.get(0).getId()).getEmail());
+    }
+
+    @Test
+    void createAll_NameTakenDuringInsert_ShouldFallBackToSingleInserts() {
+        // Проверка заранее не видит повтор внутри пакета, его ловит уникальный индекс
+        Film first = film("Twin");
+        Film second = film("Twin");
+        second.getGenres().add(new Genre(1L, null));
+
+        List<Film> created = filmStorage.createAll(List.of(first, second, film("Single")));
+
+        assertSame(first, created.get(0));
+        assertEquals(List.of("Twin", "Single"), created.stream().map(Film::getName).toList());
+        assertNull(second.getId());
+        assertEquals(2, filmStorage.findAll().size());
+        assertEquals(List.of(), filmStorage.findFilmById(first.getId()).getGenres().stream().toList());
+    }
+
+    @Test
+    void findLikedFilm_ShouldOrderByLikesThenId() {
+        Film first = filmStorage.create(film("First"));
+        Film second = filmStorage.create(film("Second"));
+        User user = userStorage.create(user("user@mail.ru"));
+
+        filmStorage.addLike(second.getId(), user.getId());
+
+        List<Film> popular = List.copyOf(filmStorage.findLikedFilm(2));
+
+        assertEquals(second.getId(), popular.get(0).getId());
+        assertEquals(Set.of(user.getId()), popular.get(0).getLikedUsersIds());
+        assertEquals(first.getId(), popular.get(1).getId());
+    }
+
+    @Test
+    void likesCounter_ShouldFollowLikesAndBeRepaired() {
+        Film first = filmStorage.create(film("First"));
+        Film second = filmStorage.create(film("Second"));
+        User user = userStorage.create(user("user@mail.ru"));
+
+        filmStorage.addLike(first.getId(), user.getId());
+        filmStorage.addLike(first.getId(), user.getId());
+        filmStorage.removeLike(second.getId(), user.getId());
+
+        assertEquals(1, likesCount(first.getId()));
+        assertEquals(0, likesCount(second.getId()));
+
+        jdbcTemplate.update("UPDATE films SET likes_count = 5 WHERE id = ?", second.getId());
+
+        assertEquals(1, repairJob.repair());
+        assertEquals(0, likesCount(second.getId()));
+        assertEquals(first.getId(), filmStorage.findLikedFilm(1).iterator().next().getId());
+    }
+
+    @Test
+    void addFriend_ShouldBeMutualAndLoadedInBatch() {
+        User first = userStorage.create(user("first@mail.ru"));
+        User second = userStorage.create(user("second@mail.ru"));
+
+        userStorage.addFriend(first.getId(), second.getId());
+
+        List<User> users = userStorage.findUsersByIds(new long[]{first.getId(), second.getId()});
+        assertEquals(Set.of(second.getId()), users.get(0).getFriendIds());
+        assertEquals(Set.of(first.getId()), users.get(1).getFriendIds());
+
+        userStorage.removeFriend(second.getId(), first.getId());
+
+        assertTrue(userStorage.findUserById(first.getId()).getFriendIds().isEmpty());
+    }
+
+    @Test
+    void versions_ShouldChangeWithLikesAndFriends() {
+        Film film = filmStorage.create(film("Film"));
+        User first = userStorage.create(user("first@mail.ru"));
+        User second = userStorage.create(user("second@mail.ru"));
+        long filmVersion = filmStorage.findFilmVersion(film.getId());
+        long popularVersion = filmStorage.findPopularVersion(10);
+        long friendsVersion = userStorage.findFriendsVersion(first.getId());
+
+        assertEquals(filmVersion, filmStorage.findFilmVersion(film.getId()));
+        filmStorage.addLike(film.getId(), first.getId());
+        userStorage.addFriend(first.getId(), second.getId());
+
+        assertNotEquals(filmVersion, filmStorage.findFilmVersion(film.getId()));
+        assertNotEquals(popularVersion, filmStorage.findPopularVersion(10));
+        assertNotEquals(friendsVersion, userStorage.findFriendsVersion(first.getId()));
+        assertEquals(-1, filmStorage.findFilmVersion(film.getId() + 100));
+    }
+
+    @Test
+    void update_ShouldInstallOnlyOverExpectedVersion() {
+        Film film = filmStorage.create(film("Film"));
+        User user = userStorage.create(user("first@mail.ru"));
+        Film renamed = film.copy();
+        renamed.setName("Renamed");
+        User renamedUser = user.copy();
+        renamedUser.setName("Renamed");
+
+        assertEquals(2, filmStorage.update(renamed, 1).getVersion());
+        assertNull(filmStorage.update(renamed, 1));
+        assertEquals("Renamed", filmStorage.findFilmById(film.getId()).getName());
+        assertEquals(2, userStorage.update(renamedUser, 1).getVersion());
+        assertNull(userStorage.update(renamedUser, 1));
+        assertEquals(3, userStorage.update(renamedUser).getVersion());
+    }
+
+    @Test
+    void findPage_ShouldReturnUsersAfterCursor() {
+        User first = userStorage.create(user("first@mail.ru"));
+        User second = userStorage.create(user("second@mail.ru"));
+
+        List<User> page = userStorage.findPage(first.getId(), 10);
+
+        assertEquals(List.of(second.getId()), page.stream().map(User::getId).toList());
+        assertEquals(2, userStorage.streamAll().count());
+    }
+
+    private int likesCount(Long filmId) {
+        return jdbcTemplate.queryForObject("SELECT likes_count FROM films WHERE id = ?", Integer.class, filmId);
+    }
+
+    private static List<Long> ids(List<Film> films) {
+        return films.stream().map(Film::getId).toList();
+    }
+
+    private static Film film(String name) {
+        Film film = new Film();
+        film.setName(name);
+        film.setDescription("Description");
+        film.setReleaseDate(LocalDate.of(2000, 1, 1));
+        film.setDuration(100);
+        return film;
+    }
+
+    private static User user(String email) {
+        User user = new User();
+        user.setEmail(email);
+        user.setLogin(email.substring(0, email.indexOf('@')));
+        user.setName("User");
+        user.setBirthday(LocalDate.of(1990, 1, 1));
+        return user;
+    }
+}
@@ -0,0 +1,70 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestConstructor;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Хранилища берутся из контекста вместе со всеми декораторами: транзакции FilmDbStorage и UserDbStorage
+ * должны работать и через метрики с кэшем.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@AutoConfigureTestDatabase
+@ActiveProfiles("db")
+@TestConstructor(autowireMode = TestConstructor.AutowireMode.ALL)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class DbStorageWiringTest {
+
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Test
+    void createAllAndAddLike_ThroughInjectedStorages_ShouldRunInTransactions() {
+        List<User> users = userStorage.createAll(List.of(user("first@mail.ru"), user("second@mail.ru")));
+        List<Film> films = filmStorage.createAll(List.of(film("Wired first"), film("Wired second")));
+
+        assertEquals(2, users.size());
+        assertEquals(2, films.size());
+        Long filmId = films.get(0).getId();
+        assertTrue(filmStorage.addLike(filmId, users.get(0).getId()));
+        assertTrue(filmStorage.addLike(filmId, users.get(1).getId()));
+        assertTrue(filmStorage.removeLike(filmId, users.get(1).getId()));
+
+        assertTrue(filmStorage.isLiked(filmId, users.get(0).getId()));
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT likes_count FROM films WHERE id = ?", Integer.class, filmId));
+    }
+
+    private static Film film(String name) {
+        Film film = new Film();
+        film.setName(name);
+        film.setDescription("Description");
+        film.setReleaseDate(LocalDate.of(2000, 1, 1));
+        film.setDuration(100);
+        return film;
+    }
+
+    private static User user(String email) {
+        User user = new User();
+        user.setEmail(email);
+        user.setLogin(email.substring(0, email.indexOf('@')));
+        user.setName("User");
+        user.setBirthday(LocalDate.of(1990, 1, 1));
+        return user;
+    }
+}
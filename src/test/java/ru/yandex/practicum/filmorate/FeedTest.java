@@ -0,0 +1,170 @@
+package ru.yandex.practicum.filmorate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import ru.yandex.practicum.filmorate.config.FeedProperties;
+import ru.yandex.practicum.filmorate.event.FilmUpdatedEvent;
+import ru.yandex.practicum.filmorate.event.FriendshipChangedEvent;
+import ru.yandex.practicum.filmorate.event.LikeChangedEvent;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.DTO.FeedEvent;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enums.EventOperation;
+import ru.yandex.practicum.filmorate.model.enums.EventType;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.service.feed.FeedService;
+import ru.yandex.practicum.filmorate.service.like.DirectLikeWriter;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryGenreStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FeedTest {
+
+    private final InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+    private final InMemoryUserStorage userStorage = new InMemoryUserStorage();
+    private final FeedProperties properties = new FeedProperties();
+    private final FeedService feedService = new FeedService(userStorage, filmStorage, properties);
+    private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+    private final ApplicationEventPublisher publisher = event -> {
+        if (event instanceof LikeChangedEvent like) {
+            feedService.onLikeChanged(like);
+        } else if (event instanceof FriendshipChangedEvent friendship) {
+            feedService.onFriendshipChanged(friendship);
+        } else if (event instanceof FilmUpdatedEvent update) {
+            feedService.onFilmUpdated(update);
+        }
+    };
+    private final UserService userService = new UserService(userStorage, validator, publisher);
+    private final FilmService filmService = new FilmService(filmStorage, userStorage, new InMemoryGenreStorage(),
+            validator, new DirectLikeWriter(filmStorage, publisher), publisher, new SimpleMeterRegistry());
+
+    @Test
+    void feed_ShouldShowFriendsLikesFriendshipsAndUpdatesOfLikedFilms() {
+        long[] users = createUsers(3);
+        long film = createFilm("Фильм");
+        userService.addFriends(users[0], users[1]);
+        filmService.addLike(film, users[1]);
+        Film update = filmService.findFilmById(film);
+        update.setDescription("Новое описание");
+        filmService.update(update);
+
+        // Новые события первыми; о дружбе с собой пользователь не узнает
+        assertEquals(List.of("LIKE ADD " + users[1] + " " + film),
+                describe(feedService.getFeed(users[0], 10)));
+        assertEquals(List.of("FILM UPDATE null " + film), describe(feedService.getFeed(users[1], 10)));
+
+        userService.addFriends(users[1], users[2]);
+        assertEquals(List.of("FRIEND ADD " + users[1] + " " + users[2], "LIKE ADD " + users[1] + " " + film),
+                describe(feedService.getFeed(users[0], 10)));
+        assertEquals(List.of("FRIEND ADD " + users[1] + " " + users[2]),
+                describe(feedService.getFeed(users[0], 1)));
+        assertThrows(ValidationException.class, () -> feedService.getFeed(users[0], 0));
+        assertThrows(NotFoundException.class, () -> feedService.getFeed(-1L, 10));
+    }
+
+    @Test
+    void celebrityEvents_ShouldBeReadByFriendsOnRequest() {
+        properties.setCelebrityThreshold(2);
+        long[] users = createUsers(5);
+        long film = createFilm("Фильм");
+        // У users[0] три друга - он знаменитость
+        userService.addFriends(users[0], users[1]);
+        userService.addFriends(users[0], users[2]);
+        userService.addFriends(users[0], users[3]);
+        filmService.addLike(film, users[0]);
+
+        assertEquals(List.of("LIKE ADD " + users[0] + " " + film), describe(feedService.getFeed(users[3], 1)));
+        assertEquals(List.of("LIKE ADD " + users[0] + " " + film), describe(feedService.getFeed(users[1], 1)));
+        assertEquals(List.of(), describe(feedService.getFeed(users[4], 10)));
+
+        // Правка фильма, у которого лайков больше порога, видна только тем, кто его лайкнул
+        filmService.addLike(film, users[1]);
+        filmService.addLike(film, users[2]);
+        Film update = filmService.findFilmById(film);
+        update.setDuration(120);
+        filmService.update(update);
+        assertEquals(List.of("FILM UPDATE null " + film), describe(feedService.getFeed(users[2], 1)));
+        assertNotEquals(List.of("FILM UPDATE null " + film), describe(feedService.getFeed(users[3], 1)));
+    }
+
+    // Кольцо меньше числа событий: писатели затирают слоты, пока читатель их читает
+    @Test
+    void concurrentWriters_ShouldNeverExposeTornEvents() throws InterruptedException {
+        properties.setCapacity(8);
+        long[] users = createUsers(5);
+        for (int i = 1; i < users.length; i++) {
+            userService.addFriends(users[0], users[i]);
+        }
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> writers = new ArrayList<>();
+        for (int i = 1; i < users.length; i++) {
+            long actorId = users[i];
+            Thread writer = new Thread(() -> {
+                for (long n = 0; running.get(); n++) {
+                    // Объект события выдает автора: так видно, что поля взяты из одной записи
+                    feedService.onLikeChanged(new LikeChangedEvent(actorId * 1_000_000 + n % 1000, actorId, true));
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+
+        int checked = 0;
+        long deadline = System.nanoTime() + 500_000_000L;
+        while (System.nanoTime() < deadline) {
+            for (FeedEvent event : feedService.getFeed(users[0], 100)) {
+                if (event.getEventType() == EventType.LIKE) {
+                    assertEquals(event.getUserId(), event.getEntityId() / 1_000_000);
+                    assertEquals(EventOperation.ADD, event.getOperation());
+                    checked++;
+                }
+            }
+        }
+        running.set(false);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertTrue(checked > 0);
+    }
+
+    private static List<String> describe(List<FeedEvent> feed) {
+        return feed.stream()
+                .map(event -> event.getEventType() + " " + event.getOperation() + " " + event.getUserId() + " "
+                        + event.getEntityId())
+                .toList();
+    }
+
+    private long createFilm(String name) {
+        Film film = new Film();
+        film.setName(name);
+        film.setDescription("Описание");
+        film.setReleaseDate(LocalDate.of(2000, 1, 1));
+        film.setDuration(100);
+        return filmService.create(film).getId();
+    }
+
+    private long[] createUsers(int count) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            User user = new User();
+            user.setEmail("user" + i + "@mail.ru");
+            user.setLogin("user" + i);
+            user.setBirthday(LocalDate.of(1990, 1, 1));
+            ids[i] = userService.create(user).getId();
+        }
+        return ids;
+    }
+}
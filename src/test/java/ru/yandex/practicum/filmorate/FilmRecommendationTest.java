@@ -0,0 +1,140 @@
+package ru.yandex.practicum.filmorate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import ru.yandex.practicum.filmorate.config.RecommendationProperties;
+import ru.yandex.practicum.filmorate.event.LikeChangedEvent;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.like.DirectLikeWriter;
+import ru.yandex.practicum.filmorate.service.recommendation.FilmSimilarityIndex;
+import ru.yandex.practicum.filmorate.service.recommendation.RecommendationService;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryGenreStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilmRecommendationTest {
+
+    private final InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+    private final InMemoryUserStorage userStorage = new InMemoryUserStorage();
+    private final RecommendationProperties properties = new RecommendationProperties();
+    private FilmSimilarityIndex index;
+    private int userCounter;
+
+    @AfterEach
+    void tearDown() {
+        index.destroy();
+    }
+
+    @Test
+    void similarFilms_ShouldBeRankedByCoLikes() {
+        RecommendationService service = createService();
+        long[] films = createFilms(4);
+        long[] users = createUsers(3);
+        // Фильм 2 лайкнули оба зрителя фильма 1, фильм 3 - один из них, фильм 4 - посторонний зритель
+        like(films[0], users[0], users[1]);
+        like(films[1], users[0], users[1]);
+        like(films[2], users[0]);
+        like(films[3], users[2]);
+        index.rebuild();
+
+        assertEquals(List.of(films[1], films[2]), ids(service.findSimilarFilms(films[0], 10)));
+        assertEquals(List.of(films[2]), ids(service.findRecommendations(users[1], 10)));
+        assertThrows(NotFoundException.class, () -> service.findSimilarFilms(-1L, 10));
+    }
+
+    @Test
+    void likeEvents_ShouldRefreshNeighboursIncrementally() {
+        RecommendationService service = createService();
+        ApplicationEventPublisher publisher = event -> index.onLikeChanged((LikeChangedEvent) event);
+        FilmService filmService = new FilmService(filmStorage, userStorage, new InMemoryGenreStorage(),
+                Validation.buildDefaultValidatorFactory().getValidator(), new DirectLikeWriter(filmStorage, publisher),
+                publisher, new SimpleMeterRegistry());
+        long[] films = createFilms(3);
+        long[] users = createUsers(2);
+        filmService.addLike(films[0], users[0]);
+        index.refresh();
+        assertEquals(List.of(), ids(service.findSimilarFilms(films[0], 10)));
+
+        // Новый лайк связывает фильмы 1 и 2 в обе стороны без полного пересчета
+        filmService.addLike(films[1], users[0]);
+        index.refresh();
+        assertEquals(List.of(films[1]), ids(service.findSimilarFilms(films[0], 10)));
+        assertEquals(List.of(films[0]), ids(service.findSimilarFilms(films[1], 10)));
+
+        filmService.removeLike(films[1], users[0]);
+        index.refresh();
+        assertEquals(List.of(), ids(service.findSimilarFilms(films[0], 10)));
+        assertEquals(List.of(), ids(service.findSimilarFilms(films[1], 10)));
+    }
+
+    @Test
+    void neighbours_ShouldRespectPerFilmBudget() {
+        properties.setNeighboursPerFilm(3);
+        RecommendationService service = createService();
+        long[] films = createFilms(10);
+        long[] users = createUsers(1);
+        for (long filmId : films) {
+            like(filmId, users[0]);
+        }
+        index.rebuild();
+
+        assertEquals(3, index.findNeighbours(films[0]).filmIds().length);
+        assertEquals(3, service.findSimilarFilms(films[0], 10).size());
+        // Без лайков рекомендуются популярные фильмы
+        long newcomer = createUsers(1)[0];
+        assertEquals(5, service.findRecommendations(newcomer, 5).size());
+    }
+
+    private RecommendationService createService() {
+        properties.setAutoRefresh(false);
+        index = new FilmSimilarityIndex(filmStorage, properties);
+        return new RecommendationService(filmStorage, userStorage, index, properties);
+    }
+
+    private void like(long filmId, long... userIds) {
+        for (long userId : userIds) {
+            filmStorage.addLike(filmId, userId);
+        }
+    }
+
+    private List<Long> ids(List<Film> films) {
+        return films.stream().map(Film::getId).toList();
+    }
+
+    private long[] createFilms(int count) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            Film film = new Film();
+            film.setName("Фильм " + i);
+            film.setDescription("Описание");
+            film.setReleaseDate(LocalDate.of(2000, 1, 1));
+            film.setDuration(100);
+            ids[i] = filmStorage.create(film).getId();
+        }
+        return ids;
+    }
+
+    private long[] createUsers(int count) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            int number = userCounter++;
+            User user = new User();
+            user.setEmail("user" + number + "@mail.ru");
+            user.setLogin("user" + number);
+            user.setBirthday(LocalDate.of(1990, 1, 1));
+            ids[i] = userStorage.create(user).getId();
+        }
+        return ids;
+    }
+}
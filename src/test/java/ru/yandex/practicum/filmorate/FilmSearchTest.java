@@ -0,0 +1,107 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.DTO.FilmSearch;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.enums.MpaRating;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilmSearchTest {
+
+    private final InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+
+    // Узкие условия идут через индекс, широкие - обходом в порядке сортировки; ответ должен совпадать с полным перебором
+    @Test
+    void search_ShouldMatchFullScanForNarrowAndWideConditions() {
+        Random random = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            Film film = film("Фильм " + i, LocalDate.of(1950, 1, 1).plusDays(random.nextInt(365 * 70)),
+                    60 + random.nextInt(120), random.nextInt(6) == 0 ? null : MpaRating.values()[random.nextInt(5)]);
+            filmStorage.create(film);
+            for (long userId = 1; userId <= random.nextInt(20); userId++) {
+                filmStorage.addLike(film.getId(), userId);
+            }
+        }
+
+        for (int i = 0; i < 300; i++) {
+            FilmSearch search = new FilmSearch();
+            if (random.nextBoolean()) {
+                LocalDate from = LocalDate.of(1950, 1, 1).plusDays(random.nextInt(365 * 70));
+                search.setReleasedFrom(from);
+                search.setReleasedTo(random.nextBoolean() ? null : from.plusDays(random.nextInt(365 * 20)));
+            }
+            if (random.nextBoolean()) {
+                int min = 60 + random.nextInt(120);
+                search.setMinDuration(min);
+                search.setMaxDuration(min + random.nextInt(random.nextBoolean() ? 5 : 120));
+            }
+            if (random.nextInt(3) == 0) {
+                search.setRating(MpaRating.values()[random.nextInt(5)]);
+            }
+            search.setSort(FilmSearch.Sort.values()[random.nextInt(2)]);
+            search.setLimit(1 + random.nextInt(30));
+
+            assertEquals(fullScan(search), ids(search), search.toString());
+        }
+    }
+
+    @Test
+    void update_ShouldMoveFilmBetweenRanges() {
+        Film film = filmStorage.create(film("Фильм", LocalDate.of(1990, 5, 1), 90, MpaRating.PG));
+
+        Film updated = film("Фильм", LocalDate.of(2010, 5, 1), 150, MpaRating.R);
+        updated.setId(film.getId());
+        filmStorage.update(updated);
+
+        FilmSearch old = new FilmSearch();
+        old.setReleasedTo(LocalDate.of(2000, 1, 1));
+        assertEquals(List.of(), ids(old));
+        old = new FilmSearch();
+        old.setRating(MpaRating.PG);
+        assertEquals(List.of(), ids(old));
+
+        FilmSearch current = new FilmSearch();
+        current.setReleasedFrom(LocalDate.of(2010, 5, 1));
+        current.setMinDuration(150);
+        current.setMaxDuration(150);
+        current.setRating(MpaRating.R);
+        assertEquals(List.of(film.getId()), ids(current));
+    }
+
+    private List<Long> ids(FilmSearch search) {
+        return filmStorage.search(search).stream().map(Film::getId).toList();
+    }
+
+    private List<Long> fullScan(FilmSearch search) {
+        Comparator<Film> order = search.getSort() == FilmSearch.Sort.POPULAR
+                ? Comparator.comparingInt((Film f) -> -f.getLikedUsersIds().size())
+                : Comparator.comparing(Film::getReleaseDate).reversed();
+        return filmStorage.findAll().stream()
+                .filter(f -> search.getReleasedFrom() == null || !f.getReleaseDate().isBefore(search.getReleasedFrom()))
+                .filter(f -> search.getReleasedTo() == null || !f.getReleaseDate().isAfter(search.getReleasedTo()))
+                .filter(f -> search.getMinDuration() == null || f.getDuration() >= search.getMinDuration())
+                .filter(f -> search.getMaxDuration() == null || f.getDuration() <= search.getMaxDuration())
+                .filter(f -> search.getRating() == null || f.getRating() == search.getRating())
+                .sorted(order.thenComparing(Film::getId))
+                .limit(search.getLimit())
+                .map(Film::getId)
+                .toList();
+    }
+
+    private static Film film(String name, LocalDate releaseDate, int duration, MpaRating rating) {
+        Film film = new Film();
+        film.setName(name);
+        film.setDescription("Описание");
+        film.setReleaseDate(releaseDate);
+        film.setDuration(duration);
+        film.setRating(rating);
+        return film;
+    }
+}
@@ -0,0 +1,160 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.DTO.FilmSearch;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilmTextSearchTest {
+
+    // Ни одно слово не начинается с другого, поэтому продолжения слов в выдачу не попадают
+    private static final String[] WORDS = {"альфа", "бета", "гамма", "дельта", "эпсилон", "зета", "эта", "тета",
+            "йота", "каппа", "лямбда", "мю"};
+
+    private final InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+
+    @Test
+    void search_ShouldMatchWordsPrefixesAndTypos() {
+        Film matrix = create("Матрица", "Хакер узнает правду о мире");
+        Film reloaded = create("Матрица: перезагрузка", "Продолжение");
+        Film hacker = create("Хакеры", "Подростки взламывают корпорацию");
+        like(reloaded, 5);
+
+        assertEquals(List.of(reloaded.getId(), matrix.getId()), ids("матрица"));
+        // Начало последнего слова
+        assertEquals(List.of(reloaded.getId(), matrix.getId()), ids("МАТР"));
+        assertEquals(List.of(reloaded.getId()), ids("матрица перезаг"));
+        // Опечатка и перестановка букв
+        assertEquals(List.of(reloaded.getId(), matrix.getId()), ids("матирца"));
+        assertEquals(List.of(hacker.getId()), ids("корпорция"));
+        // Продолжение слова в названии выше точного слова в описании
+        assertEquals(List.of(hacker.getId(), matrix.getId()), ids("хакер"));
+        assertEquals(List.of(), ids("титаник"));
+    }
+
+    @Test
+    void update_ShouldReplaceIndexedText() {
+        Film film = create("Старое название", "Описание");
+        Film updated = film("Новое название", "Описание");
+        updated.setId(film.getId());
+        filmStorage.update(updated);
+
+        assertEquals(List.of(), ids("старое"));
+        assertEquals(List.of(film.getId()), ids("новое"));
+        assertEquals(List.of(film.getId()), ids("название"));
+        assertTrue(filmStorage.searchIndexBytes() > 0);
+    }
+
+    // Правки копят замененные документы; пересборка перенумеровывает живые, и индекс возвращается к размеру свежего
+    @Test
+    void updates_ShouldCompactIndexBackToFreshSize() {
+        List<Film> films = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            films.add(create("Фильм " + i, "красный"));
+        }
+        long freshBytes = filmStorage.searchIndexBytes();
+        for (int round = 1; round <= 10; round++) {
+            for (Film film : films) {
+                Film updated = film(film.getName(), round % 2 == 0 ? "красный" : "синий");
+                updated.setId(film.getId());
+                filmStorage.update(updated);
+            }
+        }
+
+        assertTrue(filmStorage.searchIndexBytes() < freshBytes * 11 / 10,
+                filmStorage.searchIndexBytes() + " при свежем " + freshBytes);
+        FilmSearch search = new FilmSearch();
+        search.setQ("красный");
+        search.setLimit(2000);
+        assertEquals(1000, filmStorage.search(search).size());
+        search.setQ("синий");
+        assertEquals(List.of(), filmStorage.search(search));
+        assertEquals(List.of(films.get(7).getId()), ids("фильм 7"));
+    }
+
+    // Частые слова идут обходом по популярности, редкие - по спискам слов; ответ должен совпадать с перебором
+    @Test
+    void search_ShouldMatchFullScanForRareAndCommonWords() {
+        Random random = new Random(3);
+        for (int i = 0; i < 3000; i++) {
+            // Первые слова словаря встречаются часто, последние редко
+            Film film = create("Фильм " + i + " " + word(random), word(random) + " " + word(random));
+            like(film, random.nextInt(30));
+        }
+
+        for (String word : WORDS) {
+            for (FilmSearch.Sort sort : List.of(FilmSearch.Sort.POPULAR, FilmSearch.Sort.RELEVANCE)) {
+                for (int limit : new int[]{5, 30}) {
+                    FilmSearch search = new FilmSearch();
+                    search.setQ(word);
+                    search.setSort(sort);
+                    search.setLimit(limit);
+                    assertEquals(fullScan(word, sort, limit),
+                            filmStorage.search(search).stream().map(Film::getId).toList(), word + " " + sort);
+                }
+            }
+        }
+    }
+
+    private List<Long> fullScan(String word, FilmSearch.Sort sort, int limit) {
+        Comparator<Film> order = Comparator.comparingInt(film -> -score(film, word, sort));
+        return filmStorage.findAll().stream()
+                .filter(film -> score(film, word, sort) > 0)
+                .sorted(order.thenComparing(Film::getId))
+                .limit(limit)
+                .map(Film::getId)
+                .toList();
+    }
+
+    private static int score(Film film, String word, FilmSearch.Sort sort) {
+        int likes = film.getLikedUsersIds().size();
+        if (sort == FilmSearch.Sort.POPULAR) {
+            return contains(film.getName(), word) || contains(film.getDescription(), word) ? likes + 1 : 0;
+        }
+        int text = contains(film.getName(), word) ? 200 : contains(film.getDescription(), word) ? 100 : 0;
+        return (int) (text * (4 + Math.log1p(likes)) * 25);
+    }
+
+    private static boolean contains(String text, String word) {
+        return Arrays.asList(text.toLowerCase().split(" ")).contains(word);
+    }
+
+    private static String word(Random random) {
+        return WORDS[(int) (Math.pow(random.nextDouble(), 3) * WORDS.length)];
+    }
+
+    private List<Long> ids(String q) {
+        FilmSearch search = new FilmSearch();
+        search.setQ(q);
+        search.setSort(FilmSearch.Sort.RELEVANCE);
+        return filmStorage.search(search).stream().map(Film::getId).toList();
+    }
+
+    private void like(Film film, int likes) {
+        for (long userId = 1; userId <= likes; userId++) {
+            filmStorage.addLike(film.getId(), userId);
+        }
+    }
+
+    private Film create(String name, String description) {
+        return filmStorage.create(film(name, description));
+    }
+
+    private static Film film(String name, String description) {
+        Film film = new Film();
+        film.setName(name);
+        film.setDescription(description);
+        film.setReleaseDate(LocalDate.of(2000, 1, 1));
+        film.setDuration(100);
+        return film;
+    }
+}
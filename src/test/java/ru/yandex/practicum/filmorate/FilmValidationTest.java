@@ -1,17 +1,27 @@
 package ru.yandex.practicum.filmorate;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.DTO.BatchResult;
+import ru.yandex.practicum.filmorate.model.DTO.Page;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.like.DirectLikeWriter;
 import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryGenreStorage;
 import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
 
 import java.time.LocalDate;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -27,7 +37,9 @@ class FilmValidationTest {
     void setUp() {
         filmStorage = new InMemoryFilmStorage();
         userStorage = new InMemoryUserStorage();
-        filmService = new FilmService(filmStorage, userStorage);
+        filmService = new FilmService(filmStorage, userStorage, new InMemoryGenreStorage(),
+                Validation.buildDefaultValidatorFactory().getValidator(),
+                new DirectLikeWriter(filmStorage, event -> { }), event -> { }, new SimpleMeterRegistry());
 
         testFilm = new Film();
         testFilm.setName("Test Film");
@@ -247,4 +259,149 @@ class FilmValidationTest {
         // Первый фильм должен быть с наибольшим количеством лайков
         assertEquals(film1.getId(), popularFilms.iterator().next().getId());
     }
-}
\ No newline at end of file
+
+    @Test
+    void findPopularFilms_EqualLikes_ShouldOrderById() {
+        Film film1 = filmService.create(testFilm);
+
+        Film film2 = new Film();
+        film2.setName("Film 2");
+        film2.setDescription("Description 2");
+        film2.setReleaseDate(LocalDate.of(2001, 1, 1));
+        film2.setDuration(100);
+        Film createdFilm2 = filmService.create(film2);
+
+        User user = userStorage.create(testUser);
+
+        filmService.addLike(createdFilm2.getId(), user.getId());
+        filmService.removeLike(createdFilm2.getId(), user.getId());
+
+        // Лайков поровну - фильм с меньшим id идет первым
+        Collection<Film> popularFilms = filmService.findPopularFilms(10);
+
+        assertEquals(2, popularFilms.size());
+        assertEquals(film1.getId(), popularFilms.iterator().next().getId());
+    }
+
+    @Test
+    void addLike_ConcurrentLikes_ShouldNotLoseLikes() throws InterruptedException {
+        Film createdFilm = filmService.create(testFilm);
+        int threads = 8;
+        int likesPerThread = 1000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            long firstUserId = (long) t * likesPerThread;
+            executor.submit(() -> {
+                for (long userId = firstUserId; userId < firstUserId + likesPerThread; userId++) {
+                    filmStorage.addLike(createdFilm.getId(), userId);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(threads * likesPerThread, filmService.findFilmById(createdFilm.getId()).getLikedUsersIds().size());
+        assertEquals(createdFilm.getId(), filmService.findPopularFilms(1).iterator().next().getId());
+    }
+
+    @Test
+    void streamAll_LikeDuringExport_ShouldNotChangeStreamedFilm() {
+        Film createdFilm = filmService.create(testFilm);
+        filmStorage.addLike(createdFilm.getId(), 1L);
+
+        Film streamed = filmStorage.streamAll().findFirst().orElseThrow();
+        filmStorage.addLike(createdFilm.getId(), 2L);
+
+        assertEquals(1, streamed.getLikedUsersIds().size());
+        assertEquals(2, filmStorage.findFilmById(createdFilm.getId()).getLikedUsersIds().size());
+    }
+
+    @Test
+    void findPage_ShouldReturnFilmsAfterCursor() {
+        for (int i = 1; i <= 5; i++) {
+            Film film = new Film();
+            film.setName("Film " + i);
+            film.setDescription("Description " + i);
+            film.setReleaseDate(LocalDate.of(2000, 1, 1));
+            film.setDuration(100);
+            filmService.create(film);
+        }
+
+        Page<Film> firstPage = filmService.findPage(null, 2);
+        Page<Film> lastPage = filmService.findPage(4L, 2);
+
+        assertEquals(List.of(1L, 2L), firstPage.getItems().stream().map(Film::getId).toList());
+        assertEquals(2L, firstPage.getNextCursor());
+        assertEquals(List.of(5L), lastPage.getItems().stream().map(Film::getId).toList());
+        assertNull(lastPage.getNextCursor());
+        assertThrows(ValidationException.class, () -> filmService.findPage(null, 0));
+    }
+
+    @Test
+    void createBatch_ShouldCreateValidAndReportInvalidFilms() {
+        filmService.create(testFilm);
+
+        List<Film> batch = new java.util.ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Film film = new Film();
+            film.setName("Batch Film " + i);
+            film.setReleaseDate(LocalDate.of(2000, 1, 1));
+            film.setDuration(100);
+            batch.add(film);
+        }
+        Film duplicateInStorage = new Film();
+        duplicateInStorage.setName("Test Film");
+        duplicateInStorage.setReleaseDate(LocalDate.of(2000, 1, 1));
+        duplicateInStorage.setDuration(100);
+        batch.add(duplicateInStorage);
+        Film tooEarly = new Film();
+        tooEarly.setName("Too Early");
+        tooEarly.setReleaseDate(LocalDate.of(1800, 1, 1));
+        tooEarly.setDuration(100);
+        batch.add(tooEarly);
+        Film duplicateInBatch = new Film();
+        duplicateInBatch.setName("Batch Film 0");
+        duplicateInBatch.setReleaseDate(LocalDate.of(2000, 1, 1));
+        duplicateInBatch.setDuration(100);
+        batch.add(duplicateInBatch);
+
+        BatchResult result = filmService.createBatch(batch);
+
+        assertEquals(3, result.getCreated());
+        assertEquals(List.of(2L, 3L, 4L), result.getIds());
+        assertEquals(List.of(3, 4, 5), result.getErrors().stream().map(e -> e.getIndex()).toList());
+        assertEquals(4, filmService.findAll().size());
+    }
+
+    @Test
+    void createBatch_NameTakenAfterValidation_ShouldReportItemAndNotSpendId() {
+        // Проверка сервиса не видит занятое название, как при гонке с другим запросом
+        InMemoryFilmStorage racingStorage = new InMemoryFilmStorage() {
+            @Override
+            public boolean isExistingFilm(String filmName) {
+                return false;
+            }
+        };
+        FilmService service = new FilmService(racingStorage, userStorage, new InMemoryGenreStorage(),
+                Validation.buildDefaultValidatorFactory().getValidator(),
+                new DirectLikeWriter(racingStorage, event -> { }), event -> { }, new SimpleMeterRegistry());
+        service.create(testFilm);
+
+        Film taken = new Film();
+        taken.setId(100L);
+        taken.setName("Test Film");
+        taken.setReleaseDate(LocalDate.of(2000, 1, 1));
+        taken.setDuration(100);
+        Film fresh = new Film();
+        fresh.setName("Fresh Film");
+        fresh.setReleaseDate(LocalDate.of(2000, 1, 1));
+        fresh.setDuration(100);
+
+        BatchResult result = service.createBatch(new java.util.ArrayList<>(List.of(taken, fresh)));
+
+        assertEquals(1, result.getCreated());
+        assertEquals(List.of(2L), result.getIds());
+        assertEquals(List.of(0), result.getErrors().stream().map(e -> e.getIndex()).toList());
+    }
+}
@@ -0,0 +1,258 @@
+package ru.yandex.practicum.filmorate;
+
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enums.FriendshipStatus;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FriendGraphTest {
+
+    private final InMemoryUserStorage userStorage = new InMemoryUserStorage();
+    private final UserService userService = new UserService(userStorage,
+            Validation.buildDefaultValidatorFactory().getValidator(), event -> { });
+
+    @Test
+    void friendRequest_ShouldBecomeFriendshipOnlyAfterAccept() {
+        long[] ids = createUsers(3);
+
+        Friendship request = userService.requestFriend(ids[0], ids[1]);
+
+        assertEquals(FriendshipStatus.UNCONFIRMED, request.getStatus());
+        assertEquals(List.of(new Friendship(ids[0], ids[1], FriendshipStatus.UNCONFIRMED)),
+                userService.getFriendRequests(ids[1]));
+        assertTrue(userService.getFriendRequests(ids[0]).isEmpty());
+        assertEquals(0, userService.countFriends(ids[0]));
+
+        userService.acceptFriend(ids[1], ids[0]);
+
+        assertTrue(userService.getFriendRequests(ids[1]).isEmpty());
+        assertEquals(Set.of(ids[1]), userService.findUserById(ids[0]).getFriendIds());
+        assertEquals(Set.of(ids[0]), userService.findUserById(ids[1]).getFriendIds());
+        assertEquals(1, userService.countFriends(ids[1]));
+        assertThrows(ValidationException.class, () -> userService.requestFriend(ids[1], ids[0]));
+        assertThrows(NotFoundException.class, () -> userService.acceptFriend(ids[1], ids[0]));
+
+        // Отклоненная заявка пропадает, дружбы нет
+        userService.requestFriend(ids[2], ids[0]);
+        userService.declineFriend(ids[0], ids[2]);
+        assertTrue(userService.getFriendRequests(ids[0]).isEmpty());
+        assertEquals(1, userService.countFriends(ids[0]));
+        assertThrows(NotFoundException.class, () -> userService.declineFriend(ids[0], ids[2]));
+        assertThrows(NotFoundException.class, () -> userService.countFriends(999L));
+    }
+
+    @Test
+    void counterRequest_ShouldConfirmFriendship() {
+        long[] ids = createUsers(2);
+
+        userService.requestFriend(ids[0], ids[1]);
+        Friendship counter = userService.requestFriend(ids[1], ids[0]);
+
+        assertEquals(FriendshipStatus.CONFIRMED, counter.getStatus());
+        assertTrue(userService.getFriendRequests(ids[0]).isEmpty());
+        assertTrue(userService.getFriendRequests(ids[1]).isEmpty());
+        assertEquals(Set.of(ids[0]), userService.findUserById(ids[1]).getFriendIds());
+    }
+
+    // Тысячи изменений проходят через несколько слияний буфера со сжатыми строками
+    @Test
+    void randomChanges_ShouldMatchPlainSets() {
+        long[] ids = createUsers(300);
+        Map<Long, Set<Long>> expected = new HashMap<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 30_000; i++) {
+            long userId = ids[random.nextInt(ids.length)];
+            long friendId = ids[random.nextInt(ids.length)];
+            if (userId == friendId) {
+                continue;
+            }
+            if (random.nextInt(3) > 0) {
+                userStorage.addFriend(userId, friendId);
+                expected.computeIfAbsent(userId, id -> new HashSet<>()).add(friendId);
+                expected.computeIfAbsent(friendId, id -> new HashSet<>()).add(userId);
+            } else {
+                userStorage.removeFriend(userId, friendId);
+                expected.getOrDefault(userId, new HashSet<>()).remove(friendId);
+                expected.getOrDefault(friendId, new HashSet<>()).remove(userId);
+            }
+        }
+
+        for (long id : ids) {
+            Set<Long> friends = expected.getOrDefault(id, Set.of());
+            assertEquals(friends, userStorage.findUserById(id).getFriendIds());
+            assertEquals(friends.size(), userStorage.countFriends(id));
+        }
+        assertTrue(userStorage.friendGraphBytes() > 0);
+    }
+
+    @Test
+    void concurrentChanges_ShouldMatchPlainSets() throws InterruptedException {
+        long[] ids = createUsers(200);
+        int threads = 8;
+        // Пара пользователей принадлежит одному потоку, поэтому ее итоговое состояние известно заранее
+        List<Map<Long, Set<Long>>> expectedByThread = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        AtomicBoolean done = new AtomicBoolean();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Map<Long, Set<Long>> expected = new HashMap<>();
+            expectedByThread.add(expected);
+            futures.add(executor.submit(() -> {
+                Random random = new Random(thread);
+                for (int i = 0; i < 20_000; i++) {
+                    int a = random.nextInt(ids.length);
+                    int b = random.nextInt(ids.length);
+                    if (a == b || (a + b) % threads != thread) {
+                        continue;
+                    }
+                    if (random.nextInt(3) > 0) {
+                        userStorage.addFriend(ids[a], ids[b]);
+                        expected.computeIfAbsent(ids[a], id -> new HashSet<>()).add(ids[b]);
+                        expected.computeIfAbsent(ids[b], id -> new HashSet<>()).add(ids[a]);
+                    } else {
+                        userStorage.removeFriend(ids[a], ids[b]);
+                        expected.getOrDefault(ids[a], new HashSet<>()).remove(ids[b]);
+                        expected.getOrDefault(ids[b], new HashSet<>()).remove(ids[a]);
+                    }
+                }
+            }));
+        }
+        Future<?> reader = executor.submit(() -> {
+            Random random = new Random(42);
+            while (!done.get()) {
+                long id = ids[random.nextInt(ids.length)];
+                for (long friendId : userStorage.findUserById(id).getFriendIds()) {
+                    assertNotEquals(id, friendId);
+                }
+            }
+        });
+        for (Future<?> future : futures) {
+            assertDoesNotThrow(() -> future.get(30, TimeUnit.SECONDS));
+        }
+        done.set(true);
+        assertDoesNotThrow(() -> reader.get(30, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        for (long id : ids) {
+            Set<Long> friends = new HashSet<>();
+            expectedByThread.forEach(expected -> friends.addAll(expected.getOrDefault(id, Set.of())));
+            assertEquals(friends, userStorage.findUserById(id).getFriendIds());
+            assertEquals(friends.size(), userStorage.countFriends(id));
+        }
+    }
+
+    // Списки идут по массивам из графа, в том числе с хабом, где пересечение ищется двоичным поиском
+    @Test
+    void friendLists_ShouldMatchPlainSets() {
+        long[] ids = createUsers(500);
+        Map<Long, Set<Long>> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 1; i < ids.length; i++) {
+            userStorage.addFriend(ids[0], ids[i]);
+            expected.computeIfAbsent(ids[0], id -> new HashSet<>()).add(ids[i]);
+            expected.computeIfAbsent(ids[i], id -> new HashSet<>()).add(ids[0]);
+        }
+        for (int i = 0; i < 2_000; i++) {
+            long userId = ids[1 + random.nextInt(ids.length - 1)];
+            long friendId = ids[1 + random.nextInt(ids.length - 1)];
+            if (userId != friendId) {
+                userStorage.addFriend(userId, friendId);
+                expected.get(userId).add(friendId);
+                expected.get(friendId).add(userId);
+            }
+        }
+
+        for (int i = 0; i < 200; i++) {
+            long userId = ids[random.nextInt(ids.length)];
+            long otherId = ids[random.nextInt(ids.length)];
+            Set<Long> common = new TreeSet<>(expected.get(userId));
+            common.retainAll(expected.get(otherId));
+
+            List<User> friends = userService.getFriends(userId);
+            assertEquals(expected.get(userId), new HashSet<>(friends.stream().map(User::getId).toList()));
+            User friend = friends.get(0);
+            assertEquals(expected.get(friend.getId()), friend.getFriendIds());
+            assertEquals(List.copyOf(common), userService.getCommonFriends(userId, otherId).stream()
+                    .map(User::getId).toList());
+            assertEquals(common.size(), userService.countCommonFriends(userId, otherId));
+        }
+        assertThrows(NotFoundException.class, () -> userService.getFriends(999_999L));
+        assertThrows(NotFoundException.class, () -> userService.countCommonFriends(ids[0], 999_999L));
+    }
+
+    // Сборка сжатого графа идет после снятия страйпов: запись под тем же страйпом не ждет ее конца
+    @Test
+    void merge_ShouldNotBlockWritesOnSameStripe() throws Exception {
+        long[] ids = createUsers(32 * 1024);
+        for (int i = 0; i < ids.length; i++) {
+            for (int j = i + 1; j <= i + 16 && j < ids.length; j++) {
+                userStorage.addFriend(ids[i], ids[j]);
+            }
+        }
+        // Все эти пользователи под одним страйпом; последнюю пару фоновый поток не трогает
+        long[] sameStripe = Arrays.stream(ids).filter(id -> id % 64 == 0).toArray();
+        int last = sameStripe.length - 1;
+        AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            for (boolean add = true; !done.get(); add = !add) {
+                for (int i = 0; i < last && !done.get(); i++) {
+                    for (int j = i + 2; j < last && !done.get(); j++) {
+                        if (add) {
+                            userStorage.addFriend(sameStripe[i], sameStripe[j]);
+                        } else {
+                            userStorage.removeFriend(sameStripe[i], sameStripe[j]);
+                        }
+                    }
+                }
+            }
+        });
+        writer.start();
+        try {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (!inMerge(writer)) {
+                assertTrue(System.nanoTime() < deadline, "Сборка графа не началась");
+            }
+
+            assertTrue(userStorage.addFriend(sameStripe[last], sameStripe[last - 1]));
+
+            assertTrue(inMerge(writer), "Запись ждала конца сборки");
+        } finally {
+            done.set(true);
+            writer.join();
+        }
+        assertTrue(userStorage.findUserById(sameStripe[last]).getFriendIds().contains(sameStripe[last - 1]));
+    }
+
+    private static boolean inMerge(Thread thread) {
+        return Arrays.stream(thread.getStackTrace()).anyMatch(frame ->
+                frame.getClassName().endsWith(".FriendGraph") && frame.getMethodName().equals("merge"));
+    }
+
+    private long[] createUsers(int count) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            User user = new User();
+            user.setEmail("user" + i + "@mail.ru");
+            user.setLogin("user" + i);
+            user.setBirthday(LocalDate.of(1990, 1, 1));
+            ids[i] = userService.create(user).getId();
+        }
+        return ids;
+    }
+}
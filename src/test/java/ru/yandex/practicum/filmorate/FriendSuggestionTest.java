@@ -0,0 +1,95 @@
+package ru.yandex.practicum.filmorate;
+
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.config.SuggestionProperties;
+import ru.yandex.practicum.filmorate.event.FriendshipChangedEvent;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.DTO.FriendSuggestion;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.service.suggestion.FriendSuggestionService;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FriendSuggestionTest {
+
+    private final InMemoryUserStorage userStorage = new InMemoryUserStorage();
+    private final SuggestionProperties properties = new SuggestionProperties();
+
+    @Test
+    void findSuggestions_ShouldRankNonFriendsByMutualFriends() {
+        FriendSuggestionService service = new FriendSuggestionService(userStorage, properties);
+        long[] ids = createUsers(6);
+        // 1 дружит с 2 и 3; 4 знаком с обоими, 5 - только с 2, 6 - ни с кем из них
+        userStorage.addFriend(ids[0], ids[1]);
+        userStorage.addFriend(ids[0], ids[2]);
+        userStorage.addFriend(ids[3], ids[1]);
+        userStorage.addFriend(ids[3], ids[2]);
+        userStorage.addFriend(ids[4], ids[1]);
+        userStorage.addFriend(ids[5], ids[4]);
+
+        List<FriendSuggestion> suggestions = service.findSuggestions(ids[0], 10);
+
+        assertEquals(List.of(ids[3], ids[4]), suggestions.stream().map(s -> s.getUser().getId()).toList());
+        assertEquals(List.of(2, 1), suggestions.stream().map(FriendSuggestion::getMutualFriends).toList());
+        assertThrows(ValidationException.class, () -> service.findSuggestions(ids[0], 0));
+    }
+
+    @Test
+    void precomputedSuggestions_ShouldBeRefreshedOnFriendshipChange() {
+        properties.setPrecompute(true);
+        FriendSuggestionService suggestionService = new FriendSuggestionService(userStorage, properties);
+        UserService userService = new UserService(userStorage, Validation.buildDefaultValidatorFactory().getValidator(),
+                event -> suggestionService.onFriendshipChanged((FriendshipChangedEvent) event));
+        long[] ids = createUsers(4);
+        userService.addFriends(ids[0], ids[1]);
+        userService.addFriends(ids[1], ids[2]);
+
+        assertEquals(List.of(ids[2]), suggestedIds(suggestionService, ids[0]));
+
+        // У друга появился новый друг - у пользователя новый кандидат
+        userService.addFriends(ids[1], ids[3]);
+        assertEquals(List.of(ids[2], ids[3]), suggestedIds(suggestionService, ids[0]));
+
+        userService.addFriends(ids[0], ids[2]);
+        assertEquals(List.of(ids[3]), suggestedIds(suggestionService, ids[0]));
+    }
+
+    @Test
+    void hubs_ShouldBeSampled() {
+        properties.setHubSampleSize(10);
+        FriendSuggestionService service = new FriendSuggestionService(userStorage, properties);
+        long[] ids = createUsers(102);
+        userStorage.addFriend(ids[0], ids[1]);
+        for (int i = 2; i < ids.length; i++) {
+            userStorage.addFriend(ids[1], ids[i]);
+        }
+
+        List<FriendSuggestion> suggestions = service.findSuggestions(ids[0], 100);
+
+        assertTrue(suggestions.size() <= 10);
+        assertFalse(suggestions.isEmpty());
+        assertTrue(suggestions.stream().allMatch(s -> s.getMutualFriends() == 1));
+    }
+
+    private List<Long> suggestedIds(FriendSuggestionService service, long userId) {
+        return service.findSuggestions(userId, 10).stream().map(s -> s.getUser().getId()).toList();
+    }
+
+    private long[] createUsers(int count) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            User user = new User();
+            user.setEmail("user" + i + "@mail.ru");
+            user.setLogin("user" + i);
+            user.setBirthday(LocalDate.of(1990, 1, 1));
+            ids[i] = userStorage.create(user).getId();
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,134 @@
+package ru.yandex.practicum.filmorate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.like.DirectLikeWriter;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryGenreStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GenreIndexTest {
+
+    private final InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+    private final FilmService filmService = new FilmService(filmStorage, new InMemoryUserStorage(),
+            new InMemoryGenreStorage(), Validation.buildDefaultValidatorFactory().getValidator(),
+            new DirectLikeWriter(filmStorage, event -> { }), event -> { }, new SimpleMeterRegistry());
+
+    @Test
+    void findLikedFilmByGenres_ShouldIntersectGenresInPopularityOrder() {
+        Film comedy = create("Комедия", 1L);
+        Film drama = create("Драма", 2L);
+        Film comedyDrama = create("Комедия и драма", 1L, 2L);
+        Film actionComedy = create("Боевик с юмором", 1L, 6L);
+        like(actionComedy, 3);
+        like(comedyDrama, 2);
+        like(drama, 5);
+
+        assertEquals(List.of(actionComedy.getId(), comedyDrama.getId(), comedy.getId()), ids(Set.of(1L), 10));
+        assertEquals(List.of(actionComedy.getId()), ids(Set.of(1L), 1));
+        assertEquals(List.of(comedyDrama.getId()), ids(Set.of(1L, 2L), 10));
+        assertEquals(List.of(), ids(Set.of(2L, 6L), 10));
+        assertEquals(List.of(), ids(Set.of(4L), 10));
+
+        // Лайк переставляет фильм и внутри жанров
+        like(comedy, 4);
+        assertEquals(List.of(comedy.getId(), actionComedy.getId(), comedyDrama.getId()), ids(Set.of(1L), 10));
+    }
+
+    @Test
+    void update_ShouldMoveFilmBetweenGenres() {
+        Film film = create("Фильм", 1L);
+        like(film, 1);
+
+        Film updated = film("Фильм", 2L);
+        updated.setId(film.getId());
+        filmStorage.update(updated);
+
+        assertEquals(List.of(), ids(Set.of(1L), 10));
+        assertEquals(List.of(film.getId()), ids(Set.of(2L), 10));
+        // Версия списка по жанру меняется вместе с его составом
+        long version = filmStorage.findPopularVersionByGenres(10, Set.of(2L));
+        filmStorage.addLike(film.getId(), 100L);
+        assertNotEquals(version, filmStorage.findPopularVersionByGenres(10, Set.of(2L)));
+    }
+
+    @Test
+    void serviceUpdate_ShouldMoveFilmBetweenGenres() {
+        Film film = filmService.create(film("Фильм", 1L));
+
+        Film put = film("Фильм", 2L, 3L);
+        put.setId(film.getId());
+        filmService.update(put);
+
+        assertEquals(List.of(), popularIds(1L));
+        assertEquals(List.of(film.getId()), popularIds(2L));
+        assertEquals(List.of(film.getId()), popularIds(3L));
+
+        // PATCH без жанров их не трогает, с жанрами - заменяет
+        Film patch = new Film();
+        patch.setId(film.getId());
+        patch.setName("Фильм");
+        patch.setGenres(null);
+        filmService.patch(patch);
+        assertEquals(List.of(film.getId()), popularIds(2L));
+        patch.setGenres(Set.of(new Genre(6L, null)));
+        filmService.patch(patch);
+        assertEquals(List.of(), popularIds(2L));
+        assertEquals(List.of(film.getId()), popularIds(6L));
+    }
+
+    @Test
+    void create_UnknownOrMissingGenreId_ShouldBeRejected() {
+        Film unknown = film("Неизвестный жанр", 100L);
+        Film missing = film("Жанр без id");
+        missing.setGenres(Set.of(new Genre()));
+
+        assertThrows(NotFoundException.class, () -> filmService.create(unknown));
+        assertThrows(ValidationException.class, () -> filmService.create(missing));
+        assertEquals(2, filmService.createBatch(List.of(unknown, missing, film("Комедия", 1L))).getErrors().size());
+        assertEquals(List.of("Комедия"), filmService.findPopularFilms(10, Set.of(1L)).stream()
+                .flatMap(film -> film.getGenres().stream()).map(Genre::getName).toList());
+    }
+
+    private List<Long> popularIds(Long genreId) {
+        return filmService.findPopularFilms(10, Set.of(genreId)).stream().map(Film::getId).toList();
+    }
+
+    private List<Long> ids(Set<Long> genreIds, int count) {
+        return filmStorage.findLikedFilmByGenres(count, genreIds).stream().map(Film::getId).toList();
+    }
+
+    private void like(Film film, int likes) {
+        for (long userId = 1; userId <= likes; userId++) {
+            filmStorage.addLike(film.getId(), userId);
+        }
+    }
+
+    private Film create(String name, Long... genreIds) {
+        return filmStorage.create(film(name, genreIds));
+    }
+
+    private Film film(String name, Long... genreIds) {
+        Film film = new Film();
+        film.setName(name);
+        film.setDescription("Описание");
+        film.setReleaseDate(LocalDate.of(2000, 1, 1));
+        film.setDuration(100);
+        film.setGenres(new HashSet<>(Arrays.stream(genreIds).map(id -> new Genre(id, null)).toList()));
+        return film;
+    }
+}
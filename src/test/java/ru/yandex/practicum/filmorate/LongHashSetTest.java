@@ -0,0 +1,87 @@
+package ru.yandex.practicum.filmorate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.util.LongHashSet;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongHashSetTest {
+
+    @Test
+    void addRemoveContains_ShouldBehaveLikeHashSet() {
+        LongHashSet set = new LongHashSet();
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(7);
+
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextInt(5_000) - 10;
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(value), set.add(value));
+            } else {
+                assertEquals(expected.remove(value), set.remove(value));
+            }
+        }
+
+        assertEquals(expected.size(), set.size());
+        assertEquals(expected, set);
+        for (long value = -10; value < 5_000; value++) {
+            assertEquals(expected.contains(value), set.contains(value));
+        }
+    }
+
+    @Test
+    void specialValues_ShouldBeStoredLikeOthers() {
+        LongHashSet set = new LongHashSet();
+
+        assertTrue(set.add(0L));
+        assertTrue(set.add(Long.MIN_VALUE));
+        assertTrue(set.add(1L));
+        assertFalse(set.add(0L));
+
+        assertEquals(Set.of(0L, Long.MIN_VALUE, 1L), set);
+
+        assertTrue(set.remove(Long.MIN_VALUE));
+        assertFalse(set.contains(Long.MIN_VALUE));
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    void iteratorRemove_ShouldRemoveCurrentElement() {
+        LongHashSet set = new LongHashSet(Set.of(1L, 2L, 3L));
+
+        Iterator<Long> iterator = set.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() == 2L) {
+                iterator.remove();
+            }
+        }
+
+        assertEquals(Set.of(1L, 3L), set);
+    }
+
+    @Test
+    void json_ShouldSerializeAsArrayOfIds() throws Exception {
+        ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        Film film = new Film();
+        film.setName("Film");
+        film.setReleaseDate(LocalDate.of(2000, 1, 1));
+        film.setDuration(100);
+        film.getLikedUsersIds().add(5L);
+        film.getLikedUsersIds().add(7L);
+
+        String json = mapper.writeValueAsString(film);
+        Film restored = mapper.readValue(json, Film.class);
+
+        assertTrue(json.contains("\"likedUsersIds\":["));
+        assertEquals(Set.of(5L, 7L), restored.getLikedUsersIds());
+    }
+}
@@ -0,0 +1,109 @@
+package ru.yandex.practicum.filmorate;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import ru.yandex.practicum.filmorate.metrics.MeteredFilmStorage;
+import ru.yandex.practicum.filmorate.metrics.MeteredUserStorage;
+import ru.yandex.practicum.filmorate.metrics.MetricsPostProcessor;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.like.DirectLikeWriter;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryGenreStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void meteredFilmStorage_ShouldCountCallsLikesAndCatalogSize() {
+        FilmStorage storage = new MeteredFilmStorage(new InMemoryFilmStorage(), registry);
+
+        Film first = storage.create(film("First"));
+        Film second = storage.create(film("Second"));
+        storage.addLike(first.getId(), 1L);
+        storage.addLike(first.getId(), 2L);
+        storage.addLike(second.getId(), 1L);
+        storage.removeLike(second.getId(), 1L);
+        // Повторы ничего не меняют и в счетчики не попадают
+        storage.addLike(first.getId(), 1L);
+        storage.removeLike(second.getId(), 1L);
+
+        assertEquals(2, registry.get("filmorate.storage").tags("storage", "film", "method", "create")
+                .timer().count());
+        assertEquals(3.0, registry.get("filmorate.likes").tag("action", "add").counter().count());
+        assertEquals(1.0, registry.get("filmorate.likes").tag("action", "remove").counter().count());
+        assertEquals(2.0, registry.get("filmorate.films.count").gauge().value());
+        assertEquals(2.0, registry.get("filmorate.likes.stored").gauge().value());
+        assertEquals(2.0, registry.get("filmorate.likes.max").gauge().value());
+    }
+
+    @Test
+    void meteredUserStorage_ShouldCountOnlyChangedFriendships() {
+        UserStorage storage = new MeteredUserStorage(new InMemoryUserStorage(), registry);
+        long first = storage.create(user("first@mail.ru")).getId();
+        long second = storage.create(user("second@mail.ru")).getId();
+
+        assertTrue(storage.addFriend(first, second));
+        assertFalse(storage.addFriend(second, first));
+        assertTrue(storage.removeFriend(first, second));
+        assertFalse(storage.removeFriend(first, second));
+
+        assertEquals(1.0, registry.get("filmorate.friendships").tag("action", "add").counter().count());
+        assertEquals(1.0, registry.get("filmorate.friendships").tag("action", "remove").counter().count());
+    }
+
+    // Лайк замеряет сам сервис, прокси метрик отдает его цели напрямую: таймер считает вызов один раз
+    @Test
+    void serviceProxy_ShouldTimeLikesDirectlyAndOtherMethodsThroughInterceptor() {
+        FilmStorage filmStorage = new InMemoryFilmStorage();
+        UserStorage userStorage = new InMemoryUserStorage();
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("registry", registry);
+        MetricsPostProcessor postProcessor = new MetricsPostProcessor(beanFactory.getBeanProvider(MeterRegistry.class));
+        FilmService filmService = (FilmService) postProcessor.postProcessAfterInitialization(new FilmService(
+                filmStorage, userStorage, new InMemoryGenreStorage(), Validation.buildDefaultValidatorFactory()
+                .getValidator(), new DirectLikeWriter(filmStorage, event -> { }), event -> { }, registry),
+                "filmService");
+        long filmId = filmStorage.create(film("First")).getId();
+        long userId = userStorage.create(user("first@mail.ru")).getId();
+
+        assertTrue(AopUtils.isCglibProxy(filmService));
+        filmService.addLike(filmId, userId);
+        filmService.findAll();
+
+        assertEquals(1, registry.get("filmorate.service").tags("service", "FilmService", "method", "addLike")
+                .timer().count());
+        assertEquals(1, registry.get("filmorate.service").tags("service", "FilmService", "method", "findAll")
+                .timer().count());
+        assertTrue(filmStorage.isLiked(filmId, userId));
+    }
+
+    private User user(String email) {
+        User user = new User();
+        user.setEmail(email);
+        user.setLogin(email.substring(0, email.indexOf('@')));
+        user.setBirthday(LocalDate.of(1990, 1, 1));
+        return user;
+    }
+
+    private Film film(String name) {
+        Film film = new Film();
+        film.setName(name);
+        film.setReleaseDate(LocalDate.of(2000, 1, 1));
+        film.setDuration(120);
+        return film;
+    }
+}
@@ -0,0 +1,131 @@
+package ru.yandex.practicum.filmorate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.PreconditionFailedException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.service.like.DirectLikeWriter;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryGenreStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OptimisticUpdateTest {
+
+    private final InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+    private final InMemoryUserStorage userStorage = new InMemoryUserStorage();
+    private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+    private final UserService userService = new UserService(userStorage, validator, event -> { });
+    private final FilmService filmService = new FilmService(filmStorage, userStorage, new InMemoryGenreStorage(),
+            validator, new DirectLikeWriter(filmStorage, event -> { }), event -> { }, new SimpleMeterRegistry());
+
+    @Test
+    void update_ShouldInstallCopyOnlyOverExpectedVersion() {
+        Film film = filmStorage.create(film("Film"));
+        Film renamed = film.copy();
+        renamed.setName("Renamed");
+
+        Film installed = filmStorage.update(renamed, 1);
+
+        assertEquals(2, installed.getVersion());
+        assertEquals(1, film.getVersion(), "Прочитанный фильм не меняется");
+        assertEquals("Film", film.getName());
+        assertNull(filmStorage.update(renamed, 1));
+        assertEquals(installed, filmStorage.findFilmById(film.getId()));
+        Film missing = film("Missing");
+        missing.setId(film.getId() + 100);
+        assertThrows(NotFoundException.class, () -> filmStorage.update(missing, FilmStorage.ANY_VERSION));
+    }
+
+    @Test
+    void patch_WithStaleIfMatch_ShouldFailWithoutChanges() {
+        long filmId = filmService.create(film("Film")).getId();
+        long userId = userService.create(user()).getId();
+        long filmVersion = filmService.findFilmVersion(filmId);
+        long userVersion = userService.findUserVersion(userId);
+        Film filmPatch = new Film();
+        filmPatch.setId(filmId);
+        filmPatch.setName("Film");
+        filmPatch.setDescription("Новое описание");
+        User userPatch = new User();
+        userPatch.setId(userId);
+        userPatch.setName("Новое имя");
+
+        filmService.patch(filmPatch, version -> version == filmVersion);
+        userService.patch(userPatch, version -> version == userVersion);
+
+        filmPatch.setDescription("Поверх чужой правки");
+        userPatch.setName("Поверх чужой правки");
+        assertThrows(PreconditionFailedException.class,
+                () -> filmService.patch(filmPatch, version -> version == filmVersion));
+        assertThrows(PreconditionFailedException.class,
+                () -> userService.patch(userPatch, version -> version == userVersion));
+        assertEquals("Новое описание", filmService.findFilmById(filmId).getDescription());
+        assertEquals("Новое имя", userService.findUserById(userId).getName());
+        // Лайк тоже меняет ETag фильма
+        long likedVersion = filmService.findFilmVersion(filmId);
+        filmService.addLike(filmId, userId);
+        assertThrows(PreconditionFailedException.class,
+                () -> filmService.patch(filmPatch, version -> version == likedVersion));
+    }
+
+    // Писатели не держат блокировок: проигравший перечитывает фильм и повторяет правку, ни одна не теряется
+    @Test
+    void concurrentUpdates_ShouldNotLoseEdits() throws InterruptedException {
+        Film film = filmStorage.create(film("Film"));
+        int threads = 4;
+        int edits = 1000;
+        List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread writer = new Thread(() -> {
+                for (int n = 0; n < edits; n++) {
+                    Film current;
+                    Film next;
+                    do {
+                        current = filmStorage.findFilmById(film.getId());
+                        next = current.copy();
+                        next.setDuration(current.getDuration() + 1);
+                    } while (filmStorage.update(next, current.getVersion()) == null);
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        Film result = filmStorage.findFilmById(film.getId());
+        assertEquals(film.getDuration() + threads * edits, result.getDuration());
+        assertEquals(1 + threads * edits, result.getVersion());
+    }
+
+    private static Film film(String name) {
+        Film film = new Film();
+        film.setName(name);
+        film.setDescription("Описание");
+        film.setReleaseDate(LocalDate.of(2000, 1, 1));
+        film.setDuration(100);
+        return film;
+    }
+
+    private static User user() {
+        User user = new User();
+        user.setEmail("user@mail.ru");
+        user.setLogin("user");
+        user.setBirthday(LocalDate.of(1990, 1, 1));
+        return user;
+    }
+}
@@ -0,0 +1,285 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.yandex.practicum.filmorate.config.PersistenceProperties;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enums.MpaRating;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.persistence.BufferInput;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistenceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void filmStorage_ShouldRecoverFromLogWithoutSnapshot() {
+        InMemoryFilmStorage storage = new InMemoryFilmStorage(properties());
+        Film first = storage.create(film("First"));
+        first.setRating(MpaRating.R);
+        first.setGenres(Set.of(new Genre(1L, "Комедия")));
+        Film second = storage.create(film("Second"));
+        storage.addLike(first.getId(), 10L);
+        storage.addLike(first.getId(), 11L);
+        storage.addLike(second.getId(), 10L);
+        storage.removeLike(second.getId(), 10L);
+
+        Film renamed = film("Renamed");
+        renamed.setId(second.getId());
+        storage.update(renamed);
+
+        // Без destroy: как после падения процесса
+        InMemoryFilmStorage recovered = new InMemoryFilmStorage(properties());
+
+        assertEquals(Set.of(10L, 11L), recovered.findFilmById(first.getId()).getLikedUsersIds());
+        assertEquals("Renamed", recovered.findFilmById(second.getId()).getName());
+        assertTrue(recovered.isExistingFilm("Renamed"));
+        assertFalse(recovered.isExistingFilm("Second"));
+        assertEquals(first.getId(), List.copyOf(recovered.findLikedFilm(1)).get(0).getId());
+        assertEquals(second.getId() + 1, recovered.create(film("Third")).getId());
+    }
+
+    @Test
+    void filmStorage_ShouldRecoverFromSnapshotAndLogTail() throws IOException {
+        InMemoryFilmStorage storage = new InMemoryFilmStorage(properties());
+        Film film = storage.create(film("Film"));
+        storage.addLike(film.getId(), 1L);
+        storage.snapshot();
+        storage.addLike(film.getId(), 2L);
+        storage.removeLike(film.getId(), 1L);
+
+        InMemoryFilmStorage recovered = new InMemoryFilmStorage(properties());
+
+        assertEquals(Set.of(2L), recovered.findFilmById(film.getId()).getLikedUsersIds());
+        // Сегмент до снимка удален
+        assertFalse(Files.exists(dir.resolve("films").resolve("wal-0000000000000000.log")));
+    }
+
+    @Test
+    void filmStorage_TornLogTail_ShouldBeDiscarded() throws IOException {
+        InMemoryFilmStorage storage = new InMemoryFilmStorage(properties());
+        Film film = storage.create(film("Film"));
+        storage.addLike(film.getId(), 1L);
+
+        Path segment;
+        try (Stream<Path> files = Files.list(dir.resolve("films"))) {
+            segment = files.filter(path -> path.toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+        // Запись, оборванная посреди тела
+        Files.write(segment, new byte[]{0, 0, 0, 17, 1, 2, 3, 4, 3, 0}, StandardOpenOption.APPEND);
+
+        InMemoryFilmStorage recovered = new InMemoryFilmStorage(properties());
+        recovered.addLike(film.getId(), 2L);
+
+        assertEquals(Set.of(1L, 2L), new InMemoryFilmStorage(properties()).findFilmById(film.getId())
+                .getLikedUsersIds());
+    }
+
+    @Test
+    void userStorage_ShouldRecoverUsersAndFriends() throws IOException {
+        InMemoryUserStorage storage = new InMemoryUserStorage(properties());
+        User first = storage.create(user("first@mail.ru"));
+        User second = storage.create(user("second@mail.ru"));
+        User third = storage.create(user("third@mail.ru"));
+        storage.addFriend(first.getId(), second.getId());
+        storage.destroy();
+
+        InMemoryUserStorage restarted = new InMemoryUserStorage(properties());
+        restarted.addFriend(first.getId(), third.getId());
+        restarted.removeFriend(first.getId(), second.getId());
+        User changed = user("changed@mail.ru");
+        changed.setId(second.getId());
+        restarted.update(changed);
+
+        InMemoryUserStorage recovered = new InMemoryUserStorage(properties());
+
+        assertEquals(Set.of(third.getId()), recovered.findUserById(first.getId()).getFriendIds());
+        assertEquals(Set.of(first.getId()), recovered.findUserById(third.getId()).getFriendIds());
+        assertEquals("changed@mail.ru", recovered.findUserById(second.getId()).getEmail());
+        assertTrue(recovered.isExistingEmail("changed@mail.ru"));
+        assertFalse(recovered.isExistingEmail("second@mail.ru"));
+    }
+
+    @Test
+    void userStorage_ShouldRecoverFriendRequests() throws IOException {
+        InMemoryUserStorage storage = new InMemoryUserStorage(properties());
+        User first = storage.create(user("first@mail.ru"));
+        User second = storage.create(user("second@mail.ru"));
+        User third = storage.create(user("third@mail.ru"));
+        storage.requestFriend(first.getId(), second.getId());
+        storage.requestFriend(third.getId(), second.getId());
+        storage.destroy();
+
+        InMemoryUserStorage restarted = new InMemoryUserStorage(properties());
+        restarted.acceptFriend(second.getId(), first.getId());
+        restarted.requestFriend(first.getId(), third.getId());
+        restarted.declineFriend(second.getId(), third.getId());
+
+        InMemoryUserStorage recovered = new InMemoryUserStorage(properties());
+
+        assertEquals(Set.of(second.getId()), recovered.findUserById(first.getId()).getFriendIds());
+        assertEquals(1, recovered.countFriends(second.getId()));
+        assertArrayEquals(new long[0], recovered.findFriendRequests(second.getId()));
+        assertArrayEquals(new long[]{first.getId()}, recovered.findFriendRequests(third.getId()));
+    }
+
+    // A→X и B→A идут под разными страйпами, и B→A может лечь в журнал раньше, чем A→X
+    @Test
+    void filmStorage_RenamesOutOfOrderAfterSnapshot_ShouldRecover() throws IOException {
+        InMemoryFilmStorage storage = new InMemoryFilmStorage(properties());
+        Film first = storage.create(film("A"));
+        Film second = storage.create(film("B"));
+        storage.addLike(second.getId(), 1L);
+        storage.snapshot();
+        Film renamedFirst = film("X");
+        renamedFirst.setId(first.getId());
+        storage.update(renamedFirst);
+        Film renamedSecond = film("A");
+        renamedSecond.setId(second.getId());
+        storage.update(renamedSecond);
+        swapRecords(dir.resolve("films").resolve("wal-0000000000000001.log"));
+
+        InMemoryFilmStorage recovered = new InMemoryFilmStorage(properties());
+
+        assertEquals("X", recovered.findFilmById(first.getId()).getName());
+        assertEquals("A", recovered.findFilmById(second.getId()).getName());
+        assertTrue(recovered.isExistingFilm("X"));
+        assertFalse(recovered.isExistingFilm("B"));
+        assertThrows(ValidationException.class, () -> recovered.create(film("A")));
+        assertEquals(List.of(second.getId(), first.getId()),
+                recovered.findLikedFilm(2).stream().map(Film::getId).toList());
+    }
+
+    @Test
+    void userStorage_EmailChangesOutOfOrderAfterSnapshot_ShouldRecover() throws IOException {
+        InMemoryUserStorage storage = new InMemoryUserStorage(properties());
+        User first = storage.create(user("a@mail.ru"));
+        User second = storage.create(user("b@mail.ru"));
+        storage.snapshot();
+        User changedFirst = user("x@mail.ru");
+        changedFirst.setId(first.getId());
+        storage.update(changedFirst);
+        User changedSecond = user("a@mail.ru");
+        changedSecond.setId(second.getId());
+        storage.update(changedSecond);
+        swapRecords(dir.resolve("users").resolve("wal-0000000000000001.log"));
+
+        InMemoryUserStorage recovered = new InMemoryUserStorage(properties());
+
+        assertEquals("a@mail.ru", recovered.findUserById(second.getId()).getEmail());
+        assertTrue(recovered.isExistingEmail("x@mail.ru"));
+        assertFalse(recovered.isExistingEmail("b@mail.ru"));
+        assertEquals(2, recovered.count());
+    }
+
+    // Снимок нечеткий: заявка B→A уже в нем, а журнал с A→B, ее отклонением и B→A проигрывается поверх
+    @Test
+    void userStorage_RequestsReplayedOverSnapshot_ShouldNotBecomeFriendship() throws IOException {
+        InMemoryUserStorage storage = new InMemoryUserStorage(properties());
+        User first = storage.create(user("a@mail.ru"));
+        User second = storage.create(user("b@mail.ru"));
+        storage.requestFriend(first.getId(), second.getId());
+        storage.declineFriend(second.getId(), first.getId());
+        storage.requestFriend(second.getId(), first.getId());
+        Path users = dir.resolve("users");
+        Path segment = users.resolve("wal-0000000000000000.log");
+        byte[] tail = Files.readAllBytes(segment);
+        storage.snapshot();
+        // Возвращаем сегмент и направляем снимок на него, как будто записи легли в журнал до переключения
+        Files.write(segment, tail);
+        try (FileChannel channel = FileChannel.open(users.resolve("snapshot.bin"), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, 0L), 8);
+        }
+
+        InMemoryUserStorage recovered = new InMemoryUserStorage(properties());
+
+        assertEquals(0, recovered.countFriends(first.getId()));
+        assertEquals(0, recovered.countFriends(second.getId()));
+        assertArrayEquals(new long[]{second.getId()}, recovered.findFriendRequests(first.getId()));
+        assertArrayEquals(new long[0], recovered.findFriendRequests(second.getId()));
+    }
+
+    @Test
+    void bufferInput_ValuesAcrossChunks_ShouldReadAsOneBuffer() {
+        byte[] text = "Снимок".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer whole = ByteBuffer.allocate(1 + 4 + 8 + text.length)
+                .put((byte) 7).putInt(-123456789).putLong(Long.MIN_VALUE + 42).put(text).flip();
+        // Куски по 3 байта: int, long и строка разрезаны стыками
+        List<ByteBuffer> chunks = new ArrayList<>();
+        for (int position = 0; position < whole.limit(); position += 3) {
+            chunks.add(whole.slice(position, Math.min(3, whole.limit() - position)));
+        }
+        chunks.add(1, ByteBuffer.allocate(0));
+
+        BufferInput in = new BufferInput(chunks.toArray(ByteBuffer[]::new));
+        byte[] readText = new byte[text.length];
+        assertEquals(7, in.get());
+        assertEquals(-123456789, in.getInt());
+        assertEquals(Long.MIN_VALUE + 42, in.getLong());
+        in.get(readText);
+        assertArrayEquals(text, readText);
+        assertFalse(in.hasRemaining());
+        assertThrows(BufferUnderflowException.class, in::get);
+    }
+
+    // Меняет местами две записи сегмента: длина, CRC и тело каждой остаются целыми
+    private static void swapRecords(Path segment) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        List<byte[]> records = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            byte[] record = new byte[8 + buffer.getInt(buffer.position())];
+            buffer.get(record);
+            records.add(record);
+        }
+        assertEquals(2, records.size());
+        ByteBuffer swapped = ByteBuffer.allocate(buffer.capacity());
+        swapped.put(records.get(1)).put(records.get(0));
+        Files.write(segment, swapped.array());
+    }
+
+    private PersistenceProperties properties() {
+        PersistenceProperties properties = new PersistenceProperties();
+        properties.setEnabled(true);
+        properties.setDir(dir);
+        return properties;
+    }
+
+    private Film film(String name) {
+        Film film = new Film();
+        film.setName(name);
+        film.setDescription("Описание");
+        film.setReleaseDate(LocalDate.of(2000, 1, 1));
+        film.setDuration(120);
+        return film;
+    }
+
+    private User user(String email) {
+        User user = new User();
+        user.setEmail(email);
+        user.setLogin(email.substring(0, email.indexOf('@')));
+        user.setName("Имя");
+        user.setBirthday(LocalDate.of(1990, 1, 1));
+        return user;
+    }
+}
@@ -0,0 +1,138 @@
+package ru.yandex.practicum.filmorate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.config.StorageCacheProperties;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.cache.CachingFilmStorage;
+import ru.yandex.practicum.filmorate.storage.cache.CachingUserStorage;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StorageCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void findFilmById_ShouldHitCacheUntilLikeInvalidatesIt() {
+        FilmStorage storage = new CachingFilmStorage(new InMemoryFilmStorage() {
+            @Override
+            public Film findFilmById(Long id) {
+                loads.incrementAndGet();
+                return super.findFilmById(id);
+            }
+        }, new StorageCacheProperties.Entity(), registry);
+        Film film = storage.create(film());
+
+        storage.findFilmById(film.getId());
+        storage.findFilmById(film.getId());
+        assertEquals(1, loads.get());
+
+        storage.addLike(film.getId(), 7L);
+
+        assertTrue(storage.findFilmById(film.getId()).getLikedUsersIds().contains(7L));
+        assertEquals(2, loads.get());
+        assertEquals(1.0, registry.get("cache.gets").tags("cache", "films", "result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void missingUser_ShouldBeCachedUntilCreated() {
+        UserStorage storage = new CachingUserStorage(new InMemoryUserStorage() {
+            @Override
+            public User findUserById(Long id) {
+                loads.incrementAndGet();
+                return super.findUserById(id);
+            }
+        }, new StorageCacheProperties.Entity(), registry);
+
+        assertNull(storage.findUserById(1L));
+        assertNull(storage.findUserById(1L));
+        assertEquals(1, loads.get());
+
+        User user = storage.create(user(1));
+
+        assertEquals(user.getId(), storage.findUserById(1L).getId());
+    }
+
+    @Test
+    void findUsersByIds_ShouldKeepOrderAndSeeFriendChanges() {
+        UserStorage storage = new CachingUserStorage(new InMemoryUserStorage(),
+                new StorageCacheProperties.Entity(), registry);
+        User first = storage.create(user(1));
+        User second = storage.create(user(2));
+        User third = storage.create(user(3));
+
+        storage.findUsersByIds(new long[]{third.getId(), first.getId()});
+        storage.addFriend(first.getId(), second.getId());
+        List<User> users = storage.findUsersByIds(new long[]{third.getId(), second.getId(), first.getId(), 99L});
+
+        assertEquals(List.of(third.getId(), second.getId(), first.getId()), users.stream().map(User::getId).toList());
+        assertTrue(users.get(2).getFriendIds().contains(second.getId()));
+    }
+
+    // Дружба меняется, пока промах загружается: инвалидация дожидается загрузки, и устаревшая копия не остается в кэше
+    @Test
+    void findUsersByIds_FriendChangeDuringLoad_ShouldNotStayCached() throws InterruptedException {
+        CountDownLatch changed = new CountDownLatch(1);
+        AtomicReference<Runnable> duringLoad = new AtomicReference<>();
+        UserStorage storage = new CachingUserStorage(new InMemoryUserStorage() {
+            @Override
+            public User findUserById(Long id) {
+                User user = super.findUserById(id);
+                Runnable change = duringLoad.getAndSet(null);
+                if (change != null) {
+                    change.run();
+                }
+                return user;
+            }
+
+            @Override
+            public boolean addFriend(Long userId, Long friendId) {
+                boolean added = super.addFriend(userId, friendId);
+                changed.countDown();
+                return added;
+            }
+        }, new StorageCacheProperties.Entity(), registry);
+        User first = storage.create(user(1));
+        User second = storage.create(user(2));
+        Thread writer = new Thread(() -> storage.addFriend(first.getId(), second.getId()));
+        duringLoad.set(() -> {
+            writer.start();
+            assertDoesNotThrow(() -> assertTrue(changed.await(5, TimeUnit.SECONDS)));
+        });
+
+        assertTrue(storage.findUsersByIds(new long[]{first.getId()}).get(0).getFriendIds().isEmpty());
+        writer.join();
+
+        assertTrue(storage.findUsersByIds(new long[]{first.getId()}).get(0).getFriendIds().contains(second.getId()));
+    }
+
+    private Film film() {
+        Film film = new Film();
+        film.setName("Film");
+        film.setReleaseDate(LocalDate.of(2000, 1, 1));
+        film.setDuration(120);
+        return film;
+    }
+
+    private User user(int n) {
+        User user = new User();
+        user.setEmail("user" + n + "@mail.ru");
+        user.setLogin("user" + n);
+        user.setBirthday(LocalDate.of(1990, 1, 1));
+        return user;
+    }
+}
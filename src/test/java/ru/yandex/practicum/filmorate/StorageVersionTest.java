@@ -0,0 +1,78 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StorageVersionTest {
+
+    private final InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+    private final InMemoryUserStorage userStorage = new InMemoryUserStorage();
+
+    @Test
+    void popularVersion_ShouldIgnoreLikesOutsideRequestedTop() {
+        Film first = filmStorage.create(film("First"));
+        Film second = filmStorage.create(film("Second"));
+        Film third = filmStorage.create(film("Third"));
+        filmStorage.addLike(first.getId(), 1L);
+        filmStorage.addLike(first.getId(), 2L);
+        filmStorage.addLike(second.getId(), 1L);
+        long topTwo = filmStorage.findPopularVersion(2);
+        long firstVersion = filmStorage.findFilmVersion(first.getId());
+
+        filmStorage.addLike(third.getId(), 3L);
+
+        assertEquals(firstVersion, filmStorage.findFilmVersion(first.getId()));
+        assertEquals(topTwo, filmStorage.findPopularVersion(2), "Третий фильм в топ-2 не попал");
+
+        filmStorage.addLike(third.getId(), 4L);
+        filmStorage.addLike(third.getId(), 5L);
+
+        assertNotEquals(topTwo, filmStorage.findPopularVersion(2));
+    }
+
+    @Test
+    void friendsVersion_ShouldChangeWhenFriendChanges() {
+        User user = userStorage.create(user(1));
+        User friend = userStorage.create(user(2));
+        User stranger = userStorage.create(user(3));
+        userStorage.addFriend(user.getId(), friend.getId());
+        long version = userStorage.findFriendsVersion(user.getId());
+
+        userStorage.update(user(3, stranger.getId()));
+        assertEquals(version, userStorage.findFriendsVersion(user.getId()));
+
+        userStorage.update(user(2, friend.getId()));
+        assertNotEquals(version, userStorage.findFriendsVersion(user.getId()));
+        assertEquals(-1, userStorage.findFriendsVersion(100L));
+    }
+
+    private Film film(String name) {
+        Film film = new Film();
+        film.setName(name);
+        film.setReleaseDate(LocalDate.of(2000, 1, 1));
+        film.setDuration(120);
+        return film;
+    }
+
+    private User user(int n) {
+        User user = new User();
+        user.setEmail("user" + n + "@mail.ru");
+        user.setLogin("user" + n);
+        user.setBirthday(LocalDate.of(1990, 1, 1));
+        return user;
+    }
+
+    private User user(int n, Long id) {
+        User user = user(n);
+        user.setId(id);
+        user.setName("Renamed");
+        return user;
+    }
+}
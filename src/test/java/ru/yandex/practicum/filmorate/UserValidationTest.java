@@ -1,9 +1,11 @@
 package ru.yandex.practicum.filmorate;
 
+import jakarta.validation.Validation;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.DTO.BatchResult;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.UserService;
 import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
@@ -24,7 +26,8 @@ class UserValidationTest {
     @BeforeEach
     void setUp() {
         userStorage = new InMemoryUserStorage();
-        userService = new UserService(userStorage);
+        userService = new UserService(userStorage, Validation.buildDefaultValidatorFactory().getValidator(),
+                event -> { });
 
         testUser = new User();
         testUser.setEmail("test@mail.ru");
@@ -232,6 +235,7 @@ class UserValidationTest {
 
         assertEquals(1, commonFriends.size());
         assertEquals(createdCommonFriend.getId(), commonFriends.get(0).getId());
+        assertEquals(1, userService.countCommonFriends(user1.getId(), createdUser2.getId()));
     }
 
     @Test
@@ -249,4 +253,43 @@ class UserValidationTest {
 
         assertEquals(2, users.size());
     }
+
+    @Test
+    void updateUser_SameEmail_ShouldKeepEmailReserved() {
+        User createdUser = userService.create(testUser);
+
+        User updateUser = new User();
+        updateUser.setId(createdUser.getId());
+        updateUser.setEmail("test@mail.ru");
+        updateUser.setLogin("newlogin");
+        updateUser.setName("New Name");
+
+        User updatedUser = userService.update(updateUser);
+
+        assertEquals("newlogin", updatedUser.getLogin());
+        assertTrue(userStorage.isExistingEmail("test@mail.ru"));
+    }
+
+    @Test
+    void createBatch_ShouldFillNameAndSkipDuplicateEmails() {
+        userService.create(testUser);
+
+        User first = new User();
+        first.setEmail("first@mail.ru");
+        first.setLogin("first");
+        User duplicate = new User();
+        duplicate.setEmail("test@mail.ru");
+        duplicate.setLogin("duplicate");
+        User invalid = new User();
+        invalid.setEmail("not-an-email");
+        invalid.setLogin("invalid");
+
+        BatchResult result = userService.createBatch(List.of(first, duplicate, invalid));
+
+        assertEquals(1, result.getCreated());
+        assertEquals("first", userService.findUserById(result.getIds().get(0)).getName());
+        assertEquals(2, result.getErrors().size());
+        assertEquals(1, result.getErrors().get(0).getIndex());
+        assertEquals(2, result.getErrors().get(1).getIndex());
+    }
 }
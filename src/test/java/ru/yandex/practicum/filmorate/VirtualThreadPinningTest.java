@@ -0,0 +1,84 @@
+package ru.yandex.practicum.filmorate;
+
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import ru.yandex.practicum.filmorate.config.PersistenceProperties;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VirtualThreadPinningTest {
+
+    private static final int TASKS = 2_000;
+
+    @TempDir
+    Path dir;
+
+    // При закреплении на одноядерной машине задачи блокируют друг друга навсегда, поэтому тест ограничен по времени
+    @Test
+    @Timeout(value = 60, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void storagesWithJournal_ShouldNotPinCarrierThreads() throws Exception {
+        PersistenceProperties properties = new PersistenceProperties();
+        properties.setEnabled(true);
+        properties.setDir(dir);
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage(properties);
+        InMemoryUserStorage userStorage = new InMemoryUserStorage(properties);
+        Film film = filmStorage.create(film());
+        User user = userStorage.create(user(0));
+
+        List<String> pinned = new CopyOnWriteArrayList<>();
+        try (RecordingStream recording = new RecordingStream()) {
+            recording.enable("jdk.VirtualThreadPinned").withoutThreshold().withStackTrace();
+            recording.onEvent("jdk.VirtualThreadPinned", event -> pinned.add(String.valueOf(event.getStackTrace())));
+            recording.startAsync();
+
+            // Лайки и дружба ждут fsync, снимки ждут блокировок хранилища - все на виртуальных потоках
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 1; i <= TASKS; i++) {
+                    long id = i;
+                    executor.submit(() -> filmStorage.addLike(film.getId(), id));
+                    if (i % 10 == 0) {
+                        executor.submit(() -> userStorage.addFriend(user.getId(),
+                                userStorage.create(user(id)).getId()));
+                    }
+                    if (i % 500 == 0) {
+                        executor.submit(filmStorage::snapshot);
+                        executor.submit(userStorage::snapshot);
+                    }
+                }
+            }
+            recording.stop();
+        }
+
+        assertEquals(TASKS, filmStorage.findFilmById(film.getId()).getLikedUsersIds().size());
+        assertTrue(pinned.isEmpty(), () -> "Виртуальный поток закреплен:\n" + pinned.get(0));
+    }
+
+    private Film film() {
+        Film film = new Film();
+        film.setName("Premiere");
+        film.setReleaseDate(LocalDate.of(2024, 1, 1));
+        film.setDuration(120);
+        return film;
+    }
+
+    private User user(long n) {
+        User user = new User();
+        user.setEmail("user" + n + "@mail.ru");
+        user.setLogin("user" + n);
+        user.setBirthday(LocalDate.of(1990, 1, 1));
+        return user;
+    }
+}
@@ -0,0 +1,104 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.util.LongHashSet;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Каталоги для бенчмарков. Размер и распределение степеней (лайков у фильма, друзей у пользователя)
+ * задаются параметрами, генератор детерминирован по seed.
+ */
+public final class CatalogGenerator {
+
+    private CatalogGenerator() {
+    }
+
+    public enum Distribution {
+        // Степень равномерно от 0 до 2 * mean
+        UNIFORM,
+        // Парето с alpha = 2: у большинства мало, у единиц на порядки больше среднего
+        POWER_LAW;
+
+        int next(Random random, int mean, int max) {
+            long degree = switch (this) {
+                case UNIFORM -> random.nextInt(2 * mean + 1);
+                case POWER_LAW -> (long) (mean / 2.0 / Math.sqrt(1.0 - random.nextDouble()));
+            };
+            return (int) Math.min(degree, max);
+        }
+    }
+
+    public static Film film(int n) {
+        Film film = new Film();
+        film.setName("Film " + n);
+        film.setDescription("Description " + n);
+        film.setReleaseDate(LocalDate.of(2000, 1, 1).plusDays(n % 9000));
+        film.setDuration(90 + n % 60);
+        return film;
+    }
+
+    public static User user(long n) {
+        User user = new User();
+        user.setEmail("user" + n + "@mail.ru");
+        user.setLogin("user" + n);
+        user.setName("User " + n);
+        user.setBirthday(LocalDate.of(1990, 1, 1));
+        return user;
+    }
+
+    /**
+     * Фильмы с лайками от пользователей 1..users.
+     */
+    public static InMemoryFilmStorage films(int count, int users, int meanLikes, Distribution distribution,
+                                            long seed) {
+        Random random = new Random(seed);
+        InMemoryFilmStorage storage = new InMemoryFilmStorage();
+        List<Film> films = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Film film = film(i);
+            film.setLikedUsersIds(randomIds(random, distribution.next(random, meanLikes, users), users));
+            films.add(film);
+        }
+        storage.createAll(films);
+        return storage;
+    }
+
+    /**
+     * Пользователи с взаимной дружбой; средняя степень примерно meanDegree.
+     */
+    public static InMemoryUserStorage users(int count, int meanDegree, Distribution distribution, long seed) {
+        Random random = new Random(seed);
+        InMemoryUserStorage storage = new InMemoryUserStorage();
+        List<User> users = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            users.add(user(i));
+        }
+        storage.createAll(users);
+        // Каждая дружба добавляет степень обеим сторонам, поэтому инициатору достается половина
+        for (long userId = 1; userId <= count; userId++) {
+            int degree = distribution.next(random, Math.max(1, meanDegree / 2), count - 1);
+            for (int i = 0; i < degree; i++) {
+                long friendId = 1 + random.nextInt(count);
+                if (friendId != userId) {
+                    storage.addFriend(userId, friendId);
+                }
+            }
+        }
+        return storage;
+    }
+
+    private static LongHashSet randomIds(Random random, int size, int range) {
+        LongHashSet ids = new LongHashSet(size);
+        while (ids.size() < size) {
+            ids.add(1 + random.nextInt(range));
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,71 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.util.LongHashSet;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пересечение списков друзей при разном перекосе степеней: "меньший:больший".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommonFriendsBenchmark {
+
+    @Param({"10:10", "10:10000", "1000:1000", "100:100000", "10000:100000"})
+    private String degrees;
+
+    private LongHashSet smaller;
+    private LongHashSet larger;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] parts = degrees.split(":");
+        int smallDegree = Integer.parseInt(parts[0]);
+        int largeDegree = Integer.parseInt(parts[1]);
+        Random random = new Random(42);
+        // Id друзей из общего пула, чтобы пересечение было непустым
+        int idRange = largeDegree * 4;
+        smaller = randomSet(random, smallDegree, idRange);
+        larger = randomSet(random, largeDegree, idRange);
+    }
+
+    @Benchmark
+    public Set<Long> hashSetRetainAll() {
+        Set<Long> common = new HashSet<>(smaller);
+        common.retainAll(larger);
+        return common;
+    }
+
+    @Benchmark
+    public Set<Long> hashSetRetainAllLargerFirst() {
+        Set<Long> common = new HashSet<>(larger);
+        common.retainAll(smaller);
+        return common;
+    }
+
+    @Benchmark
+    public long[] intersection() {
+        return larger.intersection(smaller);
+    }
+
+    @Benchmark
+    public int intersectionSize() {
+        return larger.intersectionSize(smaller);
+    }
+
+    private static LongHashSet randomSet(Random random, int size, int idRange) {
+        LongHashSet set = new LongHashSet(size);
+        while (set.size() < size) {
+            set.add(1 + random.nextInt(idRange));
+        }
+        return set;
+    }
+}
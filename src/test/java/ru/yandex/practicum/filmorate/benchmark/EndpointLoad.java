@@ -0,0 +1,148 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Пропускная способность и p99 для PUT /films/{id}/like/{userId} и GET /films/popular
+ * при обработке запросов пулом Tomcat и виртуальными потоками.
+ * Приложение поднимается с журналом на диске, поэтому лайк блокируется на fsync.
+ * Запуск: java -Xmx2g -cp ... EndpointLoad [clients] [seconds]
+ */
+public class EndpointLoad {
+
+    private static final int FILMS = 1_000;
+    private static final int USERS = 10_000;
+    private static final int WARMUP_SECONDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        System.out.printf("%-9s %-8s %10s %9s %9s%n", "mode", "endpoint", "req/s", "p50 ms", "p99 ms");
+        for (boolean virtual : new boolean[]{false, true}) {
+            Path dir = Files.createTempDirectory("filmorate-load");
+            try (ConfigurableApplicationContext context = new SpringApplicationBuilder(FilmorateApplication.class)
+                    .properties("server.port=0",
+                            "spring.threads.virtual.enabled=" + virtual,
+                            "filmorate.persistence.enabled=true",
+                            "filmorate.persistence.dir=" + dir,
+                            "logging.level.root=WARN",
+                            "spring.main.banner-mode=off")
+                    .run()) {
+                seed(context);
+                String base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+                String mode = virtual ? "virtual" : "platform";
+
+                Supplier<HttpRequest> like = () -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    return HttpRequest.newBuilder(URI.create(base + "/films/" + random.nextInt(1, FILMS + 1)
+                                    + "/like/" + random.nextInt(1, USERS + 1)))
+                            .PUT(HttpRequest.BodyPublishers.noBody())
+                            .build();
+                };
+                HttpRequest popular = HttpRequest.newBuilder(URI.create(base + "/films/popular?count=10")).build();
+
+                report(mode, "like", load(like, clients, seconds));
+                report(mode, "popular", load(() -> popular, clients, seconds));
+            }
+        }
+    }
+
+    private static void seed(ConfigurableApplicationContext context) {
+        List<Film> films = new ArrayList<>(FILMS);
+        for (int i = 1; i <= FILMS; i++) {
+            Film film = new Film();
+            film.setName("Film " + i);
+            film.setReleaseDate(LocalDate.of(2000, 1, 1));
+            film.setDuration(100);
+            films.add(film);
+        }
+        context.getBean(FilmService.class).createBatch(films);
+
+        List<User> users = new ArrayList<>(USERS);
+        for (int i = 1; i <= USERS; i++) {
+            User user = new User();
+            user.setEmail("user" + i + "@mail.ru");
+            user.setLogin("user" + i);
+            user.setBirthday(LocalDate.of(1990, 1, 1));
+            users.add(user);
+        }
+        context.getBean(UserService.class).createBatch(users);
+    }
+
+    // Сначала прогрев, затем замер; каждый клиент - виртуальный поток с последовательными запросами
+    private static Result load(Supplier<HttpRequest> requests, int clients, int seconds) throws Exception {
+        run(requests, clients, WARMUP_SECONDS);
+        return run(requests, clients, seconds);
+    }
+
+    private static Result run(Supplier<HttpRequest> requests, int clients, int seconds) throws Exception {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<long[]> latencies = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient client = HttpClient.newBuilder().executor(executor).build()) {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                futures.add(executor.submit(() -> {
+                    long[] samples = new long[1024];
+                    int count = 0;
+                    while (System.nanoTime() < deadline) {
+                        long started = System.nanoTime();
+                        HttpResponse<Void> response = client.send(requests.get(),
+                                HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() >= 500) {
+                            throw new IllegalStateException("Ответ " + response.statusCode());
+                        }
+                        if (count == samples.length) {
+                            samples = Arrays.copyOf(samples, count * 2);
+                        }
+                        samples[count++] = System.nanoTime() - started;
+                    }
+                    return Arrays.copyOf(samples, count);
+                }));
+            }
+            for (Future<long[]> future : futures) {
+                latencies.add(future.get());
+            }
+        }
+        long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        return new Result((double) all.length / seconds, percentile(all, 0.50), percentile(all, 0.99));
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)] / 1_000_000.0;
+    }
+
+    private static void report(String mode, String endpoint, Result result) {
+        System.out.printf("%-9s %-8s %10.0f %9.2f %9.2f%n", mode, endpoint, result.throughput(), result.p50(),
+                result.p99());
+    }
+
+    private record Result(double throughput, double p50, double p99) {
+    }
+}
@@ -0,0 +1,66 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.config.FeedProperties;
+import ru.yandex.practicum.filmorate.event.LikeChangedEvent;
+import ru.yandex.practicum.filmorate.model.DTO.FeedEvent;
+import ru.yandex.practicum.filmorate.service.feed.FeedService;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Лента на графе со степенями по Парето: раздача лайка друзьям и чтение ленты. celebrityThreshold=1000000
+ * отключает чтение событий хабов при запросе - все раздается при записи.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FeedBenchmark {
+
+    private static final int FILMS = 10_000;
+
+    @Param({"100000"})
+    private int users;
+
+    @Param({"100"})
+    private int meanDegree;
+
+    @Param({"1000", "1000000"})
+    private int celebrityThreshold;
+
+    private FeedService feedService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InMemoryUserStorage userStorage = CatalogGenerator.users(users, meanDegree,
+                CatalogGenerator.Distribution.POWER_LAW, 42);
+        InMemoryFilmStorage filmStorage = CatalogGenerator.films(FILMS, users, 10,
+                CatalogGenerator.Distribution.POWER_LAW, 42);
+        FeedProperties properties = new FeedProperties();
+        properties.setCelebrityThreshold(celebrityThreshold);
+        feedService = new FeedService(userStorage, filmStorage, properties);
+        // Ленты заполнены до того, как начинаются замеры
+        for (int i = 0; i < users; i++) {
+            like();
+        }
+    }
+
+    @Benchmark
+    public void like() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        feedService.onLikeChanged(new LikeChangedEvent(random.nextLong(1, FILMS + 1),
+                random.nextLong(1, users + 1), true));
+    }
+
+    @Benchmark
+    public List<FeedEvent> getFeed() {
+        return feedService.getFeed(ThreadLocalRandom.current().nextLong(1, users + 1), 20);
+    }
+}
@@ -0,0 +1,105 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.DTO.FilmSearch;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.enums.MpaRating;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /films/search при разной избирательности условий: полный перебор каталога против вторичных индексов.
+ * Даты выхода равномерно за 1950-2019, продолжительность 60-179 минут, рейтинг равновероятен.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FilmSearchBenchmark {
+
+    private static final LocalDate FIRST_DATE = LocalDate.of(1950, 1, 1);
+    private static final int DAYS = 365 * 70;
+
+    @Param({"100000", "1000000"})
+    private int films;
+
+    // Доля подходящих фильмов
+    @Param({"0.2%", "1%", "10%", "50%"})
+    private String selectivity;
+
+    @Param({"POPULAR", "DATE"})
+    private FilmSearch.Sort sort;
+
+    private InMemoryFilmStorage storage;
+    private FilmSearch search;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        storage = new InMemoryFilmStorage();
+        Random random = new Random(42);
+        for (int i = 0; i < films; i++) {
+            Film film = new Film();
+            film.setName("Film " + i);
+            film.setDescription("Description " + i);
+            film.setReleaseDate(FIRST_DATE.plusDays(random.nextInt(DAYS)));
+            film.setDuration(60 + random.nextInt(120));
+            film.setRating(MpaRating.values()[random.nextInt(MpaRating.values().length)]);
+            storage.create(film);
+            int likes = (int) (Math.pow(random.nextDouble(), 8) * 200);
+            for (long userId = 1; userId <= likes; userId++) {
+                storage.addLike(film.getId(), userId);
+            }
+        }
+
+        search = new FilmSearch();
+        search.setSort(sort);
+        switch (selectivity) {
+            // Одна минута продолжительности и один рейтинг: 1/120 * 1/5
+            case "0.2%" -> {
+                search.setMinDuration(100);
+                search.setMaxDuration(100);
+                search.setRating(MpaRating.NC_17);
+            }
+            // Последние 0.7 года при широком рейтинге
+            case "1%" -> search.setReleasedFrom(FIRST_DATE.plusDays(DAYS - DAYS / 100));
+            case "10%" -> {
+                search.setMinDuration(60);
+                search.setMaxDuration(71);
+            }
+            // Два широких условия, по отдельности ни одно не узкое
+            case "50%" -> {
+                search.setReleasedFrom(FIRST_DATE.plusDays(DAYS / 4));
+                search.setMaxDuration(149);
+                search.setRating(null);
+            }
+            default -> throw new IllegalArgumentException(selectivity);
+        }
+    }
+
+    @Benchmark
+    public List<Film> fullScan() {
+        Comparator<Film> order = sort == FilmSearch.Sort.POPULAR
+                ? Comparator.comparingInt((Film f) -> -f.getLikedUsersIds().size())
+                : Comparator.comparing(Film::getReleaseDate).reversed();
+        return storage.findAll().stream()
+                .filter(f -> search.getReleasedFrom() == null || !f.getReleaseDate().isBefore(search.getReleasedFrom()))
+                .filter(f -> search.getMinDuration() == null || f.getDuration() >= search.getMinDuration())
+                .filter(f -> search.getMaxDuration() == null || f.getDuration() <= search.getMaxDuration())
+                .filter(f -> search.getRating() == null || f.getRating() == search.getRating())
+                .sorted(order.thenComparing(Film::getId))
+                .limit(search.getLimit())
+                .toList();
+    }
+
+    @Benchmark
+    public List<Film> indexed() {
+        return storage.search(search);
+    }
+}
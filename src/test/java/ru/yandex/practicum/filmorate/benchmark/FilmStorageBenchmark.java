@@ -0,0 +1,70 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+
+import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Горячие пути InMemoryFilmStorage: топ популярных, лайк с отменой и создание фильма с выдачей id.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FilmStorageBenchmark {
+
+    private static final int USERS = 1_000_000;
+
+    @Param({"10000", "1000000"})
+    private int films;
+
+    @Param({"10"})
+    private int meanLikes;
+
+    @Param({"UNIFORM", "POWER_LAW"})
+    private CatalogGenerator.Distribution distribution;
+
+    private InMemoryFilmStorage storage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        storage = CatalogGenerator.films(films, USERS, meanLikes, distribution, 42);
+    }
+
+    @Benchmark
+    public Collection<Film> findLikedFilm() {
+        return storage.findLikedFilm(10);
+    }
+
+    // Пользователь вне диапазона генератора: лайк всегда новый, после отмены состояние прежнее
+    @Benchmark
+    public void addAndRemoveLike() {
+        long filmId = ThreadLocalRandom.current().nextLong(1, films + 1);
+        storage.addLike(filmId, USERS + 1L);
+        storage.removeLike(filmId, USERS + 1L);
+    }
+
+    @Benchmark
+    public Film create(EmptyStorage empty) {
+        return empty.storage.create(CatalogGenerator.film(empty.sequence.incrementAndGet()));
+    }
+
+    @State(Scope.Benchmark)
+    public static class EmptyStorage {
+        private final AtomicInteger sequence = new AtomicInteger();
+        private InMemoryFilmStorage storage;
+
+        // Каталог пересоздается, чтобы его рост не влиял на результат
+        @Setup(Level.Iteration)
+        public void setUp() {
+            storage = new InMemoryFilmStorage();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.DTO.FilmSearch;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /films/search?q= на каталоге со словарем из VOCABULARY слов с частотами по Ципфу: в названии 2-4 слова,
+ * в описании 8-15. Режим SampleTime дает перцентили; в конце печатается оценка памяти индекса.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FilmTextSearchBenchmark {
+
+    private static final int VOCABULARY = 50_000;
+    private static final String LETTERS = "абвгдежзиклмнопрстуфхцчшэюя";
+
+    @Param({"1000000"})
+    private int films;
+
+    // common - слово из первой десятки, rare - из хвоста, two - частое и среднее вместе,
+    // prefix - начало слова, typo - слово с опечаткой
+    @Param({"common", "rare", "two", "prefix", "typo"})
+    private String query;
+
+    private InMemoryFilmStorage storage;
+    private FilmSearch search;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        String[] words = new String[VOCABULARY];
+        for (int i = 0; i < VOCABULARY; i++) {
+            words[i] = randomWord(random, i);
+        }
+        double[] cumulative = new double[VOCABULARY];
+        double sum = 0;
+        for (int i = 0; i < VOCABULARY; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+
+        storage = new InMemoryFilmStorage();
+        List<Film> batch = new ArrayList<>(10_000);
+        for (int i = 0; i < films; i++) {
+            Film film = new Film();
+            film.setName(text(random, words, cumulative, 2 + random.nextInt(3)) + " " + i);
+            film.setDescription(text(random, words, cumulative, 8 + random.nextInt(8)));
+            film.setReleaseDate(LocalDate.of(2000, 1, 1));
+            film.setDuration(90);
+            batch.add(film);
+            if (batch.size() == 10_000) {
+                storage.createAll(batch);
+                batch = new ArrayList<>(10_000);
+            }
+        }
+        storage.createAll(batch);
+        for (long filmId = 1; filmId <= films; filmId++) {
+            int likes = (int) (Math.pow(random.nextDouble(), 8) * 200);
+            for (long userId = 1; userId <= likes; userId++) {
+                storage.addLike(filmId, userId);
+            }
+        }
+
+        search = new FilmSearch();
+        search.setSort(FilmSearch.Sort.RELEVANCE);
+        search.setQ(switch (query) {
+            case "common" -> words[3];
+            case "rare" -> words[30_000];
+            case "two" -> words[5] + " " + words[300];
+            case "prefix" -> words[1_000].substring(0, 4);
+            case "typo" -> words[2_000].substring(0, 2) + "ъ" + words[2_000].substring(3);
+            default -> throw new IllegalArgumentException(query);
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void printIndexSize() {
+        System.out.printf("%nИндекс: %.1f МБ, q=%s%n", storage.searchIndexBytes() / 1048576.0, search.getQ());
+    }
+
+    @Benchmark
+    public List<Film> search() {
+        return storage.search(search);
+    }
+
+    private static String text(Random random, String[] words, double[] cumulative, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            double point = random.nextDouble() * cumulative[cumulative.length - 1];
+            int index = Arrays.binarySearch(cumulative, point);
+            text.append(i == 0 ? "" : " ").append(words[index < 0 ? -index - 1 : index]);
+        }
+        return text.toString();
+    }
+
+    // Случайное начало и номер слова теми же буквами в конце, чтобы слова не совпадали
+    private static String randomWord(Random random, int n) {
+        StringBuilder word = new StringBuilder();
+        int length = 3 + random.nextInt(5);
+        for (int i = 0; i < length; i++) {
+            word.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+        }
+        do {
+            word.append(LETTERS.charAt(n % LETTERS.length()));
+            n /= LETTERS.length();
+        } while (n > 0);
+        return word.toString();
+    }
+}
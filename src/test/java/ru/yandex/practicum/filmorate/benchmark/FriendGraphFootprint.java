@@ -0,0 +1,88 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.util.LongHashSet;
+
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Отчет о памяти под дружбу: граф InMemoryUserStorage против множества друзей у каждого пользователя.
+ * Ребра одни и те же при любом режиме, степени по Парето, как в CatalogGenerator.
+ * Запуск: java -Xmx4g -cp ... FriendGraphFootprint [users] [meanDegree] [graph|longset|hashset]
+ */
+public class FriendGraphFootprint {
+
+    public static void main(String[] args) {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int meanDegree = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        String mode = args.length > 2 ? args[2] : "graph";
+
+        InMemoryUserStorage storage = null;
+        if (mode.equals("graph")) {
+            storage = new InMemoryUserStorage();
+            List<User> batch = new ArrayList<>(users);
+            for (int i = 1; i <= users; i++) {
+                batch.add(CatalogGenerator.user(i));
+            }
+            storage.createAll(batch);
+        }
+
+        long before = usedHeap();
+        Object[] sets = mode.equals("graph") ? null : new Object[users + 1];
+        Random random = new Random(42);
+        long friendships = 0;
+        for (long userId = 1; userId <= users; userId++) {
+            int degree = CatalogGenerator.Distribution.POWER_LAW.next(random, Math.max(1, meanDegree / 2), users - 1);
+            for (int i = 0; i < degree; i++) {
+                long friendId = 1 + random.nextInt(users);
+                if (friendId == userId) {
+                    continue;
+                }
+                friendships++;
+                if (storage != null) {
+                    storage.addFriend(userId, friendId);
+                } else {
+                    add(sets, mode, userId, friendId);
+                    add(sets, mode, friendId, userId);
+                }
+            }
+        }
+        long used = usedHeap() - before;
+        Reference.reachabilityFence(sets);
+        Reference.reachabilityFence(storage);
+
+        System.out.printf("%s: users=%d friendships=%d heap=%d MB bytes/friendship=%.1f%s%n",
+                mode, users, friendships, used / (1024 * 1024), (double) used / friendships,
+                storage == null ? "" : String.format(" estimate=%d MB", storage.friendGraphBytes() / (1024 * 1024)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void add(Object[] sets, String mode, long userId, long friendId) {
+        int index = (int) userId;
+        if (mode.equals("hashset")) {
+            if (sets[index] == null) {
+                sets[index] = new HashSet<Long>();
+            }
+            ((Set<Long>) sets[index]).add(friendId);
+        } else {
+            if (sets[index] == null) {
+                sets[index] = new LongHashSet();
+            }
+            ((LongHashSet) sets[index]).add(friendId);
+        }
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
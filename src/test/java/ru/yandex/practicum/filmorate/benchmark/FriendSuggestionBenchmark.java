@@ -0,0 +1,48 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.config.SuggestionProperties;
+import ru.yandex.practicum.filmorate.model.DTO.FriendSuggestion;
+import ru.yandex.practicum.filmorate.service.suggestion.FriendSuggestionService;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Рекомендации друзей: распределение задержек (p99 в SampleTime) на графе 1M пользователей и 50M дружб.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-XX:+UseParallelGC"})
+public class FriendSuggestionBenchmark {
+
+    @Param({"1000000"})
+    private int users;
+
+    @Param({"100"})
+    private int meanDegree;
+
+    @Param({"POWER_LAW"})
+    private CatalogGenerator.Distribution distribution;
+
+    @Param({"false", "true"})
+    private boolean precompute;
+
+    private FriendSuggestionService service;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SuggestionProperties properties = new SuggestionProperties();
+        properties.setPrecompute(precompute);
+        service = new FriendSuggestionService(CatalogGenerator.users(users, meanDegree, distribution, 42), properties);
+    }
+
+    @Benchmark
+    public List<FriendSuggestion> findSuggestions() {
+        return service.findSuggestions(ThreadLocalRandom.current().nextLong(1, users + 1), 10);
+    }
+}
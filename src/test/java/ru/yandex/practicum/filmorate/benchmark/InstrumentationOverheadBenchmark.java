@@ -0,0 +1,45 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.metrics.MeteredFilmStorage;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Цена метрик на пути лайка: лайк с отменой в голом хранилище и в MeteredFilmStorage
+ * с Prometheus-реестром. Аллокации видно с -prof gc.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class InstrumentationOverheadBenchmark {
+
+    private static final int FILMS = 100_000;
+    private static final int USERS = 1_000_000;
+
+    @Param({"false", "true"})
+    private boolean metered;
+
+    private FilmStorage storage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InMemoryFilmStorage films = CatalogGenerator.films(FILMS, USERS, 10, CatalogGenerator.Distribution.POWER_LAW, 42);
+        storage = metered ? new MeteredFilmStorage(films, new PrometheusMeterRegistry(PrometheusConfig.DEFAULT)) : films;
+    }
+
+    @Benchmark
+    public void addAndRemoveLike() {
+        long filmId = ThreadLocalRandom.current().nextLong(1, FILMS + 1);
+        storage.addLike(filmId, USERS + 1L);
+        storage.removeLike(filmId, USERS + 1L);
+    }
+}
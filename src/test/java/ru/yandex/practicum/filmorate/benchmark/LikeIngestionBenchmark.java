@@ -0,0 +1,88 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.env.StandardEnvironment;
+import ru.yandex.practicum.filmorate.config.LikeIngestionProperties;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.like.AsyncLikeWriter;
+import ru.yandex.practicum.filmorate.service.like.DirectLikeWriter;
+import ru.yandex.practicum.filmorate.service.like.LikeWriter;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryGenreStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+
+import java.time.LocalDate;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Лайки нескольким "премьерным" фильмам из многих потоков: запись под блокировкой фильма
+ * против очереди с одним писателем на шард.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Threads(16)
+public class LikeIngestionBenchmark {
+
+    private static final int HOT_FILMS = 4;
+    private static final int USERS = 100_000;
+
+    @Param({"direct", "async"})
+    public String mode;
+
+    private FilmService filmService;
+    private LikeWriter likeWriter;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+        InMemoryUserStorage userStorage = new InMemoryUserStorage();
+        if ("async".equals(mode)) {
+            LikeIngestionProperties properties = new LikeIngestionProperties();
+            properties.setEnabled(true);
+            likeWriter = new AsyncLikeWriter(filmStorage, properties, event -> { }, new SimpleMeterRegistry(),
+                    new StandardEnvironment());
+        } else {
+            likeWriter = new DirectLikeWriter(filmStorage, event -> { });
+        }
+        filmService = new FilmService(filmStorage, userStorage, new InMemoryGenreStorage(),
+                Validation.buildDefaultValidatorFactory().getValidator(), likeWriter, event -> { },
+                new SimpleMeterRegistry());
+
+        for (int i = 1; i <= HOT_FILMS; i++) {
+            Film film = new Film();
+            film.setName("Premiere " + i);
+            film.setReleaseDate(LocalDate.of(2024, 1, 1));
+            film.setDuration(120);
+            filmStorage.create(film);
+        }
+        for (int i = 1; i <= USERS; i++) {
+            User user = new User();
+            user.setEmail("user" + i + "@mail.ru");
+            user.setLogin("user" + i);
+            user.setBirthday(LocalDate.of(1990, 1, 1));
+            userStorage.create(user);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws InterruptedException {
+        if (likeWriter instanceof AsyncLikeWriter asyncLikeWriter) {
+            asyncLikeWriter.destroy();
+        }
+    }
+
+    @Benchmark
+    public void like() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        filmService.addLike(random.nextLong(1, HOT_FILMS + 1), random.nextLong(1, USERS + 1));
+    }
+}
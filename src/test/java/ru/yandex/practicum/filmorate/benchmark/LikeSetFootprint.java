@@ -0,0 +1,59 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import ru.yandex.practicum.filmorate.util.LongHashSet;
+
+import java.lang.ref.Reference;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Отчет о занимаемой памяти множествами лайков.
+ * Запуск: java -Xmx4g -cp ... LikeSetFootprint [films] [totalLikes] [longset|hashset]
+ */
+public class LikeSetFootprint {
+
+    public static void main(String[] args) {
+        int films = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        long totalLikes = args.length > 1 ? Long.parseLong(args[1]) : 100_000_000L;
+        boolean boxed = args.length > 2 && args[2].equals("hashset");
+
+        long before = usedHeap();
+        Object[] sets = new Object[films];
+        Random random = new Random(42);
+        long likesPerFilm = totalLikes / films;
+        long userId = 1;
+        for (int i = 0; i < films; i++) {
+            // Разброс вокруг среднего, чтобы таблицы были разных размеров
+            long likes = random.nextLong(likesPerFilm * 2 + 1);
+            if (boxed) {
+                Set<Long> set = new HashSet<>();
+                for (long j = 0; j < likes; j++) {
+                    set.add(userId++ % 10_000_000);
+                }
+                sets[i] = set;
+            } else {
+                LongHashSet set = new LongHashSet();
+                for (long j = 0; j < likes; j++) {
+                    set.add(userId++ % 10_000_000);
+                }
+                sets[i] = set;
+            }
+        }
+        long used = usedHeap() - before;
+        Reference.reachabilityFence(sets);
+        long likes = userId - 1;
+
+        System.out.printf("%s: films=%d likes=%d heap=%d MB bytes/like=%.1f%n",
+                boxed ? "HashSet<Long>" : "LongHashSet", films, likes,
+                used / (1024 * 1024), (double) used / likes);
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
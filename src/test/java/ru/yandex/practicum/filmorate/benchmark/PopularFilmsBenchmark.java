@@ -0,0 +1,104 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Сравнение старой сортировки всего каталога с индексом популярности для GET /films/popular,
+ * в том числе с фильтром по жанрам (genreIds: один частый жанр или редкое пересечение двух).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PopularFilmsBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    private int films;
+
+    @Param({"10"})
+    private int count;
+
+    @Param({"1", "1,2"})
+    private String genres;
+
+    private InMemoryFilmStorage storage;
+    private Set<Long> genreIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        storage = new InMemoryFilmStorage();
+        Random random = new Random(42);
+        Random genreRandom = new Random(7);
+        for (int i = 0; i < films; i++) {
+            Film film = new Film();
+            film.setName("Film " + i);
+            film.setDescription("Description " + i);
+            film.setReleaseDate(LocalDate.of(2000, 1, 1));
+            film.setDuration(90);
+            // Один жанр у каждого фильма и второй примерно у каждого четвертого
+            film.getGenres().add(new Genre((long) (genreRandom.nextInt(6) + 1), null));
+            if (genreRandom.nextInt(4) == 0) {
+                film.getGenres().add(new Genre((long) (genreRandom.nextInt(6) + 1), null));
+            }
+            storage.create(film);
+        }
+        // Лайков немного у большинства фильмов и много у единиц
+        for (long filmId = 1; filmId <= films; filmId++) {
+            int likes = (int) Math.min(200, Math.pow(random.nextDouble(), 8) * 200);
+            for (long userId = 1; userId <= likes; userId++) {
+                storage.addLike(filmId, userId);
+            }
+        }
+        genreIds = Arrays.stream(genres.split(",")).map(Long::valueOf).collect(Collectors.toSet());
+    }
+
+    @Benchmark
+    public List<Film> sortWholeCatalog() {
+        return storage.findAll().stream()
+                .sorted(Comparator.comparingInt((Film f) -> f.getLikedUsersIds().size()).reversed())
+                .limit(count)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public Collection<Film> popularityIndex() {
+        return storage.findLikedFilm(count);
+    }
+
+    @Benchmark
+    public List<Film> filterWholeCatalogByGenres() {
+        return storage.findAll().stream()
+                .filter(f -> f.getGenres().stream().map(Genre::getId).collect(Collectors.toSet()).containsAll(genreIds))
+                .sorted(Comparator.comparingInt((Film f) -> f.getLikedUsersIds().size()).reversed())
+                .limit(count)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public Collection<Film> genreIndex() {
+        return storage.findLikedFilmByGenres(count, genreIds);
+    }
+
+    @Benchmark
+    public void likeAndUnlike(Blackhole blackhole) {
+        storage.addLike(1L, Long.MAX_VALUE);
+        storage.removeLike(1L, Long.MAX_VALUE);
+        blackhole.consume(storage);
+    }
+}
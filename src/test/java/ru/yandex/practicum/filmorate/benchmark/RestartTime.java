@@ -0,0 +1,85 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import ru.yandex.practicum.filmorate.config.PersistenceProperties;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.util.LongHashSet;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Время восстановления хранилища фильмов из снимка и хвоста журнала.
+ * Запуск: java -Xmx4g -cp ... RestartTime [films] [likesPerFilm] [tailLikes] [dir]
+ */
+public class RestartTime {
+
+    private static final int BATCH = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        int films = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int likesPerFilm = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int tailLikes = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+        Path dir = args.length > 3 ? Path.of(args[3]) : Files.createTempDirectory("filmorate-restart");
+
+        PersistenceProperties properties = new PersistenceProperties();
+        properties.setEnabled(true);
+        properties.setDir(dir);
+
+        fill(properties, films, likesPerFilm, tailLikes);
+        // Исходное хранилище уже недостижимо, в куче остается только восстановленное
+        System.gc();
+
+        long started = System.nanoTime();
+        InMemoryFilmStorage recovered = new InMemoryFilmStorage(properties);
+        System.out.printf("restart: films=%d likes=%d in %d ms%n", films, (long) films * likesPerFilm,
+                (System.nanoTime() - started) / 1_000_000);
+        System.out.println(recovered.findLikedFilm(1).iterator().next().getLikedUsersIds().size());
+    }
+
+    private static void fill(PersistenceProperties properties, int films, int likesPerFilm, int tailLikes)
+            throws InterruptedException {
+        InMemoryFilmStorage storage = new InMemoryFilmStorage(properties);
+        Random random = new Random(42);
+        for (int from = 0; from < films; from += BATCH) {
+            List<Film> batch = new ArrayList<>(BATCH);
+            for (int i = from; i < Math.min(films, from + BATCH); i++) {
+                Film film = new Film();
+                film.setName("Film " + i);
+                film.setDescription("Описание фильма " + i);
+                film.setReleaseDate(LocalDate.of(2000, 1, 1).plusDays(i % 9000));
+                film.setDuration(90 + i % 60);
+                LongHashSet likes = new LongHashSet(likesPerFilm);
+                for (int j = 0; j < likesPerFilm; j++) {
+                    likes.add(random.nextLong(1, 10_000_000));
+                }
+                film.setLikedUsersIds(likes);
+                batch.add(film);
+            }
+            storage.createAll(batch);
+        }
+        long started = System.nanoTime();
+        storage.snapshot();
+        System.out.printf("snapshot: %d ms%n", (System.nanoTime() - started) / 1_000_000);
+
+        // Хвост журнала после снимка: лайки идут в несколько потоков, чтобы сработал групповой коммит
+        started = System.nanoTime();
+        Thread[] writers = new Thread[8];
+        for (int t = 0; t < writers.length; t++) {
+            writers[t] = Thread.ofPlatform().start(() -> {
+                Random threadRandom = new Random();
+                for (int i = 0; i < tailLikes / writers.length; i++) {
+                    storage.addLike(threadRandom.nextLong(1, films + 1), threadRandom.nextLong(1, 10_000_000));
+                }
+            });
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        System.out.printf("tail: %d likes in %d ms%n", tailLikes, (System.nanoTime() - started) / 1_000_000);
+    }
+}
@@ -0,0 +1,61 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.util.LongHashSet;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сериализация Film и User в JSON тем же ObjectMapper, что строит Spring, при больших множествах лайков и друзей.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int setSize;
+
+    private ObjectMapper objectMapper;
+    private Film film;
+    private User user;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        Random random = new Random(42);
+        film = CatalogGenerator.film(1);
+        film.setId(1L);
+        film.setLikedUsersIds(randomIds(random));
+        user = CatalogGenerator.user(1);
+        user.setId(1L);
+        user.setFriendIds(randomIds(random));
+    }
+
+    @Benchmark
+    public byte[] serializeFilm() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(film);
+    }
+
+    @Benchmark
+    public byte[] serializeUser() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(user);
+    }
+
+    private LongHashSet randomIds(Random random) {
+        LongHashSet ids = new LongHashSet(setSize);
+        while (ids.size() < setSize) {
+            ids.add(1 + random.nextInt(10_000_000));
+        }
+        return ids;
+    }
+}
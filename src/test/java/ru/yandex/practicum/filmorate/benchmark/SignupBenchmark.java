@@ -0,0 +1,65 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Пропускная способность регистрации при росте числа потоков.
+ * Хранилище пересоздается на каждой итерации, чтобы размер каталога не влиял на результат.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SignupBenchmark {
+
+    private final AtomicLong emailSequence = new AtomicLong();
+
+    private InMemoryUserStorage storage;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        storage = new InMemoryUserStorage();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public User signup1Thread() {
+        return signup();
+    }
+
+    @Benchmark
+    @Threads(2)
+    public User signup2Threads() {
+        return signup();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public User signup4Threads() {
+        return signup();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public User signupAllCores() {
+        return signup();
+    }
+
+    private User signup() {
+        long n = emailSequence.incrementAndGet();
+        User user = new User();
+        user.setEmail("user" + n + "@mail.ru");
+        user.setLogin("user" + n);
+        user.setName("User " + n);
+        user.setBirthday(LocalDate.of(1990, 1, 1));
+        return storage.create(user);
+    }
+}
@@ -0,0 +1,55 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.config.RecommendationProperties;
+import ru.yandex.practicum.filmorate.service.recommendation.FilmSimilarityIndex;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Полный пересчет соседей фильмов: время одного пересчета в зависимости от размера каталога и бюджета на фильм.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-XX:+UseParallelGC"})
+public class SimilarityRebuildBenchmark {
+
+    @Param({"100000", "1000000"})
+    private int films;
+
+    @Param({"1000000"})
+    private int users;
+
+    @Param({"10"})
+    private int meanLikes;
+
+    @Param({"POWER_LAW"})
+    private CatalogGenerator.Distribution distribution;
+
+    @Param({"20"})
+    private int neighboursPerFilm;
+
+    private FilmSimilarityIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        RecommendationProperties properties = new RecommendationProperties();
+        properties.setAutoRefresh(false);
+        properties.setNeighboursPerFilm(neighboursPerFilm);
+        index = new FilmSimilarityIndex(CatalogGenerator.films(films, users, meanLikes, distribution, 42), properties);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        index.destroy();
+    }
+
+    @Benchmark
+    public FilmSimilarityIndex rebuild() {
+        index.rebuild();
+        return index;
+    }
+}
@@ -0,0 +1,130 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.config.StorageCacheProperties;
+import ru.yandex.practicum.filmorate.storage.*;
+import ru.yandex.practicum.filmorate.storage.cache.CachingFilmStorage;
+import ru.yandex.practicum.filmorate.storage.cache.CachingUserStorage;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение хранилища в памяти и JDBC-хранилища на встроенной H2 на одних и тех же операциях;
+ * h2-cached - то же JDBC-хранилище за кэшем по id, как в профиле db.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBackendBenchmark {
+
+    @Param({"memory", "h2", "h2-cached"})
+    private String backend;
+
+    @Param({"10000"})
+    private int films;
+
+    @Param({"1000"})
+    private int users;
+
+    private FilmStorage filmStorage;
+    private UserStorage userStorage;
+    private HikariDataSource dataSource;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if (backend.startsWith("h2")) {
+            dataSource = new HikariDataSource();
+            dataSource.setJdbcUrl("jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1");
+            dataSource.setMaximumPoolSize(4);
+            ResourceDatabasePopulator populator = new ResourceDatabasePopulator(
+                    new ClassPathResource("schema.sql"), new ClassPathResource("data.sql"));
+            populator.setSqlScriptEncoding("UTF-8");
+            populator.execute(dataSource);
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            NamedParameterJdbcTemplate namedJdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+            filmStorage = new FilmDbStorage(jdbcTemplate, namedJdbcTemplate);
+            userStorage = new UserDbStorage(jdbcTemplate, namedJdbcTemplate);
+            if (backend.equals("h2-cached")) {
+                filmStorage = new CachingFilmStorage(filmStorage, new StorageCacheProperties.Entity(), null);
+                userStorage = new CachingUserStorage(userStorage, new StorageCacheProperties.Entity(), null);
+            }
+        } else {
+            filmStorage = new InMemoryFilmStorage();
+            userStorage = new InMemoryUserStorage();
+        }
+
+        for (int i = 0; i < users; i++) {
+            User user = new User();
+            user.setEmail("user" + i + "@mail.ru");
+            user.setLogin("user" + i);
+            user.setBirthday(LocalDate.of(1990, 1, 1));
+            userStorage.create(user);
+        }
+        random = new Random(42);
+        for (int i = 0; i < films; i++) {
+            Film film = new Film();
+            film.setName("Film " + i);
+            film.setDescription("Description " + i);
+            film.setReleaseDate(LocalDate.of(2000, 1, 1));
+            film.setDuration(90);
+            Film created = filmStorage.create(film);
+            int likes = random.nextInt(10);
+            for (int j = 0; j < likes; j++) {
+                filmStorage.addLike(created.getId(), 1L + random.nextInt(users));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+
+    @Benchmark
+    public Film findFilmById() {
+        return filmStorage.findFilmById(1L + random.nextInt(films));
+    }
+
+    // Проверки, которые FilmService.addLike делает до записи
+    @Benchmark
+    public boolean likePreconditions() {
+        return filmStorage.findFilmById(1L + random.nextInt(films)) != null
+                && userStorage.findUserById(1L + random.nextInt(users)) != null;
+    }
+
+    @Benchmark
+    public Collection<Film> findPopular10() {
+        return filmStorage.findLikedFilm(10);
+    }
+
+    @Benchmark
+    public List<Film> findPage100() {
+        return filmStorage.findPage((long) random.nextInt(films - 100), 100);
+    }
+
+    @Benchmark
+    public long addAndRemoveLike() {
+        long filmId = 1L + random.nextInt(films);
+        long userId = 1L + random.nextInt(users);
+        filmStorage.addLike(filmId, userId);
+        filmStorage.removeLike(filmId, userId);
+        return filmId;
+    }
+}
@@ -0,0 +1,58 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import jakarta.validation.Validation;
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Друзья и общие друзья через UserService на графах разного размера и формы.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class UserServiceBenchmark {
+
+    @Param({"10000", "100000"})
+    private int users;
+
+    @Param({"10", "100"})
+    private int meanDegree;
+
+    @Param({"UNIFORM", "POWER_LAW"})
+    private CatalogGenerator.Distribution distribution;
+
+    private UserService userService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        userService = new UserService(CatalogGenerator.users(users, meanDegree, distribution, 42),
+                Validation.buildDefaultValidatorFactory().getValidator(), event -> { });
+    }
+
+    @Benchmark
+    public List<User> getFriends() {
+        return userService.getFriends(randomUser());
+    }
+
+    @Benchmark
+    public List<User> getCommonFriends() {
+        return userService.getCommonFriends(randomUser(), randomUser());
+    }
+
+    @Benchmark
+    public int countCommonFriends() {
+        return userService.countCommonFriends(randomUser(), randomUser());
+    }
+
+    private long randomUser() {
+        return ThreadLocalRandom.current().nextLong(1, users + 1);
+    }
+}